@@ -0,0 +1,160 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nullable;
+
+import org.apache.log4j.Logger;
+
+import com.eucalyptus.auth.entities.CertificateEntity;
+import com.eucalyptus.auth.util.X509CertHelper;
+import com.eucalyptus.entities.EntityCache;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Index of active signing certificates by public key fingerprint.
+ *
+ * <p>The index is kept current from certificate changes, so uploaded,
+ * deactivated and deleted (revoked) certificates are reflected without
+ * loading users. The fingerprint maps are rebuilt only when the cached
+ * certificates change.</p>
+ */
+class CertificateFingerprintIndex {
+  private static final Logger LOG = Logger.getLogger( CertificateFingerprintIndex.class );
+
+  private static final EntityCache<CertificateEntity,Optional<IndexedCertificate>> certificates = new EntityCache<>(
+      activeCertificateExample( ),
+      new Function<CertificateEntity,Optional<IndexedCertificate>>( ) {
+        @Override
+        public Optional<IndexedCertificate> apply( final CertificateEntity entity ) {
+          try {
+            final X509Certificate certificate = X509CertHelper.toCertificate( entity.getPem( ) );
+            final String fingerprint = X509CertHelper.calcPublicKeyFingerprint( certificate );
+            if ( fingerprint != null ) {
+              final String accountNumber = entity.getUser( ).getGroups( ).get( 0 ).getAccount( ).getAccountNumber( );
+              return Optional.of( new IndexedCertificate( fingerprint, accountNumber, certificate ) );
+            }
+          } catch ( final Exception e ) {
+            LOG.warn( "Unable to index certificate " + entity.getCertificateId( ), e );
+          }
+          return Optional.absent( );
+        }
+      } );
+
+  private static final AtomicReference<Snapshot> snapshot = new AtomicReference<>( Snapshot.EMPTY );
+
+  /**
+   * Get active certificates by key fingerprint.
+   *
+   * @param accountNumber The account to get certificates for, null for all accounts
+   * @return The immutable map of certificates
+   */
+  static Map<String,X509Certificate> certificatesByKeyFingerprint( @Nullable final String accountNumber ) {
+    final Snapshot current = snapshot.get( );
+    final Snapshot refreshed = snapshot( current, certificates.refreshVersion( ), certificates );
+    if ( refreshed != current ) {
+      snapshot.compareAndSet( current, refreshed );
+    }
+    return refreshed.certificatesByKeyFingerprint( accountNumber );
+  }
+
+  /**
+   * Get a snapshot for the given version, reusing the current snapshot if
+   * the version is unchanged.
+   */
+  static Snapshot snapshot( final Snapshot current,
+                            final long version,
+                            final Supplier<? extends Iterable<Optional<IndexedCertificate>>> certificates ) {
+    return current.version == version ?
+        current :
+        new Snapshot( version, Optional.presentInstances( certificates.get( ) ) );
+  }
+
+  private static CertificateEntity activeCertificateExample( ) {
+    final CertificateEntity example = new CertificateEntity( );
+    example.setActive( true );
+    example.setRevoked( false );
+    return example;
+  }
+
+  static final class IndexedCertificate {
+    private final String fingerprint;
+    private final String accountNumber;
+    private final X509Certificate certificate;
+
+    IndexedCertificate( final String fingerprint,
+                        final String accountNumber,
+                        final X509Certificate certificate ) {
+      this.fingerprint = fingerprint;
+      this.accountNumber = accountNumber;
+      this.certificate = certificate;
+    }
+  }
+
+  static final class Snapshot {
+    private static final Snapshot EMPTY = new Snapshot( -1, Collections.<IndexedCertificate>emptyList( ) );
+
+    private final long version;
+    private final Map<String,X509Certificate> certificatesByFingerprint;
+    private final Map<String,Map<String,X509Certificate>> certificatesByAccountAndFingerprint;
+
+    Snapshot( final long version, final Iterable<IndexedCertificate> certificates ) {
+      final Map<String,X509Certificate> certificatesByFingerprint = Maps.newLinkedHashMap( );
+      final Map<String,Map<String,X509Certificate>> certificatesByAccountAndFingerprint = Maps.newHashMap( );
+      for ( final IndexedCertificate certificate : certificates ) {
+        if ( !certificatesByFingerprint.containsKey( certificate.fingerprint ) ) {
+          certificatesByFingerprint.put( certificate.fingerprint, certificate.certificate );
+        }
+        Map<String,X509Certificate> accountCertificates = certificatesByAccountAndFingerprint.get( certificate.accountNumber );
+        if ( accountCertificates == null ) {
+          accountCertificates = Maps.newLinkedHashMap( );
+          certificatesByAccountAndFingerprint.put( certificate.accountNumber, accountCertificates );
+        }
+        if ( !accountCertificates.containsKey( certificate.fingerprint ) ) {
+          accountCertificates.put( certificate.fingerprint, certificate.certificate );
+        }
+      }
+      final ImmutableMap.Builder<String,Map<String,X509Certificate>> byAccountBuilder = ImmutableMap.builder( );
+      for ( final Map.Entry<String,Map<String,X509Certificate>> entry : certificatesByAccountAndFingerprint.entrySet( ) ) {
+        byAccountBuilder.put( entry.getKey( ), ImmutableMap.copyOf( entry.getValue( ) ) );
+      }
+      this.version = version;
+      this.certificatesByFingerprint = ImmutableMap.copyOf( certificatesByFingerprint );
+      this.certificatesByAccountAndFingerprint = byAccountBuilder.build( );
+    }
+
+    Map<String,X509Certificate> certificatesByKeyFingerprint( @Nullable final String accountNumber ) {
+      if ( accountNumber == null ) {
+        return certificatesByFingerprint;
+      }
+      final Map<String,X509Certificate> accountCertificates = certificatesByAccountAndFingerprint.get( accountNumber );
+      return accountCertificates == null ? Collections.<String,X509Certificate>emptyMap( ) : accountCertificates;
+    }
+  }
+}
@@ -69,6 +69,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import javax.annotation.Nullable;
 
 import com.eucalyptus.auth.entities.PolicyEntity;
 import com.eucalyptus.auth.principal.Policy;
@@ -357,6 +358,16 @@ public class DatabaseAuthProvider implements AccountProvider {
     }
   }
 
+  @Override
+  public Map<String, X509Certificate> listActiveSigningCertificatesByKeyFingerprint( @Nullable final String accountNumber ) throws AuthException {
+    try {
+      return CertificateFingerprintIndex.certificatesByKeyFingerprint( accountNumber );
+    } catch ( Exception e ) {
+      Debugging.logError( LOG, e, "Failed to get certificates by key fingerprint" );
+      throw new AuthException( "Failed to get certificates by key fingerprint", e );
+    }
+  }
+
   @Override
   public Map<String, List<AccessKey>> listAccessKeysForUsers( final Collection<String> userIds ) throws AuthException {
     final ArrayListMultimap<String, AccessKey> results = ArrayListMultimap.create( );
@@ -0,0 +1,108 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth
+
+import static org.junit.Assert.*
+
+import java.security.cert.X509Certificate
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.junit.Test
+
+import com.eucalyptus.auth.CertificateFingerprintIndex.IndexedCertificate
+import com.eucalyptus.auth.CertificateFingerprintIndex.Snapshot
+import com.google.common.base.Optional
+import com.google.common.base.Supplier
+
+/**
+ *
+ */
+class CertificateFingerprintIndexTest {
+
+  private final X509Certificate certificate1 = certificate( 'certificate-1' )
+  private final X509Certificate certificate2 = certificate( 'certificate-2' )
+  private final X509Certificate certificate3 = certificate( 'certificate-3' )
+
+  @Test
+  void testCertificatesByFingerprint( ) {
+    final Snapshot snapshot = new Snapshot( 1, [
+        new IndexedCertificate( 'fingerprint-1', '000000000001', certificate1 ),
+        new IndexedCertificate( 'fingerprint-2', '000000000001', certificate2 ),
+        new IndexedCertificate( 'fingerprint-3', '000000000002', certificate3 ),
+    ] )
+
+    assertEquals( 'All certificates', [
+        'fingerprint-1': certificate1,
+        'fingerprint-2': certificate2,
+        'fingerprint-3': certificate3,
+    ], snapshot.certificatesByKeyFingerprint( null ) )
+    assertEquals( 'Account 1 certificates', [
+        'fingerprint-1': certificate1,
+        'fingerprint-2': certificate2,
+    ], snapshot.certificatesByKeyFingerprint( '000000000001' ) )
+    assertEquals( 'Account 2 certificates', [
+        'fingerprint-3': certificate3,
+    ], snapshot.certificatesByKeyFingerprint( '000000000002' ) )
+    assertEquals( 'Unknown account certificates', [:], snapshot.certificatesByKeyFingerprint( '000000000003' ) )
+  }
+
+  @Test
+  void testDuplicateFingerprint( ) {
+    final Snapshot snapshot = new Snapshot( 1, [
+        new IndexedCertificate( 'fingerprint-1', '000000000001', certificate1 ),
+        new IndexedCertificate( 'fingerprint-1', '000000000002', certificate2 ),
+    ] )
+
+    assertSame( 'First certificate for fingerprint', certificate1,
+        snapshot.certificatesByKeyFingerprint( null ).get( 'fingerprint-1' ) )
+    assertSame( 'Account 2 certificate for fingerprint', certificate2,
+        snapshot.certificatesByKeyFingerprint( '000000000002' ).get( 'fingerprint-1' ) )
+  }
+
+  @Test
+  void testSnapshotReusedUntilChanged( ) {
+    final AtomicInteger loads = new AtomicInteger( )
+    final List<Optional<IndexedCertificate>> certificates = [
+        Optional.of( new IndexedCertificate( 'fingerprint-1', '000000000001', certificate1 ) ),
+        Optional.<IndexedCertificate>absent( ),
+    ]
+    final Supplier<Iterable<Optional<IndexedCertificate>>> supplier = {
+      loads.incrementAndGet( )
+      certificates
+    } as Supplier<Iterable<Optional<IndexedCertificate>>>
+
+    final Snapshot snapshot1 = CertificateFingerprintIndex.snapshot( Snapshot.EMPTY, 1, supplier )
+    assertEquals( 'Certificates', [ 'fingerprint-1': certificate1 ], snapshot1.certificatesByKeyFingerprint( null ) )
+    assertSame( 'Unchanged snapshot', snapshot1, CertificateFingerprintIndex.snapshot( snapshot1, 1, supplier ) )
+    assertEquals( 'Loads before change', 1, loads.get( ) )
+
+    certificates << Optional.of( new IndexedCertificate( 'fingerprint-2', '000000000002', certificate2 ) )
+    final Snapshot snapshot2 = CertificateFingerprintIndex.snapshot( snapshot1, 2, supplier )
+    assertEquals( 'Loads after change', 2, loads.get( ) )
+    assertEquals( 'Changed certificates', [
+        'fingerprint-1': certificate1,
+        'fingerprint-2': certificate2,
+    ], snapshot2.certificatesByKeyFingerprint( null ) )
+  }
+
+  private static X509Certificate certificate( final String name ) {
+    [ toString: { -> name } ] as X509Certificate
+  }
+}
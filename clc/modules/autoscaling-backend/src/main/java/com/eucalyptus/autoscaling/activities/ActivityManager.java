@@ -22,14 +22,16 @@ package com.eucalyptus.autoscaling.activities;
 import static com.eucalyptus.autoscaling.activities.BackoffRunner.TaskWithBackOff;
 import static com.eucalyptus.autoscaling.activities.ZoneUnavailabilityMarkers.ZoneCallback;
 import static com.eucalyptus.autoscaling.common.AutoScalingMetadata.AutoScalingGroupMetadata;
+import static com.eucalyptus.autoscaling.common.AutoScalingMetadata.AutoScalingInstanceMetadata;
 import static com.eucalyptus.autoscaling.instances.AutoScalingInstances.availabilityZone;
-import static com.eucalyptus.autoscaling.instances.AutoScalingInstances.instanceId;
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -39,6 +41,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -92,6 +95,7 @@ import com.eucalyptus.component.Topology;
 import com.eucalyptus.component.id.Eucalyptus;
 import com.eucalyptus.compute.common.backend.DescribeInstanceTypesResponseType;
 import com.eucalyptus.compute.common.backend.DescribeInstanceTypesType;
+import com.eucalyptus.entities.EntityChangeListeners;
 import com.eucalyptus.event.ClockTick;
 import com.eucalyptus.event.EventListener;
 import com.eucalyptus.event.Listeners;
@@ -114,6 +118,8 @@ import com.eucalyptus.util.CollectionUtils;
 import com.eucalyptus.util.DispatchingClient;
 import com.eucalyptus.util.Exceptions;
 import com.eucalyptus.util.OwnerFullName;
+import com.eucalyptus.util.Pair;
+import com.eucalyptus.util.RestrictedType;
 import com.eucalyptus.util.RestrictedTypes;
 import com.eucalyptus.util.TypeMappers;
 import com.eucalyptus.util.async.CheckedListenableFuture;
@@ -128,10 +134,12 @@ import com.google.common.base.Predicates;
 import com.google.common.base.Splitter;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
@@ -186,6 +194,29 @@ public class ActivityManager {
   private static final String INSTANCE_PROFILE_RESOURCE =
       PolicySpec.qualifiedName( PolicySpec.VENDOR_IAM, PolicySpec.IAM_RESOURCE_INSTANCE_PROFILE );
 
+  private static final long GROUP_REFRESH_MILLIS = TimeUnit.MINUTES.toMillis( 5 );
+  private static final long GROUP_MONITORING_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis( 1 );
+
+  private static final GroupChanges groupChanges = new GroupChanges( );
+  private static final GroupChanges groupInstanceChanges = new GroupChanges( );
+
+  static {
+    EntityChangeListeners.register( AutoScalingGroup.class, new EntityChangeListeners.EntityChangeListener() {
+      @Override
+      public void changed( final Object entity, final Serializable id ) {
+        final AutoScalingGroup group = (AutoScalingGroup) entity;
+        groupChanged( groupKey( group.getOwnerAccountNumber(), group.getAutoScalingGroupName() ) );
+      }
+    } );
+    EntityChangeListeners.register( AutoScalingInstance.class, new EntityChangeListeners.EntityChangeListener() {
+      @Override
+      public void changed( final Object entity, final Serializable id ) {
+        final AutoScalingInstance instance = (AutoScalingInstance) entity;
+        groupInstancesChanged( groupKey( instance.getOwnerAccountNumber(), instance.getAutoScalingGroupName() ) );
+      }
+    } );
+  }
+
   private final ScalingActivities scalingActivities;
   private final AutoScalingGroups autoScalingGroups;
   private final AutoScalingInstances autoScalingInstances;
@@ -194,6 +225,10 @@ public class ActivityManager {
   private final BackoffRunner runner = BackoffRunner.getInstance( );
   private final ConcurrentMap<String,TimestampedValue<Integer>> launchFailureCounters = Maps.newConcurrentMap();
   private final ConcurrentMap<String,TimestampedValue<Void>> untrackedInstanceTimestamps = Maps.newConcurrentMap();
+  private final ConcurrentMap<String,TimestampedValue<Pair<Long,List<AutoScalingInstanceCoreView>>>> groupInstances = Maps.newConcurrentMap();
+  private final ConcurrentMap<String,MonitoredGroupState> monitoredGroupStates = Maps.newConcurrentMap();
+  private volatile long monitoredGroupsRefreshed = 0;
+  private volatile long monitoredGroupsVersion = 0;
   private final List<UnstableInstanceState> unstableInstanceStates = ImmutableList.<UnstableInstanceState>builder()
       .add( state( LifecycleState.Terminating, ConfigurationState.Instantiated, terminateInstancesTask() ) )
       .add( state( LifecycleState.Terminating, ConfigurationState.Registered, removeFromLoadBalancerOrTerminate() ) )
@@ -260,7 +295,7 @@ public class ActivityManager {
                              final ZoneMonitor zoneMonitor ) {
     this.scalingActivities = scalingActivities;
     this.autoScalingGroups = autoScalingGroups;
-    this.autoScalingInstances = autoScalingInstances;
+    this.autoScalingInstances = new ChangeTrackingAutoScalingInstances( autoScalingInstances );
     this.zoneAvailabilityMarkers = zoneAvailabilityMarkers;
     this.zoneMonitor = zoneMonitor;
   }
@@ -388,25 +423,39 @@ public class ActivityManager {
   /**
    * Periodically executed scaling work.
    */
-  private void runningInstanceChecks() {
+  void runningInstanceChecks() {
     final Map<String,AutoScalingGroupCoreView> autoScalingAccounts = Maps.newHashMap( );
+    final ListMultimap<String,MonitoredGroup> monitoredGroups = ArrayListMultimap.create( );
     try {
-      for ( final AutoScalingGroupCoreView group : autoScalingGroups.listRequiringMonitoring( 10000L, TypeMappers.lookup( AutoScalingGroup.class, AutoScalingGroupCoreView.class ) ) ) {
+      refreshMonitoredGroups( );
+      final long now = timestamp( );
+      for ( final MonitoredGroupState state : monitoredGroupStates.values() ) {
+        // monitor groups with changed instances on this tick, others when due
+        final long instancesVersion = groupInstanceChanges.version( state.getGroupKey() );
+        if ( now < state.monitoringDeadline && instancesVersion == state.monitoredInstancesVersion ) {
+          continue;
+        }
+        state.monitoringDeadline = nextDeadline( state.getGroupKey(), now );
+        state.monitoredInstancesVersion = instancesVersion;
+        final AutoScalingGroupCoreView group = state.getGroup();
         autoScalingAccounts.put( group.getOwnerAccountNumber(), group );
-        final List<String> groupInstancesPending = autoScalingInstances.listByGroup( group, LifecycleState.Pending, instanceId() );
-        final List<String> groupInstancesInService = autoScalingInstances.listByGroup( group, LifecycleState.InService, instanceId() );
+        final List<AutoScalingInstanceCoreView> groupInstances = listGroupInstances( group );
+        final List<String> groupInstancesPending = instanceIds( groupInstances, LifecycleState.Pending );
+        final List<String> groupInstancesInService = scalingProcessEnabled( ScalingProcessType.HealthCheck, group ) ?
+            instanceIds( groupInstances, LifecycleState.InService ) :
+            Collections.<String>emptyList();
         if ( !groupInstancesPending.isEmpty() || !groupInstancesInService.isEmpty() ) {
-          runTask( new MonitoringScalingProcessTask( group, groupInstancesPending, groupInstancesInService ) );
+          monitoredGroups.put( group.getOwnerAccountNumber(), new MonitoredGroup( group, groupInstancesPending, groupInstancesInService ) );
         }
       }
     } catch ( Exception e ) {
       logger.error( e, e );
     }
 
-    // Terminate rogue instances
+    // Check instances and terminate rogue instances, one task per account
     try {
-      for ( final AutoScalingGroupCoreView group : autoScalingAccounts.values() ) {
-        runTask( new UntrackedInstanceTerminationScalingProcessTask( group ) );
+      for ( final Map.Entry<String,AutoScalingGroupCoreView> accountEntry : autoScalingAccounts.entrySet() ) {
+        runTask( new MonitoringScalingProcessTask( accountEntry.getValue(), monitoredGroups.get( accountEntry.getKey() ) ) );
       }
     } catch ( Exception e ) {
       logger.error( e, e );
@@ -417,6 +466,118 @@ public class ActivityManager {
     expireValues( untrackedInstanceTimestamps, AutoScalingConfiguration.getUntrackedInstanceTimeoutMillis() + TimeUnit.MINUTES.toMillis( 10 ) );
   }
 
+  /**
+   * Refresh the in memory groups for monitoring.
+   *
+   * <p>Groups are loaded in full periodically, in between only changed
+   * groups are loaded.</p>
+   */
+  private void refreshMonitoredGroups( ) throws AutoScalingMetadataException {
+    final long now = timestamp( );
+    final long version = groupChanges.version( );
+    final long instancesVersion = groupInstanceChanges.version( );
+    final Function<AutoScalingGroup,AutoScalingGroupMetricsView> transform =
+        TypeMappers.lookup( AutoScalingGroup.class, AutoScalingGroupMetricsView.class );
+    if ( ( now - monitoredGroupsRefreshed ) > GROUP_REFRESH_MILLIS ) {
+      final Map<String,AutoScalingGroupMetricsView> groups = Maps.newHashMap( );
+      for ( final AutoScalingGroupMetricsView group : autoScalingGroups.listRequiringMonitoring( transform ) ) {
+        groups.put( groupKey( group ), group );
+      }
+      monitoredGroupStates.keySet( ).retainAll( groups.keySet( ) );
+      groupInstances.keySet( ).retainAll( groups.keySet( ) );
+      groupChanges.retain( groups.keySet( ), version );
+      groupInstanceChanges.retain( groups.keySet( ), instancesVersion );
+      for ( final AutoScalingGroupMetricsView group : groups.values( ) ) {
+        monitoredGroupLoaded( group, now );
+      }
+      monitoredGroupsRefreshed = now;
+    } else if ( version != monitoredGroupsVersion ) {
+      for ( final String groupKey : groupChanges.changedSince( monitoredGroupsVersion ) ) {
+        final int separator = groupKey.indexOf( ':' );
+        try {
+          monitoredGroupLoaded( autoScalingGroups.lookup(
+              AccountFullName.getInstance( groupKey.substring( 0, separator ) ),
+              groupKey.substring( separator + 1 ),
+              transform ), now );
+        } catch ( AutoScalingMetadataNotFoundException e ) {
+          monitoredGroupStates.remove( groupKey );
+          groupInstances.remove( groupKey );
+        }
+      }
+    }
+    monitoredGroupsVersion = version;
+  }
+
+  private void monitoredGroupLoaded( final AutoScalingGroupMetricsView group, final long now ) {
+    final String groupKey = groupKey( group );
+    final MonitoredGroupState state = monitoredGroupStates.get( groupKey );
+    if ( state == null ) {
+      monitoredGroupStates.put( groupKey, new MonitoredGroupState( groupKey, group, now ) );
+    } else {
+      state.group = group;
+    }
+  }
+
+  /**
+   * The next deadline for the group, deadlines for groups are spread over the interval.
+   */
+  private static long nextDeadline( final String groupKey, final long now ) {
+    final long offset = ( groupKey.hashCode( ) & Integer.MAX_VALUE ) % GROUP_MONITORING_INTERVAL_MILLIS;
+    return now - ( ( now - offset ) % GROUP_MONITORING_INTERVAL_MILLIS ) + GROUP_MONITORING_INTERVAL_MILLIS;
+  }
+
+  /**
+   * List instances for the group, using in memory state if the group is unchanged.
+   *
+   * <p>Cached instances are discarded when any instance for the group is
+   * changed and are otherwise reloaded periodically.</p>
+   */
+  private List<AutoScalingInstanceCoreView> listGroupInstances( final AutoScalingGroupMetadata group ) throws AutoScalingMetadataException {
+    final String key = groupKey( group );
+    final long version = groupInstanceChanges.version( key );
+    final TimestampedValue<Pair<Long,List<AutoScalingInstanceCoreView>>> cached = groupInstances.get( key );
+    if ( cached != null && cached.getValue().getLeft() == version &&
+        cached.getTimestamp() > ( System.currentTimeMillis() - GROUP_REFRESH_MILLIS ) ) {
+      return cached.getValue().getRight();
+    }
+    // a change during the load updates the version so the loaded instances are not reused
+    final List<AutoScalingInstanceCoreView> instances = ImmutableList.copyOf( autoScalingInstances.listByGroup(
+        group,
+        Predicates.alwaysTrue(),
+        TypeMappers.lookup( AutoScalingInstance.class, AutoScalingInstanceCoreView.class ) ) );
+    groupInstances.put( key, new TimestampedValue<Pair<Long,List<AutoScalingInstanceCoreView>>>( Pair.pair( version, instances ) ) );
+    return instances;
+  }
+
+  static void groupChanged( final String groupKey ) {
+    groupChanges.changed( groupKey );
+  }
+
+  static void groupInstancesChanged( final String groupKey ) {
+    groupInstanceChanges.changed( groupKey );
+  }
+
+  private static String groupKey( final AutoScalingGroupMetadata group ) {
+    return groupKey(
+        group instanceof RestrictedType.AccountRestrictedType ?
+            ( (RestrictedType.AccountRestrictedType) group ).getOwnerAccountNumber() :
+            group.getOwner().getAccountNumber(),
+        group.getDisplayName() );
+  }
+
+  static String groupKey( final String accountNumber, final String groupName ) {
+    return accountNumber + ":" + groupName;
+  }
+
+  private static List<String> instanceIds( final List<AutoScalingInstanceCoreView> instances,
+                                           final LifecycleState lifecycleState ) {
+    final List<String> instanceIds = Lists.newArrayList();
+    for ( final AutoScalingInstanceCoreView instance : Iterables.filter( instances, lifecycleState.forView() ) ) {
+      instanceIds.add( instance.getInstanceId() );
+    }
+    return instanceIds;
+  }
+
   private <T> void expireValues( final ConcurrentMap<String,TimestampedValue<T>> map, long maxAge ) {
     for ( final Map.Entry<String,TimestampedValue<T>> entry : map.entrySet() ) {
       if ( entry.getValue().getTimestamp() < maxAge ) {
@@ -428,13 +589,20 @@ public class ActivityManager {
   /**
    * Periodically executed scaling work.
    */
-  private void submitMetrics() {
+  void submitMetrics() {
     try {
-      for ( final AutoScalingGroupMetricsView group : autoScalingGroups.listRequiringMonitoring( 10000L, TypeMappers.lookup( AutoScalingGroup.class, AutoScalingGroupMetricsView.class ) ) ) {
+      refreshMonitoredGroups( );
+      final long now = timestamp( );
+      for ( final MonitoredGroupState state : monitoredGroupStates.values() ) {
+        if ( now < state.metricsDeadline ) {
+          continue;
+        }
+        state.metricsDeadline = nextDeadline( state.getGroupKey(), now );
+        final AutoScalingGroupMetricsView group = state.getGroup();
         if ( !group.getEnabledMetrics().isEmpty() ) {
           final List<AutoScalingInstanceCoreView> groupInstances = Sets.intersection( group.getEnabledMetrics(), instanceMetrics ).isEmpty() ?
               Collections.<AutoScalingInstanceCoreView>emptyList() :
-              autoScalingInstances.listByGroup( group, Predicates.alwaysTrue(), TypeMappers.lookup( AutoScalingInstance.class, AutoScalingInstanceCoreView.class ) );
+              listGroupInstances( group );
           runTask( new MetricsSubmissionScalingProcessTask(
               group,
               groupInstances ) );
@@ -851,6 +1019,7 @@ public class ActivityManager {
     final RunInstancesType runInstances = TypeMappers.transform( launchConfiguration, RunInstancesType.class );
     runInstances.setAvailabilityZone( availabilityZone );
     runInstances.setClientToken( clientToken );
+    runInstances.setMinCount( 1 );
     runInstances.setMaxCount( attemptToLaunch );
     return runInstances;
   }
@@ -1128,6 +1297,10 @@ public class ActivityManager {
       return activity;
     }
 
+    List<ScalingActivity> getActivities() {
+      return Collections.singletonList( getActivity() );
+    }
+
     GVT getGroup() {
       return group;
     }
@@ -1197,7 +1370,14 @@ public class ActivityManager {
     void setActivityFinalStatus( @Nonnull  final ActivityStatusCode activityStatusCode,
                                  @Nullable final String message,
                                  @Nullable final String description ) {
-      updateActivity( new Callback<ScalingActivity>( ) {
+      setActivityFinalStatus( getActivity(), activityStatusCode, message, description );
+    }
+
+    void setActivityFinalStatus( @Nonnull  final ScalingActivity activity,
+                                 @Nonnull  final ActivityStatusCode activityStatusCode,
+                                 @Nullable final String message,
+                                 @Nullable final String description ) {
+      updateActivity( activity, new Callback<ScalingActivity>( ) {
         @Override
         public void fire( final ScalingActivity input ) {
           input.setStatusCode( activityStatusCode );
@@ -1210,7 +1390,11 @@ public class ActivityManager {
     }
 
     void updateActivity( @Nonnull  final Callback<ScalingActivity> callback ) {
-      final ScalingActivity activity = getActivity();
+      updateActivity( getActivity(), callback );
+    }
+
+    void updateActivity( @Nonnull  final ScalingActivity activity,
+                         @Nonnull  final Callback<ScalingActivity> callback ) {
       if ( activity.getCreationTimestamp() != null ) { // only update if persistent
         try {
           scalingActivities.update(
@@ -1347,7 +1531,7 @@ public class ActivityManager {
         activities.addAll( buildActivityTasks() );
         for ( final ScalingActivityTask<?,?> activity : activities ) {
           dispatchFutures.add( activity.dispatch( this ) );
-          scalingActivities.add( activity.getActivity() );
+          scalingActivities.addAll( activity.getActivities() );
         }
         this.activities.set( ImmutableList.copyOf( scalingActivities ) );
       } catch ( final Exception e ) {
@@ -1383,34 +1567,65 @@ public class ActivityManager {
     }
   }
 
-  private class LaunchInstanceScalingActivityTask extends ScalingActivityTask<AutoScalingGroupScalingView,RunInstancesResponseType> {
+  /**
+   * Launch instances in a zone with a single RunInstances request, there is
+   * an activity for each instance.
+   */
+  private class LaunchInstancesScalingActivityTask extends ScalingActivityTask<AutoScalingGroupScalingView,RunInstancesResponseType> {
     private final String availabilityZone;
     private final String clientToken;
+    private final List<ScalingActivity> activities;
     private final AtomicReference<List<String>> instanceIds = new AtomicReference<List<String>>(
         Collections.<String>emptyList()
     );
 
-    private LaunchInstanceScalingActivityTask( final AutoScalingGroupScalingView group,
-                                               final ScalingActivity activity,
-                                               final String availabilityZone,
-                                               final String clientToken ) {
-      super( group, activity );
+    private LaunchInstancesScalingActivityTask( final AutoScalingGroupScalingView group,
+                                                final List<ScalingActivity> activities,
+                                                final String availabilityZone,
+                                                final String clientToken ) {
+      super( group, activities.get( 0 ), false );
+      this.activities = ImmutableList.copyOf( activities );
       this.availabilityZone = availabilityZone;
       this.clientToken = clientToken;
     }
 
+    @Override
+    List<ScalingActivity> getActivities() {
+      return activities;
+    }
+
     @Override
     void dispatchInternal( final ActivityContext context,
                            final Callback.Checked<RunInstancesResponseType> callback ) {
-      setActivityStatus( ActivityStatusCode.InProgress, 50 );
+      for ( final ScalingActivity activity : activities ) {
+        activity.setStatusCode( ActivityStatusCode.InProgress );
+        activity.setProgress( 50 );
+      }
+      try {
+        scalingActivities.saveAll( activities );
+      } catch ( AutoScalingMetadataException e ) {
+        throw Exceptions.toUndeclared( e );
+      }
       final EucalyptusClient client = context.getEucalyptusClient();
-      client.dispatch( runInstances( getGroup(), availabilityZone, clientToken, 1 ), callback );
+      client.dispatch( runInstances( getGroup(), availabilityZone, clientToken, activities.size() ), callback );
+    }
+
+    @Override
+    void dispatchFailure( final ActivityContext context, final Throwable throwable ) {
+      Logs.extreme().error( "Activity error", throwable );
+      if ( logger.isDebugEnabled() ) {
+        logger.debug( "Activity error", throwable );
+      }
+      for ( final ScalingActivity activity : activities ) {
+        setActivityFinalStatus( activity, ActivityStatusCode.Failed, throwable.getMessage(), null );
+      }
     }
 
     @Override
     void dispatchSuccess( final ActivityContext context,
                           final RunInstancesResponseType response ) {
       final List<String> instanceIds = Lists.newArrayList();
+      final Iterator<ScalingActivity> activityIterator = activities.iterator();
       for ( final RunningInstancesItemType item : response.getRsvInfo().getInstancesSet() ) {
         instanceIds.add( item.getInstanceId() );
         final AutoScalingInstance instance = getGroup().createInstance(
@@ -1421,11 +1636,17 @@ public class ActivityManager {
         } catch ( AutoScalingMetadataException e ) {
           logger.error( e, e );
         }
+        if ( activityIterator.hasNext() ) {
+          setActivityFinalStatus( activityIterator.next(), ActivityStatusCode.Successful, null, String.format( "Launching a new EC2 instance: %1$s", item.getInstanceId() ) );
+        }
       }
 
-      this.instanceIds.set( ImmutableList.copyOf( instanceIds ) );
+      // fewer instances than requested were launched
+      while ( activityIterator.hasNext() ) {
+        setActivityFinalStatus( activityIterator.next(), ActivityStatusCode.Failed, "Insufficient capacity", null );
+      }
 
-      setActivityFinalStatus( ActivityStatusCode.Successful, null, String.format( "Launching a new EC2 instance: %1$s", Joiner.on(", ").join(instanceIds) ) );
+      this.instanceIds.set( ImmutableList.copyOf( instanceIds ) );
     }
 
     List<String> getInstanceIds() {
@@ -1433,7 +1654,7 @@ public class ActivityManager {
     }
   }
 
-  private class LaunchInstancesScalingProcessTask extends ScalingProcessTask<AutoScalingGroupScalingView,LaunchInstanceScalingActivityTask> {
+  private class LaunchInstancesScalingProcessTask extends ScalingProcessTask<AutoScalingGroupScalingView,LaunchInstancesScalingActivityTask> {
     private final int launchCount;
     private final String cause;
 
@@ -1451,7 +1672,7 @@ public class ActivityManager {
     }
 
     @Override
-    List<LaunchInstanceScalingActivityTask> buildActivityTasks() throws AutoScalingMetadataException {
+    List<LaunchInstancesScalingActivityTask> buildActivityTasks() throws AutoScalingMetadataException {
       if ( logger.isDebugEnabled() ) {
         logger.debug( "Launching " + launchCount + " instance(s) for group: " + getGroup().getArn() );
       }
@@ -1464,27 +1685,37 @@ public class ActivityManager {
       final Map<String,Integer> zoneCounts =
           buildAvailabilityZoneInstanceCounts( instances, zonesToUse );
       final int attemptToLaunch = Math.min( AutoScalingConfiguration.getMaxLaunchIncrement(), launchCount );
-      final List<LaunchInstanceScalingActivityTask> activities = Lists.newArrayList();
+      final Map<String,Integer> zoneLaunchCounts = Maps.newTreeMap();
       for ( int i=0; i<attemptToLaunch; i++ ) {
         final Map.Entry<String,Integer> entry = selectEntry( zoneCounts, Ordering.natural() );
         if ( entry != null ) {
           final String zone = entry.getKey();
-          final String clientToken = String.format( "%1$s_%2$s_1",
-              UUID.randomUUID().toString(),
-              Iterables.getFirst( Splitter.fixedLength( 24 ).split( zone ), "" ) );
           entry.setValue( entry.getValue() + 1 );
-          activities.add( new LaunchInstanceScalingActivityTask(
-              getGroup(),
-              newActivity("Launching a new EC2 instance", 30, clientToken, Lists.newArrayList( cause( cause ) ), ActivityStatusCode.PreInService),
-              zone,
-              clientToken ) );
+          zoneLaunchCounts.put( zone, Objects.firstNonNull( zoneLaunchCounts.get( zone ), 0 ) + 1 );
+        }
+      }
+      final List<LaunchInstancesScalingActivityTask> activities = Lists.newArrayList();
+      for ( final Map.Entry<String,Integer> zoneLaunchCount : zoneLaunchCounts.entrySet() ) {
+        final String zone = zoneLaunchCount.getKey();
+        final String clientToken = String.format( "%1$s_%2$s_%3$d",
+            UUID.randomUUID().toString(),
+            Iterables.getFirst( Splitter.fixedLength( 24 ).split( zone ), "" ),
+            zoneLaunchCount.getValue() );
+        final List<ScalingActivity> zoneActivities = Lists.newArrayList();
+        for ( int i=0; i<zoneLaunchCount.getValue(); i++ ) {
+          zoneActivities.add( newActivity("Launching a new EC2 instance", 30, clientToken, Lists.newArrayList( cause( cause ) ), ActivityStatusCode.PreInService) );
         }
+        activities.add( new LaunchInstancesScalingActivityTask(
+            getGroup(),
+            zoneActivities,
+            zone,
+            clientToken ) );
       }
       return activities;
     }
 
     @Override
-    void failure( final List<LaunchInstanceScalingActivityTask> tasks ) {
+    void failure( final List<LaunchInstancesScalingActivityTask> tasks ) {
       // Check to see if we should suspend activities for this group
       // - Group zones must not be unavailable
       // - Group must have been trying to launch instances for X period (unchanged)
@@ -1511,11 +1742,11 @@ public class ActivityManager {
     }
 
     @Override
-    void partialSuccess( final List<LaunchInstanceScalingActivityTask> tasks ) {
+    void partialSuccess( final List<LaunchInstancesScalingActivityTask> tasks ) {
       clearLaunchFailures( getGroup() );
 
       final List<String> instanceIds = Lists.newArrayList();
-      for ( final LaunchInstanceScalingActivityTask task : tasks ) {
+      for ( final LaunchInstancesScalingActivityTask task : tasks ) {
         instanceIds.addAll( task.getInstanceIds() );
       }
 
@@ -2037,6 +2268,7 @@ public class ActivityManager {
     private final AtomicReference<Multimap<String,String>> knownAutoScalingInstanceIds = new AtomicReference<Multimap<String,String>>(
         HashMultimap.<String,String>create()
     );
+    private volatile boolean complete;
 
     UntrackedInstanceTerminationScalingActivityTask( final AutoScalingGroupCoreView group,
                                                      final ScalingActivity activity ) {
@@ -2067,100 +2299,12 @@ public class ActivityManager {
         logger.trace( "Found auto scaling tags by group (account:"+getGroup().getOwnerAccountNumber()+"): " + instanceMap );
       }
       knownAutoScalingInstanceIds.set( Multimaps.unmodifiableMultimap( instanceMap ) );
+      complete = true;
       setActivityFinalStatus( ActivityStatusCode.Successful );
     }
-  }
-
-  private class UntrackedInstanceTerminationScalingProcessTask extends ScalingProcessTask<AutoScalingGroupCoreView, UntrackedInstanceTerminationScalingActivityTask> {
-    private volatile String groupName;
-    private volatile List<String> instanceIds;
 
-    UntrackedInstanceTerminationScalingProcessTask( final AutoScalingGroupCoreView group ) {
-      super( group.getOwnerAccountNumber(), group, "UntrackedInstanceTermination" );
-    }
-
-    @Override
-    ScalingProcessTask onSuccess() {
-      TerminateInstancesScalingProcessTask terminateTask = null;
-      if ( groupName != null ) {
-        AutoScalingGroupCoreView groupView = null;
-        if ( groupName.equals( getGroup().getAutoScalingGroupName() ) ) {
-          groupView = getGroup();
-        } else try {
-          groupView = autoScalingGroups.lookup( getGroup().getOwner(), groupName, TypeMappers.lookup( AutoScalingGroup.class, AutoScalingGroupCoreView.class ) );
-        } catch ( AutoScalingMetadataNotFoundException e ) {
-          // Expected if the group was deleted
-          final AutoScalingGroup group = AutoScalingGroup.named( getGroup().getOwner(), groupName );
-          group.setCapacity( 0 );
-          groupView = TypeMappers.transform( group, AutoScalingGroupCoreView.class );
-        } catch ( Exception e ) {
-          logger.error( e, e );
-        }
-        if ( groupView != null ) {
-          logger.info( "Terminating untracked auto scaling instances: " + instanceIds );
-          terminateTask = new TerminateInstancesScalingProcessTask( groupView, groupView.getCapacity(), instanceIds, Collections.<ActivityCause>emptyList(), false, false ){
-            @Override
-            void partialSuccess( final List<TerminateInstanceScalingActivityTask> tasks ) {
-              // no update required, we were not tracking the instance(s)
-            }
-          };
-        }
-      }
-      return terminateTask;
-    }
-
-    @Override
-    boolean shouldRun() {
-      return true;
-    }
-
-    @Override
-    List<UntrackedInstanceTerminationScalingActivityTask> buildActivityTasks() throws AutoScalingMetadataException {
-      return Collections.singletonList( new UntrackedInstanceTerminationScalingActivityTask( getGroup(), newActivity() ) );
-    }
-
-    @Override
-    void partialSuccess( final List<UntrackedInstanceTerminationScalingActivityTask> tasks ) {
-      final Multimap<String,String> groupNameToInstances = HashMultimap.create();
-      final Set<String> taggedInstanceIds = Sets.newHashSet();
-      for ( final UntrackedInstanceTerminationScalingActivityTask task : tasks ) {
-        groupNameToInstances.putAll( task.knownAutoScalingInstanceIds.get() );
-        taggedInstanceIds.addAll( task.knownAutoScalingInstanceIds.get().values() );
-      }
-
-      try {
-        final Set<String> knownInstanceIds =
-            autoScalingInstances.verifyInstanceIds( getGroup().getOwnerAccountNumber(), taggedInstanceIds );
-        groupNameToInstances.values().removeAll( knownInstanceIds );
-        clearUntrackedInstances( knownInstanceIds );
-
-        final Map<String,Collection<String>> groupMap = groupNameToInstances.asMap();
-        final Set<String> toRemove = Sets.newHashSet( );
-        for ( final Map.Entry<String,Collection<String>> entry : groupMap.entrySet() ) {
-          if ( Iterables.all( entry.getValue(), Predicates.not( shouldTerminateUntrackedInstance() ) ) ) {
-            toRemove.add( entry.getKey() );
-          }
-        }
-        groupMap.keySet( ).removeAll( toRemove );
-
-        int entryIndex = -1;
-        if ( groupMap.size() == 1 ) {
-          entryIndex = 0;
-        } else if ( !groupMap.isEmpty() ) {
-          final Random random = new Random();
-          entryIndex = random.nextInt( groupMap.size() );
-        }
-
-        if ( entryIndex >= 0 ) {
-          final Map.Entry<String,Collection<String>> entry =
-              Iterables.get( groupMap.entrySet(), entryIndex );
-          this.groupName = entry.getKey();
-          this.instanceIds = Lists.newArrayList( entry.getValue() );
-          clearUntrackedInstances( this.instanceIds );
-        }
-      } catch ( Exception e ) {
-        logger.error( e, e );
-      }
+    boolean isComplete() {
+      return complete;
     }
   }
 
@@ -2172,6 +2316,7 @@ public class ActivityManager {
     private final AtomicReference<List<String>> knownInstanceIds = new AtomicReference<List<String>>(
         Collections.<String>emptyList()
     );
+    private volatile boolean complete;
 
     private MonitoringScalingActivityTask( final AutoScalingGroupCoreView group,
                                            final ScalingActivity activity,
@@ -2207,10 +2352,15 @@ public class ActivityManager {
 
       this.knownInstanceIds.set( ImmutableList.copyOf( knownInstanceIds ) );
       this.healthyInstanceIds.set( ImmutableList.copyOf( healthyInstanceIds ) );
+      this.complete = true;
 
       setActivityFinalStatus( ActivityStatusCode.Successful );
     }
 
+    boolean isComplete() {
+      return complete;
+    }
+
     List<String> getKnownInstanceIds() {
       return knownInstanceIds.get();
     }
@@ -2220,100 +2370,184 @@ public class ActivityManager {
     }
   }
 
-  private class MonitoringScalingProcessTask extends ScalingProcessTask<AutoScalingGroupCoreView,MonitoringScalingActivityTask> {
+  /**
+   * Pending and in service instances for a group that are to be checked.
+   */
+  private static final class MonitoredGroup {
+    private final AutoScalingGroupCoreView group;
     private final List<String> pendingInstanceIds;
     private final List<String> expectedRunningInstanceIds;
 
-    MonitoringScalingProcessTask( final AutoScalingGroupCoreView group,
-                                  final List<String> pendingInstanceIds,
-                                  final List<String> expectedRunningInstanceIds ) {
-      super( group, "Monitor" );
+    private MonitoredGroup( final AutoScalingGroupCoreView group,
+                            final List<String> pendingInstanceIds,
+                            final List<String> expectedRunningInstanceIds ) {
+      this.group = group;
       this.pendingInstanceIds = pendingInstanceIds;
-      this.expectedRunningInstanceIds = scalingProcessEnabled( ScalingProcessType.HealthCheck, group ) ?
-          expectedRunningInstanceIds :
-          Collections.<String>emptyList();
+      this.expectedRunningInstanceIds = expectedRunningInstanceIds;
     }
+  }
 
-    @Override
-    boolean shouldRun() {
-      return !expectedRunningInstanceIds.isEmpty() || !pendingInstanceIds.isEmpty();
+  /**
+   * Monitoring for all groups in an account.
+   *
+   * <p>A single instance status request checks the instances for all groups
+   * and the instance tags are used to find any untracked instances.</p>
+   */
+  private class MonitoringScalingProcessTask extends ScalingProcessTask<AutoScalingGroupCoreView,ScalingActivityTask<AutoScalingGroupCoreView,?>> {
+    private final List<MonitoredGroup> groups;
+    private final List<String> instanceIds;
+    private volatile boolean monitored;
+    private volatile String untrackedGroupName;
+    private volatile List<String> untrackedInstanceIds;
+
+    MonitoringScalingProcessTask( final AutoScalingGroupCoreView group,
+                                  final List<MonitoredGroup> groups ) {
+      super( group.getOwnerAccountNumber(), group, "Monitor" );
+      this.groups = ImmutableList.copyOf( groups );
+      final List<String> instanceIds = Lists.newArrayList();
+      for ( final MonitoredGroup monitoredGroup : groups ) {
+        instanceIds.addAll( monitoredGroup.pendingInstanceIds );
+        instanceIds.addAll( monitoredGroup.expectedRunningInstanceIds );
+      }
+      this.instanceIds = ImmutableList.copyOf( instanceIds );
     }
 
     @Override
     ScalingProcessTask onSuccess() {
-      return getGroup().getLoadBalancerNames().isEmpty() || HealthCheckType.ELB != getGroup().getHealthCheckType() ?
-          null :
-          new ElbMonitoringScalingProcessTask(
-              getGroup(),
-              getGroup().getLoadBalancerNames(),
-              expectedRunningInstanceIds );
+      if ( monitored ) {
+        for ( final MonitoredGroup monitoredGroup : groups ) {
+          final AutoScalingGroupCoreView group = monitoredGroup.group;
+          if ( !group.getLoadBalancerNames().isEmpty() && HealthCheckType.ELB == group.getHealthCheckType() ) {
+            ActivityManager.this.runTask( new ElbMonitoringScalingProcessTask(
+                group,
+                group.getLoadBalancerNames(),
+                monitoredGroup.expectedRunningInstanceIds ) );
+          }
+        }
+      }
+
+      TerminateInstancesScalingProcessTask terminateTask = null;
+      if ( untrackedGroupName != null ) {
+        AutoScalingGroupCoreView groupView = null;
+        if ( untrackedGroupName.equals( getGroup().getAutoScalingGroupName() ) ) {
+          groupView = getGroup();
+        } else try {
+          groupView = autoScalingGroups.lookup( getGroup().getOwner(), untrackedGroupName, TypeMappers.lookup( AutoScalingGroup.class, AutoScalingGroupCoreView.class ) );
+        } catch ( AutoScalingMetadataNotFoundException e ) {
+          // Expected if the group was deleted
+          final AutoScalingGroup group = AutoScalingGroup.named( getGroup().getOwner(), untrackedGroupName );
+          group.setCapacity( 0 );
+          groupView = TypeMappers.transform( group, AutoScalingGroupCoreView.class );
+        } catch ( Exception e ) {
+          logger.error( e, e );
+        }
+        if ( groupView != null ) {
+          logger.info( "Terminating untracked auto scaling instances: " + untrackedInstanceIds );
+          terminateTask = new TerminateInstancesScalingProcessTask( groupView, groupView.getCapacity(), untrackedInstanceIds, Collections.<ActivityCause>emptyList(), false, false ){
+            @Override
+            void partialSuccess( final List<TerminateInstanceScalingActivityTask> tasks ) {
+              // no update required, we were not tracking the instance(s)
+            }
+          };
+        }
+      }
+      return terminateTask;
     }
 
     @Override
-    List<MonitoringScalingActivityTask> buildActivityTasks() throws AutoScalingMetadataException {
-      if ( logger.isDebugEnabled() ) {
-        logger.debug( "Performing EC2 health check for group: " + getGroup().getArn() );
-      }
-      if ( logger.isTraceEnabled() ) {
-        logger.trace( "Expected pending instances: " + pendingInstanceIds );
-        logger.trace( "Expected running instances: " + expectedRunningInstanceIds );
-      }
-      final List<String> instanceIds = Lists.newArrayList( Iterables.concat(
-          pendingInstanceIds,
-          expectedRunningInstanceIds
-      ) );
-      return Collections.singletonList( new MonitoringScalingActivityTask( getGroup(), newActivity(), instanceIds ) );
+    boolean shouldRun() {
+      return true;
     }
 
     @Override
-    void partialSuccess( final List<MonitoringScalingActivityTask> tasks ) {
-      final Set<String> transitionToInService = Sets.newHashSet( pendingInstanceIds );
-      final Set<String> transitionToUnhealthy = Sets.newHashSet( pendingInstanceIds );
-      final Set<String> transitionToUnhealthyIfExpired = Sets.newHashSet( pendingInstanceIds );
-      final Set<String> healthyInstanceIds = Sets.newHashSet();
-      final Set<String> knownInstanceIds = Sets.newHashSet();
+    List<ScalingActivityTask<AutoScalingGroupCoreView,?>> buildActivityTasks() throws AutoScalingMetadataException {
+      final List<ScalingActivityTask<AutoScalingGroupCoreView,?>> activities = Lists.newArrayList();
+      if ( !instanceIds.isEmpty() ) {
+        if ( logger.isDebugEnabled() ) {
+          logger.debug( "Performing EC2 health check for groups in account: " + getGroup().getOwnerAccountNumber() );
+        }
+        if ( logger.isTraceEnabled() ) {
+          logger.trace( "Expected instances: " + instanceIds );
+        }
+        activities.add( new MonitoringScalingActivityTask( getGroup(), newActivity(), instanceIds ) );
+      }
+      activities.add( new UntrackedInstanceTerminationScalingActivityTask( getGroup(), newActivity() ) );
+      return activities;
+    }
 
-      for ( final MonitoringScalingActivityTask task : tasks ) {
-        knownInstanceIds.addAll( task.getKnownInstanceIds( ) );
-        healthyInstanceIds.addAll( task.getHealthyInstanceIds( ) );
+    @Override
+    void partialSuccess( final List<ScalingActivityTask<AutoScalingGroupCoreView,?>> tasks ) {
+      for ( final ScalingActivityTask<AutoScalingGroupCoreView,?> task : tasks ) {
+        if ( task instanceof MonitoringScalingActivityTask && ((MonitoringScalingActivityTask) task).isComplete() ) {
+          updateInstances( (MonitoringScalingActivityTask) task );
+          monitored = true;
+        }
       }
+      for ( final ScalingActivityTask<AutoScalingGroupCoreView,?> task : tasks ) {
+        if ( task instanceof UntrackedInstanceTerminationScalingActivityTask &&
+            ((UntrackedInstanceTerminationScalingActivityTask) task).isComplete() ) {
+          findUntrackedInstances( (UntrackedInstanceTerminationScalingActivityTask) task );
+        }
+      }
+    }
 
+    private void updateInstances( final MonitoringScalingActivityTask task ) {
       if ( logger.isTraceEnabled() ) {
-        logger.trace( "EC2 health check known instances: " + knownInstanceIds );
-        logger.trace( "EC2 health check healthy instances: " + healthyInstanceIds );
+        logger.trace( "EC2 health check known instances: " + task.getKnownInstanceIds() );
+        logger.trace( "EC2 health check healthy instances: " + task.getHealthyInstanceIds() );
       }
 
-      transitionToInService.retainAll( healthyInstanceIds );
-      transitionToUnhealthy.removeAll( knownInstanceIds );
-      transitionToUnhealthyIfExpired.removeAll( healthyInstanceIds );
-
-      if ( scalingProcessEnabled( ScalingProcessType.HealthCheck, getGroup() ) ) try {
-        autoScalingInstances.markMissingInstancesUnhealthy( getGroup(), healthyInstanceIds );
+      try {
+        autoScalingInstances.reconcileInstanceStatus(
+            getGroup().getOwnerAccountNumber(),
+            instanceIds,
+            task.getKnownInstanceIds(),
+            task.getHealthyInstanceIds(),
+            timestamp() - AutoScalingConfiguration.getPendingInstanceTimeoutMillis() );
       } catch ( AutoScalingMetadataException e ) {
         logger.error( e, e );
       }
+    }
+
+    private void findUntrackedInstances( final UntrackedInstanceTerminationScalingActivityTask task ) {
+      final Multimap<String,String> groupNameToInstances = HashMultimap.create( task.knownAutoScalingInstanceIds.get() );
+      final Set<String> taggedInstanceIds = Sets.newHashSet( groupNameToInstances.values() );
 
       try {
-        autoScalingInstances.markExpiredPendingUnhealthy(
-            getGroup(),
-            transitionToUnhealthy,
-            timestamp() );
+        // instances checked for this account are tracked, verify any others
+        final Set<String> knownInstanceIds = Sets.newHashSet( instanceIds );
+        knownInstanceIds.retainAll( taggedInstanceIds );
+        taggedInstanceIds.removeAll( knownInstanceIds );
+        knownInstanceIds.addAll(
+            autoScalingInstances.verifyInstanceIds( getGroup().getOwnerAccountNumber(), taggedInstanceIds ) );
+        groupNameToInstances.values().removeAll( knownInstanceIds );
+        clearUntrackedInstances( knownInstanceIds );
 
-        autoScalingInstances.markExpiredPendingUnhealthy(
-            getGroup(),
-            transitionToUnhealthyIfExpired,
-            timestamp() - AutoScalingConfiguration.getPendingInstanceTimeoutMillis() );
-      } catch ( AutoScalingMetadataException e ) {
-        logger.error( e, e );
-      }
+        final Map<String,Collection<String>> groupMap = groupNameToInstances.asMap();
+        final Set<String> toRemove = Sets.newHashSet( );
+        for ( final Map.Entry<String,Collection<String>> entry : groupMap.entrySet() ) {
+          if ( Iterables.all( entry.getValue(), Predicates.not( shouldTerminateUntrackedInstance() ) ) ) {
+            toRemove.add( entry.getKey() );
+          }
+        }
+        groupMap.keySet( ).removeAll( toRemove );
 
-      if ( !transitionToInService.isEmpty() ) try {
-        autoScalingInstances.transitionState(
-            getGroup(),
-            LifecycleState.Pending,
-            LifecycleState.InService,
-            transitionToInService );
-      } catch ( AutoScalingMetadataException e ) {
+        int entryIndex = -1;
+        if ( groupMap.size() == 1 ) {
+          entryIndex = 0;
+        } else if ( !groupMap.isEmpty() ) {
+          final Random random = new Random();
+          entryIndex = random.nextInt( groupMap.size() );
+        }
+
+        if ( entryIndex >= 0 ) {
+          final Map.Entry<String,Collection<String>> entry =
+              Iterables.get( groupMap.entrySet(), entryIndex );
+          this.untrackedGroupName = entry.getKey();
+          this.untrackedInstanceIds = Lists.newArrayList( entry.getValue() );
+          clearUntrackedInstances( this.untrackedInstanceIds );
+        }
+      } catch ( Exception e ) {
         logger.error( e, e );
       }
     }
@@ -2942,6 +3176,253 @@ public class ActivityManager {
     abstract void doWork( ) throws Exception;
   }
 
+  /**
+   * AutoScalingInstances that tracks changes to group instances.
+   */
+  private final class ChangeTrackingAutoScalingInstances extends AutoScalingInstances {
+    private final AutoScalingInstances delegate;
+
+    private ChangeTrackingAutoScalingInstances( final AutoScalingInstances delegate ) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public <T> List<T> list( final OwnerFullName ownerFullName,
+                             final Predicate<? super AutoScalingInstance> filter,
+                             final Function<? super AutoScalingInstance, T> transform ) throws AutoScalingMetadataException {
+      return delegate.list( ownerFullName, filter, transform );
+    }
+
+    @Override
+    public <T> List<T> listByGroup( final OwnerFullName ownerFullName,
+                                    final String groupName,
+                                    final Function<? super AutoScalingInstance, T> transform ) throws AutoScalingMetadataException {
+      return delegate.listByGroup( ownerFullName, groupName, transform );
+    }
+
+    @Override
+    public <T> List<T> listByGroup( final AutoScalingGroupMetadata group,
+                                    final Predicate<? super AutoScalingInstance> filter,
+                                    final Function<? super AutoScalingInstance, T> transform ) throws AutoScalingMetadataException {
+      return delegate.listByGroup( group, filter, transform );
+    }
+
+    @Override
+    public <T> List<T> listByState( final LifecycleState lifecycleState,
+                                    final ConfigurationState configurationState,
+                                    final Function<? super AutoScalingInstance, T> transform ) throws AutoScalingMetadataException {
+      return delegate.listByState( lifecycleState, configurationState, transform );
+    }
+
+    @Override
+    public <T> List<T> listUnhealthyByGroup( final AutoScalingGroupMetadata group,
+                                             final Function<? super AutoScalingInstance, T> transform ) throws AutoScalingMetadataException {
+      return delegate.listUnhealthyByGroup( group, transform );
+    }
+
+    @Override
+    public <T> T lookup( final OwnerFullName ownerFullName,
+                         final String instanceId,
+                         final Function<? super AutoScalingInstance, T> transform ) throws AutoScalingMetadataException {
+      return delegate.lookup( ownerFullName, instanceId, transform );
+    }
+
+    @Override
+    public void update( final OwnerFullName ownerFullName,
+                        final String instanceId,
+                        final Callback<AutoScalingInstance> instanceUpdateCallback ) throws AutoScalingMetadataException {
+      final AtomicReference<String> groupKey = new AtomicReference<>( );
+      try {
+        delegate.update( ownerFullName, instanceId, new Callback<AutoScalingInstance>( ) {
+          @Override
+          public void fire( final AutoScalingInstance instance ) {
+            groupKey.set( groupKey( instance.getOwnerAccountNumber( ), instance.getAutoScalingGroupName( ) ) );
+            instanceUpdateCallback.fire( instance );
+          }
+        } );
+      } finally {
+        if ( groupKey.get( ) != null ) {
+          groupInstancesChanged( groupKey.get( ) );
+        }
+      }
+    }
+
+    @Override
+    public void markMissingInstancesUnhealthy( final AutoScalingGroupMetadata group,
+                                               final Collection<String> instanceIds ) throws AutoScalingMetadataException {
+      try {
+        delegate.markMissingInstancesUnhealthy( group, instanceIds );
+      } finally {
+        groupInstancesChanged( groupKey( group ) );
+      }
+    }
+
+    @Override
+    public void markExpiredPendingUnhealthy( final AutoScalingGroupMetadata group,
+                                             final Collection<String> instanceIds,
+                                             final long maxAge ) throws AutoScalingMetadataException {
+      try {
+        delegate.markExpiredPendingUnhealthy( group, instanceIds, maxAge );
+      } finally {
+        groupInstancesChanged( groupKey( group ) );
+      }
+    }
+
+    @Override
+    public Set<String> reconcileInstanceStatus( final String accountNumber,
+                                                final Collection<String> checkedInstanceIds,
+                                                final Collection<String> knownInstanceIds,
+                                                final Collection<String> healthyInstanceIds,
+                                                final long pendingMaxAge ) throws AutoScalingMetadataException {
+      final Set<String> updatedGroupNames =
+          delegate.reconcileInstanceStatus( accountNumber, checkedInstanceIds, knownInstanceIds, healthyInstanceIds, pendingMaxAge );
+      for ( final String groupName : updatedGroupNames ) {
+        groupInstancesChanged( groupKey( accountNumber, groupName ) );
+      }
+      return updatedGroupNames;
+    }
+
+    @Override
+    public Set<String> verifyInstanceIds( final String accountNumber,
+                                          final Collection<String> instanceIds ) throws AutoScalingMetadataException {
+      return delegate.verifyInstanceIds( accountNumber, instanceIds );
+    }
+
+    @Override
+    public void transitionState( final AutoScalingGroupMetadata group,
+                                 final LifecycleState from,
+                                 final LifecycleState to,
+                                 final Collection<String> instanceIds ) throws AutoScalingMetadataException {
+      try {
+        delegate.transitionState( group, from, to, instanceIds );
+      } finally {
+        groupInstancesChanged( groupKey( group ) );
+      }
+    }
+
+    @Override
+    public void transitionConfigurationState( final AutoScalingGroupMetadata group,
+                                              final ConfigurationState from,
+                                              final ConfigurationState to,
+                                              final Collection<String> instanceIds ) throws AutoScalingMetadataException {
+      try {
+        delegate.transitionConfigurationState( group, from, to, instanceIds );
+      } finally {
+        groupInstancesChanged( groupKey( group ) );
+      }
+    }
+
+    @Override
+    public int registrationFailure( final AutoScalingGroupMetadata group,
+                                    final Collection<String> instanceIds ) throws AutoScalingMetadataException {
+      try {
+        return delegate.registrationFailure( group, instanceIds );
+      } finally {
+        groupInstancesChanged( groupKey( group ) );
+      }
+    }
+
+    @Override
+    public boolean delete( final AutoScalingInstanceMetadata autoScalingInstance ) throws AutoScalingMetadataException {
+      try {
+        return delegate.delete( autoScalingInstance );
+      } finally {
+        if ( autoScalingInstance instanceof AutoScalingInstance ) {
+          final AutoScalingInstance instance = (AutoScalingInstance) autoScalingInstance;
+          groupInstancesChanged( groupKey( instance.getOwnerAccountNumber(), instance.getAutoScalingGroupName() ) );
+        }
+      }
+    }
+
+    @Override
+    public boolean deleteByGroup( final AutoScalingGroupMetadata group ) throws AutoScalingMetadataException {
+      try {
+        return delegate.deleteByGroup( group );
+      } finally {
+        groupInstancesChanged( groupKey( group ) );
+      }
+    }
+
+    @Override
+    public AutoScalingInstance save( final AutoScalingInstance autoScalingInstance ) throws AutoScalingMetadataException {
+      try {
+        return delegate.save( autoScalingInstance );
+      } finally {
+        groupInstancesChanged( groupKey( autoScalingInstance.getOwnerAccountNumber(), autoScalingInstance.getAutoScalingGroupName() ) );
+      }
+    }
+  }
+
+  /**
+   * Change versions for auto scaling groups by group key.
+   */
+  static final class GroupChanges {
+    private final AtomicLong version = new AtomicLong( );
+    private final ConcurrentMap<String,Long> groupVersions = Maps.newConcurrentMap( );
+
+    void changed( final String groupKey ) {
+      groupVersions.put( groupKey, version.incrementAndGet( ) );
+    }
+
+    long version( ) {
+      return version.get( );
+    }
+
+    long version( final String groupKey ) {
+      final Long groupVersion = groupVersions.get( groupKey );
+      return groupVersion == null ? 0 : groupVersion;
+    }
+
+    /**
+     * Discard versions for other groups that have not changed since the given version.
+     */
+    void retain( final Set<String> groupKeys, final long atVersion ) {
+      for ( final Map.Entry<String,Long> entry : groupVersions.entrySet( ) ) {
+        if ( entry.getValue( ) <= atVersion && !groupKeys.contains( entry.getKey( ) ) ) {
+          groupVersions.remove( entry.getKey( ), entry.getValue( ) );
+        }
+      }
+    }
+
+    List<String> changedSince( final long sinceVersion ) {
+      final List<String> groupKeys = Lists.newArrayList( );
+      for ( final Map.Entry<String,Long> entry : groupVersions.entrySet( ) ) {
+        if ( entry.getValue( ) > sinceVersion ) {
+          groupKeys.add( entry.getKey( ) );
+        }
+      }
+      return groupKeys;
+    }
+  }
+
+  /**
+   * In memory monitoring state for a group.
+   */
+  private static final class MonitoredGroupState {
+    private final String groupKey;
+    private volatile AutoScalingGroupMetricsView group;
+    private volatile long monitoringDeadline;
+    private volatile long monitoredInstancesVersion = -1;
+    private volatile long metricsDeadline;
+
+    private MonitoredGroupState( final String groupKey,
+                                 final AutoScalingGroupMetricsView group,
+                                 final long now ) {
+      this.groupKey = groupKey;
+      this.group = group;
+      this.monitoringDeadline = now;
+      this.metricsDeadline = now;
+    }
+
+    public String getGroupKey() {
+      return groupKey;
+    }
+
+    public AutoScalingGroupMetricsView getGroup() {
+      return group;
+    }
+  }
+
   private static class TimestampedValue<T> {
     private final T value;
     private final long timestamp;
@@ -128,6 +128,11 @@ public class PersistenceScalingActivities extends ScalingActivities {
     return persistenceSupport.save( scalingActivity );
   }
 
+  @Override
+  public List<ScalingActivity> saveAll( final List<ScalingActivity> scalingActivities ) throws AutoScalingMetadataException {
+    return persistenceSupport.saveAll( scalingActivities );
+  }
+
   private static class PersistenceSupport extends AbstractOwnedPersistents<ScalingActivity> {
     private PersistenceSupport() {
       super( "scaling activity" );
@@ -34,6 +34,7 @@ import com.eucalyptus.util.Strings;
 import com.eucalyptus.util.TypeMapper;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
 
 /**
  *
@@ -75,6 +76,19 @@ public abstract class ScalingActivities {
 
   public abstract ScalingActivity save( ScalingActivity scalingActivity ) throws AutoScalingMetadataException;
 
+  /**
+   * Save the given scaling activities.
+   *
+   * <p>Implementations should override to save in a single transaction.</p>
+   */
+  public List<ScalingActivity> saveAll( final List<ScalingActivity> scalingActivities ) throws AutoScalingMetadataException {
+    final List<ScalingActivity> saved = Lists.newArrayListWithCapacity( scalingActivities.size( ) );
+    for ( final ScalingActivity scalingActivity : scalingActivities ) {
+      saved.add( save( scalingActivity ) );
+    }
+    return saved;
+  }
+
   public static Function<ScalingActivity,AutoScalingGroup> group() {
     return ScalingActivityToGroup.INSTANCE;
   }
@@ -25,11 +25,12 @@ import com.eucalyptus.autoscaling.activities.ActivityCause;
 import com.eucalyptus.autoscaling.activities.ScalingActivity;
 import com.eucalyptus.autoscaling.instances.AutoScalingInstance;
 import com.eucalyptus.util.OwnerFullName;
+import com.eucalyptus.util.RestrictedType;
 
 /**
  * Immutable minimum view of an auto scaling group.
  */
-public class AutoScalingGroupMinimumView implements AutoScalingGroupMetadata {
+public class AutoScalingGroupMinimumView implements AutoScalingGroupMetadata, RestrictedType.AccountRestrictedType {
 
   protected final AutoScalingGroup group;
 
@@ -67,8 +67,7 @@ public abstract class AutoScalingGroups {
 
   public abstract <T> List<T> listRequiringInstanceReplacement( Function<? super AutoScalingGroup,T> transform ) throws AutoScalingMetadataException;
 
-  public abstract <T> List<T> listRequiringMonitoring( long interval,
-                                                       Function<? super AutoScalingGroup,T> transform ) throws AutoScalingMetadataException;
+  public abstract <T> List<T> listRequiringMonitoring( Function<? super AutoScalingGroup,T> transform ) throws AutoScalingMetadataException;
   
   public abstract <T> T lookup( OwnerFullName ownerFullName,
                                 String autoScalingGroupName,
@@ -20,16 +20,13 @@
 package com.eucalyptus.autoscaling.groups;
 
 import static com.eucalyptus.autoscaling.common.AutoScalingMetadata.AutoScalingGroupMetadata;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Example;
-import org.hibernate.criterion.Junction;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Property;
-import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.autoscaling.common.AutoScalingResourceName;
 import com.eucalyptus.autoscaling.instances.AutoScalingInstance;
 import com.eucalyptus.autoscaling.instances.HealthStatus;
@@ -42,7 +39,6 @@ import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 /**
@@ -79,54 +75,8 @@ public class PersistenceAutoScalingGroups extends AutoScalingGroups {
   }
 
   @Override
-  public <T> List<T> listRequiringMonitoring( final long interval,
-                                              final Function<? super AutoScalingGroup,T> transform ) throws AutoScalingMetadataException {
-    // We want to select some groups depending on the interval / time 
-    int group = (int)((System.currentTimeMillis() / interval) % 6 );
-
-    final Collection<String> suffixes = Lists.newArrayList();
-    switch ( group ) {
-      case 0:
-        suffixes.add( "0" );
-        suffixes.add( "1" );
-        suffixes.add( "2" );
-        break;
-      case 1:
-        suffixes.add( "3" );
-        suffixes.add( "4" );
-        suffixes.add( "5" );
-        break;
-      case 2:
-        suffixes.add( "6" );
-        suffixes.add( "7" );
-        suffixes.add( "8" );
-        break;
-      case 3:
-        suffixes.add( "9" );
-        suffixes.add( "a" );
-        suffixes.add( "b" );
-        break;
-      case 4:
-        suffixes.add( "c" );
-        suffixes.add( "d" );
-        break;
-      default:
-        suffixes.add( "e" );
-        suffixes.add( "f" );
-        break;
-    }
-    
-    final Junction likeAnyOf = Restrictions.disjunction();
-    for ( final String suffix : suffixes ) {
-      likeAnyOf.add( Restrictions.ilike( "id", "%" + suffix ) );  
-    }
-    
-    return persistenceSupport.listByExample(
-        AutoScalingGroup.withOwner( null ),
-        Predicates.alwaysTrue(),
-        likeAnyOf,
-        Collections.<String,String>emptyMap(),
-        transform );
+  public <T> List<T> listRequiringMonitoring( final Function<? super AutoScalingGroup,T> transform ) throws AutoScalingMetadataException {
+    return persistenceSupport.listByExample( AutoScalingGroup.withOwner( null ), Predicates.alwaysTrue(), transform );
   }
 
   @Override
@@ -70,6 +70,22 @@ public abstract class AutoScalingInstances {
 
   public abstract void markExpiredPendingUnhealthy( AutoScalingGroupMetadata group, Collection<String> instanceIds, long maxAge ) throws AutoScalingMetadataException;
 
+  /**
+   * Update health and lifecycle state for checked instances in an account.
+   *
+   * @param accountNumber The account for the instances
+   * @param checkedInstanceIds The pending or in service instances that were checked
+   * @param knownInstanceIds The checked instances that were found
+   * @param healthyInstanceIds The checked instances that are running and healthy
+   * @param pendingMaxAge Creation timestamp before which unhealthy pending instances expire
+   * @return The names of groups with updated instances
+   */
+  public abstract Set<String> reconcileInstanceStatus( String accountNumber,
+                                                       Collection<String> checkedInstanceIds,
+                                                       Collection<String> knownInstanceIds,
+                                                       Collection<String> healthyInstanceIds,
+                                                       long pendingMaxAge ) throws AutoScalingMetadataException;
+
   public abstract Set<String> verifyInstanceIds( String accountNumber, Collection<String> instanceIds ) throws AutoScalingMetadataException;
 
   public abstract void transitionState( AutoScalingGroupMetadata group, LifecycleState from, LifecycleState to, Collection<String> instanceIds ) throws AutoScalingMetadataException;
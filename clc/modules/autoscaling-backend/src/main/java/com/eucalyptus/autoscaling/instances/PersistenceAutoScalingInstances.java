@@ -193,6 +193,53 @@ public class PersistenceAutoScalingInstances extends AutoScalingInstances {
     }
   }
 
+  @Override
+  public Set<String> reconcileInstanceStatus( final String accountNumber,
+                                              final Collection<String> checkedInstanceIds,
+                                              final Collection<String> knownInstanceIds,
+                                              final Collection<String> healthyInstanceIds,
+                                              final long pendingMaxAge ) throws AutoScalingMetadataException {
+    final Set<String> updatedGroupNames = Sets.newHashSet();
+    if ( !checkedInstanceIds.isEmpty() ) {
+      final AutoScalingInstance example = AutoScalingInstance.withOwner( accountNumber );
+      final Set<String> known = Sets.newHashSet( knownInstanceIds );
+      final Set<String> healthy = Sets.newHashSet( healthyInstanceIds );
+      final Predicate<AutoScalingInstance> toInService = LifecycleState.Pending.transitionTo( LifecycleState.InService );
+      updateInstances( example, Predicates.or( LifecycleState.Pending, LifecycleState.InService ), new Predicate<AutoScalingInstance>() {
+        @Override
+        public boolean apply( final AutoScalingInstance instance ) {
+          final String instanceId = instance.getInstanceId();
+          final boolean isHealthy = HealthStatus.Healthy == instance.getHealthStatus();
+          boolean updated = false;
+          if ( healthy.contains( instanceId ) ) {
+            updated = toInService.apply( instance );
+          } else if ( isHealthy && LifecycleState.Pending.apply( instance ) ) {
+            if ( !known.contains( instanceId ) || instance.getCreationTimestamp().getTime() < pendingMaxAge ) {
+              logger.info( "Marking pending instance unhealthy: " + instanceId );
+              instance.setHealthStatus( HealthStatus.Unhealthy );
+              updated = true;
+            } else {
+              logger.debug( "Not marking pending instance unhealthy (within timeout): " + instanceId );
+            }
+          } else if ( isHealthy && LifecycleState.InService.apply( instance ) ) {
+            if ( instance.healthStatusGracePeriodExpired() ) {
+              logger.info( "Marking instance unhealthy: " + instanceId );
+              instance.setHealthStatus( HealthStatus.Unhealthy );
+              updated = true;
+            } else {
+              logger.debug( "Instance not healthy but within grace period: " + instanceId );
+            }
+          }
+          if ( updated ) {
+            updatedGroupNames.add( instance.getAutoScalingGroupName() );
+          }
+          return updated;
+        }
+      }, checkedInstanceIds );
+    }
+    return updatedGroupNames;
+  }
+
   @Override
   public Set<String> verifyInstanceIds( final String accountNumber,
                                         final Collection<String> instanceIds ) throws AutoScalingMetadataException {
@@ -39,6 +39,7 @@ import com.eucalyptus.util.OwnerFullName;
 import com.eucalyptus.util.RestrictedType;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
 
 /**
  *
@@ -126,6 +127,27 @@ public abstract class AbstractOwnedPersistents<AOP extends AbstractOwnedPersiste
     }
   }
 
+  /**
+   * Save all the given metadata in a single transaction.
+   */
+  public List<AOP> saveAll( final List<AOP> metadatas ) throws AutoScalingMetadataException {
+    if ( metadatas.isEmpty( ) ) return metadatas;
+    try {
+      return Entities.asTransaction( metadatas.get( 0 ).getClass( ), new Function<List<AOP>,List<AOP>>( ) {
+        @Override
+        public List<AOP> apply( final List<AOP> toSave ) {
+          final List<AOP> saved = Lists.newArrayListWithCapacity( toSave.size( ) );
+          for ( final AOP metadata : toSave ) {
+            saved.add( Entities.persist( metadata ) );
+          }
+          return saved;
+        }
+      } ).apply( metadatas );
+    } catch ( Exception e ) {
+      throw new AutoScalingMetadataException( "Error creating "+metadatas.size()+" "+typeDescription+"s", e );
+    }
+  }
+
   public boolean delete( final AutoScalingMetadata metadata ) throws AutoScalingMetadataException {
     try {
       return Transactions.delete( exampleWithName( AccountFullName.getInstance( metadata.getOwner().getAccountNumber() ), metadata.getDisplayName() ) );
@@ -565,6 +565,11 @@ class AutoScalingServiceTest {
         throw new UnsupportedOperationException()
       }
 
+      @Override
+      Map<String, X509Certificate> listActiveSigningCertificatesByKeyFingerprint( String accountNumber ) {
+        throw new UnsupportedOperationException()
+      }
+
       @Override
       Map<String, List<AccessKey>> listAccessKeysForUsers(final Collection<String> userIds) {
         throw new UnsupportedOperationException()
@@ -663,8 +668,7 @@ class AutoScalingServiceTest {
       }
 
       @Override
-      <T> List<T> listRequiringMonitoring(long interval,
-                                          @Nonnull Function<? super AutoScalingGroup, T> transform) {
+      <T> List<T> listRequiringMonitoring(@Nonnull Function<? super AutoScalingGroup, T> transform) {
         []
       }
 
@@ -783,6 +787,15 @@ class AutoScalingServiceTest {
                                        long maxAge) {
       }
 
+      @Override
+      Set<String> reconcileInstanceStatus(String accountNumber,
+                                          Collection<String> checkedInstanceIds,
+                                          Collection<String> knownInstanceIds,
+                                          Collection<String> healthyInstanceIds,
+                                          long pendingMaxAge) {
+        [] as Set
+      }
+
       @Override
       Set<String> verifyInstanceIds(String accountNumber,
                                     Collection<String> instanceIds) {
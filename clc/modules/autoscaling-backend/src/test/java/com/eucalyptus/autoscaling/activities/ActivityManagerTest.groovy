@@ -88,6 +88,7 @@ import static org.junit.Assert.*
 import org.junit.BeforeClass
 import org.junit.Test
 
+import java.lang.reflect.Field
 import java.lang.reflect.Method
 import java.security.cert.X509Certificate
 import java.util.concurrent.TimeUnit
@@ -678,17 +679,17 @@ class ActivityManagerTest {
     assertEquals( "Instances 1 id", "i-00000001", instances.get(0).instanceId )
     assertEquals( "Instances 1 az", "Zone1", instances.get(0).availabilityZone )
     assertEquals( "Instances 2 id", "i-00000002", instances.get(1).instanceId )
-    assertEquals( "Instances 2 az", "Zone2", instances.get(1).availabilityZone )
+    assertEquals( "Instances 2 az", "Zone1", instances.get(1).availabilityZone )
     assertEquals( "Instances 3 id", "i-00000003", instances.get(2).instanceId )
-    assertEquals( "Instances 3 az", "Zone3", instances.get(2).availabilityZone )
+    assertEquals( "Instances 3 az", "Zone2", instances.get(2).availabilityZone )
     assertEquals( "Instances 4 id", "i-00000004", instances.get(3).instanceId )
-    assertEquals( "Instances 4 az", "Zone4", instances.get(3).availabilityZone )
+    assertEquals( "Instances 4 az", "Zone2", instances.get(3).availabilityZone )
     assertEquals( "Instances 5 id", "i-00000005", instances.get(4).instanceId )
-    assertEquals( "Instances 5 az", "Zone1", instances.get(4).availabilityZone )
+    assertEquals( "Instances 5 az", "Zone3", instances.get(4).availabilityZone )
     assertEquals( "Instances 6 id", "i-00000006", instances.get(5).instanceId )
-    assertEquals( "Instances 6 az", "Zone2", instances.get(5).availabilityZone )
+    assertEquals( "Instances 6 az", "Zone3", instances.get(5).availabilityZone )
     assertEquals( "Instances 7 id", "i-00000007", instances.get(6).instanceId )
-    assertEquals( "Instances 7 az", "Zone3", instances.get(6).availabilityZone )
+    assertEquals( "Instances 7 az", "Zone4", instances.get(6).availabilityZone )
     assertEquals( "Instances 8 id", "i-00000008", instances.get(7).instanceId )
     assertEquals( "Instances 8 az", "Zone4", instances.get(7).availabilityZone )
     assertEquals( "Scaling activity count", 8, scalingActivities.size() )
@@ -739,13 +740,13 @@ class ActivityManagerTest {
     assertEquals( "Instances 1 id", "i-00000001", instances.get(0).instanceId )
     assertEquals( "Instances 1 az", "Zone2", instances.get(0).availabilityZone )
     assertEquals( "Instances 2 id", "i-00000002", instances.get(1).instanceId )
-    assertEquals( "Instances 2 az", "Zone3", instances.get(1).availabilityZone )
+    assertEquals( "Instances 2 az", "Zone2", instances.get(1).availabilityZone )
     assertEquals( "Instances 3 id", "i-00000003", instances.get(2).instanceId )
-    assertEquals( "Instances 3 az", "Zone4", instances.get(2).availabilityZone )
+    assertEquals( "Instances 3 az", "Zone3", instances.get(2).availabilityZone )
     assertEquals( "Instances 4 id", "i-00000004", instances.get(3).instanceId )
-    assertEquals( "Instances 4 az", "Zone2", instances.get(3).availabilityZone )
+    assertEquals( "Instances 4 az", "Zone3", instances.get(3).availabilityZone )
     assertEquals( "Instances 5 id", "i-00000005", instances.get(4).instanceId )
-    assertEquals( "Instances 5 az", "Zone3", instances.get(4).availabilityZone )
+    assertEquals( "Instances 5 az", "Zone4", instances.get(4).availabilityZone )
     assertEquals( "Instances 6 id", "i-00000006", instances.get(5).instanceId )
     assertEquals( "Instances 6 az", "Zone4", instances.get(5).availabilityZone )
     assertEquals( "Scaling activity count", 6, scalingActivities.size() )
@@ -1088,6 +1089,163 @@ class ActivityManagerTest {
     }
   }
 
+  @Test
+  void testMonitoringUsesInMemoryGroups() {
+    AutoScalingGroup group1 = monitoredGroup( "MonitoredGroup1" )
+    AutoScalingGroup group2 = monitoredGroup( "MonitoredGroup2" )
+    List<AutoScalingGroup> groups = [ group1, group2 ]
+    List<AutoScalingInstance> instances = [
+        instance( 1, group1, "Zone1" ),
+        instance( 2, group2, "Zone1" ),
+    ]
+    int groupLists = 0
+    List<String> groupLookups = []
+    List<String> instanceLoads = []
+    List<ActivityManager.ScalingProcessTask> tasks = []
+    ActivityManager manager = monitoringActivityManager( [
+        listRequiringMonitoring: { Function transform ->
+          groupLists++
+          groups.collect { group -> transform.apply( group ) }
+        },
+        lookup: { OwnerFullName ownerFullName, String groupName, Function transform ->
+          groupLookups << groupName
+          AutoScalingGroup group = groups.find { group -> group.displayName == groupName }
+          if ( group == null ) throw new AutoScalingMetadataNotFoundException( "Group not found: " + groupName )
+          transform.apply( group )
+        },
+    ] as AutoScalingGroups, [
+        listByGroup: { AutoScalingMetadata.AutoScalingGroupMetadata group, Predicate filter, Function transform ->
+          instanceLoads << group.displayName
+          instances.findAll { instance -> instance.autoScalingGroupName == group.displayName }
+              .collect { instance -> transform.apply( instance ) }
+        },
+    ] as AutoScalingInstances, tasks )
+
+    manager.runningInstanceChecks()
+    assertEquals( "Group lists", 1, groupLists )
+    assertEquals( "Instance loads", [ "MonitoredGroup1", "MonitoredGroup2" ], instanceLoads.sort() )
+    assertEquals( "Monitoring tasks", 1, tasks.size() )
+
+    tasks.clear()
+    instanceLoads.clear()
+    manager.runningInstanceChecks()
+    assertEquals( "Group lists when unchanged", 1, groupLists )
+    assertEquals( "Instance loads when unchanged", [], instanceLoads )
+    assertEquals( "Monitoring tasks when not due", 0, tasks.size() )
+
+    ActivityManager.groupInstancesChanged( ActivityManager.groupKey( "000000000000", "MonitoredGroup1" ) )
+    manager.runningInstanceChecks()
+    assertEquals( "Instance loads for changed group", [ "MonitoredGroup1" ], instanceLoads )
+    assertEquals( "Monitoring tasks for changed group", 1, tasks.size() )
+
+    tasks.clear()
+    instanceLoads.clear()
+    groups.remove( group2 )
+    ActivityManager.groupChanged( ActivityManager.groupKey( "000000000000", "MonitoredGroup2" ) )
+    manager.runningInstanceChecks()
+    assertEquals( "Group lists for changed group", 1, groupLists )
+    assertEquals( "Group lookups for changed group", [ "MonitoredGroup2" ], groupLookups )
+    assertEquals( "Monitoring tasks when not due", 0, tasks.size() )
+
+    manager.now += TimeUnit.MINUTES.toMillis( 1 ) + 1
+    manager.runningInstanceChecks()
+    assertEquals( "Instance loads when due", [], instanceLoads )
+    assertEquals( "Monitoring tasks when due", 1, tasks.size() )
+    assertEquals( "Monitored groups when due", [ "MonitoredGroup1" ], tasks.get( 0 ).groups*.group*.displayName )
+
+    manager.now += TimeUnit.MINUTES.toMillis( 5 )
+    manager.runningInstanceChecks()
+    assertEquals( "Group lists after refresh interval", 2, groupLists )
+  }
+
+  @Test
+  void testGroupInstancesReloadedForChangedGroupOnly() {
+    AutoScalingGroup group1 = monitoredGroup( "InstancesGroup1" )
+    AutoScalingGroup group2 = monitoredGroup( "InstancesGroup2" )
+    List<AutoScalingInstance> instances = [
+        instance( 1, group1, "Zone1" ),
+        instance( 2, group2, "Zone1" ),
+    ]
+    List<String> instanceLoads = []
+    List<ActivityManager.ScalingProcessTask> tasks = []
+    ActivityManager manager = monitoringActivityManager( [
+        listRequiringMonitoring: { Function transform ->
+          [ group1, group2 ].collect { group -> transform.apply( group ) }
+        },
+    ] as AutoScalingGroups, [
+        listByGroup: { AutoScalingMetadata.AutoScalingGroupMetadata group, Predicate filter, Function transform ->
+          instanceLoads << group.displayName
+          instances.findAll { instance -> instance.autoScalingGroupName == group.displayName }
+              .collect { instance -> transform.apply( instance ) }
+        },
+        update: { OwnerFullName ownerFullName, String instanceId, Callback<AutoScalingInstance> callback ->
+          callback.fire( instances.find { instance -> instance.instanceId == instanceId } )
+        },
+    ] as AutoScalingInstances, tasks )
+
+    manager.runningInstanceChecks()
+    instanceLoads.clear()
+    Field instancesField = ActivityManager.getDeclaredField( "autoScalingInstances" )
+    instancesField.setAccessible( true )
+    ( (AutoScalingInstances) instancesField.get( manager ) ).update( null, "i-00000002", { AutoScalingInstance instance ->
+      instance.healthStatus = HealthStatus.Unhealthy
+    } as Callback<AutoScalingInstance> )
+    manager.now += TimeUnit.MINUTES.toMillis( 1 ) + 1
+    manager.runningInstanceChecks()
+
+    assertEquals( "Instance loads", [ "InstancesGroup2" ], instanceLoads )
+  }
+
+  private AutoScalingGroup monitoredGroup( String name ) {
+    new AutoScalingGroup(
+        id: name,
+        naturalId: name,
+        availabilityZones: [ "Zone1" ],
+        loadBalancerNames: [ ],
+        healthCheckType: HealthCheckType.EC2,
+        displayName: name,
+        launchConfiguration: new LaunchConfiguration(
+            id: "1",
+            naturalId: "1",
+            ownerAccountNumber: "000000000000",
+            displayName: "Config1",
+            imageId: "emi-00000001",
+            instanceType: "m1.small",
+        ),
+        scalingRequired: false,
+        desiredCapacity: 1,
+        capacity:  1,
+        minSize: 1,
+        maxSize: 1,
+        ownerAccountNumber: "000000000000",
+        version: 1,
+    )
+  }
+
+  private ActivityManager monitoringActivityManager( AutoScalingGroups groups,
+                                                     AutoScalingInstances instances,
+                                                     List<ActivityManager.ScalingProcessTask> tasks ) {
+    new ActivityManager(
+        autoScalingActivitiesStore( ),
+        groups,
+        instances,
+        zoneAvailabilityMarkers(),
+        zoneMonitor( [] )
+    ) {
+      long now = System.currentTimeMillis()
+
+      @Override
+      protected long timestamp() {
+        now
+      }
+
+      @Override
+      void runTask( ActivityManager.ScalingProcessTask task ) {
+        tasks << task
+      }
+    }
+  }
+
   Date timestamp( String text ) {
     Timestamps.parseIso8601Timestamp( text )
   }
@@ -1184,12 +1342,12 @@ class ActivityManagerTest {
                 throw new WebServicesException( "Test error triggered by using emi-00000000" )
             new RunInstancesResponseType(
                   rsvInfo: new ReservationInfoType(
-                      instancesSet: [
+                      instancesSet: ( 1..Math.max( 1, ((RunInstancesType) request).maxCount ) ).collect {
                           new RunningInstancesItemType(
                               instanceId: "i-0000000" + (++instanceCount),
                               placement: ((RunInstancesType) request).availabilityZone,
                           )
-                      ]
+                      } as ArrayList<RunningInstancesItemType>
                   )
               )
           } else if ( request instanceof DescribeInstanceStatusType ) {
@@ -1378,6 +1536,11 @@ class ActivityManagerTest {
         throw new UnsupportedOperationException()
       }
 
+      @Override
+      Map<String, X509Certificate> listActiveSigningCertificatesByKeyFingerprint( String accountNumber ) {
+        throw new UnsupportedOperationException()
+      }
+
       @Override
       Map<String, List<AccessKey>> listAccessKeysForUsers(final Collection<String> userIds) {
         throw new UnsupportedOperationException()
@@ -1503,8 +1666,7 @@ class ActivityManagerTest {
       }
 
       @Override
-      <T> List<T> listRequiringMonitoring(long interval,
-                                          @Nonnull Function<? super AutoScalingGroup, T> transform) {
+      <T> List<T> listRequiringMonitoring(@Nonnull Function<? super AutoScalingGroup, T> transform) {
         healthChecks ?
           groups.collect { group -> transform.apply( group ) } :
           []
@@ -1641,6 +1803,29 @@ class ActivityManagerTest {
                                        long maxAge) {
       }
 
+      @Override
+      Set<String> reconcileInstanceStatus(String accountNumber,
+                                          Collection<String> checkedInstanceIds,
+                                          Collection<String> knownInstanceIds,
+                                          Collection<String> healthyInstanceIds,
+                                          long pendingMaxAge) {
+        Set<String> updatedGroupNames = [] as Set
+        instances.each { instance ->
+          if ( accountNumber.equals( instance.ownerAccountNumber ) &&
+              checkedInstanceIds.contains( instance.instanceId ) ) {
+            if ( healthyInstanceIds.contains( instance.instanceId ) ) {
+              if ( LifecycleState.Pending.transitionTo( LifecycleState.InService ).apply( instance ) ) {
+                updatedGroupNames << instance.autoScalingGroupName
+              }
+            } else if ( LifecycleState.InService.apply( instance ) &&
+                HealthStatus.Healthy == instance.healthStatus ) {
+              instance.healthStatus = HealthStatus.Unhealthy
+              updatedGroupNames << instance.autoScalingGroupName
+            }
+          } }
+        updatedGroupNames
+      }
+
       @Override
       Set<String> verifyInstanceIds(String accountNumber,
                                     Collection<String> instanceIds) {
@@ -250,6 +250,7 @@ public class ListMetricManager {
       HashMap<ListMetricCacheKey, ListMetric> cache = Maps.newHashMap();
       Collection<ListMetricCacheKey> cacheKeys = prune(dataBatch);
       List<ListMetric> foldedMetrics = Lists.newArrayList();
+      Set<ListMetric> writeMetrics = Sets.newIdentityHashSet();
       for (ListMetricCacheKey cacheKey:cacheKeys) {
         foldedMetrics.addAll(foldMetric(cacheKey.getLoadKey().getAccountId(), 
             cacheKey.getMetricName(), cacheKey.getLoadKey().getNamespace(), 
@@ -262,7 +263,8 @@ public class ListMetricManager {
         if (!loadedKeys.contains(loadKey)) {
           Criteria criteria = Entities.createCriteria(ListMetric.class)
               .add( Restrictions.eq( "accountId" , metric.getAccountId() ) )
-              .add( Restrictions.eq( "namespace" , metric.getNamespace() ) );
+              .add( Restrictions.eq( "namespace" , metric.getNamespace() ) )
+              .setReadOnly( true );
           List<ListMetric> results = (List<ListMetric>) criteria.list();
           for (ListMetric result: results) {
             ListMetricCacheKey key = new ListMetricCacheKey();
@@ -282,12 +284,13 @@ public class ListMetricManager {
         key.setMetricType(metric.getMetricType());
         ListMetric inDbMetric = cache.get(key);
         if (inDbMetric != null) {
-          inDbMetric.setVersion(1 + inDbMetric.getVersion());
+          writeMetrics.add(inDbMetric); // version is incremented on update
         } else {
           cache.put(key, metric);
-          Entities.persist(metric);
+          writeMetrics.add(metric);
         }
       }
+      Entities.upsertAll(writeMetrics);
       db.commit();
     } catch (RuntimeException ex) {
       Logs.extreme().error(ex, ex);
@@ -127,9 +127,7 @@ public class MetricManager {
     for (Class c : metricMap.keySet()) {
       EntityTransaction db = Entities.get(c);
       try {
-        for (MetricEntity me : metricMap.get(c)) {
-          Entities.persist(me);
-        }
+        Entities.persistAll(metricMap.get(c));
         db.commit();
       } catch (RuntimeException ex) {
         Logs.extreme().error(ex, ex);
@@ -279,7 +279,7 @@ public class SnapshotManager {
           Entities.query( Snapshot.named( ownerFullName, null ), true, filter.asCriterion(), filter.getAliases() );
       final Predicate<? super Snapshot> requestedAndAccessible = CloudMetadatas.filteringFor(Snapshot.class)
           .byId( snapshotIds )
-          .byPredicate( filter.asPredicate() )
+          .byPredicate( filter.asQueryPredicate() )
           .byPrivileges()
           .buildPredicate();
 
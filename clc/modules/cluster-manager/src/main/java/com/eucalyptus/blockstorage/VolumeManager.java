@@ -293,7 +293,7 @@ public class VolumeManager {
     final Filter filter = Filters.generate( request.getFilterSet(), Volume.class );
     final Predicate<? super Volume> requestedAndAccessible = CloudMetadatas.filteringFor( Volume.class )
          .byId( volumeIds )
-         .byPredicate( filter.asPredicate() )
+         .byPredicate( filter.asQueryPredicate() )
          .byPrivileges()
          .buildPredicate();
     
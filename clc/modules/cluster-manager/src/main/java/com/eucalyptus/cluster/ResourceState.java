@@ -66,12 +66,16 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.NavigableSet;
-import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.log4j.Logger;
 import com.eucalyptus.cloud.ResourceToken;
 import com.eucalyptus.cloud.run.Allocations.Allocation;
@@ -96,6 +100,8 @@ public class ResourceState {
   private NavigableSet<ResourceToken>                        submittedTokens;
   private NavigableSet<ResourceToken>                        redeemedTokens;
   private String                                             clusterName;
+  private final ReadWriteLock                                updateLock = new ReentrantReadWriteLock( );
+  private final Lock                                         allocationLock = new ReentrantLock( );
   public static class NoSuchTokenException extends Exception {
 
     public NoSuchTokenException( String message ) {
@@ -105,10 +111,14 @@ public class ResourceState {
   }
 
   public ResourceState( String clusterName ) {
+    this( clusterName, VmTypes.list( ) );
+  }
+
+  ResourceState( String clusterName, Iterable<VmType> vmTypes ) {
     this.clusterName = clusterName;
     this.typeMap = new ConcurrentSkipListMap<String, VmTypeAvailability>( );
     
-    for ( VmType v : VmTypes.list( ) )
+    for ( VmType v : vmTypes )
       this.typeMap.putIfAbsent( v.getName( ), new VmTypeAvailability( v, 0, 0 ) );
     
     this.pendingTokens = new ConcurrentSkipListSet<ResourceToken>( );
@@ -126,34 +136,29 @@ public class ResourceState {
     } );
   }
   
-  public synchronized List<ResourceToken> requestResourceAllocation( Allocation allocInfo, int minAmount, int maxAmount ) throws NotEnoughResourcesException {
-    VmTypeAvailability vmTypeStatus = this.typeMap.get( allocInfo.getVmType( ).getName( ) );
-    Integer available = vmTypeStatus.getAvailable( );
-    NavigableSet<VmTypeAvailability> sorted = this.sorted( );
-    LOG.debug( LogUtil.header( "BEFORE ALLOCATE" ) );
-    LOG.debug( sorted );
-    //:: if not enough, then bail out :://
-    Integer quantity = minAmount;
-    if ( vmTypeStatus.getAvailable( ) < minAmount ) {
-      throw new NotEnoughResourcesException( "Not enough resources (" + available + " < " + minAmount + ": vm instances." );
-    } else {
-      quantity = ( maxAmount < available
-                                        ? maxAmount
-                                        : available );
+  /**
+   * Reserve capacity for between minAmount and maxAmount instances.
+   *
+   * <p>Capacity for the requested type is reserved and other types are then
+   * adjusted to match while holding the allocation lock, so concurrent
+   * requests for different types see consistent availability. The lock is
+   * only held for the capacity update, tokens are created outside it. A
+   * resource update from the cluster excludes requests.</p>
+   */
+  public List<ResourceToken> requestResourceAllocation( Allocation allocInfo, int minAmount, int maxAmount ) throws NotEnoughResourcesException {
+    this.updateLock.readLock( ).lock( );
+    try {
+      return this.doRequestResourceAllocation( allocInfo, minAmount, maxAmount );
+    } finally {
+      this.updateLock.readLock( ).unlock( );
+    }
+  }
+
+  private List<ResourceToken> doRequestResourceAllocation( Allocation allocInfo, int minAmount, int maxAmount ) throws NotEnoughResourcesException {
+    final int quantity = this.reserve( allocInfo.getVmType( ).getName( ), minAmount, maxAmount );
+    if ( quantity < 0 ) {
+      throw new NotEnoughResourcesException( "Not enough resources (" + this.typeMap.get( allocInfo.getVmType( ).getName( ) ).getAvailable( ) + " < " + minAmount + ": vm instances." );
     }
-    
-    Set<VmTypeAvailability> tailSet = sorted.tailSet( vmTypeStatus );
-    Set<VmTypeAvailability> headSet = sorted.headSet( vmTypeStatus );
-    LOG.debug( LogUtil.header( "DURING ALLOCATE" ) );
-    LOG.debug( LogUtil.subheader( "TAILSET: \n" + tailSet ) );
-    LOG.debug( LogUtil.subheader( "HEADSET: \n" + headSet ) );
-    //:: decrement available resources across the "active" partition :://
-    for ( VmTypeAvailability v : tailSet )
-      v.decrement( quantity );
-    for ( VmTypeAvailability v : headSet )
-      v.setAvailable( vmTypeStatus.getAvailable( ) );
-    LOG.debug( LogUtil.header( "AFTER ALLOCATE" ) );
-    LOG.debug( sorted );
     List<ResourceToken> tokenList = Lists.newArrayList( );
     for ( int i = 0; i < quantity; i++ ) {
       try {
@@ -171,28 +176,85 @@ public class ResourceState {
     }
     return tokenList;
   }
+
+  /**
+   * Reserve capacity for the given type and adjust other types to match.
+   *
+   * @return The quantity reserved or -1 if less than minAmount are available
+   */
+  int reserve( String vmTypeName, int minAmount, int maxAmount ) {
+    VmTypeAvailability vmTypeStatus = this.typeMap.get( vmTypeName );
+    this.allocationLock.lock( );
+    try {
+      if ( LOG.isDebugEnabled( ) ) {
+        LOG.debug( LogUtil.header( "BEFORE ALLOCATE" ) );
+        LOG.debug( this.sorted( ) );
+      }
+      //:: if not enough, then bail out :://
+      final int available = vmTypeStatus.getAvailable( );
+      final int quantity = vmTypeStatus.reserve( minAmount, maxAmount );
+      if ( quantity < 0 ) {
+        return quantity;
+      }
+
+      //:: decrement available resources across the "active" partition :://
+      final int remaining = vmTypeStatus.getAvailable( );
+      for ( VmTypeAvailability v : this.typeMap.values( ) ) {
+        if ( v == vmTypeStatus ) continue;
+        if ( v.compareAvailability( vmTypeStatus, available ) > 0 ) {
+          v.decrement( quantity );
+        } else {
+          v.reduceTo( remaining );
+        }
+      }
+      if ( LOG.isDebugEnabled( ) ) {
+        LOG.debug( LogUtil.header( "AFTER ALLOCATE" ) );
+        LOG.debug( this.sorted( ) );
+      }
+      return quantity;
+    } finally {
+      this.allocationLock.unlock( );
+    }
+  }
   
-  public synchronized void releaseToken( ResourceToken token ) {
+  public void releaseToken( ResourceToken token ) {
     LOG.debug( EventType.TOKEN_RELEASED.name( ) + ": " + token.toString( ) );
     this.pendingTokens.remove( token );
     this.submittedTokens.remove( token );
     this.redeemedTokens.remove( token );
   }
   
-  public synchronized void submitToken( ResourceToken token ) throws NoSuchTokenException {
+  public void submitToken( ResourceToken token ) throws NoSuchTokenException {
     LOG.debug( EventType.TOKEN_SUBMITTED.name( ) + ": " + token.toString( ) );
-    if ( this.pendingTokens.remove( token ) ) {
-      this.submittedTokens.add( token );
-    } else {
+    final boolean submitted;
+    // the read lock keeps the move between sets atomic wrt resource updates
+    this.updateLock.readLock( ).lock( );
+    try {
+      submitted = this.pendingTokens.remove( token );
+      if ( submitted ) {
+        this.submittedTokens.add( token );
+      }
+    } finally {
+      this.updateLock.readLock( ).unlock( );
+    }
+    if ( !submitted ) {
       throw new NoSuchTokenException( token.toString( ) );
     }
   }
   
-  public synchronized void redeemToken( ResourceToken token ) throws NoSuchTokenException {
+  public void redeemToken( ResourceToken token ) throws NoSuchTokenException {
     LOG.debug( EventType.TOKEN_REDEEMED.name( ) + ": " + token.toString( ) );
-    if ( this.submittedTokens.remove( token ) || this.pendingTokens.remove( token ) ) {
-      this.redeemedTokens.add( token );
-    } else {
+    final boolean redeemed;
+    this.updateLock.readLock( ).lock( );
+    try {
+      redeemed = this.submittedTokens.remove( token ) || this.pendingTokens.remove( token );
+      if ( redeemed ) {
+        this.redeemedTokens.add( token );
+      }
+    } finally {
+      this.updateLock.readLock( ).unlock( );
+    }
+    if ( !redeemed ) {
       LOG.error(
         "Failed to find token: "
             + token
@@ -202,11 +264,20 @@ public class ResourceState {
     }
   }
 
-  public synchronized boolean isPending( final ResourceToken token ) {
+  public boolean isPending( final ResourceToken token ) {
     return this.pendingTokens.contains( token );
   }
 
-  public synchronized void update( List<ResourceType> rscUpdate ) {
+  public void update( List<ResourceType> rscUpdate ) {
+    this.updateLock.writeLock( ).lock( );
+    try {
+      this.doUpdate( rscUpdate );
+    } finally {
+      this.updateLock.writeLock( ).unlock( );
+    }
+  }
+
+  private void doUpdate( List<ResourceType> rscUpdate ) {
     long expiryAge = System.currentTimeMillis( ) - TimeUnit.MINUTES.toMillis( getExpiryMinutes( 15 ) );
     expirePendingTokens( expiryAge );
 
@@ -295,14 +366,14 @@ public class ResourceState {
   }
   
   public static class VmTypeAvailability implements Comparable {
-    private VmType type;
-    private int    max;
-    private int    available;
+    private final VmType        type;
+    private volatile int        max;
+    private final AtomicInteger available;
     
     public VmTypeAvailability( final VmType type, final int max, final int available ) {
       this.type = type;
       this.max = max;
-      this.available = available;
+      this.available = new AtomicInteger( available );
     }
     
     public VmType getType( ) {
@@ -310,10 +381,53 @@ public class ResourceState {
     }
     
     public void decrement( int quantity ) {
-      this.available -= quantity;
-      this.available = ( this.available < 0 )
-                                             ? 0
-                                             : this.available;
+      int current;
+      do {
+        current = this.available.get( );
+      } while ( !this.available.compareAndSet( current, Math.max( 0, current - quantity ) ) );
+    }
+
+    /**
+     * Reserve between minAmount and maxAmount, as many as are available.
+     *
+     * @return The quantity reserved or -1 if less than minAmount are available
+     */
+    public int reserve( final int minAmount, final int maxAmount ) {
+      int current;
+      int quantity;
+      do {
+        current = this.available.get( );
+        if ( current < minAmount ) {
+          return -1;
+        }
+        quantity = Math.min( current, maxAmount );
+      } while ( !this.available.compareAndSet( current, current - quantity ) );
+      return quantity;
+    }
+
+    /**
+     * Reduce availability to at most the given value.
+     */
+    public void reduceTo( final int limit ) {
+      int current;
+      do {
+        current = this.available.get( );
+        if ( current <= limit ) {
+          return;
+        }
+      } while ( !this.available.compareAndSet( current, limit ) );
+    }
+
+    /**
+     * Compare with the given type, as if it had the given availability.
+     *
+     * <p>Positive if this type sorts after the given type, i.e. has less
+     * availability.</p>
+     */
+    int compareAvailability( final VmTypeAvailability other, final int otherAvailable ) {
+      final int thisAvailable = this.getAvailable( );
+      if ( thisAvailable == otherAvailable ) return this.type.compareTo( other.getType( ) );
+      return otherAvailable - thisAvailable;
     }
     
     public int getMax( ) {
@@ -325,11 +439,11 @@ public class ResourceState {
     }
     
     public int getAvailable( ) {
-      return available;
+      return available.get( );
     }
     
     public void setAvailable( final int available ) {
-      this.available = available;
+      this.available.set( available );
     }
     
     @Override
@@ -384,6 +498,14 @@ public class ResourceState {
       
       @Override
       public void decrement( final int quantity ) {}
+
+      @Override
+      public int reserve( final int minAmount, final int maxAmount ) {
+        return -1;
+      }
+
+      @Override
+      public void reduceTo( final int limit ) {}
       
       @Override
       public boolean equals( final Object o ) {
@@ -34,11 +34,17 @@ class BroadcastNetworkInfoCallback extends BroadcastCallback<BroadcastNetworkInf
   private static Logger logger = Logger.getLogger( BroadcastNetworkInfoCallback.class );
 
   final String networkInfo
+  private final String encodedNetworkInfo
 
   public BroadcastNetworkInfoCallback( final String networkInfo ) {
+    this( networkInfo, new String( B64.standard.enc( networkInfo.getBytes( Charsets.UTF_8 ) ), Charsets.UTF_8 ) )
+  }
+
+  private BroadcastNetworkInfoCallback( final String networkInfo, final String encodedNetworkInfo ) {
     this.networkInfo = networkInfo
+    this.encodedNetworkInfo = encodedNetworkInfo
     this.setRequest( new BroadcastNetworkInfoType(
-        networkInfo: new String( B64.standard.enc( networkInfo.getBytes( Charsets.UTF_8 ) ), Charsets.UTF_8 )
+        networkInfo: encodedNetworkInfo
     ) )
   }
 
@@ -57,7 +63,7 @@ class BroadcastNetworkInfoCallback extends BroadcastCallback<BroadcastNetworkInf
 
   @Override
   public BroadcastCallback<BroadcastNetworkInfoType, BroadcastNetworkInfoResponseType> newInstance( ) {
-    return new BroadcastNetworkInfoCallback( this.networkInfo );
+    return new BroadcastNetworkInfoCallback( this.networkInfo, this.encodedNetworkInfo );
   }
 
   @Override
@@ -308,7 +308,7 @@ public class Emis {
         if ( this.isLinux( ) ) {
           if ( this.hasKernel( ) ) {
             String manifestLocation = DownloadManifestFactory.generateDownloadManifest(
-                new ImageManifestFile( this.getKernel( ).getManifestLocation( ), BundleImageManifest.INSTANCE ),
+                new ImageManifestFile( this.getKernel( ).getManifestLocation( ), BundleImageManifest.INSTANCE, this.getKernel( ).getDisplayName( ) ),
                 partition.getNodeCertificate().getPublicKey(), this.getKernel( ).getDisplayName( ));
 	    vmTypeInfo.setKernel( this.getKernel( ).getDisplayName( ), this.getKernel( ).getManifestLocation( ) );
 	    // TODO: for new image management
@@ -316,7 +316,7 @@ public class Emis {
           }
           if ( this.hasRamdisk( ) ) {
             String manifestLocation = DownloadManifestFactory.generateDownloadManifest(
-                new ImageManifestFile( this.getRamdisk( ).getManifestLocation( ), BundleImageManifest.INSTANCE ),
+                new ImageManifestFile( this.getRamdisk( ).getManifestLocation( ), BundleImageManifest.INSTANCE, this.getRamdisk( ).getDisplayName( ) ),
                 partition.getNodeCertificate().getPublicKey(), this.getRamdisk( ).getDisplayName( ));
 	    vmTypeInfo.setRamdisk( this.getRamdisk( ).getDisplayName( ), this.getRamdisk( ).getManifestLocation( ) );
 	    // TODO: for new image management
@@ -328,7 +328,8 @@ public class Emis {
 	    // generate download manifest and replace machine URL
 	    VirtualBootRecord root = vmTypeInfo.lookupRoot();
 	    String manifestLocation = DownloadManifestFactory.generateDownloadManifest(
-            new ImageManifestFile( ((StaticDiskImage)this.getMachine()).getManifestLocation(), BundleImageManifest.INSTANCE ),
+            new ImageManifestFile( ((StaticDiskImage)this.getMachine()).getManifestLocation(), BundleImageManifest.INSTANCE,
+                this.getMachine( ).getDisplayName( ) ),
             partition.getNodeCertificate().getPublicKey(), instanceId);
 	    // TODO: for new image management
 	    // vmTypeInfo.setRoot( this.getMachine( ).getDisplayName( ), manifestLocation, this.getMachine( ).getImageSizeBytes() );
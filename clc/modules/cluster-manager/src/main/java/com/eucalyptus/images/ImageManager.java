@@ -173,7 +173,7 @@ public class ImageManager {
             Predicates.<ImageInfo>alwaysTrue() :
             Images.standardStatePredicate( ) )
         .byPredicate( Images.filterExecutableBy( request.getExecutableBySet() ) )
-        .byPredicate( filter.asPredicate() )
+        .byPredicate( filter.asQueryPredicate() )
         .byPredicate( Images.FilterPermissions.INSTANCE )
         .byPrivilegesWithoutOwner()
         .buildPredicate();
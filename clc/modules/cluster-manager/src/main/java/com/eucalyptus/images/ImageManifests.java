@@ -67,7 +67,11 @@ import java.security.PublicKey;
 import java.security.Signature;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.xpath.XPath;
@@ -97,18 +101,33 @@ import com.eucalyptus.objectstorage.msgs.GetBucketAccessControlPolicyResponseTyp
 import com.eucalyptus.objectstorage.msgs.GetBucketAccessControlPolicyType;
 import com.eucalyptus.objectstorage.msgs.GetObjectResponseType;
 import com.eucalyptus.objectstorage.msgs.GetObjectType;
+import com.eucalyptus.objectstorage.msgs.HeadObjectResponseType;
+import com.eucalyptus.objectstorage.msgs.HeadObjectType;
 import com.eucalyptus.util.EucalyptusCloudException;
 import com.eucalyptus.util.FullName;
+import com.eucalyptus.util.Pair;
 import com.eucalyptus.util.RestrictedTypes;
 import com.eucalyptus.util.XMLParser;
 import com.eucalyptus.util.async.AsyncRequests;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 public class ImageManifests {
   private static Logger LOG = Logger.getLogger( ImageManifests.class );
+  private static final Cache<String,Pair<String,String>> manifestCache = CacheBuilder.newBuilder( )
+      .maximumSize( 100 )
+      .expireAfterAccess( 1, TimeUnit.HOURS )
+      .build( );
+  // public key fingerprint of the last verified manifest signer by bucket
+  private static final Cache<String,String> signerKeyFingerprints = CacheBuilder.newBuilder( )
+      .maximumSize( 1000 )
+      .build( );
   
   static boolean verifyBucketAcl( String bucketName ) {
     Context ctx = Contexts.lookup( );
@@ -152,7 +171,22 @@ public class ImageManifests {
     return results;
   }
   
+  /**
+   * Manifests are cached by location and reused while the object ETag is unchanged.
+   */
   static String requestManifestData( FullName userName, String bucketName, String objectName ) throws EucalyptusCloudException {
+    final String manifestPath = bucketName + "/" + objectName;
+    final Pair<String,String> cached = manifestCache.getIfPresent( manifestPath );
+    if ( cached != null ) try {
+      HeadObjectType headMsg = new HeadObjectType( bucketName, objectName );
+      headMsg.regarding( );
+      HeadObjectResponseType headReply = AsyncRequests.sendSync( Topology.lookup( ObjectStorage.class ), headMsg );
+      if ( cached.getLeft( ).equals( headReply.getEtag( ) ) ) {
+        return cached.getRight( );
+      }
+    } catch ( Exception e ) {
+      LOG.debug( "Unable to check cached manifest " + manifestPath + ": " + e.getMessage( ) );
+    }
     GetObjectResponseType reply = null;
     try {
       GetObjectType msg = new GetObjectType( bucketName, objectName, false /*metadata*/, true /*inlinedata*/);
@@ -161,7 +195,13 @@ public class ImageManifests {
     } catch ( Exception e ) {
       throw new EucalyptusCloudException( "Failed to read manifest file: " + bucketName + "/" + objectName, e );
     }
-    return B64.url.decString( reply.getBase64Data( ).getBytes( ) );
+    final String manifest = B64.url.decString( reply.getBase64Data( ).getBytes( ) );
+    if ( reply.getEtag( ) != null ) {
+      manifestCache.put( manifestPath, Pair.pair( reply.getEtag( ), manifest ) );
+    } else {
+      manifestCache.invalidate( manifestPath );
+    }
+    return manifest;
   }
   
   public static class ManifestDeviceMapping {
@@ -195,6 +235,7 @@ public class ImageManifests {
     private final ImageMetadata.Platform           platform;
     private final ImageMetadata.VirtualizationType virtualizationType;
     private final String                           signature;
+    private final String                           accountNumber;
     private final String                           checksum;
     private final String                           checksumType;
     private final String                           manifest;
@@ -275,6 +316,7 @@ public class ImageManifests {
       this.signature = ( ( temp = this.xpathHelper.apply( "//signature" ) ) != null )
         ? temp
         : null;
+      this.accountNumber = Strings.emptyToNull( this.xpathHelper.apply( "/manifest/user/text()" ) );
       String typeInManifest = this.xpathHelper.apply( ImageMetadata.TYPE_MANIFEST_XPATH );
       
       this.size = ( ( temp = this.xpathHelper.apply( "/manifest/image/size/text()" ) ) != null )
@@ -419,8 +461,25 @@ public class ImageManifests {
         } else if ( tryVerifyWithCert.apply( SystemCredentials.lookup( Eucalyptus.class ).getCertificate( ) ) ) {
           return true;
         } else {
-          for ( User u : Accounts.listAllUsers( ) ) {
-            if ( Iterables.any( Lists.transform( u.getCertificates( ), euareToX509 ), tryVerifyWithCert ) ) {
+          // the manifest does not identify the signing key, try the last signer for the bucket first
+          final String bucketName = this.imageLocation.substring( 0, this.imageLocation.indexOf( '/' ) );
+          final Map<String,X509Certificate> certificates = Accounts.listActiveSigningCertificatesByKeyFingerprint( null );
+          final String signerFingerprint = signerKeyFingerprints.getIfPresent( bucketName );
+          if ( signerFingerprint != null && tryVerifyWithCert.apply( certificates.get( signerFingerprint ) ) ) {
+            return true;
+          }
+          // then the certificates for the account named in the manifest, then all certificates
+          final Map<String,X509Certificate> accountCertificates = this.accountNumber == null ?
+              Collections.<String,X509Certificate>emptyMap( ) :
+              Accounts.listActiveSigningCertificatesByKeyFingerprint( this.accountNumber );
+          final Set<String> triedFingerprints = Sets.newHashSet( );
+          if ( signerFingerprint != null ) {
+            triedFingerprints.add( signerFingerprint );
+          }
+          for ( Map.Entry<String,X509Certificate> certificate :
+              Iterables.concat( accountCertificates.entrySet( ), certificates.entrySet( ) ) ) {
+            if ( triedFingerprints.add( certificate.getKey( ) ) && tryVerifyWithCert.apply( certificate.getValue( ) ) ) {
+              signerKeyFingerprints.put( bucketName, certificate.getKey( ) );
               return true;
             }
           }
@@ -121,7 +121,7 @@ public class KeyPairManager {
     final Filter filter = Filters.generate( request.getFilterSet(), SshKeyPair.class );
     final Predicate<? super SshKeyPair> requestedAndAccessible = CloudMetadatas.filteringFor( SshKeyPair.class )
         .byId( request.getKeySet( ) )
-        .byPredicate( filter.asPredicate() )
+        .byPredicate( filter.asQueryPredicate() )
         .byPrivileges()
         .buildPredicate();
     for ( final SshKeyPair kp : KeyPairs.list( ownerFullName, requestedAndAccessible, filter.asCriterion(), filter.getAliases() ) ) {
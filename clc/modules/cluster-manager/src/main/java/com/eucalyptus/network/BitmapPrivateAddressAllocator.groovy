@@ -0,0 +1,226 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.network
+
+import com.eucalyptus.util.Numbers
+import com.google.common.base.Optional
+import com.google.common.base.Supplier
+import com.google.common.collect.Iterables
+import com.google.common.collect.Lists
+import com.google.common.collect.Maps
+import groovy.transform.CompileStatic
+import org.apache.log4j.Logger
+
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Private address allocator that tracks used addresses in memory.
+ *
+ * <p>Addresses known to be in use are skipped without a database insert. The
+ * bitmap is rebuilt from the database on first use and periodically after that,
+ * the database remains authoritative so a stale bitmap only costs a failed
+ * insert.</p>
+ *
+ * <p>As for the random allocator, candidates are tried in random order within
+ * each partition of the addresses so that allocations are spread over the
+ * range rather than using the first free address.</p>
+ */
+@CompileStatic
+class BitmapPrivateAddressAllocator extends PrivateAddressAllocatorSupport {
+
+  private static final Logger logger = Logger.getLogger( BitmapPrivateAddressAllocator )
+  private static final int defaultPartitionSize = 1000
+  private static final long minimumReloadIntervalMillis = TimeUnit.SECONDS.toMillis( 15 )
+
+  private final Supplier<Long> reloadIntervalMillis
+  private final int partitionSize
+  private final Object loadLock = new Object( )
+  private volatile AddressBitmap bitmap = new AddressBitmap( )
+  private volatile long loadedTimestamp = 0L
+
+  BitmapPrivateAddressAllocator( ) {
+    this( new DatabasePrivateAddressPersistence( ), { ->
+      TimeUnit.MINUTES.toMillis( NetworkGroups.PRIVATE_ADDRESS_RELOAD_INTERVAL ?: 5 )
+    } as Supplier<Long>, defaultPartitionSize )
+  }
+
+  protected BitmapPrivateAddressAllocator( final PrivateAddressPersistence persistence,
+                                           final long reloadIntervalMillis,
+                                           final int partitionSize ) {
+    this( persistence, { -> reloadIntervalMillis } as Supplier<Long>, partitionSize )
+  }
+
+  protected BitmapPrivateAddressAllocator( final PrivateAddressPersistence persistence,
+                                           final Supplier<Long> reloadIntervalMillis,
+                                           final int partitionSize ) {
+    super( logger, persistence )
+    this.reloadIntervalMillis = reloadIntervalMillis
+    this.partitionSize = partitionSize
+  }
+
+  @Override
+  protected String allocate( final Iterable<Integer> addresses, final Closure<String> allocator ) {
+    String allocated = allocateUnused( addresses, allocator )
+    if ( !allocated && ( System.currentTimeMillis( ) - loadedTimestamp ) > minimumReloadIntervalMillis ) {
+      // addresses may have been removed other than via this allocator, rebuild and try again
+      load( )
+      allocated = allocateUnused( addresses, allocator )
+    }
+    allocated
+  }
+
+  @Override
+  protected PrivateAddressPersistence getPersistence( ) {
+    new BitmapPrivateAddressPersistence( super.getPersistence( ) )
+  }
+
+  @Override
+  protected PrivateAddressPersistence getDistinctPersistence( ) {
+    new BitmapPrivateAddressPersistence( super.getDistinctPersistence( ) )
+  }
+
+  private String allocateUnused( final Iterable<Integer> addresses, final Closure<String> allocator ) {
+    if ( loadedTimestamp == 0L || ( System.currentTimeMillis( ) - loadedTimestamp ) > reloadIntervalMillis.get( ) ) {
+      load( )
+    }
+    final AddressBitmap bitmap = this.bitmap
+    final Iterator<List<Integer>> addressPartitionIterator = Iterables.partition( addresses, partitionSize ).iterator( )
+    while ( addressPartitionIterator.hasNext( ) ) {
+      final List<Integer> addressPartition = Numbers.shuffled( Lists.newArrayList( addressPartitionIterator.next( ) ) )
+      for ( final Integer address : addressPartition ) {
+        if ( bitmap.reserve( address ) ) {
+          boolean reserved = false
+          try {
+            // null result means the address is in use so the bit is left set
+            final String value = allocator.call( address )
+            reserved = true
+            if ( value ) return value
+          } finally {
+            if ( !reserved ) bitmap.clear( address )
+          }
+        }
+      }
+    }
+    null
+  }
+
+  private void load( ) {
+    synchronized( loadLock ) {
+      final long loadStart = System.currentTimeMillis( )
+      final AddressBitmap loaded = new AddressBitmap( )
+      super.getPersistence( ).withMatching( PrivateAddress.inState( null ) ) { PrivateAddress privateAddress ->
+        loaded.set( PrivateAddresses.asInteger( privateAddress.name ) )
+      }
+      bitmap = loaded
+      loadedTimestamp = loadStart
+      logger.debug( "Loaded private address bitmap in ${System.currentTimeMillis( ) - loadStart}ms" )
+    }
+  }
+
+  /**
+   * Used address bitmap, blocks are allocated on demand for each /16
+   */
+  private static final class AddressBitmap {
+    private static final int BLOCK_BITS = 16
+    private static final int BLOCK_MASK = ( 1 << BLOCK_BITS ) - 1
+
+    private final ConcurrentMap<Integer,BitSet> blocks = Maps.newConcurrentMap( )
+
+    boolean reserve( final int address ) {
+      final BitSet block = block( address )
+      synchronized( block ) {
+        if ( block.get( address & BLOCK_MASK ) ) {
+          return false
+        }
+        block.set( address & BLOCK_MASK )
+        return true
+      }
+    }
+
+    void set( final int address ) {
+      final BitSet block = block( address )
+      synchronized( block ) {
+        block.set( address & BLOCK_MASK )
+      }
+    }
+
+    void clear( final int address ) {
+      final BitSet block = blocks.get( address >>> BLOCK_BITS )
+      if ( block != null ) {
+        synchronized( block ) {
+          block.clear( address & BLOCK_MASK )
+        }
+      }
+    }
+
+    private BitSet block( final int address ) {
+      final Integer key = address >>> BLOCK_BITS
+      BitSet block = blocks.get( key )
+      if ( block == null ) {
+        final BitSet newBlock = new BitSet( 1 << BLOCK_BITS )
+        block = blocks.putIfAbsent( key, newBlock )
+        if ( block == null ) block = newBlock
+      }
+      block
+    }
+  }
+
+  /**
+   * Persistence that keeps the bitmap up to date as addresses are created or removed
+   */
+  private final class BitmapPrivateAddressPersistence implements PrivateAddressPersistence {
+    private final PrivateAddressPersistence delegate
+
+    BitmapPrivateAddressPersistence( final PrivateAddressPersistence delegate ) {
+      this.delegate = delegate
+    }
+
+    @Override
+    Optional<PrivateAddress> tryCreate( final String address ) {
+      final Optional<PrivateAddress> created = delegate.tryCreate( address )
+      if ( created.present ) bitmap.set( PrivateAddresses.asInteger( address ) )
+      created
+    }
+
+    @Override
+    void teardown( final PrivateAddress address ) {
+      delegate.teardown( address )
+      bitmap.clear( PrivateAddresses.asInteger( address.name ) )
+    }
+
+    @Override
+    def <V> Optional<V> withFirstMatch( final PrivateAddress address,
+                                        final String ownerId,
+                                        final Closure<V> closure ) {
+      delegate.withFirstMatch( address, ownerId, closure )
+    }
+
+    @Override
+    void withMatching( final PrivateAddress address, final Closure<?> closure ) {
+      delegate.withMatching( address, closure )
+    }
+
+    @Override
+    PrivateAddressPersistence distinct( ) {
+      new BitmapPrivateAddressPersistence( delegate.distinct( ) )
+    }
+  }
+}
@@ -60,16 +60,22 @@ class EdgeNetworkingService extends NetworkingServiceSupport {
   @Override
   protected PrepareNetworkResourcesResponseType prepareWithRollback( final PrepareNetworkResourcesType request,
                                                                      final List<NetworkResource> resources ) {
+    final List<PrivateIPResource> privateIPResources = Lists.newArrayList( )
     request.getResources( ).each { NetworkResource networkResource ->
       switch( networkResource ) {
         case PublicIPResource:
           resources.addAll( preparePublicIp( request, (PublicIPResource) networkResource ) )
           break
         case PrivateIPResource:
-          resources.addAll( preparePrivateIp( request, (PrivateIPResource) networkResource ) )
+          if ( networkResource.value ) {
+            resources.addAll( preparePrivateIp( request, (PrivateIPResource) networkResource ) )
+          } else {
+            privateIPResources.add( (PrivateIPResource) networkResource )
+          }
           break
       }
     }
+    resources.addAll( preparePrivateIps( request, privateIPResources ) )
 
     PrepareNetworkResourcesResponseType.cast( request.reply( new PrepareNetworkResourcesResponseType(
         prepareNetworkResourcesResultType: new PrepareNetworkResourcesResultType(
@@ -125,6 +131,20 @@ class EdgeNetworkingService extends NetworkingServiceSupport {
     UpdateInstanceResourcesResponseType.cast( request.reply( new UpdateInstanceResourcesResponseType( ) ) )
   }
 
+  private Collection<NetworkResource> preparePrivateIps( final PrepareNetworkResourcesType request,
+                                                         final List<PrivateIPResource> privateIPResources ) {
+    if ( privateIPResources.isEmpty( ) ) return [ ]
+    final Iterable<Integer> addresses = NetworkConfigurations.getPrivateAddresses( request.availabilityZone )
+    final List<String> allocated = PrivateAddresses.allocate( addresses, privateIPResources.size( ) )
+    final List<NetworkResource> resources = Lists.newArrayListWithCapacity( privateIPResources.size( ) )
+    privateIPResources.eachWithIndex { PrivateIPResource privateIPResource, int index ->
+      resources.add( new PrivateIPResource(
+          value: allocated.get( index ),
+          ownerId: privateIPResource.ownerId ) )
+    }
+    resources
+  }
+
   private Collection<NetworkResource> preparePrivateIp( final PrepareNetworkResourcesType request,
                                                         final PrivateIPResource privateIPResource ) {
     PrivateIPResource resource = null
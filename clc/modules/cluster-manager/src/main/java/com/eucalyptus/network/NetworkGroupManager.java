@@ -194,7 +194,7 @@ public class NetworkGroupManager {
                   request.getSecurityGroupIdSet( ).isEmpty() ?
                       Predicates.<NetworkGroup>alwaysFalse() :
                       CloudMetadatas.filterByProperty( normalizeGroupIdentifiers( request.getSecurityGroupIdSet( ) ), NetworkGroups.groupId() ) ) )
-              .byPredicate( filter.asPredicate( ) )
+              .byPredicate( filter.asQueryPredicate( ) )
               .byPrivileges()
               .buildPredicate();
 
@@ -154,6 +154,10 @@ public class NetworkGroups {
   public static String        NETWORK_CONFIGURATION = "";
   @ConfigurableField( description = "Minimum interval between broadcasts of network information (seconds)." )
   public static Integer       MIN_BROADCAST_INTERVAL = 5;
+  @ConfigurableField( description = "Maximum interval between broadcasts of unchanged network information (seconds)." )
+  public static Integer       MAX_BROADCAST_INTERVAL = 60;
+  @ConfigurableField( description = "Minutes between reloads of in use private addresses from the database." )
+  public static Integer       PRIVATE_ADDRESS_RELOAD_INTERVAL = 5;
 
 
   public static class NetworkRangeConfiguration {
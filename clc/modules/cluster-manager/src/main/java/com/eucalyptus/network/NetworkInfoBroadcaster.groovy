@@ -47,6 +47,7 @@ import com.eucalyptus.network.config.NetworkConfiguration
 import com.eucalyptus.network.config.NetworkConfigurations
 import com.eucalyptus.network.config.Subnet
 import com.eucalyptus.system.Threads
+import com.eucalyptus.util.Callback
 import com.eucalyptus.util.Strings as EucaStrings
 import com.eucalyptus.util.TypeMapper
 import com.eucalyptus.util.TypeMappers
@@ -56,6 +57,7 @@ import com.eucalyptus.vm.VmInstance
 import com.eucalyptus.vm.VmInstance.VmState
 import com.eucalyptus.vm.VmInstances
 import com.eucalyptus.vm.VmNetworkConfig
+import com.google.common.base.Charsets
 import com.google.common.base.Function
 import com.google.common.base.Optional
 import com.google.common.base.Predicate
@@ -67,6 +69,7 @@ import com.google.common.collect.Iterables
 import com.google.common.collect.Maps
 import com.google.common.collect.Multimap
 import com.google.common.collect.Sets
+import com.google.common.hash.Hashing
 import edu.ucsb.eucalyptus.cloud.NodeInfo
 import edu.ucsb.eucalyptus.msgs.BroadcastNetworkInfoResponseType
 import groovy.transform.CompileStatic
@@ -75,10 +78,12 @@ import groovy.transform.PackageScope
 import org.apache.log4j.Logger
 
 import javax.xml.bind.JAXBContext
+import javax.xml.bind.Marshaller
 import java.util.concurrent.Callable
 import java.util.concurrent.ConcurrentMap
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
 
 import static com.eucalyptus.vm.VmInstance.VmStateSet.TORNDOWN
 
@@ -91,6 +96,15 @@ class NetworkInfoBroadcaster {
 
   private static final AtomicLong lastBroadcastTime = new AtomicLong( 0L );
   private static final ConcurrentMap<String,Long> activeBroadcastMap = Maps.<String,Long>newConcurrentMap( ) as ConcurrentMap<String, Long>
+  private static final ConcurrentMap<String,BroadcastVersion> lastBroadcastMap = Maps.<String,BroadcastVersion>newConcurrentMap( ) as ConcurrentMap<String, BroadcastVersion>
+  private static final AtomicReference<BroadcastVersion> currentVersion = new AtomicReference<>( new BroadcastVersion( 0L, '', 0L ) )
+  private static final Supplier<JAXBContext> jaxbContextSupplier = Suppliers.memoize( { JAXBContext.newInstance( "com.eucalyptus.cluster" ) } as Supplier<JAXBContext> )
+  private static final ThreadLocal<Marshaller> marshallerThreadLocal = new ThreadLocal<Marshaller>( ) {
+    @Override
+    protected Marshaller initialValue( ) {
+      jaxbContextSupplier.get( ).createMarshaller( )
+    }
+  }
   private static final EntityCache<VmInstance,VmInstanceNetworkView> instanceCache = new EntityCache<>( VmInstance.named(null), TypeMappers.lookup( VmInstance, VmInstanceNetworkView )  );
   private static final EntityCache<NetworkGroup,NetworkGroupNetworkView> securityGroupCache = new EntityCache<>( NetworkGroup.withNaturalId( null ), TypeMappers.lookup( NetworkGroup, NetworkGroupNetworkView )  );
 
@@ -137,25 +151,38 @@ class NetworkInfoBroadcaster {
         { Topology.lookup(Eucalyptus).inetAddress.hostAddress } as Supplier<String>,
         NetworkConfigurations.&loadSystemNameservers as Function<List<String>,List<String>> )
 
-    final JAXBContext jc = JAXBContext.newInstance( "com.eucalyptus.cluster" )
     final StringWriter writer = new StringWriter( 8192 )
-    jc.createMarshaller().marshal( info, writer )
+    marshallerThreadLocal.get( ).marshal( info, writer )
 
     final String networkInfo = writer.toString( )
+    final BroadcastVersion version = version( networkInfo )
     if ( logger.isTraceEnabled( ) ) {
-      logger.trace( "Broadcasting network information:\n${networkInfo}" )
+      logger.trace( "Broadcasting network information version ${version.version}:\n${networkInfo}" )
     }
 
-    final BroadcastNetworkInfoCallback callback = new BroadcastNetworkInfoCallback( networkInfo )
+    BroadcastNetworkInfoCallback callback = null
     clusters.each { Cluster cluster ->
+      final BroadcastVersion lastBroadcast = lastBroadcastMap.get( cluster.partition )
+      if ( lastBroadcast != null &&
+          lastBroadcast.hash == version.hash &&
+          lastBroadcast.timestamp + TimeUnit.SECONDS.toMillis( NetworkGroups.MAX_BROADCAST_INTERVAL ) > System.currentTimeMillis( ) ) {
+        logger.trace( "Skipping broadcast of unchanged network information version ${version.version} for partition ${cluster.partition}" )
+        return
+      }
       final Long broadcastTime = System.currentTimeMillis( )
       if ( null == activeBroadcastMap.putIfAbsent( cluster.partition, broadcastTime ) ) {
         try {
+          if ( callback == null ) callback = new BroadcastNetworkInfoCallback( networkInfo )
           AsyncRequests.newRequest( callback.newInstance( ) ).then( new UnconditionalCallback<BroadcastNetworkInfoResponseType>() {
             @Override
             void fire() {
               activeBroadcastMap.remove( cluster.partition, broadcastTime )
             }
+          } ).then( new Callback.Success<BroadcastNetworkInfoResponseType>() {
+            @Override
+            void fire( final BroadcastNetworkInfoResponseType response ) {
+              lastBroadcastMap.put( cluster.partition, new BroadcastVersion( version.version, version.hash, broadcastTime ) )
+            }
           } ).dispatch( cluster.configuration )
         } catch ( e ) {
           activeBroadcastMap.remove( cluster.partition, broadcastTime )
@@ -168,6 +195,31 @@ class NetworkInfoBroadcaster {
     }
   }
 
+  /**
+   * Get the version for the given network information, the version changes
+   * only when the content changes.
+   */
+  private static BroadcastVersion version( final String networkInfo ) {
+    final String hash = Hashing.sha256( ).hashString( networkInfo, Charsets.UTF_8 ).toString( )
+    BroadcastVersion current = currentVersion.get( )
+    while ( current.hash != hash ) {
+      final BroadcastVersion next = new BroadcastVersion( current.version + 1, hash, System.currentTimeMillis( ) )
+      if ( currentVersion.compareAndSet( current, next ) ) {
+        current = next
+      } else {
+        current = currentVersion.get( )
+      }
+    }
+    current
+  }
+
+  @Immutable
+  private static class BroadcastVersion {
+    long version
+    String hash
+    long timestamp
+  }
+
   @PackageScope
   static NetworkInfo buildNetworkConfiguration( final Optional<NetworkConfiguration> networkConfiguration,
                                                 final Supplier<List<Cluster>> clusterSupplier,
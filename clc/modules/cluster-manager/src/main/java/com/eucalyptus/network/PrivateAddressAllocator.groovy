@@ -32,6 +32,11 @@ interface PrivateAddressAllocator {
 
   String allocate( Iterable<Integer> addresses ) throws NotEnoughResourcesException
 
+  /**
+   * Allocate the given number of addresses, all or nothing.
+   */
+  List<String> allocate( Iterable<Integer> addresses, int count ) throws NotEnoughResourcesException
+
   void associate( String address, VmInstance instance ) throws ResourceAllocationException
 
   void release( String address, String ownerId )
@@ -24,6 +24,7 @@ import com.eucalyptus.cloud.util.ResourceAllocationException
 import com.eucalyptus.util.RestrictedTypes
 import com.eucalyptus.vm.VmInstance
 import com.google.common.collect.Iterables
+import com.google.common.collect.Lists
 import groovy.transform.CompileStatic
 import org.apache.log4j.Logger
 
@@ -49,11 +50,30 @@ abstract class PrivateAddressAllocatorSupport implements PrivateAddressAllocator
   @Override
   String allocate( Iterable<Integer> addresses ) throws NotEnoughResourcesException {
     allocate( addresses, { Integer address ->
-      getDistinctPersistence( ).tryCreate( PrivateAddresses.fromInteger( address.intValue( ) ) )
-          .transform( RestrictedTypes.toDisplayName( ) ).orNull( )
+      tryCreate( address )
     } as Closure<String>) ?: typedThrow(String){ new NotEnoughResourcesException( 'Insufficient addresses' ) }
   }
 
+  @Override
+  List<String> allocate( Iterable<Integer> addresses, int count ) throws NotEnoughResourcesException {
+    final List<String> allocated = Lists.newArrayListWithCapacity( count )
+    if ( count > 0 ) {
+      // single pass over the candidates, the allocator stops once the last address is created
+      allocate( addresses, { Integer address ->
+        final String value = tryCreate( address )
+        if ( value ) allocated.add( value )
+        allocated.size( ) >= count ? value : null
+      } as Closure<String> )
+    }
+    if ( allocated.size( ) < count ) {
+      for ( String address : allocated ) {
+        release( address, null )
+      }
+      throw new NotEnoughResourcesException( 'Insufficient addresses' )
+    }
+    allocated
+  }
+
   @Override
   void associate( String address, VmInstance instance ) throws ResourceAllocationException {
     getPersistence( ).withFirstMatch( PrivateAddress.named( address ), null ) { PrivateAddress privateAddress ->
@@ -101,6 +121,9 @@ abstract class PrivateAddressAllocatorSupport implements PrivateAddressAllocator
     }
   }
 
+  /**
+   * Allocate using the given closure, which returns null if an address is not available.
+   */
   protected abstract String allocate( Iterable<Integer> addresses, Closure<String> allocator )
 
   protected PrivateAddressPersistence getPersistence( ){
@@ -111,6 +134,11 @@ abstract class PrivateAddressAllocatorSupport implements PrivateAddressAllocator
     persistence.distinct( )
   }
 
+  protected String tryCreate( Integer address ) {
+    getDistinctPersistence( ).tryCreate( PrivateAddresses.fromInteger( address.intValue( ) ) )
+        .transform( RestrictedTypes.toDisplayName( ) ).orNull( )
+  }
+
   @SuppressWarnings("GroovyUnusedDeclaration")
   protected final static <T,E extends Exception> T typedThrow( Class<T> type, Closure<E> closure ) throws E {
     throw closure.call( )
@@ -63,6 +63,15 @@ class PrivateAddresses {
     allocator.allocate( addresses )
   }
 
+  /**
+   * Allocate the given number of private addresses, all or nothing.
+   *
+   * <p>There must not be an active transaction for private addresses.</p>
+   */
+  static List<String> allocate( Iterable<Integer> addresses, int count ) throws NotEnoughResourcesException {
+    allocator.allocate( addresses, count )
+  }
+
   static void associate( String address, VmInstance instance ) throws ResourceAllocationException {
     allocator.associate( address, instance )
   }
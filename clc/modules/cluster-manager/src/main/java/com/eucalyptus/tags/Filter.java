@@ -32,26 +32,37 @@ import com.google.common.collect.Maps;
 /**
  * Filter can be used to filter collections or queries.
  *
- * <p>For query filtering the results should be passed though a collection
- * filter as the database filters cannot always fully restrict the results.</p>
+ * <p>For query filtering the results should be passed though the query
+ * predicate as the database filters cannot always fully restrict the
+ * results.</p>
  */
 public class Filter {
 
   @Nonnull private final Map<String,String> aliases;
   @Nonnull private final Criterion criterion;
   @Nonnull private final Predicate<Object> predicate;
+  @Nonnull private final Predicate<Object> queryPredicate;
   private final boolean filteringOnTags;
   
   Filter( @Nonnull final Map<String,String> aliases,
           @Nonnull final Criterion criterion,
           @Nonnull final Predicate<Object> predicate,
+          @Nonnull final Predicate<Object> queryPredicate,
           final boolean filteringOnTags ) {
     this.aliases = aliases;
     this.criterion = criterion;
     this.predicate = predicate;
+    this.queryPredicate = queryPredicate;
     this.filteringOnTags = filteringOnTags;
   }
 
+  Filter( @Nonnull final Map<String,String> aliases,
+          @Nonnull final Criterion criterion,
+          @Nonnull final Predicate<Object> predicate,
+          final boolean filteringOnTags ) {
+    this( aliases, criterion, predicate, predicate, filteringOnTags );
+  }
+
   Filter( @Nonnull final Predicate<Object> predicate,
           final boolean filteringOnTags ) {
     this( Collections.<String,String>emptyMap(),
@@ -94,6 +105,20 @@ public class Filter {
     return predicate;  
   }
 
+  /**
+   * Filter as a Guava Predicate for results of a query using this filter.
+   *
+   * <p>The query predicate omits any conditions that are fully enforced by
+   * the criterion so must only be used for query results.</p>
+   *
+   * @return The predicate
+   * @see #asCriterion()
+   */
+  @Nonnull
+  public Predicate<Object> asQueryPredicate() {
+    return queryPredicate;
+  }
+
   /**
    * Does the filter use tags?
    *
@@ -127,6 +152,7 @@ public class Filter {
       aliases,
       and,
       Predicates.and( this.predicate, filter.predicate ),
+      Predicates.and( this.queryPredicate, filter.queryPredicate ),
       this.filteringOnTags || filter.filteringOnTags
     );
   }
@@ -35,6 +35,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import org.apache.log4j.Logger;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Junction;
@@ -64,6 +65,7 @@ import com.google.common.collect.Sets;
  */
 public abstract class FilterSupport<RT> {
 
+  private static final Logger logger = Logger.getLogger( FilterSupport.class );
   private static final ConcurrentMap<SupportKey,FilterSupport> supportMap = Maps.newConcurrentMap();
 
   private final Class<RT> resourceClass;
@@ -73,6 +75,7 @@ public abstract class FilterSupport<RT> {
   private final String resourceFieldName;
   private final Set<String> internalFilters;
   private final Map<String,Function<? super String,Predicate<? super RT>>> predicateFunctions;
+  private final Map<String,Class<?>> propertyTypes;
   private final Map<String,String> aliases;
   private final Map<String,PersistenceFilter> persistenceFilters;
 
@@ -90,6 +93,7 @@ public abstract class FilterSupport<RT> {
     this.resourceFieldName = builder.resourceFieldName;
     this.internalFilters = builder.buildInternalFilters();
     this.predicateFunctions = builder.buildPredicateFunctions();
+    this.propertyTypes = builder.buildPropertyTypes();
     this.aliases = builder.buildAliases();
     this.persistenceFilters = builder.buildPersistenceFilters();
   }
@@ -129,6 +133,7 @@ public abstract class FilterSupport<RT> {
     private final Set<String> internalFilters = Sets.newHashSet();
     private final Map<String,Function<? super String,Predicate<? super RT>>> predicateFunctions =
         Maps.newHashMap();
+    private final Map<String,Class<?>> propertyTypes = Maps.newHashMap();
     private final Map<String,String> aliases = Maps.newHashMap();
     private final Map<String,PersistenceFilter> persistenceFilters = Maps.newHashMap();
     private Class<? extends Tag> tagClass;
@@ -182,6 +187,7 @@ public abstract class FilterSupport<RT> {
     public Builder<RT> withBooleanProperty( final String filterName,
                                             final Function<? super RT,Boolean> booleanExtractor ) {
       predicateFunctions.put( filterName,  FilterSupport.<RT>booleanFilter( booleanExtractor ) );
+      propertyTypes.put( filterName, Boolean.class );
       return this;
     }
 
@@ -208,6 +214,7 @@ public abstract class FilterSupport<RT> {
     public Builder<RT> withDateProperty( final String filterName,
                                          final Function<? super RT,Date> dateExtractor ) {
       predicateFunctions.put( filterName,  FilterSupport.<RT>dateFilter( dateExtractor ) );
+      propertyTypes.put( filterName, Date.class );
       return this;
     }
 
@@ -234,6 +241,7 @@ public abstract class FilterSupport<RT> {
     public Builder<RT> withIntegerProperty( final String filterName,
                                             final Function<? super RT,Integer> integerExtractor ) {
       predicateFunctions.put( filterName,  FilterSupport.<RT>intFilter( integerExtractor ) );
+      propertyTypes.put( filterName, Integer.class );
       return this;
     }
 
@@ -286,6 +294,7 @@ public abstract class FilterSupport<RT> {
     public Builder<RT> withStringProperty( final String filterName,
                                            final Function<? super RT,String> stringExtractor ) {
       predicateFunctions.put( filterName,  FilterSupport.<RT>stringFilter( stringExtractor ) );
+      propertyTypes.put( filterName, String.class );
       return this;
     }
 
@@ -303,6 +312,7 @@ public abstract class FilterSupport<RT> {
                                                    final Function<? super RT,String> stringExtractor ) {
       internalFilters.add( filterName );
       predicateFunctions.put( filterName,  FilterSupport.<RT>stringFilter( stringExtractor ) );
+      propertyTypes.put( filterName, String.class );
       return this;
     }
 
@@ -520,6 +530,10 @@ public abstract class FilterSupport<RT> {
       return ImmutableMap.copyOf( predicateFunctions );
     }
 
+    private Map<String,Class<?>> buildPropertyTypes() {
+      return ImmutableMap.copyOf( propertyTypes );
+    }
+
     private Set<String> buildInternalFilters() {
       return ImmutableSet.copyOf( internalFilters );
     }
@@ -584,37 +598,51 @@ public abstract class FilterSupport<RT> {
   public Filter generate( final Map<String, Set<String>> filters,
                           final boolean allowInternalFilters,
                           final String accountId ) throws InvalidFilterException {
-    // Construct collection filter
-    final List<Predicate<Object>> and = Lists.newArrayList();
-    for ( final Map.Entry<String,Set<String>> filter : Iterables.filter( filters.entrySet(), Predicates.not( isTagFilter() ) ) ) {
-      final List<Predicate<Object>> or = Lists.newArrayList();
-      for ( final String value : filter.getValue() ) {
-        final Function<? super String,Predicate<? super RT>> predicateFunction = predicateFunctions.get( filter.getKey() );
-        if ( predicateFunction == null || (!allowInternalFilters && internalFilters.contains( filter.getKey() ) ) ) {
-          throw InvalidFilterException.forName( filter.getKey() );
-        }
-        final Predicate<? super RT> valuePredicate = predicateFunction.apply( value );
-        or.add( typedPredicate( valuePredicate ) );
-      }
-      and.add( Predicates.or( or ) );
-    }
-
     // Construct database filter and aliases
     final Junction conjunction = Restrictions.conjunction();
     final Map<String,String> aliases = Maps.newHashMap();
+    final Set<String> persistenceOnlyFilters = Sets.newHashSet();
     for ( final Map.Entry<String,Set<String>> filter : Iterables.filter( filters.entrySet(), Predicates.not( isTagFilter() ) ) ) {
       final Junction disjunction = Restrictions.disjunction();
+      final PersistenceFilter persistenceFilter = persistenceFilters.get( filter.getKey() );
+      boolean persistenceOnly = persistenceFilter != null &&
+          persistenceFilter.isEquivalentTo( propertyTypes.get( filter.getKey() ) );
       for ( final String value : filter.getValue() ) {
-        final PersistenceFilter persistenceFilter = persistenceFilters.get( filter.getKey() );
         if ( persistenceFilter != null ) {
           final Object persistentValue = persistenceFilter.value( value );
           if ( persistentValue != null ) {
             for ( final String alias : persistenceFilter.getAliases() ) aliases.put( alias, this.aliases.get( alias ) );
             disjunction.add( buildRestriction( persistenceFilter.getProperty(), persistentValue ) );
-          } // else, there is no valid DB filter for the given value (e.g. wildcard for integer value)
+          } else { // there is no valid DB filter for the given value (e.g. wildcard for integer value)
+            persistenceOnly = false;
+          }
         }
       }
       conjunction.add( disjunction );
+      if ( persistenceOnly ) persistenceOnlyFilters.add( filter.getKey() );
+    }
+
+    // Construct collection filter, query filter excludes filters fully handled by the database
+    final List<Predicate<Object>> and = Lists.newArrayList();
+    final List<Predicate<Object>> queryAnd = Lists.newArrayList();
+    for ( final Map.Entry<String,Set<String>> filter : Iterables.filter( filters.entrySet(), Predicates.not( isTagFilter() ) ) ) {
+      final List<Predicate<Object>> or = Lists.newArrayList();
+      for ( final String value : filter.getValue() ) {
+        final Function<? super String,Predicate<? super RT>> predicateFunction = predicateFunctions.get( filter.getKey() );
+        if ( predicateFunction == null || (!allowInternalFilters && internalFilters.contains( filter.getKey() ) ) ) {
+          throw InvalidFilterException.forName( filter.getKey() );
+        }
+        final Predicate<? super RT> valuePredicate = predicateFunction.apply( value );
+        or.add( typedPredicate( valuePredicate ) );
+      }
+      and.add( Predicates.or( or ) );
+      if ( !persistenceOnlyFilters.contains( filter.getKey() ) ) queryAnd.add( Predicates.or( or ) );
+      if ( logger.isTraceEnabled() ) {
+        logger.trace( "Filter plan for " + resourceClass.getSimpleName() + " " + filter.getKey() + ": " + (
+            persistenceOnlyFilters.contains( filter.getKey() ) ? "database" :
+            persistenceFilters.containsKey( filter.getKey() ) ? "database and predicate" :
+            "predicate" ) );
+      }
     }
 
     // Construct database filter and aliases for tags
@@ -634,10 +662,13 @@ public abstract class FilterSupport<RT> {
         }
       }
       tagJunctions.add( disjunction );
+      if ( logger.isTraceEnabled() ) {
+        logger.trace( "Filter plan for " + resourceClass.getSimpleName() + " " + filterName + ": database (tag sub-select)" );
+      }
     }
     if ( tagPresent ) conjunction.add( tagCriterion( accountId, tagJunctions ) );
 
-    return new Filter( aliases, conjunction, Predicates.and( and ), tagPresent );
+    return new Filter( aliases, conjunction, Predicates.and( and ), Predicates.and( queryAnd ), tagPresent );
   }
 
   public static FilterSupport forResource( @Nonnull final Class<?> metadataClass,
@@ -1075,7 +1106,7 @@ public abstract class FilterSupport<RT> {
    */
   public static class PersistenceFilter {
     public enum Type {
-      Integer {
+      Integer( java.lang.Integer.class ) {
         @Override
         public Function<String, ?> valueFunction() {
           return new Function<String,Integer>() {
@@ -1090,7 +1121,7 @@ public abstract class FilterSupport<RT> {
           };
         }
       },
-      Long {
+      Long( java.lang.Long.class ) {
         @Override
         public Function<String, ?> valueFunction() {
           return new Function<String,Long>() {
@@ -1105,7 +1136,7 @@ public abstract class FilterSupport<RT> {
           };
         }
       },
-      Date {
+      Date( java.util.Date.class ) {
         @Override
         public Function<String, ?> valueFunction() {
           return new Function<String,java.util.Date>() {
@@ -1128,7 +1159,7 @@ public abstract class FilterSupport<RT> {
           return match;
         }
       },
-      Boolean {
+      Boolean( java.lang.Boolean.class ) {
         @Override
         public Function<String, ?> valueFunction() {
           return new Function<String,Boolean>() {
@@ -1146,8 +1177,18 @@ public abstract class FilterSupport<RT> {
         }
       };
 
+      private final Class<?> valueClass;
+
+      private Type( final Class<?> valueClass ) {
+        this.valueClass = valueClass;
+      }
+
       public abstract Function<String,?> valueFunction();
 
+      Class<?> valueClass() {
+        return valueClass;
+      }
+
       boolean matches( final Object targetValue,
                        final Object resourceValue  ) {
         return targetValue.equals( resourceValue );
@@ -1157,22 +1198,23 @@ public abstract class FilterSupport<RT> {
     @Nonnull private final String property;
     @Nonnull private final Set<String> aliases;
     @Nonnull private final Function<String,?> valueFunction;
+    @Nullable private final Class<?> valueClass;
 
     public static PersistenceFilter persistenceFilter( final String property,
                                                        final Set<String> aliases ) {
-      return persistenceFilter( property, aliases, Functions.<String>identity() );
+      return new PersistenceFilter( property, aliases, Functions.<String>identity(), String.class );
     }
 
     public static PersistenceFilter persistenceFilter( final String property,
                                                        final Set<String> aliases,
                                                        final Function<String,?> valueFunction ) {
-      return new PersistenceFilter( property, aliases, valueFunction );
+      return new PersistenceFilter( property, aliases, valueFunction, null );
     }
 
     public static PersistenceFilter persistenceFilter( final String property,
                                                        final Set<String> aliases,
                                                        final Type type ) {
-      return new PersistenceFilter( property, aliases, type.valueFunction() );
+      return new PersistenceFilter( property, aliases, type.valueFunction(), type.valueClass() );
     }
 
     @Nonnull
@@ -1195,12 +1237,28 @@ public abstract class FilterSupport<RT> {
       return valueFunction;
     }
 
+    /**
+     * Is the restriction for this filter equivalent to the given property?
+     *
+     * <p>A restriction is equivalent when it is on a column of the resource
+     * (no joins) and uses the same value conversion as the predicate for the
+     * property.</p>
+     *
+     * @param propertyType The type of the (single valued) filter property
+     * @return True if the predicate is not required for this filter
+     */
+    boolean isEquivalentTo( @Nullable final Class<?> propertyType ) {
+      return aliases.isEmpty( ) && valueClass != null && valueClass.equals( propertyType );
+    }
+
     private PersistenceFilter( @Nonnull final String property,
                                @Nonnull final Set<String> aliases,
-                               @Nonnull final Function<String,?> valueFunction ) {
+                               @Nonnull final Function<String,?> valueFunction,
+                               @Nullable final Class<?> valueClass ) {
       this.property = property;
       this.aliases = aliases;
       this.valueFunction = valueFunction;
+      this.valueClass = valueClass;
     }
   }
 
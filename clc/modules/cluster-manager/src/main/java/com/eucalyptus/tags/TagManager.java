@@ -200,7 +200,7 @@ public class TagManager {
     Iterables.addAll( reply.getTagSet(), Iterables.transform(
         ordering.sortedCopy( Tags.list(
             context.getUserFullName().asAccountFullName(),
-            Predicates.and( filter.asPredicate(), RestrictedTypes.<Tag>filterPrivileged() ),
+            Predicates.and( filter.asQueryPredicate(), RestrictedTypes.<Tag>filterPrivileged() ),
             filter.asCriterion(),
             filter.getAliases() ) ),
         TypeMappers.lookup( Tag.class, TagInfo.class )
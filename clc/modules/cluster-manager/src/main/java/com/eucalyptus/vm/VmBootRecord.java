@@ -73,6 +73,7 @@ import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
 import javax.persistence.PreRemove;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Parent;
@@ -115,10 +116,12 @@ public class VmBootRecord {
   private String                  platform;
   @ElementCollection
   @CollectionTable( name = "metadata_instances_persistent_volumes" )
+  @BatchSize( size = 50 )
   @Cache( usage = CacheConcurrencyStrategy.TRANSACTIONAL )
   private Set<VmVolumeAttachment> persistentVolumes = Sets.newHashSet( );
   @ElementCollection
   @CollectionTable( name = "metadata_instances_ephemeral_storage" )
+  @BatchSize( size = 50 )
   @Cache( usage = CacheConcurrencyStrategy.TRANSACTIONAL )
   private Set<VmEphemeralAttachment> ephmeralStorage = Sets.newHashSet( );
   
@@ -127,6 +127,7 @@ import com.eucalyptus.tags.Tags;
 import com.eucalyptus.util.EucalyptusCloudException;
 import com.eucalyptus.util.Exceptions;
 import com.eucalyptus.util.OwnerFullName;
+import com.eucalyptus.util.Pair;
 import com.eucalyptus.util.RestrictedTypes;
 import com.eucalyptus.util.TypeMappers;
 import com.eucalyptus.util.async.AsyncRequests;
@@ -260,45 +261,36 @@ public class VmControl {
       ? null
       : ctx.getUserFullName( ).asAccountFullName( );
     try {
-      final List<VmInstance> instances =
-          VmInstances.list( ownerFullName, filter.asCriterion(), filter.getAliases(), Predicates.and( requestedAndAccessible, VmInstances.initialize( ) ) );
-      final Map<String,List<Tag>> tagsMap = TagSupport.forResourceClass( VmInstance.class )
-          .getResourceTagMap( AccountFullName.getInstance( ctx.getAccount() ),
-              Iterables.transform( instances, CloudMetadatas.toDisplayName() ) );
-
-      for ( final VmInstance vm : instances ) {
-        if ( !identifiers.isEmpty( ) && !identifiers.contains( vm.getInstanceId( ) ) ) {
-          continue;
-        }
-        final EntityTransaction db = Entities.get( VmInstance.class );
-        try {
-          VmInstance v = VmState.TERMINATED.apply( vm ) ? vm : Entities.merge( vm );
-          if ( instanceMap.put( v.getReservationId( ), VmInstances.transform( v ) ) && !reservations.containsKey( v.getReservationId( ) ) ) {
-            reservations.put( v.getReservationId( ), new ReservationInfoType( v.getReservationId( ), v.getOwner( ).getAccountNumber( ), v.getNetworkMap( ) ) );
-          }
-        } catch ( Exception ex ) {
-          Logs.exhaust( ).error( ex, ex );
-          db.rollback( );
-          try {
-            if ( vm != null ) {
+      final List<Pair<String,RunningInstancesItemType>> items = VmInstances.listAndTransform(
+          ownerFullName,
+          filter.asCriterion(),
+          filter.getAliases(),
+          requestedAndAccessible,
+          new Function<VmInstance,Pair<String,RunningInstancesItemType>>( ) {
+            @Override
+            public Pair<String,RunningInstancesItemType> apply( final VmInstance vm ) {
               try {
-                RunningInstancesItemType ret = VmInstances.transform( vm );
-                if ( ret != null && vm.getReservationId( ) != null ) {
-                  if ( instanceMap.put( vm.getReservationId( ), VmInstances.transform( vm ) ) && !reservations.containsKey( vm.getReservationId( ) ) ) {
-                    reservations.put( vm.getReservationId( ), TypeMappers.transform( vm, ReservationInfoType.class ) );
-                  }
+                final RunningInstancesItemType item = VmInstances.transform( vm );
+                if ( item == null || vm.getReservationId( ) == null ) {
+                  return null;
+                }
+                if ( !reservations.containsKey( vm.getReservationId( ) ) ) {
+                  reservations.put( vm.getReservationId( ), new ReservationInfoType( vm.getReservationId( ), vm.getOwner( ).getAccountNumber( ), vm.getNetworkMap( ) ) );
                 }
-              } catch ( Exception ex1 ) {
-                LOG.error( ex1, ex1 );
+                return Pair.pair( vm.getReservationId( ), item );
+              } catch ( Exception ex ) {
+                LOG.error( ex, ex );
+                return null;
               }
             }
-          } catch ( Exception ex1 ) {
-            LOG.error( ex1, ex1 );
-          }
-        } finally {
-          if (db.isActive()) db.rollback( );
-        }
+          } );
+      final List<String> instanceIds = Lists.newArrayList( );
+      for ( final Pair<String,RunningInstancesItemType> item : Iterables.filter( items, Predicates.notNull( ) ) ) {
+        instanceMap.put( item.getLeft( ), item.getRight( ) );
+        instanceIds.add( item.getRight( ).getInstanceId( ) );
       }
+      final Map<String,List<Tag>> tagsMap = TagSupport.forResourceClass( VmInstance.class )
+          .getResourceTagMap( AccountFullName.getInstance( ctx.getAccount() ), instanceIds );
       List<ReservationInfoType> replyReservations = reply.getReservationSet( );
       for ( ReservationInfoType r : reservations.values( ) ) {
         Collection<RunningInstancesItemType> instanceSet = instanceMap.get( r.getReservationId( ) );
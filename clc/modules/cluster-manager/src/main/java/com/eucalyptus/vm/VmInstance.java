@@ -99,6 +99,7 @@ import javax.persistence.PreRemove;
 import javax.persistence.Table;
 import org.apache.log4j.Logger;
 import org.bouncycastle.util.encoders.Base64;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.NotFound;
@@ -256,6 +257,7 @@ public class VmInstance extends UserMetadata<VmState> implements VmInstanceMetad
   @NotFound( action = NotFoundAction.IGNORE )
   @ManyToMany( cascade = { CascadeType.ALL },
                fetch = FetchType.LAZY )
+  @BatchSize( size = 50 )
   @Cache( usage = CacheConcurrencyStrategy.TRANSACTIONAL )
   private Set<NetworkGroup>    networkGroups    = Sets.newHashSet( );
   
@@ -271,6 +273,7 @@ public class VmInstance extends UserMetadata<VmState> implements VmInstanceMetad
   @Cache( usage = CacheConcurrencyStrategy.TRANSACTIONAL )
   private PrivateNetworkIndex  networkIndex;
  
+  @BatchSize( size = 50 )
   @OneToMany( fetch = FetchType.LAZY, cascade = CascadeType.REMOVE, orphanRemoval = true, mappedBy = "instance" )
   private Collection<VmInstanceTag> tags;
   
@@ -124,6 +124,7 @@ import com.eucalyptus.configurable.PropertyChangeListener;
 import com.eucalyptus.crypto.util.B64;
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.entities.TransactionException;
+import com.eucalyptus.entities.TransactionResource;
 import com.eucalyptus.event.ClockTick;
 import com.eucalyptus.event.EventListener;
 import com.eucalyptus.event.ListenerRegistry;
@@ -159,6 +160,7 @@ import com.eucalyptus.vm.VmInstance.VmStateSet;
 import com.eucalyptus.vm.VmVolumeAttachment.NonTransientVolumeException;
 import com.eucalyptus.vmtypes.VmType;
 import com.eucalyptus.vmtypes.VmTypes;
+import com.google.common.base.CharMatcher;
 import com.google.common.base.Enums;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
@@ -857,6 +859,43 @@ public class VmInstances {
     ) );
   }
 
+  /**
+   * List matching instances and transform them within a single read-only
+   * transaction.
+   *
+   * <p>The transform is applied while the session is open so any lazy
+   * associations it uses are batch loaded rather than requiring a merge
+   * (and transaction) per instance. The transform must not modify the
+   * instances.</p>
+   */
+  public static <T> List<T> listAndTransform( @Nullable final OwnerFullName ownerFullName,
+                                              final Criterion criterion,
+                                              final Map<String,String> aliases,
+                                              @Nullable final Predicate<? super VmInstance> predicate,
+                                              @Nonnull final Function<? super VmInstance,T> transform ) {
+    final Predicate<VmInstance> filter = Predicates.and(
+        RestrictedTypes.filterByOwner( ownerFullName ),
+        checkPredicate( predicate )
+    );
+    final List<T> results = Lists.newArrayList( );
+    try ( final TransactionResource db = Entities.readOnlyTransactionFor( VmInstance.class ) ) {
+      final List<VmInstance> instances =
+          Entities.query( VmInstance.named( ownerFullName, null ), true, criterion, aliases );
+      for ( final VmInstance vm : Iterables.filter( instances, filter ) ) {
+        results.add( transform.apply( vm ) );
+      }
+      db.commit( );
+    } catch ( final Exception ex ) {
+      LOG.error( ex );
+      Logs.extreme( ).error( ex, ex );
+      results.clear( );
+    }
+    for ( final VmInstance vm : Collections2.filter( terminateCache.values( ), filter ) ) {
+      results.add( transform.apply( vm ) );
+    }
+    return results;
+  }
+
   public static List<VmInstance> list( @Nullable String instanceId,
                                        @Nullable Predicate<? super VmInstance> predicate ) {
     return list( null, instanceId, predicate );
@@ -1205,6 +1244,7 @@ public class VmInstances {
           .withPersistenceFilter( "launch-index", "launchRecord.launchIndex", Collections.<String>emptySet(), PersistenceFilter.Type.Integer )
           .withPersistenceFilter( "launch-time", "launchRecord.launchTime", Collections.<String>emptySet(), PersistenceFilter.Type.Date )
           .withPersistenceFilter( "owner-id", "ownerAccountNumber" )
+          .withPersistenceFilter( "private-ip-address", "networkConfig.privateAddress", Collections.<String>emptySet(), VmInstancePersistenceValueFunctions.LITERAL_ADDRESS )
           .withPersistenceFilter( "ramdisk-id", "image.ramdiskId", Sets.newHashSet("bootRecord.machineImage") )
           .withPersistenceFilter( "reservation-id", "vmId.reservationId", Collections.<String>emptySet() )
       );
@@ -1595,6 +1635,23 @@ public class VmInstances {
     },
   }
 
+  private enum VmInstancePersistenceValueFunctions implements Function<String,String> {
+    /**
+     * Literal addresses only, the display address is used for anything that
+     * could match a default or torn down instance.
+     */
+    LITERAL_ADDRESS {
+      @Override
+      public String apply( final String address ) {
+        return address == null || address.isEmpty( ) ||
+            CharMatcher.anyOf( "*?\\" ).matchesAnyOf( address ) ||
+            VmNetworkConfig.DEFAULT_IP.equals( address ) ?
+                null :
+                address;
+      }
+    },
+  }
+
   private enum VmInstanceToVmBundleTask implements Function<VmInstance,VmBundleTask> {
     INSTANCE {
       @Override
@@ -75,6 +75,7 @@ import javax.persistence.Embeddable;
 import javax.persistence.Transient;
 
 import org.apache.log4j.Logger;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Parent;
@@ -96,6 +97,7 @@ public class VmVolumeState {
   private VmInstance                    vmInstance;
   @ElementCollection
   @CollectionTable( name = "metadata_instances_volume_attachments" )
+  @BatchSize( size = 50 )
   @Cache( usage = CacheConcurrencyStrategy.TRANSACTIONAL )
   private final Set<VmVolumeAttachment> attachments = Sets.newHashSet( );
   
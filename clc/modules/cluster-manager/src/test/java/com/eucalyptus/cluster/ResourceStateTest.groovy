@@ -0,0 +1,182 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cluster
+
+import com.eucalyptus.cluster.ResourceState.VmTypeAvailability
+import com.eucalyptus.vmtypes.VmType
+import groovy.transform.CompileStatic
+import org.junit.Ignore
+import org.junit.Test
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+import static org.junit.Assert.*
+
+/**
+ * Unit tests for resource state capacity reservation
+ */
+@CompileStatic
+class ResourceStateTest {
+
+  @Test
+  void testReserve( ) {
+    VmTypeAvailability availability = availability( 10 )
+    assertEquals( 'reserved', 4, availability.reserve( 2, 4 ) )
+    assertEquals( 'available', 6, availability.getAvailable( ) )
+    assertEquals( 'reserved', 6, availability.reserve( 2, 8 ) )
+    assertEquals( 'available', 0, availability.getAvailable( ) )
+    assertEquals( 'reserved', -1, availability.reserve( 1, 1 ) )
+    assertEquals( 'available', 0, availability.getAvailable( ) )
+  }
+
+  @Test
+  void testDecrementAndReduce( ) {
+    VmTypeAvailability availability = availability( 10 )
+    availability.reduceTo( 12 )
+    assertEquals( 'available', 10, availability.getAvailable( ) )
+    availability.reduceTo( 7 )
+    assertEquals( 'available', 7, availability.getAvailable( ) )
+    availability.decrement( 10 )
+    assertEquals( 'available', 0, availability.getAvailable( ) )
+  }
+
+  @Test
+  void testConcurrentReserve( ) {
+    int capacity = 10000
+    VmTypeAvailability availability = availability( capacity )
+    ExecutorService executor = Executors.newFixedThreadPool( 16 )
+    try {
+      CountDownLatch start = new CountDownLatch( 1 )
+      List<Future<Integer>> results = ( 1..16 ).collect{
+        executor.submit( {
+          start.await( )
+          int reserved = 0
+          int quantity
+          while ( ( quantity = availability.reserve( 1, 3 ) ) > 0 ) {
+            reserved += quantity
+          }
+          reserved
+        } as Callable<Integer> )
+      }
+      start.countDown( )
+      int reserved = (int) results.sum{ Future<Integer> result -> result.get( ) }
+      assertEquals( 'total reserved', capacity, reserved )
+      assertEquals( 'available', 0, availability.getAvailable( ) )
+    } finally {
+      executor.shutdownNow( )
+    }
+  }
+
+  @Test
+  void testConcurrentMultiTypeReserve( ) {
+    int capacity = 3000
+    List<VmType> types = [
+        VmType.create( 'm1.small', 1, 5, 256 ),
+        VmType.create( 'c1.medium', 1, 5, 512 ),
+        VmType.create( 'm1.large', 2, 10, 512 ),
+    ]
+    ResourceState state = new ResourceState( 'cluster', types )
+    types.each{ VmType type ->
+      state.getAvailability( type.getName( ) ).setAvailable( capacity )
+    }
+    ExecutorService executor = Executors.newFixedThreadPool( 12 )
+    try {
+      CountDownLatch start = new CountDownLatch( 1 )
+      List<Future<Integer>> results = ( 0..<12 ).collect{ int thread ->
+        String typeName = types.get( thread % types.size( ) ).getName( )
+        executor.submit( {
+          start.await( )
+          int reserved = 0
+          int quantity
+          while ( ( quantity = state.reserve( typeName, 1, 2 ) ) > 0 ) {
+            reserved += quantity
+          }
+          reserved
+        } as Callable<Integer> )
+      }
+      start.countDown( )
+      int reserved = (int) results.sum{ Future<Integer> result -> result.get( ) }
+      assertEquals( 'total reserved', capacity, reserved )
+      types.each{ VmType type ->
+        assertEquals( "available ${type.getName( )}".toString( ), 0, state.getAvailability( type.getName( ) ).getAvailable( ) )
+      }
+    } finally {
+      executor.shutdownNow( )
+    }
+  }
+
+  /**
+   * Reservation throughput and latency with a stand-in cluster controller
+   * resetting availability as a resource update would.
+   */
+  @Ignore("Manual development test")
+  @Test
+  void testReservationLoad( ) {
+    int threads = 32
+    int reservationsPerThread = 100000
+    VmTypeAvailability availability = availability( Integer.MAX_VALUE )
+    AtomicBoolean done = new AtomicBoolean( false )
+    ExecutorService executor = Executors.newFixedThreadPool( threads + 1 )
+    try {
+      executor.submit( {
+        while ( !done.get( ) ) {
+          availability.setAvailable( Integer.MAX_VALUE )
+          Thread.sleep( 10 )
+        }
+      } as Runnable )
+      CountDownLatch start = new CountDownLatch( 1 )
+      List<Future<long[]>> results = ( 1..threads ).collect{
+        executor.submit( {
+          start.await( )
+          long[] latencies = new long[ reservationsPerThread ]
+          for ( int i = 0; i < reservationsPerThread; i++ ) {
+            long before = System.nanoTime( )
+            availability.reserve( 1, 5 )
+            latencies[ i ] = System.nanoTime( ) - before
+          }
+          latencies
+        } as Callable<long[]> )
+      }
+      long startNanos = System.nanoTime( )
+      start.countDown( )
+      List<Long> latencies = results.collectMany{ Future<long[]> result -> result.get( ).toList( ) } as List<Long>
+      long elapsedNanos = System.nanoTime( ) - startNanos
+      Collections.sort( latencies )
+      println "Reservations: ${latencies.size( )} in ${TimeUnit.NANOSECONDS.toMillis( elapsedNanos )}ms " +
+          "(${(long)( latencies.size( ) / ( elapsedNanos / 1e9d ) )}/s)"
+      [ 50, 90, 99, 99.9 ].each { Number percentile ->
+        println "p${percentile}: ${latencies.get( (int)( ( latencies.size( ) - 1 ) * percentile.doubleValue( ) / 100 ) )}ns"
+      }
+    } finally {
+      done.set( true )
+      executor.shutdownNow( )
+    }
+  }
+
+  private static VmTypeAvailability availability( int available ) {
+    new VmTypeAvailability( VmType.create( 'm1.small', 1, 5, 256 ), available, available )
+  }
+}
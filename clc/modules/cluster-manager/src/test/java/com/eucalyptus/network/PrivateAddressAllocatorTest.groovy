@@ -22,9 +22,15 @@ package com.eucalyptus.network
 import com.eucalyptus.vm.VmInstance
 import com.google.common.base.Optional
 import com.google.common.collect.Iterables
+import com.google.common.collect.Lists
 import com.google.common.collect.Maps
+import com.google.common.collect.Sets
 import groovy.transform.CompileStatic
+import org.junit.Ignore
 import org.junit.Test
+
+import java.util.concurrent.TimeUnit
+
 import static org.junit.Assert.*
 
 /**
@@ -42,6 +48,7 @@ class PrivateAddressAllocatorTest {
     verifyEarlyRelease( persistence.reset( ), allocator )
     verifyLazyAllocation( persistence.reset( ), allocator )
     verifyFullRange( persistence.reset( ), allocator )
+    verifyBatchAllocation( persistence.reset( ), allocator )
   }
 
   @Test
@@ -53,6 +60,70 @@ class PrivateAddressAllocatorTest {
     verifyEarlyRelease( persistence.reset( ), allocator )
     verifyLazyAllocation( persistence.reset( ), allocator )
     verifyFullRange( persistence.reset( ), allocator )
+    verifyBatchAllocation( persistence.reset( ), allocator )
+  }
+
+  @Test
+  void testBitmapAllocator( ) {
+    TestPrivateAddressPersistence persistence = new TestPrivateAddressPersistence( )
+    verifyBasicAllocation( persistence.reset( ), new BitmapPrivateAddressAllocator( persistence, 0, 10 ) )
+    verifyAddressesExhaustedFailure( persistence.reset( ), new BitmapPrivateAddressAllocator( persistence, 0, 10 ) )
+    verifyEarlyRelease( persistence.reset( ), new BitmapPrivateAddressAllocator( persistence, 0, 10 ) )
+    verifyLazyAllocation( persistence.reset( ), new BitmapPrivateAddressAllocator( persistence, 0, 10 ) )
+    verifyFullRange( persistence.reset( ), new BitmapPrivateAddressAllocator( persistence, Long.MAX_VALUE, 10 ) )
+    verifyBatchAllocation( persistence.reset( ), new BitmapPrivateAddressAllocator( persistence, Long.MAX_VALUE, 10 ) )
+  }
+
+  @Test
+  void testBitmapAllocatorSkipsUsed( ) {
+    TestPrivateAddressPersistence persistence = new TestPrivateAddressPersistence( )
+    ( 0..9 ).each{ Integer index -> persistence.tryCreate( "10.0.0.${index}".toString( ) ) }
+    PrivateAddressAllocator allocator = new BitmapPrivateAddressAllocator( persistence, Long.MAX_VALUE, 1 )
+    assertEquals( 'allocated address', '10.0.0.10', allocator.allocate( ranges( '10.0.0.0-10.0.0.20' ) ) )
+    assertEquals( 'create attempts', 11, persistence.createAttempts )
+    allocator.release( '10.0.0.5', null )
+    assertEquals( 'allocated address', '10.0.0.5', allocator.allocate( ranges( '10.0.0.0-10.0.0.20' ) ) )
+    assertEquals( 'create attempts', 12, persistence.createAttempts )
+  }
+
+  @Test
+  void testBitmapAllocatorRandomOrder( ) {
+    TestPrivateAddressPersistence persistence = new TestPrivateAddressPersistence( )
+    ( 0..9 ).each{ Integer index -> persistence.tryCreate( "10.0.0.${index}".toString( ) ) }
+    PrivateAddressAllocator allocator = new BitmapPrivateAddressAllocator( persistence, Long.MAX_VALUE, 1000 )
+    persistence.createAttempts = 0
+    Set<String> allocated = Sets.newHashSet( )
+    ( 1..10 ).each{ allocated << allocator.allocate( ranges( '10.0.0.0-10.0.0.255' ) ) }
+    assertEquals( 'create attempts', 10, persistence.createAttempts )
+    assertEquals( 'distinct addresses allocated', 10, allocated.size( ) )
+    assertTrue( 'used addresses skipped', allocated.every{ String address -> PrivateAddresses.asInteger( address ) > PrivateAddresses.asInteger( '10.0.0.9' ) } )
+    assertFalse( 'first free addresses allocated', allocated == ( 10..19 ).collect{ Integer index -> "10.0.0.${index}".toString( ) } as Set )
+  }
+
+  @Ignore("Manual development test")
+  @Test
+  void testAllocatorPerformance( ) {
+    TestPrivateAddressPersistence persistence = new TestPrivateAddressPersistence( )
+    Iterable<Integer> addresses = Lists.newArrayList( ranges( '10.0.0.0-10.0.255.255' ) )
+    [
+        random: new RandomPrivateAddressAllocator( persistence, 1000, 1000 ),
+        firstFree: new FirstFreePrivateAddressAllocator( persistence ),
+        bitmap: new BitmapPrivateAddressAllocator( persistence, Long.MAX_VALUE, 1000 ),
+    ].each{ String name, PrivateAddressAllocator allocator ->
+      persistence.reset( )
+      List<Integer> used = Lists.newArrayList( addresses )
+      Collections.shuffle( used )
+      used.subList( 0, (int)( used.size( ) * 0.9 ) ).each{ Integer address ->
+        persistence.tryCreate( PrivateAddresses.fromInteger( address ) )
+      }
+      allocator.allocate( addresses ) // warm up
+      persistence.createAttempts = 0
+      long start = System.nanoTime( )
+      ( 1..1000 ).each{ allocator.allocate( addresses ) }
+      long elapsed = System.nanoTime( ) - start
+      println "${name}: 1000 allocations at 90% utilisation in ${TimeUnit.NANOSECONDS.toMillis( elapsed )}ms " +
+          "with ${persistence.createAttempts} create attempts"
+    }
   }
 
   private void verifyBasicAllocation( TestPrivateAddressPersistence persistence,
@@ -103,6 +174,20 @@ class PrivateAddressAllocatorTest {
     assertTrue( 'one address allocated', persistence.addresses.size( ) == 100 );
   }
 
+  private void verifyBatchAllocation( TestPrivateAddressPersistence persistence,
+                                      PrivateAddressAllocator allocator ) {
+    List<String> addresses = allocator.allocate( ranges( '10.0.0.0-10.0.0.10' ), 5 )
+    assertEquals( 'addresses allocated', 5, addresses.size( ) )
+    assertEquals( 'distinct addresses allocated', 5, Sets.newHashSet( addresses ).size( ) )
+    assertTrue( 'five addresses allocated', persistence.addresses.size( ) == 5 );
+    try {
+      allocator.allocate( ranges( '10.0.0.0-10.0.0.10' ), 7 )
+      fail( 'Allocation should have failed due to insufficient available addresses' )
+    } catch ( NotEnoughResourcesException ) {
+      assertTrue( 'five addresses allocated', persistence.addresses.size( ) == 5 );
+    }
+  }
+
   private VmInstance instance( ) {
     new VmInstance( null, 'i-12345678' ) {
       @Override
@@ -118,9 +203,11 @@ class PrivateAddressAllocatorTest {
 
   static class TestPrivateAddressPersistence implements PrivateAddressPersistence {
     final Map<String,PrivateAddress> addresses = Maps.newHashMapWithExpectedSize( 20000 )
+    int createAttempts
 
     @Override
     Optional<PrivateAddress> tryCreate( final String address ) {
+      createAttempts++
       addresses.containsKey( address ) ?
           Optional.absent( ) :
           Optional.of( add( PrivateAddress.create( address ).allocate( ) ) )
@@ -145,7 +232,7 @@ class PrivateAddressAllocatorTest {
                        final Closure<?> closure ) {
       address.name ?
         addresses.values().findAll{ PrivateAddress pa -> pa.name == address.name }.each( closure ) :
-        addresses.values().findAll{ PrivateAddress pa -> pa.state == address.state }.each( closure )
+        addresses.values().findAll{ PrivateAddress pa -> address.state == null || pa.state == address.state }.each( closure )
     }
 
     private PrivateAddress add( PrivateAddress address ) {
@@ -159,6 +246,7 @@ class PrivateAddressAllocatorTest {
 
     TestPrivateAddressPersistence reset( ) {
       addresses.clear( )
+      createAttempts = 0
       this
     }
   }
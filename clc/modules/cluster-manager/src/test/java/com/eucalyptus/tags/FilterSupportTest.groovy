@@ -32,6 +32,7 @@ import javax.persistence.ManyToOne
 import javax.persistence.ElementCollection
 import javax.persistence.Embedded
 import com.eucalyptus.crypto.util.Timestamps
+import com.google.common.base.Function
 import com.google.common.base.Functions
 import com.google.common.collect.BiMap
 import com.google.common.collect.HashBiMap
@@ -72,6 +73,43 @@ class FilterSupportTest {
     assertEquals( "complex escape", "text\\%foo\\\\\\_bar\\_\\%baz\\\\", FilterSupport.escapeLikeWildcards( "text%foo\\_bar_%baz\\" ) )
   }
 
+  @Test
+  void testQueryPredicate() {
+    FilterSupport<QueryResource> filterSupport = new QueryResourceFilterSupport()
+    QueryResource resource = new QueryResource( name: "other", size: 2, label: "other" )
+
+    Filter nameFilter = filterSupport.generate( [ "name" : [ "name*" ] as Set ], false, "000000000" )
+    assertFalse( "Name predicate match", nameFilter.asPredicate().apply( resource ) )
+    assertTrue( "Name query predicate match", nameFilter.asQueryPredicate().apply( resource ) )
+
+    Filter sizeFilter = filterSupport.generate( [ "size" : [ "1" ] as Set ], false, "000000000" )
+    assertTrue( "Size query predicate match", sizeFilter.asQueryPredicate().apply( resource ) )
+
+    Filter wildSizeFilter = filterSupport.generate( [ "size" : [ "1", "*" ] as Set ], false, "000000000" )
+    assertFalse( "Wildcard size query predicate match", wildSizeFilter.asQueryPredicate().apply( resource ) )
+
+    Filter labelFilter = filterSupport.generate( [ "label" : [ "label" ] as Set ], false, "000000000" )
+    assertFalse( "Label query predicate match", labelFilter.asQueryPredicate().apply( resource ) )
+  }
+
+  static class QueryResource {
+    String name
+    Integer size
+    String label
+  }
+
+  static class QueryResourceFilterSupport extends FilterSupport<QueryResource> {
+    QueryResourceFilterSupport() {
+      super( builderFor( QueryResource.class )
+          .withStringProperty( "name", { QueryResource resource -> resource.name } as Function<QueryResource,String> )
+          .withIntegerProperty( "size", { QueryResource resource -> resource.size } as Function<QueryResource,Integer> )
+          .withStringProperty( "label", { QueryResource resource -> resource.label } as Function<QueryResource,String> )
+          .withPersistenceFilter( "name" )
+          .withPersistenceFilter( "size", "size", FilterSupport.PersistenceFilter.Type.Integer )
+          .withPersistenceFilter( "label", "labelText", Functions.<String>identity() ) )
+    }
+  }
+
   private String wildcard( String awsFormat, boolean wildcards ) {
     StringBuilder result = new StringBuilder()
     assertEquals( "Wildcards detected",
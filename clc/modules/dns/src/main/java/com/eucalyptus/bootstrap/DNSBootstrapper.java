@@ -67,6 +67,7 @@ import org.apache.log4j.Logger;
 import com.eucalyptus.cloud.ws.DNSControl;
 import com.eucalyptus.component.id.Dns;
 import com.eucalyptus.component.id.Eucalyptus;
+import com.eucalyptus.dns.InstanceDnsIndex;
 import com.eucalyptus.system.Capabilities;
 
 @Provides( Dns.class )
@@ -97,6 +98,7 @@ public class DNSBootstrapper extends Bootstrapper.Simple {
 			@Override
 			public Void call( ) throws Exception {
 				LOG.info( "Starting DNS" );
+				InstanceDnsIndex.register();
 				DNSControl.initialize();
 				return null;
 			}
@@ -96,7 +96,9 @@ package com.eucalyptus.cloud.ws;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketAddress;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -127,7 +129,8 @@ import com.eucalyptus.dns.Zone;
 import com.eucalyptus.dns.Cache;
 import com.eucalyptus.util.dns.DnsResolvers;
 
-public class ConnectionHandler extends Thread {
+public class ConnectionHandler {
+	private static Logger LOG = Logger.getLogger( ConnectionHandler.class );
 
 	static final int FLAG_DNSSECOK = 1;
 	static final int FLAG_SIGONLY = 2;
@@ -135,8 +138,37 @@ public class ConnectionHandler extends Thread {
 	Map caches = new ConcurrentHashMap();
 	//Map TSIGs;
 
+	/**
+	 * Generate the reply for a request.
+	 *
+	 * @param in The request
+	 * @param remoteAddress The address of the client
+	 * @param tcp True if the reply will be sent using TCP
+	 * @return The reply or null if no reply should be sent
+	 */
+	byte [] reply(byte [] in, SocketAddress remoteAddress, boolean tcp) {
+		final Message query;
+		try {
+			query = new Message(in);
+		} catch (IOException e) {
+			LOG.trace(e);
+			return formerrMessage(in);
+		}
+		setRemoteInetAddress(remoteAddress instanceof InetSocketAddress ?
+				((InetSocketAddress) remoteAddress).getAddress() :
+				null);
+		try {
+			return generateReply(query, in, in.length, tcp);
+		} catch (Exception e) {
+			LOG.error(e);
+			return errorMessage(query, Rcode.SERVFAIL);
+		} finally {
+			removeRemoteInetAddress();
+		}
+	}
+
 	byte []
-	      generateReply(Message query, byte [] in, int length, Socket s)
+	      generateReply(Message query, byte [] in, int length, boolean tcp)
 	throws IOException
 	{
 		Header header;
@@ -169,7 +201,7 @@ public class ConnectionHandler extends Thread {
 		if (queryOPT != null && queryOPT.getVersion() > 0)
 			badversion = true;
 
-		if (s != null)
+		if (tcp)
 			maxLength = 65535;
 		else if (queryOPT != null)
 			maxLength = Math.max(queryOPT.getPayloadSize(), 512);
@@ -160,8 +160,9 @@ public class DNSControl {
 	private static void initializeUDP() throws Exception {
 		try {
 			if (udpListener == null) {
-				udpListener = new UDPListener( InetAddress.getByName( dns_listener_address ), DNSProperties.PORT);
-				udpListener.start();
+				final UDPListener listener = new UDPListener( InetAddress.getByName( dns_listener_address ), DNSProperties.PORT);
+				listener.start();
+				udpListener = listener;
 			}
 		} catch(SocketException ex) {
 			LOG.error(ex);
@@ -172,8 +173,9 @@ public class DNSControl {
 	private static void initializeTCP() throws Exception {
 		try {
 			if (tcpListener == null) {
-				tcpListener = new TCPListener( InetAddress.getByName( dns_listener_address ), DNSProperties.PORT);
-				tcpListener.start();
+				final TCPListener listener = new TCPListener( InetAddress.getByName( dns_listener_address ), DNSProperties.PORT);
+				listener.start();
+				tcpListener = listener;
 			}
 		} catch(UnknownHostException ex) {
 			LOG.error(ex);
@@ -62,57 +62,97 @@
 
 package com.eucalyptus.cloud.ws;
 
-import org.apache.log4j.Logger;
-
-import java.io.IOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-
-public class TCPListener extends Thread {
-	private static Logger LOG = Logger.getLogger( TCPListener.class );
-	InetAddress address;
-	int port;
-	ServerSocket socket;
+import java.net.InetSocketAddress;
+import org.apache.log4j.Logger;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.jboss.netty.handler.codec.frame.LengthFieldPrepender;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.timeout.ReadTimeoutHandler;
+import org.jboss.netty.util.HashedWheelTimer;
+import com.eucalyptus.component.id.Dns;
+import com.eucalyptus.system.Threads;
 
-	public TCPListener(InetAddress address, int port) throws Exception {
-		this.address = address;
-		this.port = port;
-		try {
-			socket = new ServerSocket(port, 128, address);
-		} catch(IOException ex) {
-			LOG.error(ex);
-			throw ex;
-		}
+/**
+ * Non-blocking TCP listener for DNS.
+ *
+ * <p>Requests are length prefixed per RFC 1035 4.2.2, multiple requests may be
+ * sent on a connection until it is idle for the configured timeout.</p>
+ */
+public class TCPListener {
+  private static Logger LOG = Logger.getLogger( TCPListener.class );
+  private final InetSocketAddress address;
+  private NioServerSocketChannelFactory channelFactory;
+  private ChannelGroup channelGroup;
+  private HashedWheelTimer timer;
 
-	}
+  public TCPListener( InetAddress address, int port ) throws Exception {
+    this.address = new InetSocketAddress( address, port );
+  }
 
-	public void run() {
-		while (true) {
-			Socket s;
-			try {
-				if(socket != null) {
-					LOG.trace("Listening on port: " + port);
-          TCPHandler handler = new TCPHandler((Socket)socket.accept());
-          handler.start();
-				} else {
-					LOG.error("Cannot start service. Invalid socket.");
-					return;
-				}
-			} catch (IOException e) {
-				LOG.error(e);
-			}
-		}
-	}
+  public synchronized void start( ) {
+    final ChannelGroup channelGroup = this.channelGroup = new DefaultChannelGroup( TCPListener.class.getSimpleName( ) );
+    final HashedWheelTimer timer = this.timer = new HashedWheelTimer( Threads.lookup( Dns.class, TCPListener.class, "timer" ) );
+    final TCPHandler handler = new TCPHandler( );
+    final ExecutionHandler executionHandler = new ExecutionHandler( Threads.lookup( Dns.class, TCPHandler.class ) );
+    final SimpleChannelUpstreamHandler channelGroupHandler = new SimpleChannelUpstreamHandler( ) {
+      @Override
+      public void channelOpen( final ChannelHandlerContext ctx, final ChannelStateEvent e ) throws Exception {
+        channelGroup.add( e.getChannel( ) );
+        super.channelOpen( ctx, e );
+      }
+    };
+    channelFactory = new NioServerSocketChannelFactory(
+        Threads.lookup( Dns.class, TCPListener.class, "boss" ),
+        Threads.lookup( Dns.class, TCPListener.class ) );
+    final ServerBootstrap bootstrap = new ServerBootstrap( channelFactory );
+    bootstrap.setPipelineFactory( new ChannelPipelineFactory( ) {
+      @Override
+      public ChannelPipeline getPipeline( ) throws Exception {
+        return Channels.pipeline(
+            channelGroupHandler,
+            new ReadTimeoutHandler( timer, TCPHandler.timeout_seconds ),
+            new LengthFieldBasedFrameDecoder( 65535 + 2, 0, 2, 0, 2 ),
+            new LengthFieldPrepender( 2 ),
+            executionHandler,
+            handler );
+      }
+    } );
+    bootstrap.setOption( "backlog", 128 );
+    bootstrap.setOption( "reuseAddress", true );
+    bootstrap.setOption( "child.tcpNoDelay", true );
+    try {
+      channelGroup.add( bootstrap.bind( address ) );
+      LOG.info( "Listening for DNS TCP requests on " + address );
+    } catch ( RuntimeException ex ) {
+      LOG.error( ex );
+      close( );
+      throw ex;
+    }
+  }
 
-	public void close() {
-		if (socket != null) {
-			try {
-				socket.close();
-				socket = null;
-			} catch (IOException e) {
-				LOG.error(e, e);
-			}
-		}
-	}
+  public synchronized void close( ) {
+    if ( channelGroup != null ) {
+      channelGroup.close( ).awaitUninterruptibly( );
+      channelGroup = null;
+    }
+    if ( channelFactory != null ) {
+      channelFactory.releaseExternalResources( );
+      channelFactory = null;
+    }
+    if ( timer != null ) {
+      timer.stop( );
+      timer = null;
+    }
+  }
 }
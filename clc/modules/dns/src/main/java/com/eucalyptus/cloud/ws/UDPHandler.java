@@ -93,99 +93,59 @@
 
 package com.eucalyptus.cloud.ws;
 
-import java.io.IOException;
-import java.io.InterruptedIOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.util.concurrent.Callable;
-
+import java.net.SocketAddress;
 import org.apache.log4j.Logger;
-import org.xbill.DNS.Message;
-import org.xbill.DNS.Rcode;
-
-import com.eucalyptus.bootstrap.Bootstrap;
-import com.eucalyptus.component.id.Dns;
-import com.eucalyptus.system.Threads;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import com.eucalyptus.configurable.ConfigurableClass;
+import com.eucalyptus.configurable.ConfigurableField;
 
-public class UDPHandler extends Thread {
-	private static Logger LOG = Logger.getLogger( UDPHandler.class );
+@ConfigurableClass( root = "dns.udp",
+        description = "Handles dns UDP requests." )
+@ChannelHandler.Sharable
+public class UDPHandler extends SimpleChannelUpstreamHandler {
+  @ConfigurableField( description = "Maximum UDP request payload size in bytes (EDNS0), applies on DNS restart.", initial = "4096" )
+  public static Integer max_payload_size = 4096;
+  @ConfigurableField( description = "UDP socket send and receive buffer size in bytes, applies on DNS restart.", initial = "1048576" )
+  public static Integer socket_buffer_size = 1048576;
+  private static Logger LOG = Logger.getLogger( UDPHandler.class );
 
-	DatagramSocket socket;
-	UDPHandler(DatagramSocket s) {
-		this.socket = s;
-	}
+  private final ConnectionHandler connectionHandler = new ConnectionHandler( );
 
-	public void run() {
-		final short udpLength = 512;
-		while (Bootstrap.isOperational( )) {
-			try {
-			  byte [] in = new byte[udpLength];
-			  DatagramPacket indp = new DatagramPacket(in, in.length);
-				indp.setLength(in.length);
-				try {
-					socket.receive(indp);
-				}catch (InterruptedIOException e) {
-					continue;
-				}
-				try{
-				  Threads.enqueue(Dns.class, UDPHandler.class, new UDPWorker(this.socket, indp, in));
-				}catch(Exception ex){
-				  LOG.error("failed to run dns UDP worker");
-				}
-			} catch (IOException e) {
-			    LOG.trace(e);
-			}
-		}
-	}
+  @Override
+  public void messageReceived( final ChannelHandlerContext ctx, final MessageEvent e ) throws Exception {
+    final byte[] in = toBytes( (ChannelBuffer) e.getMessage( ) );
+    final SocketAddress remoteAddress = e.getRemoteAddress( );
+    final byte[] response = connectionHandler.reply( in, remoteAddress, false );
+    if ( response != null ) {
+      e.getChannel( ).write( ChannelBuffers.wrappedBuffer( response ), remoteAddress );
+    }
+  }
 
-	private static class UDPWorker extends ConnectionHandler implements Callable<Boolean>{
-	  private DatagramSocket socket = null;
-	  private DatagramPacket packet = null;
-	  private byte[] data = null;
-	  private UDPWorker(final DatagramSocket socket, final DatagramPacket dpin, byte[] data){
-	    this.socket = socket;
-	    this.packet = dpin;
-	    this.data = data;
-	  }
+  @Override
+  public void exceptionCaught( final ChannelHandlerContext ctx, final ExceptionEvent e ) throws Exception {
+    LOG.trace( e.getCause( ) ); // datagram channel remains usable
+  }
 
-	  @Override
-	  public Boolean call() throws Exception {
-	    final byte[] in = this.data;
-	    Message query;
-	    byte [] response = null;
-	    try {
-	      query = new Message(in);
-	      ConnectionHandler.setRemoteInetAddress( this.packet.getAddress( ) );
-	      try {
-	        response = generateReply( query, in,
-	            this.packet.getLength( ),
-	            null );
-	      } catch ( RuntimeException ex ) {
-	        response = errorMessage(query, Rcode.SERVFAIL);
-	        throw ex;
-	      } finally {
-	        ConnectionHandler.removeRemoteInetAddress( );
-	      }
-	      if (response == null)
-	        return false;
-	    } catch (Exception e) {
-	      if ( response != null ) {
-	        response = formerrMessage(in);
-	      } else {
-	        LOG.trace(e);
-	        return false;
-	      }
-	    }
-	    try{
-	      final DatagramPacket outdp = new DatagramPacket(response,
-	          response.length,
-	          this.packet.getAddress(),
-	          this.packet.getPort());
-	      this.socket.send(outdp);
-	    }catch(Exception e){
-	      LOG.trace(e);
-	    }
-	    return true;
-	  }
-	}
+  /**
+   * Received buffers are allocated at the size of the datagram so the array
+   * can usually be used without copying.
+   */
+  private static byte[] toBytes( final ChannelBuffer buffer ) {
+    if ( buffer.hasArray( ) &&
+        buffer.arrayOffset( ) == 0 &&
+        buffer.readerIndex( ) == 0 &&
+        buffer.array( ).length == buffer.readableBytes( ) ) {
+      return buffer.array( );
+    } else {
+      final byte[] bytes = new byte[ buffer.readableBytes( ) ];
+      buffer.readBytes( bytes );
+      return bytes;
+    }
+  }
 }
@@ -62,40 +62,71 @@
 
 package com.eucalyptus.cloud.ws;
 
-import org.apache.log4j.Logger;
-
-import java.io.IOException;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import org.apache.log4j.Logger;
+import org.jboss.netty.bootstrap.ConnectionlessBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.FixedReceiveBufferSizePredictorFactory;
+import org.jboss.netty.channel.socket.DatagramChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import com.eucalyptus.component.id.Dns;
+import com.eucalyptus.system.Threads;
 
-public class UDPListener extends Thread {
-	private static Logger LOG = Logger.getLogger( UDPListener.class );
-	InetAddress address;
-	int port;
-	DatagramSocket socket;
+/**
+ * Non-blocking UDP listener for DNS.
+ *
+ * <p>Datagrams are read on a single NIO worker into a buffer sized for the
+ * largest supported EDNS0 payload and handled on the DNS thread pool.</p>
+ */
+public class UDPListener {
+  private static Logger LOG = Logger.getLogger( UDPListener.class );
+  private final InetSocketAddress address;
+  private DatagramChannelFactory channelFactory;
+  private Channel channel;
 
-	public UDPListener(InetAddress address, int port) throws Exception {
-		this.address = address;
-		this.port = port;
-		try {
-			socket = new DatagramSocket(port, address);
-		} catch(Exception ex) {
-			LOG.error(ex);
-			throw ex;
-		}
-	}
+  public UDPListener( InetAddress address, int port ) throws Exception {
+    this.address = new InetSocketAddress( address, port );
+  }
 
-	public void run() {
-		if(socket != null)
-			ConnectionHandlerFactory.handle(socket);
-		else
-			LOG.error("Cannot start service. Invalid socket.");
-	}
+  public synchronized void start( ) {
+    final UDPHandler handler = new UDPHandler( );
+    final ExecutionHandler executionHandler = new ExecutionHandler( Threads.lookup( Dns.class, UDPHandler.class ) );
+    channelFactory = new NioDatagramChannelFactory( Threads.lookup( Dns.class, UDPListener.class ), 1 );
+    final ConnectionlessBootstrap bootstrap = new ConnectionlessBootstrap( channelFactory );
+    bootstrap.setPipelineFactory( new ChannelPipelineFactory( ) {
+      @Override
+      public ChannelPipeline getPipeline( ) throws Exception {
+        return Channels.pipeline( executionHandler, handler );
+      }
+    } );
+    bootstrap.setOption( "receiveBufferSizePredictorFactory",
+        new FixedReceiveBufferSizePredictorFactory( UDPHandler.max_payload_size ) );
+    bootstrap.setOption( "receiveBufferSize", UDPHandler.socket_buffer_size );
+    bootstrap.setOption( "sendBufferSize", UDPHandler.socket_buffer_size );
+    try {
+      channel = bootstrap.bind( address );
+      LOG.info( "Listening for DNS UDP requests on " + address );
+    } catch ( RuntimeException ex ) {
+      LOG.error( ex );
+      channelFactory.releaseExternalResources( );
+      channelFactory = null;
+      throw ex;
+    }
+  }
 
-	public void close() {
-		if (socket != null) {
-			socket.close();
-			socket = null;
-		}
-	}
+  public synchronized void close( ) {
+    if ( channel != null ) {
+      channel.close( ).awaitUninterruptibly( );
+      channel = null;
+    }
+    if ( channelFactory != null ) {
+      channelFactory.releaseExternalResources( );
+      channelFactory = null;
+    }
+  }
 }
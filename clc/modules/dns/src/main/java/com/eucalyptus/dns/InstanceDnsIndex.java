@@ -0,0 +1,303 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.dns;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+import org.apache.log4j.Logger;
+import org.hibernate.criterion.Restrictions;
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.configurable.ConfigurableClass;
+import com.eucalyptus.configurable.ConfigurableField;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.EntityChangeListeners;
+import com.eucalyptus.entities.TransactionResource;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Hertz;
+import com.eucalyptus.event.Listeners;
+import com.eucalyptus.vm.VmInstance;
+import com.eucalyptus.vm.VmInstance.VmState;
+import com.eucalyptus.vm.VmNetworkConfig;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+/**
+ * In memory index of instance addresses for DNS resolution.
+ *
+ * <p>The index is updated from committed instance changes and periodically
+ * reloaded, so resolving an instance address does not access the
+ * database.</p>
+ */
+@ConfigurableClass( root = "dns.instance",
+                    description = "Options controlling instance DNS resolution." )
+public class InstanceDnsIndex {
+  private static final Logger LOG = Logger.getLogger( InstanceDnsIndex.class );
+
+  @ConfigurableField( description = "Time to live in seconds for instance DNS records.", initial = "60" )
+  public static Integer ttl = 60;
+
+  @ConfigurableField( description = "Negative caching time to live in seconds for instance DNS zones.", initial = "600" )
+  public static Integer negative_ttl = 600;
+
+  @ConfigurableField( description = "Interval in seconds between full reloads of the instance DNS index.", initial = "300" )
+  public static Integer reload_interval = 300;
+
+  private static final ImmutableSet<VmState> resolvableStates = ImmutableSet.of( VmState.PENDING, VmState.RUNNING );
+  private static final ConcurrentMap<String,InstanceDnsEntry> publicIndex = Maps.newConcurrentMap( );
+  private static final ConcurrentMap<String,InstanceDnsEntry> privateIndex = Maps.newConcurrentMap( );
+  private static final Map<String,InstanceAddresses> instanceAddresses = Maps.newHashMap( ); // guarded by class
+  private static final Map<String,Long> reloadChanges = Maps.newHashMap( ); // guarded by class
+  private static long generation = 0; // guarded by class
+  private static int reloading = 0; // guarded by class
+  private static final AtomicBoolean registered = new AtomicBoolean( false );
+
+  public static final class InstanceDnsEntry {
+    private final String instanceId;
+    private final String dnsName;
+
+    InstanceDnsEntry( final String instanceId, final String dnsName ) {
+      this.instanceId = instanceId;
+      this.dnsName = dnsName;
+    }
+
+    public String getInstanceId( ) {
+      return instanceId;
+    }
+
+    public String getDnsName( ) {
+      return dnsName;
+    }
+  }
+
+  static final class InstanceAddresses {
+    private final String publicAddress;
+    private final String publicDnsName;
+    private final String privateAddress;
+    private final String privateDnsName;
+
+    InstanceAddresses( final VmInstance instance ) {
+      this(
+          instance.getPublicAddress( ),
+          instance.getPublicDnsName( ),
+          instance.getPrivateAddress( ),
+          instance.getPrivateDnsName( ) );
+    }
+
+    InstanceAddresses( final String publicAddress,
+                       final String publicDnsName,
+                       final String privateAddress,
+                       final String privateDnsName ) {
+      this.publicAddress = addressOrNull( publicAddress );
+      this.publicDnsName = publicDnsName;
+      this.privateAddress = addressOrNull( privateAddress );
+      this.privateDnsName = privateDnsName;
+    }
+
+    @Nullable
+    private static String addressOrNull( final String address ) {
+      return address == null || address.isEmpty( ) || VmNetworkConfig.DEFAULT_IP.equals( address ) ?
+          null :
+          address;
+    }
+  }
+
+  /**
+   * Register for instance changes and load the index.
+   */
+  public static void register( ) {
+    if ( registered.compareAndSet( false, true ) ) {
+      EntityChangeListeners.register( VmInstance.class, new EntityChangeListeners.EntityChangeListener( ) {
+        @Override
+        public void changed( final Object entity, final Serializable id ) {
+          update( (VmInstance) entity );
+        }
+      } );
+      Listeners.register( Hertz.class, new ReloadListener( ) );
+      reload( );
+    }
+  }
+
+  /**
+   * Lookup the entry for an instance by public address.
+   *
+   * @return The entry or null if there is no resolvable instance with the address
+   */
+  @Nullable
+  public static InstanceDnsEntry lookupByPublicIp( final String address ) {
+    return publicIndex.get( address );
+  }
+
+  /**
+   * Lookup the entry for an instance by private address.
+   *
+   * @return The entry or null if there is no resolvable instance with the address
+   */
+  @Nullable
+  public static InstanceDnsEntry lookupByPrivateIp( final String address ) {
+    return privateIndex.get( address );
+  }
+
+  /**
+   * Lookup the entry for an instance by public or private address.
+   *
+   * @return The entry or null if there is no resolvable instance with the address
+   */
+  @Nullable
+  public static InstanceDnsEntry lookup( final String address ) {
+    final InstanceDnsEntry entry = lookupByPublicIp( address );
+    return entry != null ?
+        entry :
+        lookupByPrivateIp( address );
+  }
+
+  static void update( final VmInstance instance ) {
+    update( instance.getInstanceId( ), resolvableStates.contains( instance.getState( ) ) ?
+        new InstanceAddresses( instance ) :
+        null );
+  }
+
+  /**
+   * Update the index for a committed instance change.
+   */
+  static synchronized void update( final String instanceId,
+                                   @Nullable final InstanceAddresses addresses ) {
+    if ( reloading > 0 ) {
+      reloadChanges.put( instanceId, ++generation );
+    }
+    apply( instanceId, addresses );
+  }
+
+  /**
+   * New entries are added before old entries are removed so that an unchanged
+   * address is always resolvable. Caller must hold the class lock.
+   */
+  private static void apply( final String instanceId,
+                             @Nullable final InstanceAddresses addresses ) {
+    final InstanceAddresses previous;
+    if ( addresses != null ) {
+      previous = instanceAddresses.put( instanceId, addresses );
+      if ( addresses.publicAddress != null ) {
+        publicIndex.put( addresses.publicAddress, new InstanceDnsEntry( instanceId, addresses.publicDnsName ) );
+      }
+      if ( addresses.privateAddress != null ) {
+        privateIndex.put( addresses.privateAddress, new InstanceDnsEntry( instanceId, addresses.privateDnsName ) );
+      }
+    } else {
+      previous = instanceAddresses.remove( instanceId );
+    }
+    if ( previous != null ) {
+      remove( publicIndex, instanceId, previous.publicAddress, addresses == null ? null : addresses.publicAddress );
+      remove( privateIndex, instanceId, previous.privateAddress, addresses == null ? null : addresses.privateAddress );
+    }
+  }
+
+  private static void remove( final ConcurrentMap<String,InstanceDnsEntry> index,
+                              final String instanceId,
+                              @Nullable final String previousAddress,
+                              @Nullable final String currentAddress ) {
+    if ( previousAddress != null && !previousAddress.equals( currentAddress ) ) {
+      // only remove if not since reassigned to another instance
+      final InstanceDnsEntry entry = index.get( previousAddress );
+      if ( entry != null && instanceId.equals( entry.getInstanceId( ) ) ) {
+        index.remove( previousAddress, entry );
+      }
+    }
+  }
+
+  static void reload( ) {
+    final long reloadGeneration = reloadStarted( );
+    Map<String,InstanceAddresses> addressesById = Maps.newHashMap( );
+    // from the primary, a lagging replica would drop recently launched instances
+    try ( final TransactionResource db = Entities.transactionFor( VmInstance.class ) ) {
+      final List<VmInstance> instances = Entities.query(
+          VmInstance.named( null, null ),
+          true,
+          Restrictions.in( "state", resolvableStates.toArray( ) ),
+          Collections.<String,String>emptyMap( ) );
+      for ( final VmInstance instance : instances ) {
+        addressesById.put( instance.getInstanceId( ), new InstanceAddresses( instance ) );
+      }
+    } catch ( final Exception e ) {
+      LOG.error( "Error reloading instance DNS index", e );
+      addressesById = null;
+    } finally {
+      reloaded( reloadGeneration, addressesById );
+    }
+  }
+
+  /**
+   * Start a reload, instance changes are tracked until the reload completes.
+   *
+   * @return The generation for the reload
+   */
+  static synchronized long reloadStarted( ) {
+    reloading++;
+    return generation;
+  }
+
+  /**
+   * Complete a reload with the loaded addresses, or null if loading failed.
+   *
+   * <p>The loaded addresses may be out of date (changes committed while
+   * loading) so instances changed since the reload started are left as they
+   * are.</p>
+   */
+  static synchronized void reloaded( final long reloadGeneration,
+                                     @Nullable final Map<String,InstanceAddresses> addressesById ) {
+    try {
+      if ( addressesById != null ) {
+        for ( final String instanceId : ImmutableSet.copyOf( instanceAddresses.keySet( ) ) ) {
+          if ( !addressesById.containsKey( instanceId ) && !isChangedSince( instanceId, reloadGeneration ) ) {
+            apply( instanceId, null );
+          }
+        }
+        for ( final Map.Entry<String,InstanceAddresses> entry : addressesById.entrySet( ) ) {
+          if ( !isChangedSince( entry.getKey( ), reloadGeneration ) ) {
+            apply( entry.getKey( ), entry.getValue( ) );
+          }
+        }
+      }
+    } finally {
+      if ( --reloading == 0 ) {
+        reloadChanges.clear( );
+      }
+    }
+  }
+
+  private static boolean isChangedSince( final String instanceId, final long reloadGeneration ) {
+    final Long changed = reloadChanges.get( instanceId );
+    return changed != null && changed > reloadGeneration;
+  }
+
+  public static class ReloadListener implements EventListener<Hertz> {
+    @Override
+    public void fireEvent( final Hertz event ) {
+      if ( Bootstrap.isOperational( ) && event.isAsserted( reload_interval ) ) {
+        reload( );
+      }
+    }
+  }
+}
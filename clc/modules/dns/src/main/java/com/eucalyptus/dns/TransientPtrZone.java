@@ -74,8 +74,6 @@ import org.xbill.DNS.SOARecord;
 import org.xbill.DNS.SetResponse;
 
 import com.eucalyptus.util.Internets;
-import com.eucalyptus.vm.VmInstance;
-import com.eucalyptus.vm.VmInstances;
 import com.eucalyptus.ws.StackConfiguration;
 
 
@@ -108,19 +106,17 @@ public class TransientPtrZone extends Zone {
 		} else {
 		  return super.findRecords( name, type );
 		}
+		InstanceDnsIndex.InstanceDnsEntry entry = InstanceDnsIndex.lookup( ipCandidate );
+		if ( entry == null ) {
+		  return super.findRecords( name, type );
+		}
 		try {
-	      VmInstance instance = VmInstances.lookupByPublicIp( ipCandidate );
-	      target = new Name(instance.getPublicDnsName() + ".");
+	      target = new Name(entry.getDnsName() + ".");
 	    } catch ( Exception e ) {
-	      try {
-	        VmInstance instance = VmInstances.lookupByPrivateIp( ipCandidate );
-	        target = new Name(instance.getPrivateDnsName() + ".");
-	      } catch ( Exception e1 ) {
-	        return super.findRecords( name, type );
-	      }
+	      return super.findRecords( name, type );
 	    }
         SetResponse resp = new SetResponse(SetResponse.SUCCESSFUL);
-        resp.addRRset( new RRset( new PTRRecord( name, DClass.IN, ttl, target ) ) );
+        resp.addRRset( new RRset( new PTRRecord( name, DClass.IN, InstanceDnsIndex.ttl, target ) ) );
         return resp;
 	  } else {
 	    return super.findRecords( name, type );
@@ -153,7 +149,7 @@ public class TransientPtrZone extends Zone {
 	  long retry = ttl;
 	  long expires = 2419200;
           //This is the negative cache TTL
-          long minimum = 600;
+          long minimum = InstanceDnsIndex.negative_ttl;
 	  Record soarec = new SOARecord( name, DClass.IN, ttl, name, Name.fromString( "root." + name.toString( ) ), serial,
 	    refresh, retry, expires, minimum );
 	  long nsTTL = 604800;
@@ -78,7 +78,6 @@ import org.xbill.DNS.TextParseException;
 import org.xbill.DNS.Type;
 
 import com.eucalyptus.util.Internets;
-import com.eucalyptus.vm.VmInstance;
 import com.eucalyptus.vm.VmInstances;
 import com.eucalyptus.ws.StackConfiguration;
 
@@ -105,7 +104,7 @@ public class TransientZone extends Zone {
       long retry = ttl;
       long expires = 2419200;
       //This is the negative cache TTL
-      long minimum = 600;
+      long minimum = InstanceDnsIndex.negative_ttl;
       Record soarec = new SOARecord( name, DClass.IN, ttl, host, admin, serial, refresh, retry, expires, minimum );
       long nsTTL = 604800;
       Record nsrec = new NSRecord( name, DClass.IN, nsTTL, target);
@@ -134,7 +133,7 @@ public class TransientZone extends Zone {
       long retry = ttl;
       long expires = 2419200;
       //This is the negative cache TTL
-      long minimum = 600;
+      long minimum = InstanceDnsIndex.negative_ttl;
       
       Record soarec = new SOARecord( name, DClass.IN, ttl, host, admin, serial, refresh, retry, expires, minimum );
       long nsTTL = 604800;
@@ -170,18 +169,12 @@ public class TransientZone extends Zone {
           .append(tryIp[1]).append(".")
           .append(tryIp[2]).append(".")
           .append(tryIp[3]).toString( );
-        try {
-          VmInstances.lookupByPublicIp( ipCandidate );
-        } catch ( Exception e ) {
-          try {
-            VmInstances.lookupByPrivateIp( ipCandidate );
-          } catch ( Exception e1 ) {
-            return super.findRecords( name, type );
-          }
+        if ( InstanceDnsIndex.lookup( ipCandidate ) == null ) {
+          return super.findRecords( name, type );
         }
         InetAddress ip = InetAddress.getByName( ipCandidate );
         SetResponse resp = new SetResponse(SetResponse.SUCCESSFUL);
-        resp.addRRset( new RRset( new ARecord( name, 1, ttl, ip ) ) );
+        resp.addRRset( new RRset( new ARecord( name, 1, InstanceDnsIndex.ttl, ip ) ) );
         return resp;
       } catch ( Exception e ) {
         return super.findRecords( name, type );
@@ -202,19 +195,17 @@ public class TransientZone extends Zone {
 		} else {
 		  return super.findRecords( name, type );
 		}
+		InstanceDnsIndex.InstanceDnsEntry entry = InstanceDnsIndex.lookup( ipCandidate );
+		if ( entry == null ) {
+		  return super.findRecords( name, type );
+		}
 		try {
-	      VmInstance instance = VmInstances.lookupByPublicIp( ipCandidate );
-	      target = new Name(instance.getPublicDnsName() + ".");
+	      target = new Name(entry.getDnsName() + ".");
 	    } catch ( Exception e ) {
-	      try {
-	        VmInstance instance = VmInstances.lookupByPrivateIp( ipCandidate );
-	        target = new Name(instance.getPrivateDnsName() + ".");
-	      } catch ( Exception e1 ) {
-	        return super.findRecords( name, type );
-	      }
+	      return super.findRecords( name, type );
 	    }
         SetResponse resp = new SetResponse(SetResponse.SUCCESSFUL);
-        resp.addRRset( new RRset( new PTRRecord( name, DClass.IN, ttl, target ) ) );
+        resp.addRRset( new RRset( new PTRRecord( name, DClass.IN, InstanceDnsIndex.ttl, target ) ) );
         return resp;
 	  } else {
 	    return super.findRecords( name, type );
@@ -247,7 +238,7 @@ public class TransientZone extends Zone {
 	  long retry = ttl;
 	  long expires = 2419200;
           //This is the negative cache TTL
-          long minimum = 600;
+          long minimum = InstanceDnsIndex.negative_ttl;
 	  Record soarec = new SOARecord( name, DClass.IN, ttl, name, Name.fromString( "root." + name.toString( ) ), serial, refresh, retry, expires, minimum );
 	  long nsTTL = 604800;
 	  Record nsrec = new NSRecord( name, DClass.IN, nsTTL,
@@ -0,0 +1,121 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloud.ws.tests;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+import com.eucalyptus.ws.server.LatencyHistogram;
+import com.google.common.collect.Lists;
+
+/**
+ * UDP load test for the DNS service, reports throughput and latency.
+ *
+ * <p>Run against a DNS service with system properties to override the
+ * defaults, e.g.:</p>
+ *
+ * <pre>
+ *   -Ddns.load.host=10.111.1.1 -Ddns.load.name=euca-10-111-1-2.eucalyptus.internal.
+ *   -Ddns.load.clients=32 -Ddns.load.seconds=60
+ * </pre>
+ */
+@Ignore("Manual development test")
+public class DnsLoadTest {
+
+  private static final String host = System.getProperty( "dns.load.host", "127.0.0.1" );
+  private static final int port = Integer.getInteger( "dns.load.port", 53 );
+  private static final String name = System.getProperty( "dns.load.name", "localhost." );
+  private static final String type = System.getProperty( "dns.load.type", "A" );
+  private static final int clients = Integer.getInteger( "dns.load.clients", 8 );
+  private static final int seconds = Integer.getInteger( "dns.load.seconds", 30 );
+  private static final int timeoutMillis = Integer.getInteger( "dns.load.timeout", 1000 );
+
+  @Test
+  public void testUdpLoad( ) throws Exception {
+    final InetSocketAddress server = new InetSocketAddress( host, port );
+    final Record question = Record.newRecord( Name.fromString( name ), Type.value( type ), DClass.IN );
+    final LatencyHistogram histogram = new LatencyHistogram( );
+    final AtomicLong timeouts = new AtomicLong( );
+    final AtomicLong errors = new AtomicLong( );
+    final long endTime = System.nanoTime( ) + TimeUnit.SECONDS.toNanos( seconds );
+
+    final ExecutorService executor = Executors.newFixedThreadPool( clients );
+    final List<Future<Void>> futures = Lists.newArrayList( );
+    final long start = System.nanoTime( );
+    for ( int i = 0; i < clients; i++ ) {
+      futures.add( executor.submit( new Callable<Void>( ) {
+        @Override
+        public Void call( ) throws Exception {
+          final byte[] responseBuffer = new byte[ 65535 ];
+          try ( final DatagramSocket socket = new DatagramSocket( ) ) {
+            socket.connect( server );
+            socket.setSoTimeout( timeoutMillis );
+            final Message query = Message.newQuery( question );
+            while ( System.nanoTime( ) < endTime ) {
+              final int id = ( query.getHeader( ).getID( ) + 1 ) & 0xFFFF;
+              query.getHeader( ).setID( id );
+              final byte[] request = query.toWire( );
+              final long sent = System.nanoTime( );
+              socket.send( new DatagramPacket( request, request.length ) );
+              try {
+                final DatagramPacket packet = new DatagramPacket( responseBuffer, responseBuffer.length );
+                do {
+                  socket.receive( packet );
+                } while ( new Message( packet.getData( ) ).getHeader( ).getID( ) != id ); // skip late replies
+                histogram.record( System.nanoTime( ) - sent );
+              } catch ( final SocketTimeoutException e ) {
+                timeouts.incrementAndGet( );
+              } catch ( final Exception e ) {
+                errors.incrementAndGet( );
+              }
+            }
+          }
+          return null;
+        }
+      } ) );
+    }
+    for ( final Future<Void> future : futures ) {
+      future.get( );
+    }
+    final double elapsedSeconds = ( System.nanoTime( ) - start ) / 1e9d;
+    executor.shutdown( );
+
+    System.out.println( String.format( "DNS load %s %s @ %s with %d clients for %.1fs",
+        type, name, server, clients, elapsedSeconds ) );
+    System.out.println( String.format( "qps=%.1f responses=%d timeouts=%d errors=%d",
+        histogram.getCount( ) / elapsedSeconds, histogram.getCount( ), timeouts.get( ), errors.get( ) ) );
+    System.out.println( String.format( "latency %s p99.9=%dus", histogram, histogram.getPercentile( 99.9 ) ) );
+  }
+}
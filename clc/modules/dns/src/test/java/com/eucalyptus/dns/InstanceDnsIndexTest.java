@@ -0,0 +1,106 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.dns;
+
+import static org.junit.Assert.*;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.Test;
+import com.eucalyptus.dns.InstanceDnsIndex.InstanceAddresses;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Unit tests for the instance DNS index
+ */
+public class InstanceDnsIndexTest {
+
+  @Test
+  public void testUpdate( ) {
+    InstanceDnsIndex.update( "i-00000001", addresses( "10.1.0.1", "172.16.0.1" ) );
+    assertEquals( "public lookup", "i-00000001", InstanceDnsIndex.lookupByPublicIp( "10.1.0.1" ).getInstanceId( ) );
+    assertEquals( "private lookup", "i-00000001", InstanceDnsIndex.lookup( "172.16.0.1" ).getInstanceId( ) );
+
+    InstanceDnsIndex.update( "i-00000001", addresses( "10.1.0.2", "172.16.0.1" ) );
+    assertNull( "old public lookup", InstanceDnsIndex.lookupByPublicIp( "10.1.0.1" ) );
+    assertEquals( "public lookup", "i-00000001", InstanceDnsIndex.lookupByPublicIp( "10.1.0.2" ).getInstanceId( ) );
+
+    InstanceDnsIndex.update( "i-00000001", null );
+    assertNull( "public lookup", InstanceDnsIndex.lookupByPublicIp( "10.1.0.2" ) );
+    assertNull( "private lookup", InstanceDnsIndex.lookupByPrivateIp( "172.16.0.1" ) );
+  }
+
+  @Test
+  public void testReload( ) {
+    InstanceDnsIndex.update( "i-00000002", addresses( "10.2.0.1", "172.16.1.1" ) );
+    InstanceDnsIndex.update( "i-00000003", addresses( "10.2.0.2", "172.16.1.2" ) );
+
+    InstanceDnsIndex.reloaded( InstanceDnsIndex.reloadStarted( ), ImmutableMap.of(
+        "i-00000003", addresses( "10.2.0.3", "172.16.1.2" ),
+        "i-00000004", addresses( "10.2.0.4", "172.16.1.4" )
+    ) );
+
+    assertNull( "terminated lookup", InstanceDnsIndex.lookup( "10.2.0.1" ) );
+    assertNull( "old public lookup", InstanceDnsIndex.lookup( "10.2.0.2" ) );
+    assertEquals( "updated lookup", "i-00000003", InstanceDnsIndex.lookup( "10.2.0.3" ).getInstanceId( ) );
+    assertEquals( "added lookup", "i-00000004", InstanceDnsIndex.lookup( "10.2.0.4" ).getInstanceId( ) );
+  }
+
+  @Test
+  public void testReloadKeepsConcurrentChanges( ) {
+    InstanceDnsIndex.update( "i-00000005", addresses( "10.3.0.1", "172.16.2.1" ) );
+    InstanceDnsIndex.update( "i-00000006", addresses( "10.3.0.2", "172.16.2.2" ) );
+
+    final long generation = InstanceDnsIndex.reloadStarted( );
+    // changes committed after the reload query started
+    InstanceDnsIndex.update( "i-00000005", null );
+    InstanceDnsIndex.update( "i-00000006", addresses( "10.3.0.3", "172.16.2.2" ) );
+    InstanceDnsIndex.update( "i-00000007", addresses( "10.3.0.4", "172.16.2.4" ) );
+    final Map<String,InstanceAddresses> loaded = ImmutableMap.of(
+        "i-00000005", addresses( "10.3.0.1", "172.16.2.1" ),
+        "i-00000006", addresses( "10.3.0.2", "172.16.2.2" )
+    );
+    InstanceDnsIndex.reloaded( generation, loaded );
+
+    assertNull( "terminated lookup", InstanceDnsIndex.lookup( "10.3.0.1" ) );
+    assertNull( "old public lookup", InstanceDnsIndex.lookup( "10.3.0.2" ) );
+    assertEquals( "updated lookup", "i-00000006", InstanceDnsIndex.lookup( "10.3.0.3" ).getInstanceId( ) );
+    assertEquals( "launched lookup", "i-00000007", InstanceDnsIndex.lookup( "10.3.0.4" ).getInstanceId( ) );
+
+    // changes are only kept for the reload in progress
+    InstanceDnsIndex.reloaded( InstanceDnsIndex.reloadStarted( ), loaded );
+    assertEquals( "reloaded lookup", "i-00000005", InstanceDnsIndex.lookup( "10.3.0.1" ).getInstanceId( ) );
+    assertNull( "removed lookup", InstanceDnsIndex.lookup( "10.3.0.4" ) );
+  }
+
+  @Test
+  public void testReloadFailure( ) {
+    InstanceDnsIndex.update( "i-00000008", addresses( "10.4.0.1", "172.16.3.1" ) );
+    InstanceDnsIndex.reloaded( InstanceDnsIndex.reloadStarted( ), null );
+    assertEquals( "lookup", "i-00000008", InstanceDnsIndex.lookup( "10.4.0.1" ).getInstanceId( ) );
+    InstanceDnsIndex.reloaded( InstanceDnsIndex.reloadStarted( ), Collections.<String,InstanceAddresses>emptyMap( ) );
+    assertNull( "reloaded lookup", InstanceDnsIndex.lookup( "10.4.0.1" ) );
+  }
+
+  private static InstanceAddresses addresses( final String publicAddress, final String privateAddress ) {
+    return new InstanceAddresses(
+        publicAddress, "euca-" + publicAddress.replace( '.', '-' ) + ".eucalyptus.example.com",
+        privateAddress, "euca-" + privateAddress.replace( '.', '-' ) + ".eucalyptus.internal" );
+  }
+}
@@ -25,10 +25,19 @@ import java.io.Writer;
 import java.net.URL;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nullable;
 import javax.crypto.Cipher;
 import javax.xml.parsers.DocumentBuilder;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
@@ -46,7 +55,6 @@ import com.google.common.collect.Lists;
 import org.apache.log4j.Logger;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
@@ -75,11 +83,16 @@ import com.eucalyptus.objectstorage.msgs.SetBucketLifecycleType;
 import com.eucalyptus.storage.msgs.s3.Expiration;
 import com.eucalyptus.storage.msgs.s3.LifecycleConfiguration;
 import com.eucalyptus.storage.msgs.s3.LifecycleRule;
+import com.eucalyptus.system.Threads;
 import com.eucalyptus.util.ChannelBufferStreamingInputStream;
 import com.eucalyptus.util.EucalyptusCloudException;
 import com.eucalyptus.util.XMLParser;
 import com.eucalyptus.util.async.AsyncRequests;
 import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 public class DownloadManifestFactory {
 	private static Logger LOG = Logger.getLogger( DownloadManifestFactory.class );
@@ -88,6 +101,14 @@ public class DownloadManifestFactory {
 	public static String DOWNLOAD_MANIFEST_BUCKET_NAME = (uuid != null ? uuid.substring(0, 6) : "system") + "-download-manifests";
 	private static String DOWNLOAD_MANIFEST_PREFIX = "DM-";
 	private static int DEFAULT_EXPIRE_TIME_HR = 3;
+	private static final int PRESIGN_BATCH_SIZE = 100;
+	private static final int PRESIGN_THREADS = 4;
+	private static final int REUSE_FRACTION = 4;
+	private static final Cache<ManifestKey, GeneratedManifest> manifestCache = CacheBuilder.newBuilder()
+			.maximumSize(1000)
+			.expireAfterWrite(DEFAULT_EXPIRE_TIME_HR, TimeUnit.HOURS)
+			.build();
+	private static volatile boolean manifestsBucketChecked = false;
 
 	public static String generateDownloadManifest(final ImageManifestFile baseManifest, final PublicKey keyToUse,
       final String manifestName) throws DownloadManifestException {
@@ -96,6 +117,11 @@ public class DownloadManifestFactory {
 
 	/**
 	 * Generates download manifest based on bundle manifest and puts in into system owned bucket
+	 *
+	 * A manifest generated for the same image, base manifest, key and
+	 * expiration is reused while most of its expiration period remains. A
+	 * manifest for a base manifest without an image identifier is not reused.
+	 *
 	 * @param baseManifestLocation location of the base manifest file
 	 * @param keyToUse private key that used for encryption
 	 * @param manifestName name for generated manifest file
@@ -105,145 +131,290 @@ public class DownloadManifestFactory {
 	 * @throws InvalidMetadataException
 	 */
 	public static String generateDownloadManifest(final ImageManifestFile baseManifest, final PublicKey keyToUse,
-			final String manifestName, int expirationHours) throws DownloadManifestException {
-		try {
-			//prepare to do pre-signed urls
-			AccessKey adminAccessKey = Accounts.lookupSystemAdmin().getKeys().get(0);
-			AWSCredentials myCredentials = new BasicAWSCredentials(adminAccessKey.getAccessKey(),
-					adminAccessKey.getSecretKey());
-			AmazonS3 s3Client = new AmazonS3Client(myCredentials);
-			ServiceConfiguration OSLocation = Topology.lookup( ObjectStorage.class );
-			s3Client.setEndpoint(OSLocation.getUri().getScheme() + "://" + OSLocation.getUri().getAuthority());
-			
-			java.util.Date expiration = new java.util.Date();
-			long msec = expiration.getTime() + 1000 * 60 * 60 * expirationHours;
-			expiration.setTime(msec);
-			
-			final String manifest = baseManifest.getManifest();
-			if (manifest == null) {
-				throw new DownloadManifestException("Can't generate download manifest from null base manifest");
-			}
-			final Document inputSource;
-			final XPath xpath;
-			Function<String, String> xpathHelper;
-			DocumentBuilder builder = XMLParser.getDocBuilder( );
-			inputSource = builder.parse( new ByteArrayInputStream( manifest.getBytes( ) ) );
-			if ( !"manifest".equals(inputSource.getDocumentElement().getNodeName()) ) {
-				LOG.error("Expected image manifest. Got " + nodeToString(inputSource, false) );
-				throw new InvalidBaseManifestException("Base manifest does not have manifest element");
+			final String manifestName, final int expirationHours) throws DownloadManifestException {
+		if (baseManifest.getImageId() == null) {
+			try {
+				return generate(baseManifest, keyToUse, manifestName, expirationHours).getUrl();
+			} catch (DownloadManifestException ex) {
+				throw ex;
+			} catch (Exception ex) {
+				LOG.error("Got an error", ex);
+				throw new DownloadManifestException("Can't generate download manifest");
 			}
-
-			StringBuilder signatureSrc = new StringBuilder();
-			Document manifestDoc = builder.newDocument();
-			Element root = (Element) manifestDoc.createElement("manifest");
-			manifestDoc.appendChild(root);
-			Element el = manifestDoc.createElement("version");
-			el.appendChild(manifestDoc.createTextNode("2014-01-14"));
-			signatureSrc.append(nodeToString(el, false));
-			root.appendChild(el);
-			el = manifestDoc.createElement("file-format");
-			el.appendChild(manifestDoc.createTextNode( baseManifest.getManifestType().getFileType().toString() ));
-			root.appendChild(el);
-			signatureSrc.append(nodeToString(el, false));
-			
-			xpath = XPathFactory.newInstance( ).newXPath();
-			xpathHelper = new Function<String, String>( ) {
+		}
+		final ManifestKey key = new ManifestKey(baseManifest, keyToUse, expirationHours);
+		final GeneratedManifest cached = manifestCache.getIfPresent(key);
+		if (cached != null && !cached.isReusable()) {
+			manifestCache.asMap().remove(key, cached);
+		}
+		try {
+			return manifestCache.get(key, new Callable<GeneratedManifest>() {
 				@Override
-				public String apply( String input ) {
-					try {
-						return ( String ) xpath.evaluate( input, inputSource, XPathConstants.STRING );
-					} catch ( XPathExpressionException ex ) {
-						return null;
-					}
+				public GeneratedManifest call() throws Exception {
+					return generate(baseManifest, keyToUse, manifestName, expirationHours);
 				}
-			};
-
-			// extract keys
-			//TODO: move this?
-			if (baseManifest.getManifestType().getFileType() == FileType.BUNDLE) {
-				String encryptedKey = xpathHelper.apply( "/manifest/image/ec2_encrypted_key" );
-				String encryptedIV = xpathHelper.apply( "/manifest/image/ec2_encrypted_iv" );
-				String size = xpathHelper.apply( "/manifest/image/size" );
-				EncryptedKey encryptKey = reEncryptKey(new EncryptedKey(encryptedKey, encryptedIV), keyToUse);
-				el = manifestDoc.createElement("bundle");
-				Element key = manifestDoc.createElement("encrypted-key");
-				key.appendChild(manifestDoc.createTextNode(encryptKey.getKey()));
-				Element iv = manifestDoc.createElement("encrypted-iv");
-				iv.appendChild(manifestDoc.createTextNode(encryptKey.getIV()));
-				el.appendChild(key);
-				el.appendChild(iv);
-				Element sizeEl = manifestDoc.createElement("unbundled-size");
-				sizeEl.appendChild(manifestDoc.createTextNode(size));
-				el.appendChild(sizeEl);
-				root.appendChild(el);
-				signatureSrc.append(nodeToString(el, false));
+			}).getUrl();
+		} catch (ExecutionException | UncheckedExecutionException ex) {
+			if (ex.getCause() instanceof DownloadManifestException) {
+				throw (DownloadManifestException) ex.getCause();
 			}
+			LOG.error("Got an error", ex.getCause());
+			throw new DownloadManifestException("Can't generate download manifest");
+		}
+	}
 
-			el = manifestDoc.createElement("image");
-			String bundleSize = xpathHelper.apply( baseManifest.getManifestType().getSizePath() );
-			if (bundleSize == null) {
-				throw new InvalidBaseManifestException("Base manifest does not have size element");
-			}
-			Element size = manifestDoc.createElement("size");
-			size.appendChild(manifestDoc.createTextNode(bundleSize));		
-			el.appendChild(size);
-			
-			Element partsEl = manifestDoc.createElement("parts");
-			el.appendChild(partsEl);
-			//parts
-			NodeList parts = ( NodeList ) xpath.evaluate( baseManifest.getManifestType().getPartsPath(), inputSource, XPathConstants.NODESET );
-			if (parts == null) {
-				throw new InvalidBaseManifestException("Base manifest does not have parts");
-			}
-			String bucketBase = "services/objectstorage/";
-			if (baseManifest.getManifestType().signPartUrl()) {
-				bucketBase += baseManifest.getBaseBucket();
-			}
-			for(int i=0; i<parts.getLength();i++){
-				Node part = parts.item(i);
-				String partIndex = part.getAttributes().getNamedItem("index").getNodeValue();
-				String partKey = ((Node) xpath.evaluate(baseManifest.getManifestType().getPartUrlElement(),
-						part, XPathConstants.NODE)).getTextContent();
-				String partDownloadUrl = partKey;
-				if (baseManifest.getManifestType().signPartUrl()) {
-					GeneratePresignedUrlRequest generatePresignedUrlRequest = 
-						new GeneratePresignedUrlRequest(bucketBase, partKey, HttpMethod.GET);
-					generatePresignedUrlRequest.setExpiration(expiration);
-					URL s = s3Client.generatePresignedUrl(generatePresignedUrlRequest);
-					partDownloadUrl = s.toString();
+	private static GeneratedManifest generate(final ImageManifestFile baseManifest, final PublicKey keyToUse,
+			final String manifestName, final int expirationHours) throws Exception {
+		//prepare to do pre-signed urls
+		AccessKey adminAccessKey = Accounts.lookupSystemAdmin().getKeys().get(0);
+		AWSCredentials myCredentials = new BasicAWSCredentials(adminAccessKey.getAccessKey(),
+				adminAccessKey.getSecretKey());
+		final AmazonS3 s3Client = new AmazonS3Client(myCredentials);
+		ServiceConfiguration OSLocation = Topology.lookup( ObjectStorage.class );
+		s3Client.setEndpoint(OSLocation.getUri().getScheme() + "://" + OSLocation.getUri().getAuthority());
+
+		final long created = System.currentTimeMillis();
+		final Date expiration = new Date(created + TimeUnit.HOURS.toMillis(expirationHours));
+
+		final String manifest = baseManifest.getManifest();
+		if (manifest == null) {
+			throw new DownloadManifestException("Can't generate download manifest from null base manifest");
+		}
+		final Document inputSource;
+		final XPath xpath;
+		Function<String, String> xpathHelper;
+		DocumentBuilder builder = XMLParser.getDocBuilder( );
+		inputSource = builder.parse( new ByteArrayInputStream( manifest.getBytes( ) ) );
+		if ( !"manifest".equals(inputSource.getDocumentElement().getNodeName()) ) {
+			LOG.error("Expected image manifest. Got " + nodeToString(inputSource, false) );
+			throw new InvalidBaseManifestException("Base manifest does not have manifest element");
+		}
+
+		xpath = XPathFactory.newInstance( ).newXPath();
+		xpathHelper = new Function<String, String>( ) {
+			@Override
+			public String apply( String input ) {
+				try {
+					return ( String ) xpath.evaluate( input, inputSource, XPathConstants.STRING );
+				} catch ( XPathExpressionException ex ) {
+					return null;
 				}
-				Element aPart = manifestDoc.createElement("part");
-				Element getUrl = manifestDoc.createElement("get-url");
-				getUrl.appendChild(manifestDoc.createTextNode(partDownloadUrl));
-				aPart.setAttribute("index", partIndex);
-				aPart.appendChild(getUrl);
-				partsEl.appendChild(aPart);
 			}
-			root.appendChild(el);
-			signatureSrc.append(nodeToString(el, false));
-			String signatureData = signatureSrc.toString();
-			Element signature = manifestDoc.createElement("signature");
-			signature.setAttribute("algorithm", "RSA-SHA256");
-			signature.appendChild(manifestDoc.createTextNode( Signatures.SHA256withRSA.trySign(Eucalyptus.class,
-					signatureData.getBytes()) ));
-			root.appendChild(signature);
-			String downloadManifest = nodeToString(manifestDoc, true);
-			//TODO: move this ?
+		};
+
+		String bundleSize = xpathHelper.apply( baseManifest.getManifestType().getSizePath() );
+		if (bundleSize == null) {
+			throw new InvalidBaseManifestException("Base manifest does not have size element");
+		}
+
+		//parts
+		NodeList parts = ( NodeList ) xpath.evaluate( baseManifest.getManifestType().getPartsPath(), inputSource, XPathConstants.NODESET );
+		if (parts == null) {
+			throw new InvalidBaseManifestException("Base manifest does not have parts");
+		}
+		final List<String> partIndexes = Lists.newArrayListWithCapacity(parts.getLength());
+		final List<String> partKeys = Lists.newArrayListWithCapacity(parts.getLength());
+		for(int i=0; i<parts.getLength();i++){
+			Node part = parts.item(i);
+			partIndexes.add(part.getAttributes().getNamedItem("index").getNodeValue());
+			partKeys.add(((Node) xpath.evaluate(baseManifest.getManifestType().getPartUrlElement(),
+					part, XPathConstants.NODE)).getTextContent());
+		}
+		final List<String> partDownloadUrls;
+		if (baseManifest.getManifestType().signPartUrl()) {
+			partDownloadUrls = presignPartUrls(s3Client,
+					"services/objectstorage/" + baseManifest.getBaseBucket(), partKeys, expiration);
+		} else {
+			partDownloadUrls = partKeys;
+		}
+
+		// extract keys
+		//TODO: move this?
+		EncryptedKey encryptKey = null;
+		String unbundledSize = null;
+		if (baseManifest.getManifestType().getFileType() == FileType.BUNDLE) {
+			String encryptedKey = xpathHelper.apply( "/manifest/image/ec2_encrypted_key" );
+			String encryptedIV = xpathHelper.apply( "/manifest/image/ec2_encrypted_iv" );
+			unbundledSize = xpathHelper.apply( "/manifest/image/size" );
+			encryptKey = reEncryptKey(new EncryptedKey(encryptedKey, encryptedIV), keyToUse);
+		}
+
+		String downloadManifest = writeManifest(baseManifest.getManifestType().getFileType(), encryptKey,
+				unbundledSize, bundleSize, partIndexes, partDownloadUrls, new Function<String, String>() {
+					@Override
+					public String apply(final String signatureData) {
+						return Signatures.SHA256withRSA.trySign(Eucalyptus.class, signatureData.getBytes());
+					}
+				});
+		//TODO: move this ?
+		if (!manifestsBucketChecked) {
 			createManifestsBucket();
+			manifestsBucketChecked = true;
+		}
+		try {
 			putManifestData(DOWNLOAD_MANIFEST_BUCKET_NAME, DOWNLOAD_MANIFEST_PREFIX+manifestName, downloadManifest);
-			// generate pre-sign url for download manifest
-			GeneratePresignedUrlRequest generatePresignedUrlRequest =
-					new GeneratePresignedUrlRequest("services/objectstorage/" + DOWNLOAD_MANIFEST_BUCKET_NAME,
-							DOWNLOAD_MANIFEST_PREFIX+manifestName, HttpMethod.GET);
+		} catch (EucalyptusCloudException ex) {
+			manifestsBucketChecked = false;
+			throw ex;
+		}
+		// generate pre-sign url for download manifest
+		GeneratePresignedUrlRequest generatePresignedUrlRequest =
+				new GeneratePresignedUrlRequest("services/objectstorage/" + DOWNLOAD_MANIFEST_BUCKET_NAME,
+						DOWNLOAD_MANIFEST_PREFIX+manifestName, HttpMethod.GET);
+		generatePresignedUrlRequest.setExpiration(expiration);
+		URL s = s3Client.generatePresignedUrl(generatePresignedUrlRequest);
+		return new GeneratedManifest(
+				String.format("%s://imaging@%s%s?%s", s.getProtocol(), s.getAuthority(), s.getPath(), s.getQuery()),
+				created,
+				expiration.getTime());
+	}
+
+	/**
+	 * Write a download manifest, the signature covers the elements between the
+	 * manifest start tag and the signature element.
+	 *
+	 * The output is the same as for a DOM document serialized with a
+	 * Transformer, including the XML declaration.
+	 */
+	static String writeManifest(final FileType fileType, @Nullable final EncryptedKey bundleKey,
+			@Nullable final String unbundledSize, final String imageSize, final List<String> partIndexes,
+			final List<String> partUrls, final Function<String, String> signer) throws XMLStreamException {
+		final StringWriter out = new StringWriter();
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+		final XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+		xml.writeStartElement("manifest");
+		// close the start tag, the signature covers the elements that follow
+		xml.writeCharacters("");
+		xml.flush();
+		final int signatureStart = out.getBuffer().length();
+		writeTextElement(xml, "version", "2014-01-14");
+		writeTextElement(xml, "file-format", fileType.toString());
+		if (bundleKey != null) {
+			xml.writeStartElement("bundle");
+			writeTextElement(xml, "encrypted-key", bundleKey.getKey());
+			writeTextElement(xml, "encrypted-iv", bundleKey.getIV());
+			writeTextElement(xml, "unbundled-size", unbundledSize);
+			xml.writeEndElement();
+		}
+		xml.writeStartElement("image");
+		writeTextElement(xml, "size", imageSize);
+		xml.writeStartElement("parts");
+		for(int i=0; i<partIndexes.size();i++){
+			xml.writeStartElement("part");
+			xml.writeAttribute("index", partIndexes.get(i));
+			writeTextElement(xml, "get-url", partUrls.get(i));
+			xml.writeEndElement();
+		}
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.flush();
+		final String signatureData = out.getBuffer().substring(signatureStart);
+		xml.writeStartElement("signature");
+		xml.writeAttribute("algorithm", "RSA-SHA256");
+		xml.writeCharacters(signer.apply(signatureData));
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndDocument();
+		xml.close();
+		return out.toString();
+	}
+
+	private static void writeTextElement(final XMLStreamWriter xml, final String name, final String text)
+			throws XMLStreamException {
+		xml.writeStartElement(name);
+		xml.writeCharacters(text);
+		xml.writeEndElement();
+	}
+
+	/**
+	 * Presign part URLs, large manifests are signed in parallel batches
+	 */
+	private static List<String> presignPartUrls(final AmazonS3 s3Client, final String bucket,
+			final List<String> partKeys, final Date expiration) throws Exception {
+		if (partKeys.size() <= PRESIGN_BATCH_SIZE) {
+			return presign(s3Client, bucket, partKeys, expiration);
+		}
+		final List<Future<List<String>>> batches = Lists.newArrayList();
+		for (final List<String> batch : Lists.partition(partKeys, PRESIGN_BATCH_SIZE)) {
+			batches.add(Threads.lookup(Eucalyptus.class, DownloadManifestFactory.class).limitTo(PRESIGN_THREADS).submit(
+					new Callable<List<String>>() {
+						@Override
+						public List<String> call() {
+							return presign(s3Client, bucket, batch, expiration);
+						}
+					}));
+		}
+		final List<String> urls = Lists.newArrayListWithCapacity(partKeys.size());
+		for (final Future<List<String>> batch : batches) {
+			urls.addAll(batch.get());
+		}
+		return urls;
+	}
+
+	private static List<String> presign(final AmazonS3 s3Client, final String bucket,
+			final List<String> partKeys, final Date expiration) {
+		final List<String> urls = Lists.newArrayListWithCapacity(partKeys.size());
+		for (final String partKey : partKeys) {
+			GeneratePresignedUrlRequest generatePresignedUrlRequest = 
+				new GeneratePresignedUrlRequest(bucket, partKey, HttpMethod.GET);
 			generatePresignedUrlRequest.setExpiration(expiration);
-			URL s = s3Client.generatePresignedUrl(generatePresignedUrlRequest);
-			return String.format("%s://imaging@%s%s?%s", s.getProtocol(), s.getAuthority(), s.getPath(), s.getQuery());
-		} catch(Exception ex) {
-			LOG.error("Got an error", ex);
-			throw new DownloadManifestException("Can't generate download manifest");
+			urls.add(s3Client.generatePresignedUrl(generatePresignedUrlRequest).toString());
 		}
+		return urls;
 	}
-	
+
+	private static final class ManifestKey {
+		private final String imageId;
+		private final String location;
+		private final ImageManifest manifestType;
+		private final PublicKey key;
+		private final int expirationHours;
+
+		ManifestKey(final ImageManifestFile baseManifest, final PublicKey key, final int expirationHours) {
+			this.imageId = baseManifest.getImageId();
+			this.location = baseManifest.getLocation();
+			this.manifestType = baseManifest.getManifestType();
+			this.key = key;
+			this.expirationHours = expirationHours;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			final ManifestKey that = (ManifestKey) o;
+			return expirationHours == that.expirationHours &&
+					Objects.equal(imageId, that.imageId) &&
+					Objects.equal(location, that.location) &&
+					Objects.equal(manifestType, that.manifestType) &&
+					Objects.equal(key, that.key);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(imageId, location, manifestType, key, expirationHours);
+		}
+	}
+
+	private static final class GeneratedManifest {
+		private final String url;
+		private final long created;
+		private final long expires;
+
+		GeneratedManifest(final String url, final long created, final long expires) {
+			this.url = url;
+			this.created = created;
+			this.expires = expires;
+		}
+
+		String getUrl() { return url; }
+
+		// reuse only while most of the expiration period remains
+		boolean isReusable() {
+			return System.currentTimeMillis() < created + (expires - created) / REUSE_FRACTION;
+		}
+	}
+
 	private static final String nodeToString(Node node, boolean addDeclaration) throws Exception {
 		Transformer tf = TransformerFactory.newInstance().newTransformer();
 		tf.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
@@ -254,7 +425,7 @@ public class DownloadManifestFactory {
 		return out.toString();
 	}
 	
-	private static class EncryptedKey {
+	static class EncryptedKey {
 		final String key;
 		final String IV;
 		public EncryptedKey(String key, String IV){
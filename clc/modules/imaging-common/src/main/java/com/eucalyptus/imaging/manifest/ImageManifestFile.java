@@ -24,10 +24,19 @@ import com.eucalyptus.util.EucalyptusCloudException;
 public class ImageManifestFile {
 	private final ImageManifest manifestType;
 	private final String location;
+	private final String imageId;
 	
 	public ImageManifestFile(String location, ImageManifest type) {
+		this(location, type, null);
+	}
+
+	/**
+	 * @param imageId identifier for the image (or task) the manifest is for
+	 */
+	public ImageManifestFile(String location, ImageManifest type, String imageId) {
 		this.manifestType = type;
 		this.location = location;
+		this.imageId = imageId;
 	}
 
 	public ImageManifest getManifestType() {
@@ -35,6 +44,14 @@ public class ImageManifestFile {
 		return manifestType;
 	}
 
+	public String getLocation() {
+		return location;
+	}
+
+	public String getImageId() {
+		return imageId;
+	}
+
 	public String getManifest() throws EucalyptusCloudException {
 		return manifestType.getManifest(this.location);
 	}
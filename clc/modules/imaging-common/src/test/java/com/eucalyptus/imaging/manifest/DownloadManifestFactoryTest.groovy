@@ -0,0 +1,148 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.imaging.manifest
+
+import static org.junit.Assert.*
+
+import javax.xml.parsers.DocumentBuilderFactory
+import javax.xml.transform.OutputKeys
+import javax.xml.transform.Transformer
+import javax.xml.transform.TransformerFactory
+import javax.xml.transform.dom.DOMSource
+import javax.xml.transform.stream.StreamResult
+
+import org.junit.Test
+import org.w3c.dom.Document
+import org.w3c.dom.Element
+import org.w3c.dom.Node
+
+import com.eucalyptus.imaging.manifest.DownloadManifestFactory.EncryptedKey
+import com.google.common.base.Function
+
+/**
+ * Unit tests for download manifest output
+ */
+class DownloadManifestFactoryTest {
+
+  private static final List<String> partIndexes = [ '0', '1', '2' ]
+  private static final List<String> partUrls = [
+      'http://10.1.1.1:8773/services/objectstorage/bucket/image.part.0?AWSAccessKeyId=AKI&Expires=1400000000&Signature=a%2Fb%3D',
+      'http://10.1.1.1:8773/services/objectstorage/bucket/image.part.1?AWSAccessKeyId=AKI&Expires=1400000000&Signature=c%2Bd',
+      'http://10.1.1.1:8773/services/objectstorage/bucket/image.part.2?AWSAccessKeyId=AKI&Expires=1400000000&Signature=<e>',
+  ]
+
+  @Test
+  void testBundleManifest( ) {
+    EncryptedKey key = new EncryptedKey( '0a1b2c3d4e5f', '5f4e3d2c1b0a' )
+    assertSameAsDom( FileType.BUNDLE, key, '10485760', '1048576' )
+  }
+
+  @Test
+  void testImportManifest( ) {
+    assertSameAsDom( FileType.VMDK, null, null, '2147483648' )
+  }
+
+  private static void assertSameAsDom( final FileType fileType,
+                                       final EncryptedKey key,
+                                       final String unbundledSize,
+                                       final String imageSize ) {
+    List<String> signed = [ ]
+    String manifest = DownloadManifestFactory.writeManifest( fileType, key, unbundledSize, imageSize, partIndexes, partUrls, { String data ->
+      signed << data
+      'signature-' + data.length( )
+    } as Function<String,String> )
+    List<String> domSigned = [ ]
+    String domManifest = domManifest( fileType, key, unbundledSize, imageSize, partIndexes, partUrls, { String data ->
+      domSigned << data
+      'signature-' + data.length( )
+    } )
+
+    assertEquals( 'Signed data', domSigned, signed )
+    assertEquals( 'Manifest', domManifest, manifest )
+  }
+
+  /**
+   * Manifest as generated using a DOM document
+   */
+  private static String domManifest( final FileType fileType,
+                                     final EncryptedKey encryptKey,
+                                     final String unbundledSize,
+                                     final String imageSize,
+                                     final List<String> partIndexes,
+                                     final List<String> partUrls,
+                                     final Closure<String> signer ) {
+    StringBuilder signatureSrc = new StringBuilder( )
+    Document manifestDoc = DocumentBuilderFactory.newInstance( ).newDocumentBuilder( ).newDocument( )
+    Element root = manifestDoc.createElement( 'manifest' )
+    manifestDoc.appendChild( root )
+    Element el = manifestDoc.createElement( 'version' )
+    el.appendChild( manifestDoc.createTextNode( '2014-01-14' ) )
+    signatureSrc.append( nodeToString( el, false ) )
+    root.appendChild( el )
+    el = manifestDoc.createElement( 'file-format' )
+    el.appendChild( manifestDoc.createTextNode( fileType.toString( ) ) )
+    root.appendChild( el )
+    signatureSrc.append( nodeToString( el, false ) )
+    if ( fileType == FileType.BUNDLE ) {
+      el = manifestDoc.createElement( 'bundle' )
+      Element key = manifestDoc.createElement( 'encrypted-key' )
+      key.appendChild( manifestDoc.createTextNode( encryptKey.getKey( ) ) )
+      Element iv = manifestDoc.createElement( 'encrypted-iv' )
+      iv.appendChild( manifestDoc.createTextNode( encryptKey.getIV( ) ) )
+      el.appendChild( key )
+      el.appendChild( iv )
+      Element sizeEl = manifestDoc.createElement( 'unbundled-size' )
+      sizeEl.appendChild( manifestDoc.createTextNode( unbundledSize ) )
+      el.appendChild( sizeEl )
+      root.appendChild( el )
+      signatureSrc.append( nodeToString( el, false ) )
+    }
+    el = manifestDoc.createElement( 'image' )
+    Element size = manifestDoc.createElement( 'size' )
+    size.appendChild( manifestDoc.createTextNode( imageSize ) )
+    el.appendChild( size )
+    Element partsEl = manifestDoc.createElement( 'parts' )
+    el.appendChild( partsEl )
+    for ( int i=0; i<partIndexes.size( ); i++ ) {
+      Element aPart = manifestDoc.createElement( 'part' )
+      Element getUrl = manifestDoc.createElement( 'get-url' )
+      getUrl.appendChild( manifestDoc.createTextNode( partUrls.get( i ) ) )
+      aPart.setAttribute( 'index', partIndexes.get( i ) )
+      aPart.appendChild( getUrl )
+      partsEl.appendChild( aPart )
+    }
+    root.appendChild( el )
+    signatureSrc.append( nodeToString( el, false ) )
+    Element signature = manifestDoc.createElement( 'signature' )
+    signature.setAttribute( 'algorithm', 'RSA-SHA256' )
+    signature.appendChild( manifestDoc.createTextNode( signer.call( signatureSrc.toString( ) ) ) )
+    root.appendChild( signature )
+    nodeToString( manifestDoc, true )
+  }
+
+  private static String nodeToString( final Node node, final boolean addDeclaration ) {
+    Transformer tf = TransformerFactory.newInstance( ).newTransformer( )
+    tf.setOutputProperty( OutputKeys.ENCODING, 'UTF-8' )
+    if ( !addDeclaration ) tf.setOutputProperty( OutputKeys.OMIT_XML_DECLARATION, 'yes' )
+    Writer out = new StringWriter( )
+    tf.transform( new DOMSource( node ), new StreamResult( out ) )
+    out.toString( )
+  }
+}
@@ -74,6 +74,7 @@ import com.eucalyptus.imaging.EmiConversionImagingTask;
 import com.eucalyptus.imaging.Imaging;
 import com.eucalyptus.imaging.ImagingServiceException;
 import com.eucalyptus.imaging.ImagingTask;
+import com.eucalyptus.imaging.ImagingTaskProgress;
 import com.eucalyptus.imaging.ImagingTasks;
 import com.eucalyptus.imaging.ImportTaskState;
 import com.eucalyptus.imaging.InstanceImagingTask;
@@ -234,6 +235,7 @@ public class ImportManager {
     for ( ImagingTask task : Iterables.filter( tasksToList, requestedAndAccessible ) ) {
       if(task instanceof EmiConversionImagingTask)
         continue;
+      ImagingTaskProgress.apply( task );
       ConversionTask t = task.getTask( );
       reply.getConversionTasks().add( t );
     }
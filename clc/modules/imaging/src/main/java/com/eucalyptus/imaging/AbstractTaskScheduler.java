@@ -74,12 +74,18 @@ public abstract class AbstractTaskScheduler {
 
   protected abstract ImagingTask getNext();
 
+  /**
+   * Schedule again a task that has work remaining after a dispatch.
+   */
+  protected void requeue(final ImagingTask task){ }
+
   public WorkerTask getTask() throws Exception{
     final ImagingTask nextTask = this.getNext();
     if(nextTask==null)
       return null;
     
     final WorkerTask newTask = new WorkerTask();
+    boolean hasMoreVolumes = false;
     try{
       if(nextTask instanceof VolumeImagingTask){
         final VolumeImagingTask volumeTask = (VolumeImagingTask) nextTask;
@@ -91,7 +97,7 @@ public abstract class AbstractTaskScheduler {
             try{
               manifestLocation = DownloadManifestFactory.generateDownloadManifest(
                   new ImageManifestFile(volumeTask.getImportManifestUrl(),
-                      ImportImageManifest.INSTANCE ),
+                      ImportImageManifest.INSTANCE, volumeTask.getDisplayName() ),
                       null, volumeTask.getDisplayName(), 1);
             }catch(final InvalidBaseManifestException ex){
               ImagingTasks.setState(volumeTask, ImportTaskState.FAILED, "Failed to generate download manifest");
@@ -109,12 +115,18 @@ public abstract class AbstractTaskScheduler {
           final String importManifestUrl = volume.getImage().getImportManifestUrl();
           if(! instanceTask.hasDownloadManifestUrl(importManifestUrl)){
             // meaning that this task has not been fully processed by worker
+            if(newTask.getTaskId()!=null){
+              hasMoreVolumes = true; // one volume per worker task
+              break;
+            }
             String manifestLocation = null;
+            // volumes are converted in parallel so each needs its own manifest
+            final String manifestName = nextTask.getDisplayName() + "-" + volume.getVolume().getId();
             try{
               manifestLocation = DownloadManifestFactory.generateDownloadManifest(
                   new ImageManifestFile(importManifestUrl,
-                      ImportImageManifest.INSTANCE ),
-                      null, nextTask.getDisplayName(), 1);
+                      ImportImageManifest.INSTANCE, manifestName ),
+                      null, manifestName, 1);
               ImagingTasks.addDownloadManifestUrl(instanceTask, importManifestUrl, manifestLocation);
             }catch(final InvalidBaseManifestException ex){
               ImagingTasks.setState(instanceTask, ImportTaskState.FAILED, "Failed to generate download manifest");
@@ -135,11 +147,15 @@ public abstract class AbstractTaskScheduler {
     }catch(final Exception ex){
       ;
     }
+    if(hasMoreVolumes)
+      this.requeue(nextTask);
+    if(newTask.getTaskId()!=null)
+      ImagingTaskQueue.getInstance().conversionDispatched(newTask.getTaskId(), newTask.getVolumeId());
     
     return newTask;
   }
 
   public static AbstractTaskScheduler getScheduler(){
-    return new FCFSTaskScheduler();
+    return new FairShareTaskScheduler();
   }
 }
@@ -19,44 +19,29 @@
  ************************************************************************/
 package com.eucalyptus.imaging;
 
-import java.util.Date;
-import java.util.List;
-
 import org.apache.log4j.Logger;
-import com.google.common.collect.Lists;
+
 /**
- * @author Sang-Min Park
+ * Scheduler that takes turns between accounts, tasks for an account are
+ * scheduled oldest first.
  *
+ * @see ImagingTaskQueue
  */
-public class FCFSTaskScheduler extends AbstractTaskScheduler {
-  private static Logger LOG = Logger.getLogger( FCFSTaskScheduler.class );
+public class FairShareTaskScheduler extends AbstractTaskScheduler {
+  private static Logger LOG = Logger.getLogger( FairShareTaskScheduler.class );
 
   @Override
-  public ImagingTask getNext() {
-    List<ImagingTask> allTasks = null;
-    List<ImagingTask> pendingTasks = Lists.newArrayList();
-    // pick a pending task whose timestamp is the oldest
+  protected ImagingTask getNext() {
     try{
-      allTasks = ImagingTasks.getImagingTasks();
-      for(final ImagingTask t : allTasks){
-        if(ImportTaskState.PENDING.equals(t.getState()))
-          pendingTasks.add(t);
-        else if (ImportTaskState.CONVERTING.equals(t.getState()) && t instanceof InstanceImagingTask)
-          pendingTasks.add(t); // more than one volumes should be processed by worker
-      }
-      
-      ImagingTask oldestTask = null;
-      Date oldest = new Date(Long.MAX_VALUE) ;
-      for(final ImagingTask task : pendingTasks){
-        if (oldest.after(task.getCreationTimestamp())){
-          oldest = task.getCreationTimestamp();
-          oldestTask = task;
-        }
-      }
-      return oldestTask;
+      return ImagingTaskQueue.getInstance().poll();
     }catch(final Exception ex){
       LOG.error("failed to schedule the task to imaging worker", ex);
       return null;
     }
   }
+
+  @Override
+  protected void requeue(final ImagingTask task) {
+    ImagingTaskQueue.getInstance().requeue(task);
+  }
 }
@@ -54,7 +54,7 @@ public class ImagingService {
           try{
             final long bytesConverted= request.getBytesConverted();
             if(bytesConverted>0)
-              ImagingTasks.updateBytesConverted(taskId, volumeId, bytesConverted);
+              ImagingTaskProgress.update(taskId, volumeId, bytesConverted);
           }catch(final Exception ex){
             LOG.warn("Failed to update bytes converted("+taskId+")");
           }
@@ -66,6 +66,7 @@ public class ImagingService {
           break;
 
         case DONE:
+          ImagingTaskQueue.getInstance().conversionFinished(taskId, volumeId, true, request.getBytesConverted());
           try{
               ImagingTasks.updateVolumeStatus(imagingTask, volumeId, ImportTaskState.COMPLETED, null);
           }catch(final Exception ex){
@@ -90,6 +91,7 @@ public class ImagingService {
           break;
 
         case FAILED:
+          ImagingTaskQueue.getInstance().conversionFinished(taskId, volumeId, false, null);
           ImagingTasks.setState(imagingTask, ImportTaskState.FAILED, request.getStatusMessage());
           break;
         }
@@ -0,0 +1,194 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.imaging;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.component.Topology;
+import com.eucalyptus.component.id.Eucalyptus;
+import com.eucalyptus.event.ClockTick;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Listeners;
+import com.eucalyptus.system.Threads;
+import com.google.common.collect.Maps;
+
+import edu.ucsb.eucalyptus.msgs.ConversionTask;
+import edu.ucsb.eucalyptus.msgs.ImportInstanceVolumeDetail;
+
+/**
+ * Conversion progress reported by imaging workers.
+ *
+ * <p>Progress is held in memory and written to the task periodically or
+ * with the next update of the task, whichever comes first. Descriptions of
+ * tasks should use {@link #apply(ImagingTask)} to show the current
+ * progress.</p>
+ *
+ * <p>Periodic writes run on the imaging thread pool, tasks that are being
+ * updated are skipped as the update in progress includes the current
+ * progress.</p>
+ */
+public class ImagingTaskProgress {
+  private static final Logger LOG = Logger.getLogger( ImagingTaskProgress.class );
+  private static final long WRITE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis( 30 );
+  private static final ConcurrentMap<String, TaskProgress> progressByTask = Maps.newConcurrentMap( );
+
+  /**
+   * Record the bytes converted for a task volume.
+   */
+  public static void update( final String taskId, final String volumeId, final long bytesConverted ) {
+    TaskProgress progress = progressByTask.get( taskId );
+    if ( progress == null ) {
+      final TaskProgress created = new TaskProgress( );
+      progress = progressByTask.putIfAbsent( taskId, created );
+      if ( progress == null ) progress = created;
+    }
+    progress.update( volumeId, bytesConverted );
+  }
+
+  /**
+   * Apply in memory progress to the given task.
+   *
+   * @return The progress version applied, for use with {@link #written}
+   */
+  public static long apply( final ImagingTask imagingTask ) {
+    final TaskProgress progress = progressByTask.get( imagingTask.getDisplayName( ) );
+    return progress == null ?
+        0 :
+        progress.apply( imagingTask.getTask( ) );
+  }
+
+  /**
+   * Note that progress up to the given version is persisted.
+   */
+  static void written( final String taskId, final long version ) {
+    final TaskProgress progress = progressByTask.get( taskId );
+    if ( progress != null ) {
+      progress.written( version );
+    }
+  }
+
+  static void removed( final String taskId ) {
+    progressByTask.remove( taskId );
+  }
+
+  static void writeAll( ) {
+    for ( final Map.Entry<String, TaskProgress> entry : progressByTask.entrySet( ) ) {
+      if ( !entry.getValue( ).isDirty( ) ) continue;
+      try {
+        if ( !ImagingTasks.updateBytesConverted( entry.getKey( ) ) ) {
+          LOG.debug( "Skipped saving conversion progress for task being updated " + entry.getKey( ) );
+        }
+      } catch ( final NoSuchElementException ex ) {
+        progressByTask.remove( entry.getKey( ), entry.getValue( ) );
+      } catch ( final Exception ex ) {
+        LOG.warn( "Failed to save conversion progress for task " + entry.getKey( ), ex );
+      }
+    }
+  }
+
+  private static final class TaskProgress {
+    private final ConcurrentMap<String, Long> bytesConverted = Maps.newConcurrentMap( );
+    private final AtomicLong version = new AtomicLong( );
+    private final AtomicLong writtenVersion = new AtomicLong( );
+
+    void update( final String volumeId, final long bytes ) {
+      bytesConverted.put( volumeId, bytes );
+      version.incrementAndGet( );
+    }
+
+    boolean isDirty( ) {
+      return version.get( ) > writtenVersion.get( );
+    }
+
+    /**
+     * Version is read before the values so that any update racing with the
+     * apply leaves the progress dirty.
+     */
+    long apply( final ConversionTask task ) {
+      final long applied = version.get( );
+      if ( task.getImportVolume( ) != null ) {
+        for ( final Long bytes : bytesConverted.values( ) ) {
+          task.getImportVolume( ).setBytesConverted( bytes );
+        }
+      } else if ( task.getImportInstance( ) != null && task.getImportInstance( ).getVolumes( ) != null ) {
+        final List<ImportInstanceVolumeDetail> volumes = task.getImportInstance( ).getVolumes( );
+        for ( final ImportInstanceVolumeDetail volume : volumes ) {
+          if ( volume.getVolume( ) != null ) {
+            final Long bytes = bytesConverted.get( volume.getVolume( ).getId( ) );
+            if ( bytes != null ) {
+              volume.setBytesConverted( bytes );
+            }
+          }
+        }
+      }
+      return applied;
+    }
+
+    void written( final long applied ) {
+      long current;
+      while ( ( current = writtenVersion.get( ) ) < applied ) {
+        if ( writtenVersion.compareAndSet( current, applied ) ) break;
+      }
+    }
+  }
+
+  public static class ProgressWriter implements EventListener<ClockTick> {
+    private final AtomicBoolean writing = new AtomicBoolean( false );
+    private volatile long lastWrite = 0;
+
+    public static void register( ) {
+      Listeners.register( ClockTick.class, new ProgressWriter( ) );
+    }
+
+    @Override
+    public void fireEvent( final ClockTick event ) {
+      if ( !( Bootstrap.isFinished( ) &&
+          Topology.isEnabled( Eucalyptus.class ) ) )
+        return;
+      final long now = System.currentTimeMillis( );
+      if ( now - lastWrite < WRITE_INTERVAL_MILLIS || !writing.compareAndSet( false, true ) ) return;
+      lastWrite = now;
+      try {
+        Threads.lookup( Imaging.class, ImagingTaskProgress.class ).submit( new Runnable( ) {
+          @Override
+          public void run( ) {
+            try {
+              writeAll( );
+            } finally {
+              writing.set( false );
+            }
+          }
+        } );
+      } catch ( final RuntimeException ex ) {
+        writing.set( false );
+        LOG.error( "Failed to schedule save of conversion progress", ex );
+      }
+    }
+  }
+}
@@ -0,0 +1,447 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.imaging;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.apache.log4j.Logger;
+
+import com.eucalyptus.util.Mbeans;
+import com.eucalyptus.ws.server.LatencyHistogram;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import edu.ucsb.eucalyptus.msgs.ImportInstanceVolumeDetail;
+
+/**
+ * Queue of imaging tasks that are ready for a worker.
+ *
+ * <p>Tasks are queued per account in creation order and accounts take turns,
+ * the account that least recently had a task dispatched goes next. The queue
+ * is loaded from the database on first use, kept current by
+ * {@link ImagingTasks} as task states change and periodically reloaded.</p>
+ *
+ * <p>Queued tasks are checked against the database when dispatched, so a
+ * task that is no longer runnable is skipped.</p>
+ *
+ * <p>Queue changes are numbered so that a reload does not undo changes made
+ * after its database query started.</p>
+ */
+public class ImagingTaskQueue {
+  private static final Logger LOG = Logger.getLogger( ImagingTaskQueue.class );
+  private static final long RELOAD_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis( 5 );
+  private static final ImagingTaskQueue instance = new ImagingTaskQueue( );
+
+  // in-memory state only, no database access while held
+  private final Object queueLock = new Object( );
+  private final Map<String, AccountQueue> accountQueues = Maps.newHashMap( );
+  private final PriorityQueue<AccountQueue> accounts = new PriorityQueue<>( 16, AccountQueue.ORDER );
+  private final Map<String, QueuedTask> queuedTasks = Maps.newHashMap( );
+  private final Map<String, Long> reloadChanges = Maps.newHashMap( );
+  private long dispatchSequence = 0;
+  private long generation = 0;
+  private boolean reloading = false;
+  private long lastLoad = 0;
+
+  private final LatencyHistogram queueWait = new LatencyHistogram( );
+  private final LatencyHistogram conversionTime = new LatencyHistogram( );
+  private final ConcurrentMap<String, Long> conversionStarts = Maps.newConcurrentMap( );
+  private final AtomicLong conversionsDispatched = new AtomicLong( );
+  private final AtomicLong conversionsCompleted = new AtomicLong( );
+  private final AtomicLong conversionsFailed = new AtomicLong( );
+  private final AtomicLong bytesConverted = new AtomicLong( );
+
+  static {
+    Mbeans.register( new ImagingQueueStatistics( ) );
+  }
+
+  ImagingTaskQueue( ) {
+  }
+
+  public static ImagingTaskQueue getInstance( ) {
+    return instance;
+  }
+
+  /**
+   * Get the next runnable task, removing it from the queue.
+   *
+   * @return The task or null if there is no runnable task
+   */
+  @Nullable
+  public ImagingTask poll( ) {
+    if ( isReloadRequired( ) ) {
+      reload( );
+    }
+    QueuedTask queuedTask;
+    while ( ( queuedTask = dequeue( ) ) != null ) {
+      final ImagingTask task;
+      try {
+        task = ImagingTasks.lookup( queuedTask.taskId );
+      } catch ( final Exception ex ) {
+        continue; // deleted
+      }
+      if ( isRunnable( task ) ) {
+        queueWait.record( TimeUnit.MILLISECONDS.toNanos( System.currentTimeMillis( ) - queuedTask.queued ) );
+        return task;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Queue a task that has work remaining after a dispatch.
+   */
+  public void requeue( final ImagingTask task ) {
+    offer( task, System.currentTimeMillis( ) );
+  }
+
+  /**
+   * Update the queue for a committed task state.
+   */
+  void stateChanged( final ImagingTask task ) {
+    if ( ImportTaskState.PENDING.equals( task.getState( ) ) ) {
+      offer( task, System.currentTimeMillis( ) );
+    } else if ( !ImportTaskState.CONVERTING.equals( task.getState( ) ) ) {
+      removed( task.getDisplayName( ) );
+    }
+  }
+
+  /**
+   * Remove a task from the queue.
+   */
+  void removed( final String taskId ) {
+    synchronized ( queueLock ) {
+      changed( taskId );
+      final QueuedTask queuedTask = queuedTasks.remove( taskId );
+      if ( queuedTask != null ) {
+        queuedTask.removed = true; // discarded when dequeued
+      }
+    }
+    for ( final String conversion : conversionStarts.keySet( ) ) {
+      if ( conversion.startsWith( taskId + ":" ) ) {
+        conversionStarts.remove( conversion );
+      }
+    }
+  }
+
+  /**
+   * Record that a volume conversion was handed to a worker.
+   */
+  void conversionDispatched( final String taskId, final String volumeId ) {
+    conversionsDispatched.incrementAndGet( );
+    conversionStarts.put( taskId + ":" + volumeId, System.nanoTime( ) );
+  }
+
+  /**
+   * Record the result of a volume conversion reported by a worker.
+   */
+  void conversionFinished( final String taskId, final String volumeId, final boolean success, @Nullable final Long bytes ) {
+    final Long start = conversionStarts.remove( taskId + ":" + volumeId );
+    if ( success ) {
+      conversionsCompleted.incrementAndGet( );
+      if ( bytes != null && bytes > 0 ) {
+        bytesConverted.addAndGet( bytes );
+      }
+      if ( start != null ) {
+        conversionTime.record( System.nanoTime( ) - start );
+      }
+    } else {
+      conversionsFailed.incrementAndGet( );
+    }
+  }
+
+  private boolean isReloadRequired( ) {
+    synchronized ( queueLock ) {
+      return lastLoad < System.currentTimeMillis( ) - RELOAD_INTERVAL_MILLIS;
+    }
+  }
+
+  /**
+   * Reload runnable tasks from the database, covering any state changes made
+   * elsewhere. Tasks already queued keep their position.
+   */
+  private void reload( ) {
+    final long reloadGeneration = reloadStarted( );
+    if ( reloadGeneration < 0 ) {
+      return; // reload in progress
+    }
+    List<QueuedTask> runnable = Lists.newArrayList( );
+    try {
+      for ( final ImagingTask task : ImagingTasks.getImagingTasks( ) ) {
+        if ( isRunnable( task ) ) {
+          final Date lastUpdate = task.getLastUpdateTimestamp( );
+          runnable.add( queuedTask( task, lastUpdate == null ? System.currentTimeMillis( ) : lastUpdate.getTime( ) ) );
+        }
+      }
+    } catch ( final Exception ex ) {
+      LOG.error( "Failed to load imaging tasks", ex );
+      runnable = null;
+    } finally {
+      reloaded( reloadGeneration, runnable );
+    }
+  }
+
+  /**
+   * Start a reload, changes are tracked until the reload completes.
+   *
+   * @return The generation for the reload or -1 if a reload is in progress
+   */
+  long reloadStarted( ) {
+    synchronized ( queueLock ) {
+      if ( reloading ) {
+        return -1;
+      }
+      reloading = true;
+      lastLoad = System.currentTimeMillis( );
+      return ++generation;
+    }
+  }
+
+  /**
+   * Complete a reload with the runnable tasks loaded from the database, or
+   * null if loading failed.
+   *
+   * <p>Tasks queued or removed after the reload started are left as they are,
+   * the loaded state for those tasks may be out of date.</p>
+   */
+  void reloaded( final long reloadGeneration, @Nullable final Iterable<QueuedTask> runnable ) {
+    synchronized ( queueLock ) {
+      try {
+        if ( runnable != null ) {
+          final Map<String, QueuedTask> runnableById = Maps.newHashMap( );
+          for ( final QueuedTask queuedTask : runnable ) {
+            runnableById.put( queuedTask.taskId, queuedTask );
+          }
+          for ( final Iterator<QueuedTask> iterator = queuedTasks.values( ).iterator( ); iterator.hasNext( ); ) {
+            final QueuedTask queuedTask = iterator.next( );
+            if ( queuedTask.generation < reloadGeneration && !runnableById.containsKey( queuedTask.taskId ) ) {
+              queuedTask.removed = true;
+              iterator.remove( );
+            }
+          }
+          for ( final QueuedTask queuedTask : runnableById.values( ) ) {
+            final Long changed = reloadChanges.get( queuedTask.taskId );
+            if ( changed == null || changed < reloadGeneration ) {
+              enqueue( queuedTask );
+            }
+          }
+        }
+      } finally {
+        reloading = false;
+        reloadChanges.clear( );
+      }
+    }
+  }
+
+  private void offer( final ImagingTask task, final long queued ) {
+    offer( queuedTask( task, queued ) );
+  }
+
+  void offer( final QueuedTask queuedTask ) {
+    synchronized ( queueLock ) {
+      changed( queuedTask.taskId );
+      enqueue( queuedTask );
+    }
+  }
+
+  /**
+   * Queue a task if not already queued, caller must hold the queue lock.
+   */
+  private void enqueue( final QueuedTask queuedTask ) {
+    if ( queuedTasks.containsKey( queuedTask.taskId ) ) {
+      return;
+    }
+    queuedTask.generation = generation;
+    queuedTasks.put( queuedTask.taskId, queuedTask );
+    AccountQueue accountQueue = accountQueues.get( queuedTask.accountNumber );
+    if ( accountQueue == null ) {
+      accountQueue = new AccountQueue( queuedTask.accountNumber );
+      accountQueues.put( queuedTask.accountNumber, accountQueue );
+    }
+    accountQueue.tasks.offer( queuedTask );
+    if ( !accountQueue.queued ) {
+      accountQueue.enqueued( );
+      accounts.offer( accountQueue );
+    }
+  }
+
+  /**
+   * Record a change to a task, caller must hold the queue lock.
+   */
+  private void changed( final String taskId ) {
+    if ( reloading ) {
+      reloadChanges.put( taskId, generation );
+    }
+  }
+
+  private static QueuedTask queuedTask( final ImagingTask task, final long queued ) {
+    final Date created = task.getCreationTimestamp( );
+    return new QueuedTask(
+        task.getDisplayName( ),
+        task.getOwnerAccountNumber( ),
+        created == null ? 0 : created.getTime( ),
+        queued );
+  }
+
+  @Nullable
+  QueuedTask dequeue( ) {
+    synchronized ( queueLock ) {
+      AccountQueue accountQueue;
+      while ( ( accountQueue = accounts.poll( ) ) != null ) {
+        accountQueue.queued = false;
+        QueuedTask queuedTask;
+        while ( ( queuedTask = accountQueue.tasks.poll( ) ) != null && queuedTask.removed );
+        if ( queuedTask != null ) {
+          changed( queuedTask.taskId );
+          queuedTasks.remove( queuedTask.taskId );
+          accountQueue.lastDispatch = ++dispatchSequence;
+        }
+        if ( !accountQueue.tasks.isEmpty( ) ) {
+          accountQueue.enqueued( );
+          accounts.offer( accountQueue );
+        } // idle accounts are kept so a requeued task does not jump ahead
+        if ( queuedTask != null ) {
+          return queuedTask;
+        }
+      }
+      return null;
+    }
+  }
+
+  private static boolean isRunnable( final ImagingTask task ) {
+    if ( ImportTaskState.PENDING.equals( task.getState( ) ) ) {
+      return true;
+    } else if ( ImportTaskState.CONVERTING.equals( task.getState( ) ) && task instanceof InstanceImagingTask ) {
+      // more than one volumes should be processed by worker
+      for ( final ImportInstanceVolumeDetail volume : ( (InstanceImagingTask) task ).getVolumes( ) ) {
+        if ( !task.hasDownloadManifestUrl( volume.getImage( ).getImportManifestUrl( ) ) ) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  static final class QueuedTask {
+    private static final Comparator<QueuedTask> ORDER = new Comparator<QueuedTask>( ) {
+      @Override
+      public int compare( final QueuedTask task1, final QueuedTask task2 ) {
+        final int result = Long.compare( task1.created, task2.created );
+        return result != 0 ? result : task1.taskId.compareTo( task2.taskId );
+      }
+    };
+
+    private final String taskId;
+    private final String accountNumber;
+    private final long created;
+    private final long queued;
+    private long generation;
+    private boolean removed;
+
+    QueuedTask( final String taskId, final String accountNumber, final long created, final long queued ) {
+      this.taskId = taskId;
+      this.accountNumber = accountNumber;
+      this.created = created;
+      this.queued = queued;
+    }
+  }
+
+  /**
+   * Tasks for an account, ordered among accounts by least recent dispatch.
+   *
+   * <p>The order of an account in the queue must not change while it is
+   * queued so the oldest task is only recorded when the account is queued.</p>
+   */
+  private static final class AccountQueue {
+    private static final Comparator<AccountQueue> ORDER = new Comparator<AccountQueue>( ) {
+      @Override
+      public int compare( final AccountQueue queue1, final AccountQueue queue2 ) {
+        int result = Long.compare( queue1.lastDispatch, queue2.lastDispatch );
+        if ( result == 0 ) result = Long.compare( queue1.oldest, queue2.oldest );
+        return result != 0 ? result : String.valueOf( queue1.accountNumber ).compareTo( String.valueOf( queue2.accountNumber ) );
+      }
+    };
+
+    private final String accountNumber;
+    private final PriorityQueue<QueuedTask> tasks = new PriorityQueue<>( 16, QueuedTask.ORDER );
+    private long lastDispatch = 0;
+    private long oldest = 0;
+    private boolean queued;
+
+    private AccountQueue( final String accountNumber ) {
+      this.accountNumber = accountNumber;
+    }
+
+    private void enqueued( ) {
+      this.oldest = tasks.peek( ).created;
+      this.queued = true;
+    }
+  }
+
+  /**
+   * JMX view of imaging queue statistics.
+   */
+  public static class ImagingQueueStatistics {
+    public int getQueuedTasks( ) {
+      synchronized ( instance.queueLock ) {
+        return instance.queuedTasks.size( );
+      }
+    }
+
+    public String getQueueWait( ) {
+      return instance.queueWait.toString( );
+    }
+
+    public String getConversionTime( ) {
+      return instance.conversionTime.toString( );
+    }
+
+    public long getConversionsDispatched( ) {
+      return instance.conversionsDispatched.get( );
+    }
+
+    public long getConversionsCompleted( ) {
+      return instance.conversionsCompleted.get( );
+    }
+
+    public long getConversionsFailed( ) {
+      return instance.conversionsFailed.get( );
+    }
+
+    public long getBytesConverted( ) {
+      return instance.bytesConverted.get( );
+    }
+
+    @Override
+    public String toString( ) {
+      return "Imaging task queue wait and conversion throughput";
+    }
+  }
+}
@@ -21,8 +21,12 @@ package com.eucalyptus.imaging;
 
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+
+import javax.persistence.OptimisticLockException;
 
 import org.apache.log4j.Logger;
+import org.hibernate.StaleStateException;
 
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.entities.TransactionException;
@@ -30,8 +34,12 @@ import com.eucalyptus.entities.TransactionResource;
 import com.eucalyptus.imaging.worker.EucalyptusActivityTasks;
 import com.eucalyptus.util.Exceptions;
 import com.eucalyptus.util.OwnerFullName;
+import com.eucalyptus.util.Pair;
 import com.eucalyptus.util.TypeMappers;
+import com.google.common.base.Function;
+import com.google.common.base.Supplier;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Striped;
 
 import edu.ucsb.eucalyptus.msgs.ClusterInfoType;
 import edu.ucsb.eucalyptus.msgs.ConversionTask;
@@ -46,8 +54,9 @@ import edu.ucsb.eucalyptus.msgs.InstancePlacement;
 
 public class ImagingTasks {
   private static Logger    LOG                           = Logger.getLogger( ImagingTasks.class );
+  static final int         UPDATE_ATTEMPTS               = 5;
+  private static final Striped<Lock> taskLocks           = Striped.lock( 64 );
   public enum IMAGE_FORMAT {  VMDK , RAW , VHD, PARTI_EMI };
-  private static Object lock = new Object();
   
   public static VolumeImagingTask createImportVolumeTask(ImportVolumeType request) throws ImagingServiceException {
     /// sanity check
@@ -301,34 +310,30 @@ public class ImagingTasks {
   }
   
   public static List<ImagingTask> getImagingTasks(final OwnerFullName owner, final List<String> taskIdList){
-    synchronized(lock){
-      final List<ImagingTask> result = Lists.newArrayList();
-      try ( final TransactionResource db =
-          Entities.transactionFor( ImagingTask.class ) ) {
-        final ImagingTask sample = ImagingTask.named(owner);
-        final List<ImagingTask> tasks = Entities.query(sample, true);
-        if(taskIdList!=null && taskIdList.size()>0){
-          for(final ImagingTask candidate : tasks){
-            if(taskIdList.contains(candidate.getDisplayName()))
-              result.add(candidate);
-          }
-        }else
-          result.addAll(tasks);
-      }
-      return result;
+    final List<ImagingTask> result = Lists.newArrayList();
+    try ( final TransactionResource db =
+        Entities.transactionFor( ImagingTask.class ) ) {
+      final ImagingTask sample = ImagingTask.named(owner);
+      final List<ImagingTask> tasks = Entities.query(sample, true);
+      if(taskIdList!=null && taskIdList.size()>0){
+        for(final ImagingTask candidate : tasks){
+          if(taskIdList.contains(candidate.getDisplayName()))
+            result.add(candidate);
+        }
+      }else
+        result.addAll(tasks);
     }
+    return result;
   }
   
   // return all imaging tasks in DB
   public static List<ImagingTask> getImagingTasks(){
-    synchronized(lock){
-      List<ImagingTask> result = Lists.newArrayList();
-      try ( final TransactionResource db =
-          Entities.transactionFor( ImagingTask.class ) ) {
-        result = Entities.query(ImagingTask.named(), true);
-      }
-      return result;
+    List<ImagingTask> result = Lists.newArrayList();
+    try ( final TransactionResource db =
+        Entities.transactionFor( ImagingTask.class ) ) {
+      result = Entities.query(ImagingTask.named(), true);
     }
+    return result;
   }
   
   public static void setState(final ImagingTask task, final ImportTaskState state, final String stateReason)
@@ -339,183 +344,219 @@ public class ImagingTasks {
   
   public static void setState(final OwnerFullName owner, final String taskId, 
       final ImportTaskState state, final String stateReason) throws NoSuchElementException{
-    synchronized(lock){
-      //TODO NEED TO VALIDATE THE STATE TRANSITION (IN MEMORY STATE MAY BE DIFFERENT FROM PERSISTENT STATE
-      
-      try ( final TransactionResource db =
-          Entities.transactionFor( ImagingTask.class ) ) {
-        try{
-          final ImagingTask task = Entities.uniqueResult(ImagingTask.named(owner, taskId));
-          task.setState(state);
-          if(stateReason!=null)
-            task.setStateReason(stateReason);
-          final String externalState = state.getExternalTaskStateName();
-          task.getTask().setState(externalState);
-          if(stateReason!=null)
-            task.getTask().setStatusMessage(stateReason);
-          task.serializeTaskToJSON();
-          task.updateTimeStamps();
-          Entities.persist(task);
-          db.commit();
-        }catch(final TransactionException ex){
-          throw Exceptions.toUndeclared(ex);
-        }
+    //TODO NEED TO VALIDATE THE STATE TRANSITION (IN MEMORY STATE MAY BE DIFFERENT FROM PERSISTENT STATE
+    final Pair<ImagingTask,Long> updated = updateTask(ImagingTask.named(owner, taskId), new Function<ImagingTask,Pair<ImagingTask,Long>>(){
+      @Override
+      public Pair<ImagingTask,Long> apply(final ImagingTask task) {
+        task.setState(state);
+        if(stateReason!=null)
+          task.setStateReason(stateReason);
+        final String externalState = state.getExternalTaskStateName();
+        task.getTask().setState(externalState);
+        if(stateReason!=null)
+          task.getTask().setStatusMessage(stateReason);
+        final long progress = ImagingTaskProgress.apply(task);
+        task.serializeTaskToJSON();
+        task.updateTimeStamps();
+        Entities.persist(task);
+        return Pair.pair(task, progress);
       }
-    }
+    });
+    progressWritten(updated.getLeft(), updated.getRight());
+    ImagingTaskQueue.getInstance().stateChanged(updated.getLeft());
   }
   
-  // transit a task's state in a lock 
+  // transit a task's state, the transition fails if the task is no longer in the before state
   public static void transitState(final ImagingTask task, final ImportTaskState before, 
       final ImportTaskState after, final String stateMessage) throws Exception{
-    synchronized(lock){
-      try ( final TransactionResource db =
-          Entities.transactionFor( ImagingTask.class ) ) {
-        try{
-          final ImagingTask entity = Entities.uniqueResult(task);
-          if(!before.equals(entity.getState()))
-            throw new Exception("Current state is not "+before);
-          entity.setState(after);
-          if(stateMessage!=null)
-            entity.setStateReason(stateMessage);
-          final String externalState = after.getExternalTaskStateName();
-          entity.getTask().setState(externalState);
-          if(stateMessage!=null)
-            entity.getTask().setStatusMessage(stateMessage);
-          entity.serializeTaskToJSON();
-          entity.updateTimeStamps();
-          db.commit();
-        }catch(final TransactionException ex){
-          throw Exceptions.toUndeclared(ex);
-        }
-      }  
-    }
+    final Pair<ImagingTask,Long> updated = updateTask(task, new Function<ImagingTask,Pair<ImagingTask,Long>>(){
+      @Override
+      public Pair<ImagingTask,Long> apply(final ImagingTask entity) {
+        if(!before.equals(entity.getState()))
+          throw new IllegalStateException("Current state is not "+before);
+        entity.setState(after);
+        if(stateMessage!=null)
+          entity.setStateReason(stateMessage);
+        final String externalState = after.getExternalTaskStateName();
+        entity.getTask().setState(externalState);
+        if(stateMessage!=null)
+          entity.getTask().setStatusMessage(stateMessage);
+        final long progress = ImagingTaskProgress.apply(entity);
+        entity.serializeTaskToJSON();
+        entity.updateTimeStamps();
+        return Pair.pair(entity, progress);
+      }
+    });
+    progressWritten(updated.getLeft(), updated.getRight());
+    ImagingTaskQueue.getInstance().stateChanged(updated.getLeft());
   }
   
   public static void setVolumeId(final VolumeImagingTask task, final String volumeId) 
       throws NoSuchElementException{
-    synchronized(lock){
-      try ( final TransactionResource db =
-          Entities.transactionFor( VolumeImagingTask.class ) ) {
-        try{
-          final VolumeImagingTask update = Entities.uniqueResult(task);
-          update.setVolumeId(volumeId);
-          Entities.persist(update);
-          db.commit();
-        }catch(final TransactionException ex){
-          throw Exceptions.toUndeclared(ex);
-        }
+    updateTask(task, new Function<VolumeImagingTask,Void>(){
+      @Override
+      public Void apply(final VolumeImagingTask update) {
+        update.setVolumeId(volumeId);
+        Entities.persist(update);
+        return null;
       }
-    }
+    });
   }
   
-  public static void updateBytesConverted(final String taskId, final String volumeId, long bytesConverted ){
-    try ( final TransactionResource db =
-        Entities.transactionFor(ImagingTask.class ) ) {
-      try{
-        final ImagingTask entity = Entities.uniqueResult(ImagingTask.named(taskId));
-        final ConversionTask task = entity.getTask();
-        if(task.getImportVolume()!=null){
-          task.getImportVolume().setBytesConverted(bytesConverted);
-        }else if(task.getImportInstance()!=null && task.getImportInstance().getVolumes()!=null){
-          final List<ImportInstanceVolumeDetail> volumes = task.getImportInstance().getVolumes();
-          for(final ImportInstanceVolumeDetail volume : volumes){
-            if(volume.getVolume()!=null && volumeId.equals(volume.getVolume().getId())){
-              volume.setBytesConverted(bytesConverted);
-            }
-          }
+  // save in memory conversion progress for the task, returns false if the task is being updated
+  static boolean updateBytesConverted(final String taskId) throws NoSuchElementException{
+    final Lock lock = taskLocks.get(taskId);
+    if(!lock.tryLock())
+      return false;
+    try{
+      final Pair<ImagingTask,Long> updated = updateTask(ImagingTask.named(taskId), new Function<ImagingTask,Pair<ImagingTask,Long>>(){
+        @Override
+        public Pair<ImagingTask,Long> apply(final ImagingTask entity) {
+          final long progress = ImagingTaskProgress.apply(entity);
+          entity.serializeTaskToJSON();
+          Entities.persist(entity);
+          return Pair.pair(entity, progress);
         }
-        entity.serializeTaskToJSON();
-        Entities.persist(entity);
-        db.commit();
-      }catch(final Exception ex){
-        throw Exceptions.toUndeclared(ex);
-      }
+      });
+      progressWritten(updated.getLeft(), updated.getRight());
+      return true;
+    }finally{
+      lock.unlock();
     }
   }
   
+  private static void progressWritten(final ImagingTask task, final long progress){
+    final ImportTaskState state = task.getState();
+    if(ImportTaskState.COMPLETED.equals(state) || ImportTaskState.CANCELLED.equals(state)
+        || ImportTaskState.FAILED.equals(state))
+      ImagingTaskProgress.removed(task.getDisplayName());
+    else
+      ImagingTaskProgress.written(task.getDisplayName(), progress);
+  }
+  
+  // replace the task JSON with the given task, only the JSON is updated
   public static void updateTaskInJson(final ImagingTask task){
-    synchronized(lock){
-      try ( final TransactionResource db =
-          Entities.transactionFor(ImagingTask.class ) ) {
-        try{
-          task.serializeTaskToJSON();
-          final ImagingTask update = Entities.uniqueResult(task);
-          update.setTaskInJsons(task.getTaskInJsons());
-          Entities.persist(update);
-          db.commit();
-        }catch(final TransactionException ex){
-          throw Exceptions.toUndeclared(ex);
-        }
+    final long written = updateTask(task, new Function<ImagingTask,Long>(){
+      @Override
+      public Long apply(final ImagingTask update) {
+        final long progress = ImagingTaskProgress.apply(task);
+        task.serializeTaskToJSON();
+        update.setTaskInJsons(task.getTaskInJsons());
+        Entities.persist(update);
+        return progress;
       }
-    }
+    });
+    ImagingTaskProgress.written(task.getDisplayName(), written);
   }
   
   public static void addDownloadManifestUrl(final ImagingTask task, 
       final String importManifestUrl, final String downloadManifestUrl){
-    synchronized(lock){
-      try ( final TransactionResource db =
-          Entities.transactionFor(ImagingTask.class ) ) {
-        try{
-          final ImagingTask entity = Entities.uniqueResult(task);
+    updateTask(task, new Function<ImagingTask,Void>(){
+      @Override
+      public Void apply(final ImagingTask entity) {
+        if(!entity.hasDownloadManifestUrl(importManifestUrl))
           entity.addDownloadManifestUrl(importManifestUrl, downloadManifestUrl);
-          db.commit();
-        }catch(final TransactionException ex){
-          throw Exceptions.toUndeclared(ex);
-        }
+        return null;
       }
-    }
+    });
   }
   
   public static void save(final ImagingTask task){
-    try ( final TransactionResource db =
-        Entities.transactionFor(ImagingTask.class ) ) {
-      try{
-        final ImagingTask update = Entities.uniqueResult(task);
+    updateTask(task, new Function<ImagingTask,Void>(){
+      @Override
+      public Void apply(final ImagingTask update) {
         Entities.persist(update);
-        db.commit();
-      }catch(final TransactionException ex){
-        throw Exceptions.toUndeclared(ex);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Update the current version of a task.
+   *
+   * <p>The update is applied to the task loaded in a new transaction.</p>
+   *
+   * @see #updateTask(String, Supplier)
+   */
+  static <T extends ImagingTask,R> R updateTask(final T task, final Function<? super T,R> update){
+    return updateTask(task.getDisplayName(), new Supplier<R>(){
+      @Override
+      public R get() {
+        try ( final TransactionResource db =
+            Entities.transactionFor( ImagingTask.class ) ) {
+          try{
+            final R result = update.apply(Entities.uniqueResult(task));
+            db.commit();
+            return result;
+          }catch(final TransactionException ex){
+            throw Exceptions.toUndeclared(ex);
+          }
+        }
       }
+    });
+  }
+
+  /**
+   * Run an update for a task.
+   *
+   * <p>Updates for a task are serialized on this host. An update that fails
+   * because another update committed first (e.g. from another host) is run
+   * again so that it is applied to the current version of the task.</p>
+   */
+  static <R> R updateTask(final String taskId, final Supplier<R> update){
+    final Lock lock = taskLocks.get(taskId);
+    lock.lock();
+    try{
+      for(int attempt=1; ; attempt++){
+        try{
+          return update.get();
+        }catch(final RuntimeException ex){
+          if(attempt >= UPDATE_ATTEMPTS || !isStaleUpdate(ex))
+            throw ex;
+          LOG.debug("Retrying update of imaging task "+taskId+" after concurrent update");
+        }
+      }
+    }finally{
+      lock.unlock();
     }
   }
 
+  private static boolean isStaleUpdate(final Throwable ex){
+    return Exceptions.isCausedBy(ex, OptimisticLockException.class) ||
+        Exceptions.isCausedBy(ex, StaleStateException.class);
+  }
+
   public static ImagingTask lookup(final String taskId) 
       throws NoSuchElementException {
-    synchronized(lock){
-      try ( final TransactionResource db =
-          Entities.transactionFor( ImagingTask.class ) ) {
-        ImagingTask found;
-        try {
-          found = Entities.uniqueResult(ImagingTask.named(taskId));
-        } catch (TransactionException e) {
-          throw Exceptions.toUndeclared(e);
-        }
-        return found;
+    try ( final TransactionResource db =
+        Entities.transactionFor( ImagingTask.class ) ) {
+      ImagingTask found;
+      try {
+        found = Entities.uniqueResult(ImagingTask.named(taskId));
+      } catch (TransactionException e) {
+        throw Exceptions.toUndeclared(e);
       }
+      return found;
     }
   }
   
   public static void deleteTask(final ImagingTask task){
-    synchronized(lock){
-      try ( final TransactionResource db =
-          Entities.transactionFor(ImagingTask.class ) ) {
-        try{
-          final ImagingTask entity = Entities.uniqueResult(task);
-          Entities.delete(entity);
-          db.commit();
-        }catch(final TransactionException ex){
-          throw Exceptions.toUndeclared(ex);
-        }
+    updateTask(task, new Function<ImagingTask,Void>(){
+      @Override
+      public Void apply(final ImagingTask entity) {
+        Entities.delete(entity);
+        return null;
       }
-    }
+    });
+    ImagingTaskQueue.getInstance().removed(task.getDisplayName());
+    ImagingTaskProgress.removed(task.getDisplayName());
   }
   
   public static void updateVolumeStatus(final ImagingTask imagingTask, 
-      final String volumeId, ImportTaskState state, final String statusMessage){
-    try ( final TransactionResource db =
-        Entities.transactionFor(ImagingTask.class ) ) {
-      try{
-        final ImagingTask entity = Entities.uniqueResult(imagingTask);
+      final String volumeId, final ImportTaskState state, final String statusMessage){
+    final Long written = updateTask(imagingTask, new Function<ImagingTask,Long>(){
+      @Override
+      public Long apply(final ImagingTask entity) {
         final ConversionTask task = entity.getTask();
         if(task.getImportInstance()!=null){
           final List<ImportInstanceVolumeDetail> volumes = task.getImportInstance().getVolumes();
@@ -529,14 +570,16 @@ public class ImagingTasks {
               break;
             }
           }
+          final long progress = ImagingTaskProgress.apply(entity);
           entity.serializeTaskToJSON();
           Entities.persist(entity);
-          db.commit();
+          return progress;
         }
-      }catch(final Exception ex){
-        throw Exceptions.toUndeclared(ex);
+        return null;
       }
-    }
+    });
+    if(written!=null)
+      ImagingTaskProgress.written(imagingTask.getDisplayName(), written);
   }
   
   public static boolean isConversionDone(final ImagingTask imagingTask){
@@ -565,30 +608,24 @@ public class ImagingTasks {
   }
   
   public static void addSnapshotId(final InstanceImagingTask imagingTask, final String snapshotId){
-    try ( final TransactionResource db =
-        Entities.transactionFor(InstanceImagingTask.class ) ) {
-      try{
-        final InstanceImagingTask entity = Entities.uniqueResult(imagingTask);
+    updateTask(imagingTask, new Function<InstanceImagingTask,Void>(){
+      @Override
+      public Void apply(final InstanceImagingTask entity) {
         entity.addSnapshotId(snapshotId);
         Entities.persist(entity);
-        db.commit();
-      }catch(final Exception ex){
-        throw Exceptions.toUndeclared(ex);
+        return null;
       }
-    }
+    });
   }
   
   public static void setImageId(final InstanceImagingTask imagingTask, final String imageId){
-    try ( final TransactionResource db =
-        Entities.transactionFor(InstanceImagingTask.class ) ) {
-      try{
-        final InstanceImagingTask entity = Entities.uniqueResult(imagingTask);
+    updateTask(imagingTask, new Function<InstanceImagingTask,Void>(){
+      @Override
+      public Void apply(final InstanceImagingTask entity) {
         entity.setImageId(imageId);
         Entities.persist(entity);
-        db.commit();
-      }catch(final Exception ex){
-        throw Exceptions.toUndeclared(ex);
+        return null;
       }
-    }
+    });
   }
 }
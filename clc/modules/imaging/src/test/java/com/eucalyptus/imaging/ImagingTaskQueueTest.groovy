@@ -0,0 +1,124 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.imaging
+
+import static org.junit.Assert.*
+
+import org.junit.Test
+
+import com.eucalyptus.imaging.ImagingTaskQueue.QueuedTask
+
+/**
+ *
+ */
+class ImagingTaskQueueTest {
+
+  @Test
+  void testFairShareOrder( ) {
+    final ImagingTaskQueue queue = new ImagingTaskQueue( )
+    queue.offer( task( 'import-a1', '000000000001', 1 ) )
+    queue.offer( task( 'import-a2', '000000000001', 2 ) )
+    queue.offer( task( 'import-a3', '000000000001', 3 ) )
+    queue.offer( task( 'import-b1', '000000000002', 4 ) )
+    queue.offer( task( 'import-c1', '000000000003', 5 ) )
+
+    assertEquals( 'Dispatch order',
+        [ 'import-a1', 'import-b1', 'import-c1', 'import-a2', 'import-a3' ],
+        drain( queue ) )
+  }
+
+  @Test
+  void testOfferQueuedTask( ) {
+    final ImagingTaskQueue queue = new ImagingTaskQueue( )
+    queue.offer( task( 'import-a1', '000000000001', 1 ) )
+    queue.offer( task( 'import-a1', '000000000001', 1 ) )
+
+    assertEquals( 'Dispatch order', [ 'import-a1' ], drain( queue ) )
+  }
+
+  @Test
+  void testLazyRemoval( ) {
+    final ImagingTaskQueue queue = new ImagingTaskQueue( )
+    queue.offer( task( 'import-a1', '000000000001', 1 ) )
+    queue.offer( task( 'import-a2', '000000000001', 2 ) )
+    queue.offer( task( 'import-b1', '000000000002', 3 ) )
+    queue.removed( 'import-a1' )
+    queue.removed( 'import-b1' )
+
+    assertEquals( 'Dispatch order', [ 'import-a2' ], drain( queue ) )
+  }
+
+  @Test
+  void testRequeue( ) {
+    final ImagingTaskQueue queue = new ImagingTaskQueue( )
+    queue.offer( task( 'import-a1', '000000000001', 1 ) )
+    queue.offer( task( 'import-b1', '000000000002', 2 ) )
+
+    assertEquals( 'First dispatch', 'import-a1', queue.dequeue( ).taskId )
+    queue.offer( task( 'import-a1', '000000000001', 1 ) ) // work remaining
+
+    assertEquals( 'Dispatch order', [ 'import-b1', 'import-a1' ], drain( queue ) )
+  }
+
+  @Test
+  void testReloadKeepsConcurrentChanges( ) {
+    final ImagingTaskQueue queue = new ImagingTaskQueue( )
+    queue.offer( task( 'import-a1', '000000000001', 1 ) )
+    queue.offer( task( 'import-a2', '000000000001', 2 ) )
+    queue.offer( task( 'import-a3', '000000000001', 3 ) )
+
+    final long generation = queue.reloadStarted( )
+    assertEquals( 'Concurrent reload', -1, queue.reloadStarted( ) )
+    // changes after the reload query started
+    queue.offer( task( 'import-b1', '000000000002', 4 ) )
+    queue.removed( 'import-a2' )
+    queue.reloaded( generation, [
+        task( 'import-a1', '000000000001', 1 ),
+        task( 'import-a2', '000000000001', 2 ),
+        task( 'import-c1', '000000000003', 5 ),
+    ] )
+
+    assertEquals( 'Dispatch order', [ 'import-a1', 'import-b1', 'import-c1' ], drain( queue ) )
+  }
+
+  @Test
+  void testReloadFailureKeepsQueue( ) {
+    final ImagingTaskQueue queue = new ImagingTaskQueue( )
+    queue.offer( task( 'import-a1', '000000000001', 1 ) )
+
+    queue.reloaded( queue.reloadStarted( ), null )
+
+    assertEquals( 'Dispatch order', [ 'import-a1' ], drain( queue ) )
+    assertTrue( 'Reload allowed', queue.reloadStarted( ) > 0 )
+  }
+
+  private static QueuedTask task( final String taskId, final String accountNumber, final long created ) {
+    new QueuedTask( taskId, accountNumber, created, System.currentTimeMillis( ) )
+  }
+
+  private static List<String> drain( final ImagingTaskQueue queue ) {
+    final List<String> taskIds = [ ]
+    QueuedTask queuedTask
+    while ( ( queuedTask = queue.dequeue( ) ) != null ) {
+      taskIds << queuedTask.taskId
+    }
+    taskIds
+  }
+}
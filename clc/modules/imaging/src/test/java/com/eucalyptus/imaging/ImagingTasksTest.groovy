@@ -0,0 +1,173 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.imaging
+
+import static org.junit.Assert.*
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import javax.persistence.OptimisticLockException
+import javax.persistence.RollbackException
+
+import org.junit.Test
+
+import com.google.common.base.Supplier
+
+/**
+ *
+ */
+class ImagingTasksTest {
+
+  @Test
+  void testConcurrentVolumeCompletions( ) {
+    final VersionedTask task = new VersionedTask( volumes: [ 'vol-00000001': 'active', 'vol-00000002': 'active' ] )
+    final CountDownLatch start = new CountDownLatch( 1 )
+    final ExecutorService executor = Executors.newFixedThreadPool( 2 )
+    try {
+      final List<Future<Void>> futures = [ 'vol-00000001', 'vol-00000002' ].collect { String volumeId ->
+        executor.submit( {
+          start.await( )
+          ImagingTasks.updateTask( 'import-i-00000001', task.updateVolume( volumeId, 'completed' ) )
+          null
+        } as Callable<Void> )
+      }
+      start.countDown( )
+      futures*.get( 10, TimeUnit.SECONDS )
+    } finally {
+      executor.shutdownNow( )
+    }
+
+    assertEquals( 'Volume status', [ 'vol-00000001': 'completed', 'vol-00000002': 'completed' ], task.volumes )
+    assertEquals( 'Version', 2, task.version )
+  }
+
+  @Test
+  void testStaleUpdateRetried( ) {
+    final VersionedTask task = new VersionedTask( volumes: [ 'vol-00000001': 'active', 'vol-00000002': 'active' ] )
+    final AtomicInteger attempts = new AtomicInteger( )
+    ImagingTasks.updateTask( 'import-i-00000002', {
+      final int loadedVersion = task.version
+      final Map<String,String> loaded = task.load( )
+      if ( attempts.incrementAndGet( ) == 1 ) {
+        // update committed elsewhere (e.g. another host) after this update loaded the task
+        task.commit( task.load( ) + [ 'vol-00000002': 'completed' ], task.version )
+      }
+      task.commit( loaded + [ 'vol-00000001': 'completed' ], loadedVersion )
+      null
+    } as Supplier<Void> )
+
+    assertEquals( 'Attempts', 2, attempts.get( ) )
+    assertEquals( 'Volume status', [ 'vol-00000001': 'completed', 'vol-00000002': 'completed' ], task.volumes )
+  }
+
+  @Test
+  void testOtherFailureNotRetried( ) {
+    final AtomicInteger attempts = new AtomicInteger( )
+    try {
+      ImagingTasks.updateTask( 'import-i-00000003', {
+        attempts.incrementAndGet( )
+        throw new IllegalStateException( 'Current state is not PENDING' )
+      } as Supplier<Void> )
+      fail( 'Expected failure' )
+    } catch ( IllegalStateException e ) {
+      // expected
+    }
+    assertEquals( 'Attempts', 1, attempts.get( ) )
+  }
+
+  @Test
+  void testStaleUpdateRetryLimit( ) {
+    final AtomicInteger attempts = new AtomicInteger( )
+    try {
+      ImagingTasks.updateTask( 'import-i-00000004', {
+        attempts.incrementAndGet( )
+        throw new RollbackException( new OptimisticLockException( ) )
+      } as Supplier<Void> )
+      fail( 'Expected failure' )
+    } catch ( RollbackException e ) {
+      // expected
+    }
+    assertEquals( 'Attempts', ImagingTasks.UPDATE_ATTEMPTS, attempts.get( ) )
+  }
+
+  @Test
+  void testProgressNotWrittenDuringUpdate( ) {
+    final CountDownLatch updating = new CountDownLatch( 1 )
+    final CountDownLatch release = new CountDownLatch( 1 )
+    final ExecutorService executor = Executors.newSingleThreadExecutor( )
+    try {
+      final Future<Void> update = executor.submit( {
+        ImagingTasks.updateTask( 'import-i-00000005', {
+          updating.countDown( )
+          release.await( )
+          null
+        } as Supplier<Void> )
+      } as Callable<Void> )
+      assertTrue( 'Update started', updating.await( 10, TimeUnit.SECONDS ) )
+      assertFalse( 'Progress written', ImagingTasks.updateBytesConverted( 'import-i-00000005' ) )
+      release.countDown( )
+      update.get( 10, TimeUnit.SECONDS )
+    } finally {
+      release.countDown( )
+      executor.shutdownNow( )
+    }
+  }
+
+  /**
+   * Task with volume status that fails on commit if updated since loaded.
+   */
+  private static class VersionedTask {
+    int version = 0
+    Map<String,String> volumes = [:]
+
+    synchronized Map<String,String> load( ) {
+      new HashMap<String,String>( volumes )
+    }
+
+    synchronized void commit( final Map<String,String> updated, final int loadedVersion ) {
+      if ( loadedVersion != version ) {
+        throw new RollbackException( new OptimisticLockException( ) )
+      }
+      volumes = updated
+      version++
+    }
+
+    Supplier<Void> updateVolume( final String volumeId, final String status ) {
+      return { ->
+        int loadedVersion
+        Map<String,String> loaded
+        synchronized ( this ) {
+          loadedVersion = version
+          loaded = load( )
+        }
+        Thread.sleep( 50 ) // widen the window for a concurrent update
+        loaded.put( volumeId, status )
+        commit( loaded, loadedVersion )
+        null
+      } as Supplier<Void>
+    }
+  }
+}
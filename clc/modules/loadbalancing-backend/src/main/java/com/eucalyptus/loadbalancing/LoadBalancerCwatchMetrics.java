@@ -19,36 +19,49 @@
  ************************************************************************/
 package com.eucalyptus.loadbalancing;
 
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.Nullable;
-import javax.persistence.EntityTransaction;
 
 import org.apache.log4j.Logger;
 
+import com.eucalyptus.bootstrap.Bootstrap;
 import com.eucalyptus.cloudwatch.common.msgs.Dimension;
 import com.eucalyptus.cloudwatch.common.msgs.Dimensions;
 import com.eucalyptus.cloudwatch.common.msgs.MetricData;
 import com.eucalyptus.cloudwatch.common.msgs.MetricDatum;
 import com.eucalyptus.cloudwatch.common.msgs.StatisticSet;
-import com.eucalyptus.entities.Entities;
+import com.eucalyptus.component.Topology;
+import com.eucalyptus.component.id.Eucalyptus;
+import com.eucalyptus.event.ClockTick;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Listeners;
 import com.eucalyptus.loadbalancing.LoadBalancer.LoadBalancerCoreView;
 import com.eucalyptus.loadbalancing.LoadBalancer.LoadBalancerEntityTransform;
-import com.eucalyptus.loadbalancing.LoadBalancerZone.LoadBalancerZoneCoreView;
-import com.eucalyptus.loadbalancing.LoadBalancerZone.LoadBalancerZoneEntityTransform;
 import com.eucalyptus.loadbalancing.activities.EucalyptusActivityTasks;
-import com.eucalyptus.loadbalancing.activities.LoadBalancerServoInstance;
-import com.eucalyptus.util.Exceptions;
+import com.eucalyptus.loadbalancing.common.LoadBalancingBackend;
+import com.eucalyptus.system.Threads;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 /**
+ * Aggregation of ELB metrics and backend instance health for CloudWatch.
+ * 
+ * Servo reports are only aggregated, metrics are sent to CloudWatch for all
+ * accounts by the periodic {@link CloudWatchReporter}.
+ * 
  * @author Sang-Min Park
  *
  */
@@ -56,116 +69,70 @@ public class LoadBalancerCwatchMetrics {
 	private static Logger    LOG     = Logger.getLogger( LoadBalancerCwatchMetrics.class );
 
 	private static LoadBalancerCwatchMetrics _instance = new LoadBalancerCwatchMetrics();
-	private Map<ElbDimension, ElbAggregate> metricsMap = new ConcurrentHashMap<ElbDimension, ElbAggregate>();
+	private ConcurrentMap<ElbDimension, ElbAggregate> metricsMap = new ConcurrentHashMap<ElbDimension, ElbAggregate>();
 	
-	private Map<BackendInstance, Boolean> instanceHealthMap = new ConcurrentHashMap<BackendInstance, Boolean>();
-	private Map<BackendInstance, ElbDimension> instanceToDimensionMap = new ConcurrentHashMap<BackendInstance, ElbDimension>();
+	private ConcurrentMap<BackendInstance, Boolean> instanceHealthMap = new ConcurrentHashMap<BackendInstance, Boolean>();
+	private ConcurrentMap<BackendInstance, ElbDimension> instanceToDimensionMap = new ConcurrentHashMap<BackendInstance, ElbDimension>();
 	
+	private static final int CLOUDWATCH_REPORTING_INTERVAL_SEC = 60;// http://docs.aws.amazon.com/ElasticLoadBalancing/latest/DeveloperGuide/US_MonitoringLoadBalancerWithCW.html
+	private static final int CLOUDWATCH_MAX_METRIC_DATA = 20; // maximum MetricData size for PutMetricData
+	private static final String CLOUDWATCH_ELB_METRIC_NAMESPACE = "AWS/ELB";
 	
-	private Map<String, Date> lastReported = new ConcurrentHashMap<String, Date>();
-	
-	private final int CLOUDWATCH_REPORTING_INTERVAL_SEC = 60;// http://docs.aws.amazon.com/ElasticLoadBalancing/latest/DeveloperGuide/US_MonitoringLoadBalancerWithCW.html
-	private final String CLOUDWATCH_ELB_METRIC_NAMESPACE = "AWS/ELB";
-	
-	private Object lock = new Object();
 	private LoadBalancerCwatchMetrics(){	}
 	public static LoadBalancerCwatchMetrics getInstance(){
 		return _instance;
 	}
 	
-	public void addMetric(final String servoId, final MetricData metric){
-		// based on the servo Id, find the loadbalancer and the availability zone
-		// 
-		final EntityTransaction db = Entities.get( LoadBalancerServoInstance.class );
-		LoadBalancerZoneCoreView lbZone = null;
-		try{
-			LoadBalancerServoInstance servo = Entities.uniqueResult(LoadBalancerServoInstance.named(servoId));
-			lbZone = servo.getAvailabilityZone();
-			db.commit();
-		}catch(NoSuchElementException ex){
-			db.rollback();
-			throw Exceptions.toUndeclared("Failed to find the servo instance "+servoId);
-		}catch(Exception ex){
-			db.rollback();
-			throw Exceptions.toUndeclared("database error while querying "+servoId);
-		}finally{
-			if(db.isActive())
-				db.rollback();
-		}
-		
-		LoadBalancerZone zone = null;
-		LoadBalancerCoreView lb = null;
-		
-		try{
-			zone = LoadBalancerZoneEntityTransform.INSTANCE.apply(lbZone);
-			lb = zone.getLoadbalancer();
-		}catch(final Exception ex){
-			return;
-		}
-		
-		final String userId = lb.getOwnerUserId();
-		final String lbName = lb.getDisplayName();
-		final String zoneName = lbZone.getName();
-		ElbDimension dim = new ElbDimension(userId, lbName, zoneName);
-		synchronized(lock){
-			if(!metricsMap.containsKey(dim))
-				metricsMap.put(dim, new ElbAggregate(lbName, zoneName));
-			metricsMap.get(dim).addMetric(metric);
-		}
-		
-		try{
-			maybeReport(userId);
-		}catch(Exception ex){
-			LOG.error(String.format("Failed to report cloudwatch metrics: %s-%s", lb.getOwnerUserName(), lb.getDisplayName()));
-		}
+	public void addMetric(final LoadBalancerCoreView lb, final String zoneName, final MetricData metric){
+		final ElbDimension dim = new ElbDimension(lb.getOwnerUserId(), lb.getDisplayName(), zoneName);
+		while(!this.aggregate(dim).addMetric(metric)); // retry if retired by a concurrent report
 	}
 	
 	public void updateHealthy(final LoadBalancerCoreView lb, final String zone, final String instanceId){
 		final ElbDimension dim = new ElbDimension(lb.getOwnerUserId(), lb.getDisplayName(), zone);
 		final BackendInstance key = new BackendInstance(lb, instanceId);
-		synchronized(lock){
-			if(!this.instanceToDimensionMap.containsKey(key))
-				this.instanceToDimensionMap.put(key, dim);
-			
-			this.instanceHealthMap.put(key, Boolean.TRUE);
-			if(!metricsMap.containsKey(dim))
-				metricsMap.put(dim, new ElbAggregate(lb.getDisplayName(), zone)); 
-		}
+		this.instanceToDimensionMap.putIfAbsent(key, dim);
+		this.instanceHealthMap.put(key, Boolean.TRUE);
+		this.aggregate(dim);
 	}
 	
 	public void updateUnHealthy(final LoadBalancerCoreView lb, final String zone, final String instanceId){
 		final ElbDimension dim = new ElbDimension(lb.getOwnerUserId(), lb.getDisplayName(), zone);
 		final BackendInstance key = new BackendInstance(lb, instanceId);
-		
-		synchronized(lock){
-			if(!this.instanceToDimensionMap.containsKey(key))
-				this.instanceToDimensionMap.put(key, dim);
-			this.instanceHealthMap.put(key, Boolean.FALSE);
-			if(!metricsMap.containsKey(dim))
-				metricsMap.put(dim, new ElbAggregate(lb.getDisplayName(), zone));
-		}
+		this.instanceToDimensionMap.putIfAbsent(key, dim);
+		this.instanceHealthMap.put(key, Boolean.FALSE);
+		this.aggregate(dim);
+	}
+	
+	private ElbAggregate aggregate(final ElbDimension dim){
+		final ElbAggregate aggregate = this.metricsMap.get(dim);
+		if(aggregate!=null && !aggregate.isRetired())
+			return aggregate;
+		if(aggregate!=null)
+			this.metricsMap.remove(dim, aggregate);
+		final ElbAggregate newAggregate = new ElbAggregate(dim.getLoadbalancer(), dim.getAvailabilityZone());
+		final ElbAggregate existing = this.metricsMap.putIfAbsent(dim, newAggregate);
+		return existing!=null ? existing : newAggregate;
 	}
 	
-	private void maybeReport(final String userId){
-		MetricData data = null;
-		if(! this.lastReported.containsKey(userId)){
-			this.lastReported.put(userId, new Date(System.currentTimeMillis()));
-			return;
+	/**
+	 * Send the metrics aggregated since the last report, one batch of requests per account.
+	 */
+	private void report(){
+		final Set<String> userIds = Sets.newHashSet();
+		for(final ElbDimension dim : this.metricsMap.keySet()){
+			userIds.add(dim.getUserId());
 		}
-		
-		final Date lastReport = this.lastReported.get(userId);
-		long currentTime = System.currentTimeMillis();
-		int diffSec = (int)((currentTime - lastReport.getTime())/1000.0);
-		if(diffSec >= CLOUDWATCH_REPORTING_INTERVAL_SEC)
-			data = this.getDataAndClear(userId);
-		
-		if(data!=null && data.getMember()!=null && data.getMember().size()>0){
+		for(final String userId : userIds){
 			try{
-				EucalyptusActivityTasks.getInstance().putCloudWatchMetricData(userId, CLOUDWATCH_ELB_METRIC_NAMESPACE, data);
-			}catch(Exception ex){
-				Exceptions.toUndeclared(ex);
-			}finally{
-				this.lastReported.put(userId, new Date(currentTime));
+				final MetricData data = this.getDataAndClear(userId);
+				for(final List<MetricDatum> batch : Iterables.partition(data.getMember(), CLOUDWATCH_MAX_METRIC_DATA)){
+					final MetricData batchData = new MetricData();
+					batchData.setMember(Lists.newArrayList(batch));
+					EucalyptusActivityTasks.getInstance().putCloudWatchMetricData(userId, CLOUDWATCH_ELB_METRIC_NAMESPACE, batchData);
+				}
+			}catch(final Exception ex){
+				LOG.error("Failed to report cloudwatch metrics for user " + userId, ex);
 			}
 		}
 	}
@@ -175,7 +142,6 @@ public class LoadBalancerCwatchMetrics {
 		/// lb - availability zone	
 		final MetricData data = new MetricData();		
 		data.setMember(Lists.<MetricDatum>newArrayList());
-		final List<ElbDimension> toCleanup = Lists.newArrayList();
     	
 		final Map<ElbDimension, Integer> healthyCountMap = new HashMap<ElbDimension, Integer>();
     	final Map<ElbDimension, Integer> unhealthyCountMap = new HashMap<ElbDimension, Integer>();
@@ -203,100 +169,111 @@ public class LoadBalancerCwatchMetrics {
 			}
     	}));
     	
-    	synchronized(lock){
-			/// add HealthyHostCount and UnHealthyHostCount
-        	for(final BackendInstance instance : candidates){
-        		final ElbDimension thisDim = this.instanceToDimensionMap.get(instance);
-        		if(this.instanceHealthMap.get(instance).booleanValue()){ // healthy	
-        			if(!healthyCountMap.containsKey(thisDim))
-        				healthyCountMap.put(thisDim, 0);
-        			healthyCountMap.put(thisDim, healthyCountMap.get(thisDim)+1);
-        		}else{
-        			if(!unhealthyCountMap.containsKey(thisDim))
-        				unhealthyCountMap.put(thisDim,  0);
-        			unhealthyCountMap.put(thisDim, unhealthyCountMap.get(thisDim)+1);
-        		}
-        	}
-        	
-			for (final ElbDimension dim : this.metricsMap.keySet()){
-				if(!dim.getUserId().equals(userId))
-					continue;
-				
-				final ElbAggregate aggr = this.metricsMap.get(dim);
-				final  List<MetricDatum> datumList = aggr.toELBStatistics();
-				
-			 	Dimensions dims = new Dimensions();
-	        	Dimension lb = new Dimension();
-	        	lb.setName("LoadBalancerName");
-	        	lb.setValue(dim.getLoadbalancer());
-	        	Dimension az = new Dimension();
-	        	az.setName("AvailabilityZone");
-	        	az.setValue(dim.getAvailabilityZone());
-	        	dims.setMember(Lists.newArrayList(lb, az));
-	        		
-				if(healthyCountMap.containsKey(dim)){
-		        	int numHealthy = healthyCountMap.get(dim);
-		        	if(numHealthy > 0){
-						MetricDatum datum = new MetricDatum();
-						datum.setDimensions(dims);
-						datum.setMetricName("HealthyHostCount");
-						datum.setUnit("Count");
-			        	final StatisticSet sset = new StatisticSet();
-			        	sset.setSampleCount(1.0);
-			        	sset.setMaximum((double)numHealthy);
-			        	sset.setMinimum((double)numHealthy);
-			        	sset.setSum((double)numHealthy);
-			        	datum.setStatisticValues(sset);
-						datumList.add(datum);
-		        	}
-				}
-				if(unhealthyCountMap.containsKey(dim)){
-					int numUnhealthy = unhealthyCountMap.get(dim);
-					if(numUnhealthy > 0){
-						MetricDatum datum = new MetricDatum();
-						datum.setDimensions(dims);
-						datum.setMetricName("UnHealthyHostCount");
-						datum.setUnit("Count");
-			        	final StatisticSet sset = new StatisticSet();
-			        	sset.setSampleCount(1.0);
-			        	sset.setMaximum((double)numUnhealthy);
-			        	sset.setMinimum((double)numUnhealthy);
-			        	sset.setSum((double)numUnhealthy);
-			        	datum.setStatisticValues(sset);
-			        	datumList.add(datum);
-					}
-				}
-	        	
-				if(datumList.size()>0)
-					data.getMember().addAll(datumList);
-				
-				toCleanup.add(dim);
+		/// add HealthyHostCount and UnHealthyHostCount
+    	for(final BackendInstance instance : candidates){
+    		final Boolean healthy = this.instanceHealthMap.remove(instance);
+    		final ElbDimension thisDim = this.instanceToDimensionMap.remove(instance);
+    		if(healthy==null || thisDim==null)
+    			continue;
+    		if(healthy.booleanValue()){ // healthy	
+    			if(!healthyCountMap.containsKey(thisDim))
+    				healthyCountMap.put(thisDim, 0);
+    			healthyCountMap.put(thisDim, healthyCountMap.get(thisDim)+1);
+    		}else{
+    			if(!unhealthyCountMap.containsKey(thisDim))
+    				unhealthyCountMap.put(thisDim,  0);
+    			unhealthyCountMap.put(thisDim, unhealthyCountMap.get(thisDim)+1);
+    		}
+    	}
+    	
+		final Set<ElbDimension> dimensions = Sets.newHashSet();
+		for (final ElbDimension dim : this.metricsMap.keySet()){
+			if(dim.getUserId().equals(userId))
+				dimensions.add(dim);
+		}
+		dimensions.addAll(healthyCountMap.keySet());
+		dimensions.addAll(unhealthyCountMap.keySet());
+		for (final ElbDimension dim : dimensions){
+			final boolean hasHealth = healthyCountMap.containsKey(dim) || unhealthyCountMap.containsKey(dim);
+			final ElbAggregate aggr = this.metricsMap.get(dim);
+			final List<MetricDatum> datumList = aggr==null ?
+					Lists.<MetricDatum>newArrayList() :
+					aggr.toELBStatistics(!hasHealth);
+			if(aggr!=null && aggr.isRetired()){
+				this.metricsMap.remove(dim, aggr); // no longer in use
+			}
+			if(datumList.isEmpty() && !hasHealth){
+				continue;
 			}
 			
-			for(final ElbDimension cleanup : toCleanup){
-				this.metricsMap.remove(cleanup);
-				healthyCountMap.remove(cleanup);
-				unhealthyCountMap.remove(cleanup);
+		 	Dimensions dims = new Dimensions();
+        	Dimension lb = new Dimension();
+        	lb.setName("LoadBalancerName");
+        	lb.setValue(dim.getLoadbalancer());
+        	Dimension az = new Dimension();
+        	az.setName("AvailabilityZone");
+        	az.setValue(dim.getAvailabilityZone());
+        	dims.setMember(Lists.newArrayList(lb, az));
+        		
+			if(healthyCountMap.containsKey(dim)){
+	        	int numHealthy = healthyCountMap.get(dim);
+	        	if(numHealthy > 0){
+					MetricDatum datum = new MetricDatum();
+					datum.setDimensions(dims);
+					datum.setMetricName("HealthyHostCount");
+					datum.setUnit("Count");
+		        	final StatisticSet sset = new StatisticSet();
+		        	sset.setSampleCount(1.0);
+		        	sset.setMaximum((double)numHealthy);
+		        	sset.setMinimum((double)numHealthy);
+		        	sset.setSum((double)numHealthy);
+		        	datum.setStatisticValues(sset);
+					datumList.add(datum);
+	        	}
 			}
-			for(final BackendInstance instance : candidates){
-				this.instanceHealthMap.remove(instance);
-				this.instanceToDimensionMap.remove(instance);
+			if(unhealthyCountMap.containsKey(dim)){
+				int numUnhealthy = unhealthyCountMap.get(dim);
+				if(numUnhealthy > 0){
+					MetricDatum datum = new MetricDatum();
+					datum.setDimensions(dims);
+					datum.setMetricName("UnHealthyHostCount");
+					datum.setUnit("Count");
+		        	final StatisticSet sset = new StatisticSet();
+		        	sset.setSampleCount(1.0);
+		        	sset.setMaximum((double)numUnhealthy);
+		        	sset.setMinimum((double)numUnhealthy);
+		        	sset.setSum((double)numUnhealthy);
+		        	datum.setStatisticValues(sset);
+		        	datumList.add(datum);
+				}
 			}
-		}// end of lock
+        	
+			if(datumList.size()>0)
+				data.getMember().addAll(datumList);
+		}
 		
 		return data;
 	}
 	
 	
+	/**
+	 * Metrics for a dimension.
+	 * 
+	 * Metrics are added concurrently under the read lock, statistics are taken
+	 * under the write lock so all counters are reset together. An aggregate
+	 * with no metrics may be retired, after which it accepts no metrics.
+	 */
 	public static class ElbAggregate{
-        private double latency = 0; // latency in seconds
-        private long requestCount = 0;
-        private long httpCode_ELB_4XX = 0;
-        private long httpCode_ELB_5XX = 0;
-        private long httpCode_Backend_2XX = 0;
-        private long httpCode_Backend_3XX = 0;
-        private long httpCode_Backend_4XX = 0;
-        private long httpCode_Backend_5XX = 0;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private boolean retired = false; // guarded by lock
+        private final AtomicLong latency = new AtomicLong(); // latency in microseconds
+        private final AtomicLong requestCount = new AtomicLong();
+        private final AtomicLong httpCode_ELB_4XX = new AtomicLong();
+        private final AtomicLong httpCode_ELB_5XX = new AtomicLong();
+        private final AtomicLong httpCode_Backend_2XX = new AtomicLong();
+        private final AtomicLong httpCode_Backend_3XX = new AtomicLong();
+        private final AtomicLong httpCode_Backend_4XX = new AtomicLong();
+        private final AtomicLong httpCode_Backend_5XX = new AtomicLong();
         private String loadbalancer = null;
         private String availabilityZone = null;
         
@@ -305,7 +282,33 @@ public class LoadBalancerCwatchMetrics {
         	this.availabilityZone = availabilityZone;
         }
        
-        public void addMetric(final MetricData metric){
+        /**
+         * Add metrics to the aggregate.
+         * 
+         * @return false if the aggregate is retired and the metrics were not added
+         */
+        public boolean addMetric(final MetricData metric){
+        	this.lock.readLock().lock();
+        	try{
+        		if(this.retired)
+        			return false;
+        		this.doAddMetric(metric);
+        		return true;
+        	}finally{
+        		this.lock.readLock().unlock();
+        	}
+        }
+
+        boolean isRetired(){
+        	this.lock.readLock().lock();
+        	try{
+        		return this.retired;
+        	}finally{
+        		this.lock.readLock().unlock();
+        	}
+        }
+
+        private void doAddMetric(final MetricData metric){
         	//        name = ['Latency','RequestCount','HTTPCode_ELB_4XX','HTTPCode_ELB_5XX','HTTPCode_Backend_2XX','HTTPCode_Backend_3XX','HTTPCode_Backend_4XX','HTTPCode_Backend_5XX']
             // value = [metric.Latency, metric.RequestCount, metric.HTTPCode_ELB_4XX, metric.HTTPCode_ELB_5XX, metric.HTTPCode_Backend_2XX, metric.HTTPCode_Backend_3XX, metric.HTTPCode_Backend_4XX, metric.HTTPCode_Backend_5XX]
         	if(metric.getMember()!=null){
@@ -313,28 +316,59 @@ public class LoadBalancerCwatchMetrics {
         			String name = datum.getMetricName();
         			double value = datum.getValue();
         			if(name.equals("Latency")){ /// sent in milliseconds
-        				value = value / 1000.0; // to seconds
-        				this.latency += value;
+        				this.latency.addAndGet((long) (value * 1000.0)); // to microseconds
         			}else if(name.equals("RequestCount")){
-        				this.requestCount += (long) value;
+        				this.requestCount.addAndGet((long) value);
         			}else if (name.equals("HTTPCode_ELB_4XX")){
-        				this.httpCode_ELB_4XX += (long) value;
+        				this.httpCode_ELB_4XX.addAndGet((long) value);
         			}else if (name.equals("HTTPCode_ELB_5XX")){
-        				this.httpCode_ELB_5XX += (long) value;
+        				this.httpCode_ELB_5XX.addAndGet((long) value);
         			}else if(name.equals("HTTPCode_Backend_2XX")){
-        				this.httpCode_Backend_2XX += (long) value;
+        				this.httpCode_Backend_2XX.addAndGet((long) value);
         			}else if(name.equals("HTTPCode_Backend_3XX")){
-        				this.httpCode_Backend_3XX += (long) value;
+        				this.httpCode_Backend_3XX.addAndGet((long) value);
         			}else if(name.equals("HTTPCode_Backend_4XX")){
-        				this.httpCode_Backend_4XX += (long) value;
+        				this.httpCode_Backend_4XX.addAndGet((long) value);
         			}else if(name.equals("HTTPCode_Backend_5XX")){
-        				this.httpCode_Backend_5XX += (long) value;
+        				this.httpCode_Backend_5XX.addAndGet((long) value);
         			}
         		}
         	}
         }
         
+        /**
+         * Get statistics for the metrics added since the previous call.
+         */
         public List<MetricDatum> toELBStatistics(){
+        	return this.toELBStatistics(false);
+        }
+
+        /**
+         * Get statistics for the metrics added since the previous call.
+         * 
+         * @param retireIfEmpty True to retire the aggregate if there are no metrics
+         */
+        public List<MetricDatum> toELBStatistics(final boolean retireIfEmpty){
+        	final long latencyMicros;
+        	final long requestCount;
+        	final long elb4xx, elb5xx, backend2xx, backend3xx, backend4xx, backend5xx;
+        	this.lock.writeLock().lock();
+        	try{
+        		latencyMicros = this.latency.getAndSet(0);
+        		requestCount = this.requestCount.getAndSet(0);
+        		elb4xx = this.httpCode_ELB_4XX.getAndSet(0);
+        		elb5xx = this.httpCode_ELB_5XX.getAndSet(0);
+        		backend2xx = this.httpCode_Backend_2XX.getAndSet(0);
+        		backend3xx = this.httpCode_Backend_3XX.getAndSet(0);
+        		backend4xx = this.httpCode_Backend_4XX.getAndSet(0);
+        		backend5xx = this.httpCode_Backend_5XX.getAndSet(0);
+        		if(retireIfEmpty && requestCount==0 && latencyMicros==0 && elb4xx==0 && elb5xx==0 &&
+        				backend2xx==0 && backend3xx==0 && backend4xx==0 && backend5xx==0)
+        			this.retired = true;
+        	}finally{
+        		this.lock.writeLock().unlock();
+        	}
+
         	List<MetricDatum> result = Lists.<MetricDatum>newArrayList();
         	Dimensions dims = new Dimensions();
         	Dimension lb = new Dimension();
@@ -345,115 +379,58 @@ public class LoadBalancerCwatchMetrics {
         	az.setValue(this.availabilityZone);
         	dims.setMember(Lists.newArrayList(lb, az));
         	
-        	if(this.latency > 0 && this.requestCount>0){
+        	if(latencyMicros > 0 && requestCount>0){
 	        	final MetricDatum latencyData = new MetricDatum();
 	        	latencyData.setDimensions(dims);
 	        	latencyData.setMetricName("Latency");
 	        	latencyData.setUnit("Seconds");
-	        	double latency = this.latency / (double) this.requestCount;
+	        	double latency = (latencyMicros / 1000000.0) / (double) requestCount;
 	        	latencyData.setValue(latency);
 	        	result.add(latencyData);
         	}
         	
-        	if(this.requestCount>0){
+        	if(requestCount>0){
         		final MetricDatum reqCountData = new MetricDatum();
 	        	reqCountData.setDimensions(dims);
 	        	reqCountData.setMetricName("RequestCount");
 	        	reqCountData.setUnit("Count");
 	        	final StatisticSet sset = new StatisticSet();
-	        	sset.setSampleCount((double)this.requestCount);
+	        	sset.setSampleCount((double)requestCount);
 	        	sset.setMaximum(1.0);
 	        	sset.setMinimum(1.0);
-	        	sset.setSum((double)this.requestCount);
+	        	sset.setSum((double)requestCount);
 	        	reqCountData.setStatisticValues(sset);
 	        	result.add(reqCountData);
         	}
-        	if(this.httpCode_ELB_4XX>0){
-	        	final MetricDatum httpCode_ELB_4XX = new MetricDatum();
-	        	httpCode_ELB_4XX.setDimensions(dims);
-	        	httpCode_ELB_4XX.setMetricName("HTTPCode_ELB_4XX");
-	        	httpCode_ELB_4XX.setUnit("Count");
-	        	final StatisticSet sset = new StatisticSet();
-	        	sset.setSampleCount((double)this.httpCode_ELB_4XX);
-	        	sset.setMaximum(0.0);
-	        	sset.setMinimum(0.0);
-	        	sset.setSum((double)this.httpCode_ELB_4XX);
-	        	httpCode_ELB_4XX.setStatisticValues(sset);
-	        	result.add(httpCode_ELB_4XX);
-        	}
-        	if(this.httpCode_ELB_5XX>0){
-	        	final MetricDatum httpCode_ELB_5XX = new MetricDatum();
-	        	httpCode_ELB_5XX.setDimensions(dims);
-	        	httpCode_ELB_5XX.setMetricName("HTTPCode_ELB_5XX");
-	        	httpCode_ELB_5XX.setUnit("Count");
-	        	final StatisticSet sset = new StatisticSet();
-	        	sset.setSampleCount((double)this.httpCode_ELB_5XX);
-	        	sset.setMaximum(0.0);
-	        	sset.setMinimum(0.0);
-	        	sset.setSum((double)this.httpCode_ELB_5XX);
-	        	httpCode_ELB_5XX.setStatisticValues(sset);
-	        	result.add(httpCode_ELB_5XX);
-        	}
-        	if(this.httpCode_Backend_2XX>0){
-	        	final MetricDatum httpCode_Backend_2XX = new MetricDatum();
-	        	httpCode_Backend_2XX.setDimensions(dims);
-	        	httpCode_Backend_2XX.setMetricName("HTTPCode_Backend_2XX");
-	        	httpCode_Backend_2XX.setUnit("Count");
-	        	final StatisticSet sset = new StatisticSet();
-	        	sset.setSampleCount((double)this.httpCode_Backend_2XX);
-	        	sset.setMaximum(0.0);
-	        	sset.setMinimum(0.0);
-	        	sset.setSum((double)this.httpCode_Backend_2XX);
-	        	httpCode_Backend_2XX.setStatisticValues(sset);
-	        	result.add(httpCode_Backend_2XX);
-        	}
-        	if(this.httpCode_Backend_3XX>0){
-	        	final MetricDatum httpCode_Backend_3XX = new MetricDatum();
-	        	httpCode_Backend_3XX.setDimensions(dims);
-	        	httpCode_Backend_3XX.setMetricName("HTTPCode_Backend_3XX");
-	        	httpCode_Backend_3XX.setUnit("Count");
-	        	final StatisticSet sset = new StatisticSet();
-	        	sset.setSampleCount((double)this.httpCode_Backend_3XX);
-	        	sset.setMaximum(0.0);
-	        	sset.setMinimum(0.0);
-	        	sset.setSum((double)this.httpCode_Backend_3XX);
-	        	httpCode_Backend_3XX.setStatisticValues(sset);	        	
-	        	result.add(httpCode_Backend_3XX);
-        	}
-        	if(this.httpCode_Backend_4XX > 0){
-	        	final MetricDatum httpCode_Backend_4XX = new MetricDatum();
-	        	httpCode_Backend_4XX.setDimensions(dims);
-	        	httpCode_Backend_4XX.setMetricName("HTTPCode_Backend_4XX");
-	        	httpCode_Backend_4XX.setUnit("Count");
-	        	final StatisticSet sset = new StatisticSet();
-	        	sset.setSampleCount((double)this.httpCode_Backend_4XX);
-	        	sset.setMaximum(0.0);
-	        	sset.setMinimum(0.0);
-	        	sset.setSum((double)this.httpCode_Backend_4XX);
-	        	httpCode_Backend_4XX.setStatisticValues(sset);
-	        	result.add(httpCode_Backend_4XX);
-        	}
-        	if(this.httpCode_Backend_5XX > 0){
-	        	final MetricDatum httpCode_Backend_5XX = new MetricDatum();
-	        	httpCode_Backend_5XX.setDimensions(dims);
-	        	httpCode_Backend_5XX.setMetricName("HTTPCode_Backend_5XX");
-	        	httpCode_Backend_5XX.setUnit("Count");
+        	addCount(result, dims, "HTTPCode_ELB_4XX", elb4xx);
+        	addCount(result, dims, "HTTPCode_ELB_5XX", elb5xx);
+        	addCount(result, dims, "HTTPCode_Backend_2XX", backend2xx);
+        	addCount(result, dims, "HTTPCode_Backend_3XX", backend3xx);
+        	addCount(result, dims, "HTTPCode_Backend_4XX", backend4xx);
+        	addCount(result, dims, "HTTPCode_Backend_5XX", backend5xx);
+        	return result;
+        }
+        
+        private static void addCount(final List<MetricDatum> result, final Dimensions dims, final String metricName, final long count){
+        	if(count > 0){
+	        	final MetricDatum countData = new MetricDatum();
+	        	countData.setDimensions(dims);
+	        	countData.setMetricName(metricName);
+	        	countData.setUnit("Count");
 	        	final StatisticSet sset = new StatisticSet();
-	        	sset.setSampleCount((double)this.httpCode_Backend_5XX);
+	        	sset.setSampleCount((double)count);
 	        	sset.setMaximum(0.0);
 	        	sset.setMinimum(0.0);
-	        	sset.setSum((double)this.httpCode_Backend_5XX);
-	        	httpCode_Backend_5XX.setStatisticValues(sset);
-	        	result.add(httpCode_Backend_5XX);
+	        	sset.setSum((double)count);
+	        	countData.setStatisticValues(sset);
+	        	result.add(countData);
         	}
-        	return result;
         }
 
-
         @Override
         public String toString(){
-        	return String.format("aggregate=%.2f %d %d %d %d %d %d %d", this.latency, this.requestCount, this.httpCode_ELB_4XX, this.httpCode_ELB_5XX,
-        			this.httpCode_Backend_2XX, this.httpCode_Backend_3XX, this.httpCode_Backend_4XX, this.httpCode_Backend_5XX);
+        	return String.format("aggregate=%d %d %d %d %d %d %d %d", this.latency.get(), this.requestCount.get(), this.httpCode_ELB_4XX.get(), this.httpCode_ELB_5XX.get(),
+        			this.httpCode_Backend_2XX.get(), this.httpCode_Backend_3XX.get(), this.httpCode_Backend_4XX.get(), this.httpCode_Backend_5XX.get());
         }
 	}
 	
@@ -590,4 +567,46 @@ public class LoadBalancerCwatchMetrics {
 			return String.format("dimension-%s-%s-%s", this.userId, this.loadbalancer, this.availabilityZone);
 		}
 	}
+
+	/**
+	 * Periodically sends aggregated metrics to CloudWatch.
+	 */
+	public static class CloudWatchReporter implements EventListener<ClockTick> {
+		private static final AtomicBoolean reporting = new AtomicBoolean(false);
+		private static volatile long lastReport = System.currentTimeMillis();
+		
+		public static void register(){
+			Listeners.register(ClockTick.class, new CloudWatchReporter() );
+		}
+
+		@Override
+		public void fireEvent(ClockTick event) {
+			if (!( Bootstrap.isFinished() &&
+			          Topology.isEnabledLocally( LoadBalancingBackend.class ) &&
+			          Topology.isEnabled( Eucalyptus.class ) )) 
+				return;
+			
+			final long currentTime = System.currentTimeMillis();
+			if(currentTime - lastReport < TimeUnit.SECONDS.toMillis(CLOUDWATCH_REPORTING_INTERVAL_SEC))
+				return;
+			if(!reporting.compareAndSet(false, true))
+				return; // previous report still in progress
+			lastReport = currentTime;
+			try{
+				Threads.lookup(LoadBalancingBackend.class, LoadBalancerCwatchMetrics.class).limitTo(1).submit(new Runnable(){
+					@Override
+					public void run() {
+						try{
+							LoadBalancerCwatchMetrics.getInstance().report();
+						}finally{
+							reporting.set(false);
+						}
+					}
+				});
+			}catch(final Exception ex){
+				reporting.set(false);
+				LOG.error("Failed to schedule cloudwatch metrics report", ex);
+			}
+		}
+	}
 }
@@ -57,6 +57,7 @@ import com.eucalyptus.loadbalancing.backend.DuplicateListenerException;
 import com.eucalyptus.loadbalancing.backend.InternalFailure400Exception;
 import com.eucalyptus.loadbalancing.backend.InvalidConfigurationRequestException;
 import com.eucalyptus.loadbalancing.backend.ListenerNotFoundException;
+import com.eucalyptus.loadbalancing.backend.LoadBalancerServoDescriptions;
 import com.eucalyptus.loadbalancing.backend.LoadBalancingException;
 import com.eucalyptus.loadbalancing.backend.UnsupportedParameterException;
 import com.eucalyptus.loadbalancing.common.backend.msgs.Listener;
@@ -485,6 +486,7 @@ public class LoadBalancers {
 			final LoadBalancerBackendInstance toDelete = Entities.uniqueResult(LoadBalancerBackendInstance.named(lb, instanceId));
 		    Entities.delete(toDelete);
 		    db.commit();
+		    LoadBalancerServoDescriptions.invalidate();
 		}catch(final NoSuchElementException ex){
 			db.rollback();
 			throw ex;
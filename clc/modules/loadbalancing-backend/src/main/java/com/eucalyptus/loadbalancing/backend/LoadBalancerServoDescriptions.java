@@ -0,0 +1,409 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.loadbalancing.backend;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import com.eucalyptus.entities.EntityChangeListeners;
+import com.eucalyptus.loadbalancing.LoadBalancer;
+import com.eucalyptus.loadbalancing.LoadBalancer.LoadBalancerCoreView;
+import com.eucalyptus.loadbalancing.LoadBalancerBackendInstance;
+import com.eucalyptus.loadbalancing.LoadBalancerBackendInstance.LoadBalancerBackendInstanceCoreView;
+import com.eucalyptus.loadbalancing.LoadBalancerDnsRecord;
+import com.eucalyptus.loadbalancing.LoadBalancerListener;
+import com.eucalyptus.loadbalancing.LoadBalancerPolicyAttributeDescription;
+import com.eucalyptus.loadbalancing.LoadBalancerPolicyDescription;
+import com.eucalyptus.loadbalancing.LoadBalancerZone;
+import com.eucalyptus.loadbalancing.activities.LoadBalancerServoInstance;
+import com.eucalyptus.loadbalancing.common.backend.msgs.HealthCheck;
+import com.eucalyptus.loadbalancing.common.backend.msgs.Instance;
+import com.eucalyptus.loadbalancing.common.backend.msgs.ListenerDescription;
+import com.eucalyptus.loadbalancing.common.backend.msgs.LoadBalancerDescription;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Cached load balancer descriptions for servo instances.
+ *
+ * <p>Descriptions for a servo are built on first use and reused until there
+ * is a change to a load balancer, zone, listener, policy, DNS record, servo
+ * instance or to the state of a backend instance. Backend instance state
+ * changes only discard descriptions for servos of the instance's load
+ * balancer. Each description has a
+ * version so that a servo with current configuration can be told it is not
+ * modified.</p>
+ *
+ * <p>The backend instances of the load balancer are also cached so that
+ * servo state reports can be checked against the current state without
+ * a lookup.</p>
+ */
+public class LoadBalancerServoDescriptions {
+  private static final long MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis( 1 );
+  private static final AtomicBoolean registered = new AtomicBoolean( false );
+  private static final AtomicLong generation = new AtomicLong( );
+  private static final AtomicLong loadBalancerInvalidations = new AtomicLong( );
+  private static final ConcurrentMap<String,ServoDescriptions> descriptionsByServo = Maps.newConcurrentMap( );
+  private static final ConcurrentMap<String,String> entitySignatures = Maps.newConcurrentMap( );
+
+  /**
+   * Lookup the descriptions for a servo instance, building if necessary.
+   *
+   * @param instanceId The servo instance identifier
+   * @param builder Function to build descriptions for a servo instance
+   * @return The descriptions, never null
+   */
+  @Nonnull
+  public static ServoDescriptions lookup( final String instanceId,
+                                          final Function<String,ServoDescriptions> builder ) {
+    register( );
+    if ( instanceId == null ) {
+      return ServoDescriptions.none( );
+    }
+    final long currentGeneration = generation.get( );
+    final long currentLoadBalancerInvalidations = loadBalancerInvalidations.get( );
+    final ServoDescriptions cached = descriptionsByServo.get( instanceId );
+    if ( cached != null &&
+        cached.generation == currentGeneration &&
+        cached.timestamp > ( System.currentTimeMillis( ) - MAX_AGE_MILLIS ) ) {
+      return cached;
+    }
+    final ServoDescriptions descriptions = builder.apply( instanceId );
+    descriptions.generation = currentGeneration;
+    if ( currentGeneration == generation.get( ) &&
+        currentLoadBalancerInvalidations == loadBalancerInvalidations.get( ) ) { // do not cache if there was a concurrent change
+      descriptionsByServo.put( instanceId, descriptions );
+    }
+    return descriptions;
+  }
+
+  /**
+   * Discard all cached descriptions.
+   *
+   * <p>This should be called after committing changes that would not otherwise
+   * be detected, such as the deletion of a backend instance.</p>
+   */
+  public static void invalidate( ) {
+    generation.incrementAndGet( );
+    descriptionsByServo.clear( );
+  }
+
+  /**
+   * Discard cached descriptions for the servos of a load balancer.
+   *
+   * @param ownerUserId The load balancer owner
+   * @param loadBalancerName The load balancer name
+   */
+  public static void invalidate( final String ownerUserId,
+                                 final String loadBalancerName ) {
+    loadBalancerInvalidations.incrementAndGet( );
+    for ( final Map.Entry<String,ServoDescriptions> entry : descriptionsByServo.entrySet( ) ) {
+      final LoadBalancerCoreView loadBalancer = entry.getValue( ).getLoadBalancer( );
+      if ( loadBalancer != null &&
+          Objects.equal( ownerUserId, loadBalancer.getOwnerUserId( ) ) &&
+          Objects.equal( loadBalancerName, loadBalancer.getDisplayName( ) ) ) {
+        descriptionsByServo.remove( entry.getKey( ), entry.getValue( ) );
+      }
+    }
+  }
+
+  private static void register( ) {
+    if ( registered.compareAndSet( false, true ) ) {
+      final EntityChangeListeners.EntityChangeListener invalidatingListener = new EntityChangeListeners.EntityChangeListener( ) {
+        @Override
+        public void changed( final Object entity, final Serializable id ) {
+          invalidate( );
+        }
+      };
+      for ( final Class<?> entityClass : ImmutableList.<Class<?>>of(
+          LoadBalancer.class,
+          LoadBalancerZone.class,
+          LoadBalancerListener.class,
+          LoadBalancerPolicyDescription.class,
+          LoadBalancerPolicyAttributeDescription.class,
+          LoadBalancerDnsRecord.class ) ) {
+        EntityChangeListeners.register( entityClass, invalidatingListener );
+      }
+      // Backend and servo instances are updated by periodic checks so only
+      // changes to the values used for servo configuration invalidate.
+      EntityChangeListeners.register( LoadBalancerBackendInstance.class, new EntityChangeListeners.EntityChangeListener( ) {
+        @Override
+        public void changed( final Object entity, final Serializable id ) {
+          final LoadBalancerBackendInstance instance = (LoadBalancerBackendInstance) entity;
+          if ( signatureChanged( "backend-instance:" + id, instance.getState( ) + ":" +
+              LoadBalancerBackendInstance.STATE.Error.equals( instance.getBackendState( ) ) ) ) {
+            // only servos for the instance's load balancer describe it
+            final LoadBalancerCoreView loadBalancer = loadBalancer( instance );
+            if ( loadBalancer != null ) {
+              invalidate( loadBalancer.getOwnerUserId( ), loadBalancer.getDisplayName( ) );
+            } else {
+              invalidate( );
+            }
+          }
+        }
+      } );
+      EntityChangeListeners.register( LoadBalancerServoInstance.class, new EntityChangeListeners.EntityChangeListener( ) {
+        @Override
+        public void changed( final Object entity, final Serializable id ) {
+          final LoadBalancerServoInstance instance = (LoadBalancerServoInstance) entity;
+          if ( signatureChanged( "servo-instance:" + id,
+              instance.getState( ) + ":" + instance.getAddress( ) + ":" + instance.getPrivateIp( ) ) ) {
+            invalidate( );
+          }
+        }
+      } );
+    }
+  }
+
+  private static boolean signatureChanged( final String key, final String signature ) {
+    return !signature.equals( entitySignatures.put( key, signature ) );
+  }
+
+  /**
+   * The load balancer for a backend instance, null if not known (e.g. not loaded)
+   */
+  @Nullable
+  private static LoadBalancerCoreView loadBalancer( final LoadBalancerBackendInstance instance ) {
+    try {
+      return instance.getLoadBalancer( );
+    } catch ( final RuntimeException e ) {
+      return null;
+    }
+  }
+
+  /**
+   * Load balancer descriptions and identifying information for a servo instance.
+   */
+  public static final class ServoDescriptions {
+    private final String address;
+    private final String privateIp;
+    private final String zoneName;
+    private final LoadBalancerCoreView loadBalancer;
+    private final Map<String,ServoBackendInstance> backendInstances;
+    private final long stateRefreshMillis;
+    private final List<LoadBalancerDescription> descriptions;
+    private final String version;
+    private final long timestamp;
+    private volatile long generation;
+
+    /**
+     * @param address The servo public address
+     * @param privateIp The servo private address
+     * @param zoneName The zone the servo is serving
+     * @param loadBalancer The load balancer, if the servo zone is in service
+     * @param backendInstances The backend instances for the load balancer
+     * @param stateRefreshMillis Maximum age for an unchanged backend instance state
+     * @param descriptions The load balancer descriptions for the servo
+     */
+    public ServoDescriptions( @Nullable final String address,
+                              @Nullable final String privateIp,
+                              @Nullable final String zoneName,
+                              @Nullable final LoadBalancerCoreView loadBalancer,
+                              @Nonnull  final Iterable<LoadBalancerBackendInstanceCoreView> backendInstances,
+                              final long stateRefreshMillis,
+                              @Nonnull  final Set<LoadBalancerDescription> descriptions ) {
+      this.address = address;
+      this.privateIp = privateIp;
+      this.zoneName = zoneName;
+      this.loadBalancer = loadBalancer;
+      final ImmutableMap.Builder<String,ServoBackendInstance> backendInstanceBuilder = ImmutableMap.builder( );
+      for ( final LoadBalancerBackendInstanceCoreView backendInstance : backendInstances ) {
+        backendInstanceBuilder.put( backendInstance.getInstanceId( ), new ServoBackendInstance( backendInstance ) );
+      }
+      this.backendInstances = backendInstanceBuilder.build( );
+      this.stateRefreshMillis = stateRefreshMillis;
+      this.descriptions = ImmutableList.copyOf( descriptions );
+      this.version = version( this.descriptions );
+      this.timestamp = System.currentTimeMillis( );
+    }
+
+    public static ServoDescriptions none( ) {
+      return new ServoDescriptions(
+          null,
+          null,
+          null,
+          null,
+          Collections.<LoadBalancerBackendInstanceCoreView>emptySet( ),
+          0,
+          Collections.<LoadBalancerDescription>emptySet( ) );
+    }
+
+    public boolean isValidSource( final String remoteHost ) {
+      return remoteHost != null && ( remoteHost.equals( address ) || remoteHost.equals( privateIp ) );
+    }
+
+    public String getAddress( ) {
+      return address;
+    }
+
+    public String getPrivateIp( ) {
+      return privateIp;
+    }
+
+    @Nullable
+    public String getZoneName( ) {
+      return zoneName;
+    }
+
+    /**
+     * The load balancer for the servo, null unless the servo zone is in service.
+     */
+    @Nullable
+    public LoadBalancerCoreView getLoadBalancer( ) {
+      return loadBalancer;
+    }
+
+    @Nullable
+    public ServoBackendInstance getBackendInstance( final String instanceId ) {
+      return backendInstances.get( instanceId );
+    }
+
+    public Iterable<ServoBackendInstance> getBackendInstances( ) {
+      return backendInstances.values( );
+    }
+
+    public long getStateRefreshMillis( ) {
+      return stateRefreshMillis;
+    }
+
+    public List<LoadBalancerDescription> getDescriptions( ) {
+      return descriptions;
+    }
+
+    public String getVersion( ) {
+      return version;
+    }
+
+    /**
+     * Version from the content of the descriptions so that an unchanged
+     * configuration has the same version when rebuilt.
+     */
+    private static String version( final List<LoadBalancerDescription> descriptions ) {
+      final Hasher hasher = Hashing.md5( ).newHasher( );
+      for ( final LoadBalancerDescription description : descriptions ) {
+        putString( hasher, description.getLoadBalancerName( ) );
+        putString( hasher, description.getCreatedTime( ) );
+        putString( hasher, description.getDnsName( ) );
+        if ( description.getInstances( ) != null && description.getInstances( ).getMember( ) != null ) {
+          for ( final Instance instance : description.getInstances( ).getMember( ) ) {
+            putString( hasher, instance.getInstanceId( ) );
+          }
+        }
+        if ( description.getAvailabilityZones( ) != null && description.getAvailabilityZones( ).getMember( ) != null ) {
+          for ( final String zone : description.getAvailabilityZones( ).getMember( ) ) {
+            putString( hasher, zone );
+          }
+        }
+        if ( description.getListenerDescriptions( ) != null && description.getListenerDescriptions( ).getMember( ) != null ) {
+          for ( final ListenerDescription listenerDescription : description.getListenerDescriptions( ).getMember( ) ) {
+            if ( listenerDescription.getListener( ) != null ) {
+              putString( hasher, listenerDescription.getListener( ).getLoadBalancerPort( ) );
+              putString( hasher, listenerDescription.getListener( ).getInstancePort( ) );
+              putString( hasher, listenerDescription.getListener( ).getProtocol( ) );
+              putString( hasher, listenerDescription.getListener( ).getInstanceProtocol( ) );
+              putString( hasher, listenerDescription.getListener( ).getSSLCertificateId( ) );
+            }
+            if ( listenerDescription.getPolicyNames( ) != null && listenerDescription.getPolicyNames( ).getMember( ) != null ) {
+              for ( final String policyName : listenerDescription.getPolicyNames( ).getMember( ) ) {
+                putString( hasher, policyName );
+              }
+            }
+          }
+        }
+        final HealthCheck healthCheck = description.getHealthCheck( );
+        if ( healthCheck != null ) {
+          putString( hasher, healthCheck.getTarget( ) );
+          putString( hasher, healthCheck.getInterval( ) );
+          putString( hasher, healthCheck.getTimeout( ) );
+          putString( hasher, healthCheck.getHealthyThreshold( ) );
+          putString( hasher, healthCheck.getUnhealthyThreshold( ) );
+        }
+      }
+      return hasher.hash( ).toString( );
+    }
+
+    private static void putString( final Hasher hasher, final Object value ) {
+      hasher.putString( Objects.firstNonNull( value, "" ).toString( ), Charsets.UTF_8 );
+      hasher.putByte( (byte) 0 );
+    }
+  }
+
+  /**
+   * Backend instance state as last known for a servo.
+   *
+   * <p>State changes invalidate the cached descriptions, but updates that only
+   * refresh the state timestamp do not, so the timestamp is tracked here.</p>
+   */
+  public static final class ServoBackendInstance {
+    private final String instanceId;
+    private final String zoneName;
+    private final LoadBalancerBackendInstance.STATE state;
+    private volatile long stateTimestamp;
+
+    private ServoBackendInstance( final LoadBalancerBackendInstanceCoreView backendInstance ) {
+      final Date lastUpdated = backendInstance.instanceStateLastUpdated( );
+      this.instanceId = backendInstance.getInstanceId( );
+      this.zoneName = backendInstance.getZoneName( );
+      this.state = backendInstance.getState( );
+      this.stateTimestamp = lastUpdated == null ? 0 : lastUpdated.getTime( );
+    }
+
+    public String getInstanceId( ) {
+      return instanceId;
+    }
+
+    public String getZoneName( ) {
+      return zoneName;
+    }
+
+    public LoadBalancerBackendInstance.STATE getState( ) {
+      return state;
+    }
+
+    /**
+     * Is the given state the current state, with a timestamp that does not
+     * yet need to be refreshed.
+     */
+    public boolean isCurrent( final LoadBalancerBackendInstance.STATE reportedState,
+                              final long refreshMillis ) {
+      return reportedState == state &&
+          stateTimestamp > ( System.currentTimeMillis( ) - refreshMillis );
+    }
+
+    public void stateUpdated( final long timestamp ) {
+      stateTimestamp = timestamp;
+    }
+  }
+}
@@ -23,10 +23,13 @@ package com.eucalyptus.loadbalancing.backend;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 import javax.persistence.EntityTransaction;
@@ -45,7 +48,6 @@ import com.eucalyptus.entities.Entities;
 import com.eucalyptus.event.EventFailedException;
 import com.eucalyptus.loadbalancing.LoadBalancer;
 import com.eucalyptus.loadbalancing.LoadBalancer.LoadBalancerCoreView;
-import com.eucalyptus.loadbalancing.LoadBalancer.LoadBalancerCoreViewTransform;
 import com.eucalyptus.loadbalancing.LoadBalancer.LoadBalancerEntityTransform;
 import com.eucalyptus.loadbalancing.LoadBalancerBackendInstance;
 import com.eucalyptus.loadbalancing.LoadBalancerBackendInstance.LoadBalancerBackendInstanceCoreView;
@@ -77,6 +79,8 @@ import com.eucalyptus.loadbalancing.activities.LoadBalancerServoInstance;
 import com.eucalyptus.loadbalancing.activities.NewLoadbalancerEvent;
 import com.eucalyptus.loadbalancing.activities.ActivityManager;
 import com.eucalyptus.loadbalancing.activities.RegisterInstancesEvent;
+import com.eucalyptus.loadbalancing.backend.LoadBalancerServoDescriptions.ServoBackendInstance;
+import com.eucalyptus.loadbalancing.backend.LoadBalancerServoDescriptions.ServoDescriptions;
 import com.eucalyptus.loadbalancing.common.LoadBalancingMetadatas;
 import com.eucalyptus.loadbalancing.common.backend.msgs.AppCookieStickinessPolicies;
 import com.eucalyptus.loadbalancing.common.backend.msgs.AppCookieStickinessPolicy;
@@ -166,11 +170,13 @@ import com.eucalyptus.loadbalancing.common.backend.msgs.SourceSecurityGroup;
 import com.eucalyptus.util.EucalyptusCloudException;
 import com.eucalyptus.util.Exceptions;
 import com.google.common.base.Function;
+import com.google.common.base.Objects;
 import com.google.common.base.Supplier;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.net.HostSpecifier;
 
@@ -180,34 +186,57 @@ import com.google.common.net.HostSpecifier;
 public class LoadBalancingBackendService {
   private static Logger    LOG     = Logger.getLogger( LoadBalancingBackendService.class );
   
-  private void isValidServoRequest(String instanceId, String remoteHost) throws LoadBalancingException{
-	  try{
-		  final LoadBalancerServoInstance instance = LoadBalancers.lookupServoInstance( instanceId );
-		  if(! (remoteHost.equals(instance.getAddress()) || remoteHost.equals(instance.getPrivateIp())))
-				  throw new LoadBalancingException(String.format("IP address (%s) not match with record (%s-%s)",remoteHost, instance.getAddress(), instance.getPrivateIp()));
-	  }catch(final LoadBalancingException ex){
-		  throw ex;
-	  }catch(Exception ex){
-		  throw new LoadBalancingException("unknown error", ex);
-	  }
-  }
-  
   /// EUCA-specific, internal operations for fetching listener specification
   public DescribeLoadBalancersByServoResponseType describeLoadBalancersByServo(DescribeLoadBalancersByServoType request) throws EucalyptusCloudException {
   	  final DescribeLoadBalancersByServoResponseType reply = request.getReply();
   	  final String instanceId = request.getInstanceId();
+  	  final ServoDescriptions servoDescriptions =
+  	      LoadBalancerServoDescriptions.lookup( instanceId, servoDescriptionsBuilder );
+
+  	  List<LoadBalancerDescription> descs = Collections.emptyList();
+  	  if ( servoDescriptions.isValidSource( request.getSourceIp() ) ) {
+  	    reply.setConfigVersion( servoDescriptions.getVersion() );
+  	    if ( servoDescriptions.getVersion().equals( request.getConfigVersion() ) ) {
+  	      reply.setNotModified( true );
+  	    } else {
+  	      descs = servoDescriptions.getDescriptions();
+  	    }
+  	  } else if ( servoDescriptions.getAddress() != null || servoDescriptions.getPrivateIp() != null ) {
+  	    LOG.warn( String.format( "failed to find loadbalancer for servo instance: %s, IP address (%s) not match with record (%s-%s)",
+  	        instanceId, request.getSourceIp(), servoDescriptions.getAddress(), servoDescriptions.getPrivateIp() ) );
+  	  }
+
+	  DescribeLoadBalancersResult descResult = new DescribeLoadBalancersResult();
+	  LoadBalancerDescriptions lbDescs = new LoadBalancerDescriptions();
+	  lbDescs.setMember(new ArrayList<LoadBalancerDescription>(descs));
+	  descResult.setLoadBalancerDescriptions(lbDescs);
+	  reply.setDescribeLoadBalancersResult(descResult);
+	  reply.set_return(true);
+	    
+	  return reply;
+  }
+
+  private static final Function<String,ServoDescriptions> servoDescriptionsBuilder = new Function<String,ServoDescriptions>( ) {
+    @Override
+    public ServoDescriptions apply( final String instanceId ) {
+      return buildServoDescriptions( instanceId );
+    }
+  };
+
+  private static ServoDescriptions buildServoDescriptions( final String instanceId ) {
 	  // lookup servo instance Id to see which LB zone it is assigned to
+	  LoadBalancerServoInstance instance = null;
 	  LoadBalancerZoneCoreView zoneView = null;
 	  LoadBalancerZone zone = null;
 	  try{
-	  	  isValidServoRequest(instanceId, request.getSourceIp());
-  		  final LoadBalancerServoInstance instance = LoadBalancers.lookupServoInstance(instanceId);
+  		  instance = LoadBalancers.lookupServoInstance(instanceId);
   		  zoneView = instance.getAvailabilityZone();
   		  zone = LoadBalancerZoneEntityTransform.INSTANCE.apply(zoneView);
 	  }catch(NoSuchElementException ex){
-  		;
+  		return ServoDescriptions.none();
   	  }catch(Exception ex){
   		LOG.warn("failed to find loadbalancer for servo instance: "+instanceId, ex);
+  		return ServoDescriptions.none();
   	  }
 	  
 	  
@@ -334,24 +363,35 @@ public class LoadBalancingBackendService {
 	  Set<LoadBalancerDescription> descs = null;
 	  
 	  LoadBalancer lb = null;
+	  LoadBalancerCoreView lbView = null;
+	  Collection<LoadBalancerBackendInstanceCoreView> backendInstances = Collections.emptySet();
+	  long stateRefreshMillis = 0;
 	  try{
 		  lb = LoadBalancerEntityTransform.INSTANCE.apply(zone.getLoadbalancer());
 	  	  if(zone != null && LoadBalancingMetadatas.filterPrivilegedWithoutOwner().apply( lb ) && zone.getState().equals(LoadBalancerZone.STATE.InService)){
 	  			 descs= lookupLBDescriptions.apply(zone);
+	  			 lbView = zone.getLoadbalancer();
+	  			 backendInstances = lb.getBackendInstances();
+	  			 try{
+	  				 // unchanged states are refreshed well within the period after which describeInstanceHealth treats them as outdated
+	  				 stateRefreshMillis = TimeUnit.SECONDS.toMillis(lb.getHealthCheckInterval() * lb.getHealthyThreshold());
+	  			 }catch(final IllegalStateException ex){
+	  				 ;
+	  			 }
 	  	  }else
 	  		  descs = Sets.<LoadBalancerDescription>newHashSet();
 	  }catch(final Exception ex){
   		  descs = Sets.<LoadBalancerDescription>newHashSet();
 	  }
-  		  
-	  DescribeLoadBalancersResult descResult = new DescribeLoadBalancersResult();
-	  LoadBalancerDescriptions lbDescs = new LoadBalancerDescriptions();
-	  lbDescs.setMember(new ArrayList<LoadBalancerDescription>(descs));
-	  descResult.setLoadBalancerDescriptions(lbDescs);
-	  reply.setDescribeLoadBalancersResult(descResult);
-	  reply.set_return(true);
-	    
-	  return reply;
+
+	  return new ServoDescriptions(
+	      instance.getAddress(),
+	      instance.getPrivateIp(),
+	      zoneView.getName(),
+	      lbView,
+	      backendInstances,
+	      stateRefreshMillis,
+	      descs );
   }
   
   /// EUCA-specific, internal operations for storing instance health check and cloudwatch metrics
@@ -359,40 +399,25 @@ public class LoadBalancingBackendService {
 	  PutServoStatesResponseType reply = request.getReply();
 	  final String servoId = request.getInstanceId();
 
-	  try{
-		  isValidServoRequest(servoId, request.getSourceIp());
-	  }catch(final Exception ex){
-		  LOG.warn("invalid servo request", ex);
+	  final ServoDescriptions servoDescriptions =
+	      LoadBalancerServoDescriptions.lookup( servoId, servoDescriptionsBuilder );
+	  if(!servoDescriptions.isValidSource(request.getSourceIp())){
+		  LOG.warn(String.format("invalid servo request from %s, IP address (%s) not match with record (%s-%s)",
+				  servoId, request.getSourceIp(), servoDescriptions.getAddress(), servoDescriptions.getPrivateIp()));
 		  return reply;
 	  }
 	  
 	  final Instances instances = request.getInstances();
 	  final MetricData metric = request.getMetricData();
 	  
-	  LoadBalancer lb = null;
-	  if(servoId!= null){
-		  try{
-			  final LoadBalancerServoInstance servo = LoadBalancers.lookupServoInstance(servoId);
-			  final LoadBalancerZoneCoreView zoneView = servo.getAvailabilityZone();
-			  final LoadBalancerZone zone = LoadBalancerZoneEntityTransform.INSTANCE.apply(zoneView);
-			  final LoadBalancerCoreView lbView = zone.getLoadbalancer();
-			  lb = LoadBalancerEntityTransform.INSTANCE.apply(lbView);
-			  if(lb==null)
-				  throw new Exception("Failed to find the loadbalancer");
-			  if(! servo.getAvailabilityZone().getState().equals(LoadBalancerZone.STATE.InService))
-				  lb= null;
-		  }catch(NoSuchElementException ex){
-			  LOG.warn("unknown servo VM id is used to query: "+servoId);
-		  }catch(Exception ex){
-			  LOG.warn("failed to query servo instance");
-		  }
-	  }
-	  if(lb==null || !LoadBalancingMetadatas.filterPrivilegedWithoutOwner().apply( lb ))
+	  final LoadBalancerCoreView lb = servoDescriptions.getLoadBalancer();
+	  if(lb==null)
 		  return reply;
 	  
 	  /// INSTANCE HEALTH CHECK UPDATE
+	  final Map<String,LoadBalancerBackendInstance.STATE> reportedStates = Maps.newHashMap();
+	  final Map<ServoBackendInstance,LoadBalancerBackendInstance.STATE> stateUpdates = Maps.newHashMap();
 	  if(instances!= null && instances.getMember()!=null && instances.getMember().size()>0){
-		  final Collection<LoadBalancerBackendInstanceCoreView> lbInstances = lb.getBackendInstances();
 		  for(final Instance instance : instances.getMember()){
 			  String instanceId = instance.getInstanceId();
 				  // format: instanceId:state
@@ -402,72 +427,50 @@ public class LoadBalancingBackendService {
 				  continue;
 			  }
 			  instanceId = parts[0];
-			  final String state = parts[1];
-			  LoadBalancerBackendInstanceCoreView found = null;
-			  for(final LoadBalancerBackendInstanceCoreView lbInstance : lbInstances){
-				  if(instanceId.equals(lbInstance.getInstanceId())){
-					  found = lbInstance;
-					  break;
-				  }  
+			  final LoadBalancerBackendInstance.STATE state;
+			  try{
+				  state = Enum.valueOf(LoadBalancerBackendInstance.STATE.class, parts[1]);
+			  }catch(final IllegalArgumentException ex){
+				  LOG.warn("instance state is invalid:"+ parts[1]);
+				  continue;
 			  }
-			  if(found!=null){
-			 	  final EntityTransaction db = Entities.get( LoadBalancerBackendInstance.class );
-				  try{
-					  final LoadBalancerBackendInstance update = Entities.uniqueResult(
-							  LoadBalancerBackendInstance.named(lb, found.getInstanceId()));
-				
-					  update.setState(Enum.valueOf(LoadBalancerBackendInstance.STATE.class, state));
-					  if(state.equals(LoadBalancerBackendInstance.STATE.OutOfService.name())){
-						  update.setReasonCode("Instance");
-						  update.setDescription("Instance has failed at least the UnhealthyThreshold number of health checks consecutively.");
-					  }else{
-						  update.setReasonCode("");
-						  update.setDescription("");
-					  }
-					  update.updateInstanceStateTimestamp();
-					  Entities.persist(update);
-					  db.commit();
-				  }catch(final NoSuchElementException ex){
-					  db.rollback();
-					  LOG.error("unable to find the loadbancer backend instance", ex);
-				  }catch(final Exception ex){
-					  db.rollback();
-					  LOG.error("unable to update the state of loadbalancer backend instance", ex);
-				  }finally{
-					  if(db.isActive())
-						  db.rollback();
-				  }
+			  final ServoBackendInstance found = servoDescriptions.getBackendInstance(instanceId);
+			  if(found!=null && !found.isCurrent(state, servoDescriptions.getStateRefreshMillis())){
+				  stateUpdates.put(found, state);
 			  }
+			  reportedStates.put(instanceId, state);
+		  }
+	  }
+	  
+	  if(!stateUpdates.isEmpty()){
+		  try{
+			  updateBackendInstanceStates(lb, stateUpdates);
+		  }catch(final Exception ex){
+			  reportedStates.keySet().removeAll(
+					  Collections2.transform(stateUpdates.keySet(), new Function<ServoBackendInstance,String>(){
+						  @Override
+						  public String apply(final ServoBackendInstance backendInstance){
+							  return backendInstance.getInstanceId();
+						  }
+					  }));
+			  LOG.error("unable to update the state of loadbalancer backend instances", ex);
 		  }
 	  }
 	  
 	  /// Update Cloudwatch
-	  for(final LoadBalancerBackendInstanceCoreView sample : lb.getBackendInstances()){
-		  final EntityTransaction db = Entities.get( LoadBalancerBackendInstance.class );
-	 	  try{
-	 		  final LoadBalancerBackendInstance found = Entities.uniqueResult(
-	 				  LoadBalancerBackendInstance.named(lb, sample.getInstanceId()));
-	 		  final String zoneName = found.getAvailabilityZone().getName();
-	 		  if(found.getState().equals(LoadBalancerBackendInstance.STATE.InService)){
-	 			  LoadBalancerCwatchMetrics.getInstance().updateHealthy(LoadBalancerCoreViewTransform.INSTANCE.apply(lb), zoneName, found.getInstanceId());
-	 		  }else if (found.getState().equals(LoadBalancerBackendInstance.STATE.OutOfService)){
-	 			  LoadBalancerCwatchMetrics.getInstance().updateUnHealthy(LoadBalancerCoreViewTransform.INSTANCE.apply(lb), zoneName, found.getInstanceId());
-	 		  }
-	 		  db.commit();
-	 	  }catch(NoSuchElementException ex){
-	 		  db.rollback();
-	 	  }catch(Exception ex){
-	 		  db.rollback();
-	 		  LOG.warn("Failed to query loadbalancer backend instance", ex);
-	 	  }finally {
-	 		  if(db.isActive())
-	 			  db.rollback();
-	 	  }
+	  for(final ServoBackendInstance sample : servoDescriptions.getBackendInstances()){
+		  final LoadBalancerBackendInstance.STATE state = Objects.firstNonNull(
+				  reportedStates.get(sample.getInstanceId()), sample.getState());
+		  if(LoadBalancerBackendInstance.STATE.InService.equals(state)){
+			  LoadBalancerCwatchMetrics.getInstance().updateHealthy(lb, sample.getZoneName(), sample.getInstanceId());
+		  }else if(LoadBalancerBackendInstance.STATE.OutOfService.equals(state)){
+			  LoadBalancerCwatchMetrics.getInstance().updateUnHealthy(lb, sample.getZoneName(), sample.getInstanceId());
+		  }
 	  }
 	  
 	  if(metric!= null && metric.getMember()!= null && metric.getMember().size()>0){
 		  try{
-			  LoadBalancerCwatchMetrics.getInstance().addMetric(servoId, metric);
+			  LoadBalancerCwatchMetrics.getInstance().addMetric(lb, servoDescriptions.getZoneName(), metric);
 		  }catch(Exception ex){
 			  LOG.error("Failed to add ELB cloudwatch metric", ex);
 		  }
@@ -476,6 +479,46 @@ public class LoadBalancingBackendService {
 	  return reply;
   }
  
+  /**
+   * Update backend instance states for a servo report in a single transaction.
+   */
+  private static void updateBackendInstanceStates(
+      final LoadBalancerCoreView lbView,
+      final Map<ServoBackendInstance,LoadBalancerBackendInstance.STATE> stateUpdates
+  ) throws Exception {
+	  final LoadBalancer lb = LoadBalancerEntityTransform.INSTANCE.apply(lbView);
+	  final long timestamp = System.currentTimeMillis();
+	  final EntityTransaction db = Entities.get( LoadBalancerBackendInstance.class );
+	  try{
+		  for(final Map.Entry<ServoBackendInstance,LoadBalancerBackendInstance.STATE> entry : stateUpdates.entrySet()){
+			  final LoadBalancerBackendInstance update;
+			  try{
+				  update = Entities.uniqueResult(
+						  LoadBalancerBackendInstance.named(lb, entry.getKey().getInstanceId()));
+			  }catch(final NoSuchElementException ex){
+				  LOG.debug("unable to find the loadbalancer backend instance " + entry.getKey().getInstanceId());
+				  continue;
+			  }
+			  update.setState(entry.getValue());
+			  if(LoadBalancerBackendInstance.STATE.OutOfService.equals(entry.getValue())){
+				  update.setReasonCode("Instance");
+				  update.setDescription("Instance has failed at least the UnhealthyThreshold number of health checks consecutively.");
+			  }else{
+				  update.setReasonCode("");
+				  update.setDescription("");
+			  }
+			  update.updateInstanceStateTimestamp();
+		  }
+		  db.commit();
+	  }finally{
+		  if(db.isActive())
+			  db.rollback();
+	  }
+	  for(final ServoBackendInstance backendInstance : stateUpdates.keySet()){
+		  backendInstance.stateUpdated(timestamp);
+	  }
+  }
+ 
   public CreateLoadBalancerResponseType createLoadBalancer(CreateLoadBalancerType request) throws EucalyptusCloudException {
     final CreateLoadBalancerResponseType reply = request.getReply();
     final Context ctx = Contexts.lookup();
@@ -1262,6 +1305,7 @@ public class LoadBalancingBackendService {
 	    
 	  try{
 		  reply.set_return(Entities.asTransaction(LoadBalancerBackendInstance.class, remover).apply(null));
+		  LoadBalancerServoDescriptions.invalidate();
 		  allInstances.removeAll(instancesToRemove);
 	  }catch(final Exception ex){
 		  final String reason = ex.getCause()!=null && ex.getCause().getMessage()!=null ? ex.getCause().getMessage() : "internal error";
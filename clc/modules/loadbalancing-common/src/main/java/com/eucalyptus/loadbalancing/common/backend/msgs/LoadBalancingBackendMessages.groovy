@@ -37,12 +37,15 @@ public class LoadBalancingServoBackendMessage extends LoadBalancingBackendMessag
 
 public class DescribeLoadBalancersByServoType extends LoadBalancingServoBackendMessage {
   String instanceId;
+  String configVersion;
   public DescribeLoadBalancersByServoType() {  }
 }
 
 public class DescribeLoadBalancersByServoResponseType extends LoadBalancingServoBackendMessage {
   public DescribeLoadBalancersResponseType() {  }
   DescribeLoadBalancersResult describeLoadBalancersResult = new DescribeLoadBalancersResult();
+  String configVersion;
+  Boolean notModified;
   ResponseMetadata responseMetadata = new ResponseMetadata();
 }
 
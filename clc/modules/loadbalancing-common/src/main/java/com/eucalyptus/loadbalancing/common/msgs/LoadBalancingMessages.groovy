@@ -38,12 +38,15 @@ public class LoadBalancingServoMessage extends LoadBalancingMessage {
 
 public class DescribeLoadBalancersByServoType extends LoadBalancingServoMessage {
 	String instanceId;
+	String configVersion;
 	public DescribeLoadBalancersByServoType() {  }
 }
 
 public class DescribeLoadBalancersByServoResponseType extends LoadBalancingServoMessage {
 	public DescribeLoadBalancersResponseType() {  }
 	DescribeLoadBalancersResult describeLoadBalancersResult = new DescribeLoadBalancersResult();
+	String configVersion;
+	Boolean notModified;
 	ResponseMetadata responseMetadata = new ResponseMetadata();
 }
 
@@ -98,14 +98,13 @@ default_pool_props = [
       'password': db_pass,
     ]
 
-def setupDbPool = { String ctx_simplename ->
-  String context_name = ctx_simplename.replaceAll("eucalyptus_","")
-  String context_pool_alias = ctx_simplename;
+def setupClusterPool = { String ctx_simplename, String context_pool_alias, String balancer_name, List<Map> databases ->
+  String context_name = context_pool_alias.replaceAll("eucalyptus_","")
   String ha_jdbc_config_file_name = SubDirectory.TX.toString( ) + "/ha_jdbc_${context_name}.xml";
-  LogUtil.logHeader( "${ctx_simplename} Setting up database connection pool -> ${ha_jdbc_config_file_name}" )
+  LogUtil.logHeader( "${context_pool_alias} Setting up database connection pool -> ${ha_jdbc_config_file_name}" )
   
   
-  LOG.info( "${ctx_simplename} Preparing jdbc cluster:        ${ha_jdbc_config_file_name}" )
+  LOG.info( "${context_pool_alias} Preparing jdbc cluster:        ${ha_jdbc_config_file_name}" )
   new File( ha_jdbc_config_file_name ).withWriter{ writer ->
     def xml = new MarkupBuilder(writer);
     xml.'ha-jdbc'(xmlns: SchemaGenerator.NAMESPACE) {
@@ -118,7 +117,7 @@ def setupDbPool = { String ctx_simplename ->
       state(id:'simple');
       cluster(
 //          'auto-activate-schedule':'0 * * ? * *',
-          balancer:'simple', //(simple|random|round-robin|load)
+          balancer:balancer_name, //(simple|random|round-robin|load)
           'default-sync': 'passive',
           dialect:Databases.getJdbcDialect( ),
           durability:'none',//(none|coarse|fine)
@@ -132,11 +131,11 @@ def setupDbPool = { String ctx_simplename ->
           'eval-current-timestamp':'true',
           'eval-rand':'true'
           ) {
-            Hosts.listActiveDatabases( ).each{ Host host ->
-              database(id:host.getBindAddress().getHostAddress( ),
-                  local:host.isLocalHost( ),
-                  weight:(Hosts.isCoordinator(host)?100:1),
-                  location:("jdbc:${ServiceUris.remote(Database.class,host.getBindAddress( ), context_pool_alias ).toASCIIString( )}")
+            databases.each{ Map db ->
+              database(id:db.address.getHostAddress( ),
+                  local:db.local,
+                  weight:db.weight,
+                  location:("jdbc:${ServiceUris.remote(Database.class, db.address, ctx_simplename ).toASCIIString( )}")
                   ) {
                     user('eucalyptus')
                     password(db_pass)
@@ -151,8 +150,8 @@ def setupDbPool = { String ctx_simplename ->
   proxool_config = new Properties();
   proxool_config.putAll(default_pool_props);
   proxool_config.put('config',"file://"+ha_jdbc_config_file_name);
-  String url = "proxool.${context_pool_alias}:${pool_db_driver}:${pool_db_url}:${ctx_simplename}";
-  LOG.info( "${ctx_simplename} Preparing connection pool:     ${url}" )
+  String url = "proxool.${context_pool_alias}:${pool_db_driver}:${pool_db_url}:${context_pool_alias}";
+  LOG.info( "${context_pool_alias} Preparing connection pool:     ${url}" )
   
   // Register proxool
   LOG.trace( proxool_config )
@@ -160,5 +159,21 @@ def setupDbPool = { String ctx_simplename ->
   ProxoolFacade.disableShutdownHook();
 }
 
+def setupDbPool = { String ctx_simplename ->
+  setupClusterPool( ctx_simplename, ctx_simplename, 'simple', Hosts.listActiveDatabases( ).collect{ Host host ->
+    [ address: host.getBindAddress( ), local: host.isLocalHost( ), weight: (Hosts.isCoordinator(host)?100:1) ]
+  } )
+}
+
+// Read only pool for the configured replicas, the primary cluster is not included
+def setupReadDbPool = { String ctx_simplename ->
+  setupClusterPool( ctx_simplename, Databases.getReadPoolAlias( ctx_simplename ), Databases.getReadBalancer( ), Databases.listReadReplicas( ).collect{ String replica ->
+    [ address: InetAddress.getByName( replica ), local: false, weight: 1 ]
+  } )
+}
+
 PersistenceContexts.list( ).each{ setupDbPool(it) }
+if ( Databases.hasReadReplicas( ) ) {
+  PersistenceContexts.list( ).each{ setupReadDbPool(it) }
+}
 setupDbPool("database_events");
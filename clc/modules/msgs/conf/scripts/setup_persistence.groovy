@@ -81,6 +81,15 @@ default_hiber_config = [
       'hibernate.default_batch_fetch_size': '50',
 ]
 
+// JDBC write batching for contexts with bulk writers (Entities.persistAll)
+batch_hiber_config = [
+      'hibernate.jdbc.batch_size': '50',
+      'hibernate.jdbc.batch_versioned_data': 'true',
+      'hibernate.order_inserts': 'true',
+      'hibernate.order_updates': 'true',
+]
+batch_contexts = [ 'eucalyptus_cloudwatch', 'eucalyptus_reporting' ]
+
 PersistenceContexts.list( ).each { String ctx_simplename ->
   
   String context_name = ctx_simplename.replaceAll("eucalyptus_","")
@@ -91,6 +100,9 @@ PersistenceContexts.list( ).each { String ctx_simplename ->
   // Configure the hibernate connection
   hibernate_config = [:]
   hibernate_config.putAll(default_hiber_config)
+  if ( batch_contexts.contains( ctx_simplename ) ) {
+    hibernate_config.putAll(batch_hiber_config)
+  }
   hibernate_config.putAll( [
         /** jdbc driver **/
         'hibernate.dialect': Databases.getHibernateDialect( ),
@@ -135,4 +147,21 @@ PersistenceContexts.list( ).each { String ctx_simplename ->
   } catch( Exception t ) {
     t.printStackTrace();
   }
+
+  // Register the read only context using the read pool, the shared cache is
+  // not used as it would not see replication. Replicas are hot standbys so
+  // the schema is never updated through this context.
+  if ( Databases.hasReadReplicas( ) ) {
+    read_config = new Ejb3Configuration();
+    hibernate_config.findAll { k , v -> k != 'hibernate.hbm2ddl.auto' }.each { k , v -> read_config.setProperty( k, v ) }
+    read_config.setProperty( 'hibernate.proxool.pool_alias', Databases.getReadPoolAlias( ctx_simplename ) )
+    read_config.setProperty( 'hibernate.cache.use_second_level_cache', 'false' )
+    read_config.setProperty( 'hibernate.cache.region_prefix', "eucalyptus_${context_name}_read_cache" )
+    PersistenceContexts.listEntities( ctx_simplename ).each{ ent -> read_config.addAnnotatedClass( ent ) }
+    try {
+      PersistenceContexts.registerReadOnlyPersistenceContext(ctx_simplename, read_config)
+    } catch( Exception t ) {
+      t.printStackTrace();
+    }
+  }
 }
@@ -67,6 +67,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import javax.annotation.Nullable;
 import org.apache.log4j.Logger;
 import com.eucalyptus.auth.api.AccountProvider;
 import com.eucalyptus.auth.policy.PolicySpec;
@@ -225,6 +226,10 @@ public class Accounts {
     return Accounts.getAccountProvider( ).listSigningCertificatesForUsers( userIds );
   }
 
+  public static Map<String,X509Certificate> listActiveSigningCertificatesByKeyFingerprint( @Nullable final String accountNumber ) throws AuthException {
+    return Accounts.getAccountProvider( ).listActiveSigningCertificatesByKeyFingerprint( accountNumber );
+  }
+
   public static Map<String,List<AccessKey>> listAccessKeysForUsers( final Collection<String> userIds ) throws AuthException {
     return Accounts.getAccountProvider( ).listAccessKeysForUsers( userIds );
   }
@@ -67,6 +67,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import javax.annotation.Nullable;
 import com.eucalyptus.auth.AuthException;
 import com.eucalyptus.auth.principal.AccessKey;
 import com.eucalyptus.auth.principal.Account;
@@ -129,6 +130,15 @@ public interface AccountProvider {
    */
   Map<String,List<Certificate>> listSigningCertificatesForUsers( Collection<String> userIds ) throws AuthException;
 
+  /**
+   * Active signing certificates by public key fingerprint.
+   *
+   * If the given account number is null then certificates for all accounts are returned.
+   *
+   * @see com.eucalyptus.auth.util.X509CertHelper#calcPublicKeyFingerprint
+   */
+  Map<String,X509Certificate> listActiveSigningCertificatesByKeyFingerprint( @Nullable String accountNumber ) throws AuthException;
+
   /**
    * List of access keys by user id for the specified users.
    *
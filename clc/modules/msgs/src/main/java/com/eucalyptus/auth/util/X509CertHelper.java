@@ -112,6 +112,19 @@ public class X509CertHelper {
       }
   }
 
+  /**
+   * SHA-1 fingerprint of the certificates public key, certificates issued
+   * for the same key have the same fingerprint.
+   */
+  public static String calcPublicKeyFingerprint( X509Certificate cert ) {
+    try {
+      MessageDigest md = MessageDigest.getInstance( "SHA-1" );
+      return hexify( md.digest( cert.getPublicKey( ).getEncoded( ) ) );
+    } catch ( Exception e ) {
+      return null;
+    }
+  }
+
   public static String hexify (byte bytes[]) {
     StringBuilder builder = new StringBuilder(bytes.length * 2);      
     for (byte b : bytes) {
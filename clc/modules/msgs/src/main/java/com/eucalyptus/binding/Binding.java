@@ -62,7 +62,6 @@
 
 package com.eucalyptus.binding;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -72,6 +71,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.impl.builder.StAXOMBuilder;
@@ -82,6 +82,10 @@ import org.apache.axiom.soap.SOAPFaultCode;
 import org.apache.axiom.soap.SOAPFaultDetail;
 import org.apache.axiom.soap.SOAPFaultReason;
 import org.apache.log4j.Logger;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jibx.runtime.BindingDirectory;
 import org.jibx.runtime.IBindingFactory;
@@ -92,6 +96,7 @@ import org.jibx.runtime.JiBXException;
 import org.jibx.runtime.impl.StAXReaderWrapper;
 import org.jibx.runtime.impl.StAXWriter;
 import org.jibx.runtime.impl.UnmarshallingContext;
+import com.eucalyptus.util.NamespaceMappingXMLStreamReader;
 import com.eucalyptus.util.NamespaceMappingXMLStreamWriter;
 import com.eucalyptus.ws.WebServicesException;
 import com.google.common.collect.Maps;
@@ -208,16 +213,15 @@ public class Binding {
   }
 
   public OMElement toOM( final Object param, final String altNs ) throws BindingException {
-    final ByteArrayOutputStream bos = new ByteArrayOutputStream( );
-    final String useNs = toStream( bos, param, altNs );
+    final ChannelBuffer buffer = toChannelBuffer( param, altNs );
     final OMElement retVal;
     HoldMe.canHas.lock( );
     try {
-      final StAXOMBuilder stAXOMBuilder = HoldMe.getStAXOMBuilder( HoldMe.getXMLStreamReader( bos.toString() ) );
+      final StAXOMBuilder stAXOMBuilder = HoldMe.getStAXOMBuilder( HoldMe.getXMLStreamReader( new ChannelBufferInputStream( buffer ) ) );
       retVal = stAXOMBuilder.getDocumentElement( );
     } catch ( XMLStreamException e ) {
       LOG.error( e, e );
-      throw new BindingException( this.name + " failed to marshall type " + param.getClass( ).getCanonicalName( ) + " with ns:" + useNs + " caused by: "
+      throw new BindingException( this.name + " failed to marshall type " + param.getClass( ).getCanonicalName( ) + " with ns:" + altNs + " caused by: "
                                   + e.getMessage( ), e );
     } finally {
       HoldMe.canHas.unlock( );
@@ -225,13 +229,29 @@ public class Binding {
     
     return retVal;
   }
+
+  /**
+   * Marshal the given message directly to a channel buffer.
+   *
+   * <p>The returned buffer is suitable for use as HTTP message content without
+   * further copying.</p>
+   */
+  public ChannelBuffer toChannelBuffer( final Object param, final String altNs ) throws BindingException {
+    final ChannelBuffer buffer = ChannelBuffers.dynamicBuffer( 8192 );
+    toStream( new ChannelBufferOutputStream( buffer ), param, altNs );
+    return buffer;
+  }
   
   public UnmarshallingContext getNewUnmarshalContext( final OMElement param ) throws JiBXException {
+    return getNewUnmarshalContext( param.getXMLStreamReader( ) );
+  }
+
+  private UnmarshallingContext getNewUnmarshalContext( final XMLStreamReader xmlStreamReader ) throws JiBXException {
     if ( this.bindingFactory == null ) {
       throw new RuntimeException( "Binding bootstrap failed to construct the binding factory for " + this.name );
     }
     final UnmarshallingContext ctx = ( UnmarshallingContext ) this.bindingFactory.createUnmarshallingContext( );
-    final IXMLReader reader = new StAXReaderWrapper( param.getXMLStreamReader( ), "SOAP-message", true );
+    final IXMLReader reader = new StAXReaderWrapper( xmlStreamReader, "SOAP-message", true );
     ctx.setDocument( reader );
     ctx.toTag( );
     return ctx;
@@ -262,10 +282,12 @@ public class Binding {
   }
   
   public Object fromOM( final OMElement param, final String namespace ) throws WebServicesException {
-    StringWriter out = new StringWriter( );
     try {
-      param.serialize( out );
-      return this.fromOM( out.toString( ).replace( param.getNamespace( ).getNamespaceURI( ), namespace ) );
+      final XMLStreamReader reader = new NamespaceMappingXMLStreamReader(
+          param.getXMLStreamReader( ),
+          Collections.singletonMap( param.getNamespace( ).getNamespaceURI( ), namespace ) );
+      final UnmarshallingContext ctx = this.getNewUnmarshalContext( reader );
+      return ctx.unmarshalElement( );
     } catch ( Exception e ) {
       LOG.warn( e, e );
       throw new WebServicesException( e.getMessage( ) );
@@ -62,6 +62,7 @@
 
 package com.eucalyptus.bootstrap;
 
+import groovy.sql.GroovyRowResult;
 import groovy.sql.Sql;
 import java.io.File;
 import java.io.IOException;
@@ -79,12 +80,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import javax.management.InstanceAlreadyExistsException;
@@ -100,7 +104,11 @@ import com.eucalyptus.component.ServiceUris;
 import com.eucalyptus.component.id.Eucalyptus;
 import com.eucalyptus.component.id.Database;
 import com.eucalyptus.empyrean.Empyrean;
+import com.eucalyptus.entities.Entities;
 import com.eucalyptus.entities.PersistenceContexts;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Hertz;
+import com.eucalyptus.event.Listeners;
 import com.eucalyptus.records.Logs;
 import com.eucalyptus.scripting.Groovyness;
 import com.eucalyptus.scripting.ScriptExecutionFailedException;
@@ -117,9 +125,11 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.base.Splitter;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.MapDifference;
@@ -151,6 +161,23 @@ public class Databases {
   private static final int DATABASE_WEIGHT_PRIMARY = 100;
   private static final int DATABASE_WEIGHT_SECONDARY = 1;
 
+  private static final String READ_POOL_SUFFIX = "_read";
+  private static final List<String> READ_REPLICAS = ImmutableList.copyOf(
+      Splitter.on( ',' ).omitEmptyStrings( ).trimResults( ).split( System.getProperty( "euca.db.read.replicas", "" ) ) );
+  private static final String READ_BALANCER = System.getProperty( "euca.db.read.balancer", "round-robin" );
+  private static final String READ_PRIMARY_LOCATION_SQL = "SELECT pg_current_xlog_location( )::text";
+  // lag is zero when the replica has replayed everything the primary has
+  // written, so an idle primary does not make a current replica look stale.
+  // A replica that is disconnected from the primary falls behind its
+  // current location and so reports lag
+  private static final String READ_STALENESS_SQL =
+      "SELECT CASE WHEN NOT pg_is_in_recovery( ) THEN 0 " +
+      "WHEN pg_last_xlog_replay_location( )::text = ? THEN 0 " +
+      "ELSE EXTRACT( EPOCH FROM now( ) - pg_last_xact_replay_timestamp( ) ) END";
+  private static final long READ_REPLICA_CHECK_EXPIRY = TimeUnit.SECONDS.toMillis( 5 );
+  private static final ConcurrentMap<String,Double> readReplicaLag = Maps.newConcurrentMap( );
+  private static final AtomicLong readReplicaLastChecked = new AtomicLong( );
+
   public static class DatabaseStateException extends IllegalStateException {
     private static final long serialVersionUID = 1L;
 
@@ -1038,7 +1065,133 @@ public class Databases {
   public static DatabaseBootstrapper getBootstrapper( ) {
     return singleton;
   }
-  
+
+  /**
+   * List the configured read replica hosts (euca.db.read.replicas).
+   *
+   * <p>Read only transactions are routed to a read pool for these hosts when
+   * present, all other transactions use the primary pool.</p>
+   */
+  public static List<String> listReadReplicas( ) {
+    return READ_REPLICAS;
+  }
+
+  public static boolean hasReadReplicas( ) {
+    return !READ_REPLICAS.isEmpty( );
+  }
+
+  public static String getReadBalancer( ) {
+    return READ_BALANCER;
+  }
+
+  public static String getReadPoolAlias( final String persistenceContext ) {
+    return persistenceContext + READ_POOL_SUFFIX;
+  }
+
+  /**
+   * Is the read pool for the given context within the staleness bound?
+   *
+   * <p>The balancer may use any replica so all replicas must be within the
+   * bound. Replication lag is checked once a second in the background, if
+   * the lag cannot be determined or was not checked recently the read pool
+   * is not used.</p>
+   *
+   * @param persistenceContext The persistence context
+   * @return True if read only transactions can use the read pool
+   * @see Entities#READ_REPLICA_MAX_STALENESS
+   */
+  public static boolean isReadPoolCurrent( final String persistenceContext ) {
+    if ( !hasReadReplicas( ) ) {
+      return false;
+    }
+    if ( System.currentTimeMillis( ) - readReplicaLastChecked.get( ) > READ_REPLICA_CHECK_EXPIRY ) {
+      LOG.debug( persistenceContext + ": Read replica lag not checked recently, using primary" );
+      return false;
+    }
+    for ( final String replica : READ_REPLICAS ) {
+      final Double lagSeconds = readReplicaLag.get( replica );
+      if ( lagSeconds == null || lagSeconds > Entities.READ_REPLICA_MAX_STALENESS ) {
+        LOG.debug( persistenceContext + ": Read replica " + replica + " lag " + lagSeconds + "s exceeds bound, using primary" );
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static class ReadReplicaLagCheckListener implements EventListener<Hertz>, Callable<Boolean> {
+    private static final AtomicBoolean ready = new AtomicBoolean( true );
+
+    public static void register( ) {
+      if ( hasReadReplicas( ) ) {
+        Listeners.register( Hertz.class, new ReadReplicaLagCheckListener( ) );
+      }
+    }
+
+    @Override
+    public void fireEvent( final Hertz event ) {
+      if ( Bootstrap.isOperational( ) && ready.compareAndSet( true, false ) ) {
+        try {
+          Threads.enqueue( Empyrean.class, Databases.class, this );
+        } catch ( final Exception ex ) {
+          ready.set( true );
+        }
+      }
+    }
+
+    @Override
+    public Boolean call( ) throws Exception {
+      try {
+        final long checked = System.currentTimeMillis( );
+        final String primaryLocation = primaryLocation( );
+        for ( final String replica : READ_REPLICAS ) {
+          readReplicaLag.put( replica, primaryLocation == null ? Double.MAX_VALUE : lag( replica, primaryLocation ) );
+        }
+        readReplicaLastChecked.set( checked );
+      } finally {
+        ready.set( true );
+      }
+      return true;
+    }
+
+    private static String primaryLocation( ) {
+      Sql sql = null;
+      try {
+        sql = Databases.getBootstrapper( ).getConnection( "eucalyptus_config" );
+        final GroovyRowResult result = sql.firstRow( READ_PRIMARY_LOCATION_SQL );
+        return result == null ? null : String.valueOf( result.getAt( 0 ) );
+      } catch ( final Exception e ) {
+        LOG.warn( "Primary database location check failed, using primary for reads: " + e.getMessage( ) );
+        Logs.extreme( ).warn( e, e );
+        return null;
+      } finally {
+        if ( sql != null ) {
+          sql.close( );
+        }
+      }
+    }
+
+    private static double lag( final String replica, final String primaryLocation ) {
+      try {
+        final String url = "jdbc:" + ServiceUris.remote( Database.class, InetAddress.getByName( replica ), "eucalyptus_config" );
+        try ( final Connection conn = DriverManager.getConnection( url, Databases.getUserName( ), Databases.getPassword( ) );
+              final PreparedStatement statement = conn.prepareStatement( READ_STALENESS_SQL ) ) {
+          statement.setString( 1, primaryLocation );
+          try ( final ResultSet result = statement.executeQuery( ) ) {
+            if ( result.next( ) ) {
+              final double lagSeconds = result.getDouble( 1 );
+              return result.wasNull( ) ? Double.MAX_VALUE : lagSeconds; // nothing replayed yet
+            }
+            return Double.MAX_VALUE;
+          }
+        }
+      } catch ( final Exception e ) {
+        LOG.warn( "Read replica " + replica + " check failed, using primary: " + e.getMessage( ) );
+        Logs.extreme( ).warn( e, e );
+        return Double.MAX_VALUE;
+      }
+    }
+  }
+
   public static void initialize( ) {
     singleton.init( );
   }
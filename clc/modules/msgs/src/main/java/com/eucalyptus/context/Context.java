@@ -94,7 +94,6 @@ import com.eucalyptus.http.MappingHttpRequest;
 import com.eucalyptus.records.EventRecord;
 import com.eucalyptus.records.EventType;
 import com.eucalyptus.util.CollectionUtils;
-import com.eucalyptus.ws.server.Statistics;
 import com.google.common.base.Optional;
 import com.google.common.collect.Maps;
 import edu.ucsb.eucalyptus.msgs.BaseCallerContext;
@@ -140,7 +139,6 @@ public class Context {
   
   protected Context( MappingHttpRequest httpRequest, Channel channel ) {
     UUID uuid = UUID.randomUUID( );
-    Statistics.startRequest( channel );
     this.correlationId = uuid.toString( );
     this.creationTime = System.nanoTime( );
     this.httpRequest = httpRequest;
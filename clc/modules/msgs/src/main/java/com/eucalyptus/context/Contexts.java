@@ -62,11 +62,15 @@
 
 package com.eucalyptus.context;
 
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelLocal;
 import org.jboss.netty.channel.Channels;
 import org.mule.RequestContext;
 import org.mule.api.MuleMessage;
@@ -76,7 +80,10 @@ import com.eucalyptus.http.MappingHttpRequest;
 import com.eucalyptus.records.EventRecord;
 import com.eucalyptus.records.EventType;
 import com.eucalyptus.records.Logs;
+import com.eucalyptus.ws.server.Statistics;
 import com.eucalyptus.ws.util.ReplyQueue;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
 
 import edu.ucsb.eucalyptus.msgs.BaseMessage;
 import edu.ucsb.eucalyptus.msgs.BaseMessageSupplier;
@@ -87,26 +94,83 @@ import static org.hamcrest.Matchers.notNullValue;
 
 public class Contexts {
   private static Logger                          LOG             = Logger.getLogger( Contexts.class );
-  private static int                             MAX             = 8192;
-  private static int                             CONCUR          = MAX / ( Runtime.getRuntime( ).availableProcessors( ) * 2 + 1 );
-  private static float                           THRESHOLD       = 1.0f;
-  private static ConcurrentMap<String, Context>  uuidContexts    = new ConcurrentHashMap<String, Context>( MAX, THRESHOLD, CONCUR );
-  private static ConcurrentMap<Channel, Context> channelContexts = new ConcurrentHashMap<Channel, Context>( MAX, THRESHOLD, CONCUR );
+  private static ConcurrentMap<String, Context>  uuidContexts    = new MapMaker( ).weakValues( ).makeMap( );
+  private static ConcurrentMap<String, Context>  wrappedContexts = Maps.newConcurrentMap( );
+  private static ChannelLocal<Context>           channelContexts = new ChannelLocal<Context>( );
+  private static ChannelLocal<Boolean>           monitoredChannels = new ChannelLocal<Boolean>( );
+  private static ConcurrentMap<String, Context>  detachedContexts = Maps.newConcurrentMap( );
+  private static final long                      LEAK_TIMEOUT    = TimeUnit.MINUTES.toNanos( 15 );
+  private static final long                      LEAK_WARNING_INTERVAL = TimeUnit.MINUTES.toMillis( 1 );
+  private static final AtomicLong                leakCount       = new AtomicLong( );
+  private static final AtomicLong                leaksSinceWarning = new AtomicLong( );
+  private static final AtomicLong                lastLeakWarning = new AtomicLong( );
+  private static final ChannelFutureListener     channelCloseListener = new ChannelFutureListener( ) {
+    @Override
+    public void operationComplete( final ChannelFuture future ) {
+      monitoredChannels.remove( future.getChannel( ) );
+      detach( channelContexts.remove( future.getChannel( ) ) );
+    }
+  };
   
   static boolean hasOutstandingRequests( ) {
-    return uuidContexts.keySet( ).size( ) > 0;
+    return !uuidContexts.isEmpty( );
   }
   
   public static Context create( MappingHttpRequest request, Channel channel ) {
     Context ctx = new Context( request, channel );
     request.setCorrelationId( ctx.getCorrelationId( ) );
     uuidContexts.put( ctx.getCorrelationId( ), ctx );
-    final Context previousContext = channelContexts.put( channel, ctx );
-    if ( previousContext != null && previousContext.getCorrelationId() != null ) {
-      uuidContexts.remove( previousContext.getCorrelationId() );
+    final Context previousContext = channelContexts.set( channel, ctx );
+    if ( monitoredChannels.setIfAbsent( channel, Boolean.TRUE ) == null ) {
+      channel.getCloseFuture( ).addListener( channelCloseListener );
     }
+    detach( previousContext );
     return ctx;
   }
+
+  /**
+   * Contexts for channel requests are cleared when a response is sent.
+   *
+   * A request may still be in progress when its channel closes or is reused,
+   * so the context remains available until cleared. Detached contexts that
+   * are not cleared within the timeout were leaked and are evicted.
+   */
+  private static void detach( final Context ctx ) {
+    if ( ctx != null && ctx.getCorrelationId( ) != null && uuidContexts.get( ctx.getCorrelationId( ) ) == ctx ) {
+      detachedContexts.put( ctx.getCorrelationId( ), ctx );
+    }
+    final long now = System.nanoTime( );
+    for ( final Context detached : detachedContexts.values( ) ) {
+      if ( now - detached.getCreationTime( ) > LEAK_TIMEOUT && detachedContexts.remove( detached.getCorrelationId( ), detached ) ) {
+        reportLeak( detached );
+        uuidContexts.remove( detached.getCorrelationId( ), detached );
+      }
+    }
+  }
+
+  /**
+   * A warning is logged at most once a minute, with the number of leaks
+   * since the last warning.
+   */
+  private static void reportLeak( final Context ctx ) {
+    leakCount.incrementAndGet( );
+    leaksSinceWarning.incrementAndGet( );
+    final long now = System.currentTimeMillis( );
+    final long lastWarning = lastLeakWarning.get( );
+    if ( now - lastWarning >= LEAK_WARNING_INTERVAL && lastLeakWarning.compareAndSet( lastWarning, now ) ) {
+      LOG.warn( "Context leaked for correlationId=" + ctx.getCorrelationId( ) + ", "
+          + leaksSinceWarning.getAndSet( 0 ) + " leaked since last warning, " + leakCount.get( ) + " total" );
+    } else {
+      LOG.debug( "Context leaked for correlationId=" + ctx.getCorrelationId( ) );
+    }
+  }
+
+  /**
+   * Number of channel request contexts leaked since startup.
+   */
+  public static long getLeakCount( ) {
+    return leakCount.get( );
+  }
   
   public static boolean exists( ) {
     try {
@@ -117,14 +181,14 @@ public class Contexts {
     }
   }
   public static boolean exists( Channel channel ) {
-    return channelContexts.containsKey( channel );
+    return channelContexts.get( channel ) != null;
   }
   
   public static Context lookup( Channel channel ) throws NoSuchContextException {
-    if ( !channelContexts.containsKey( channel ) ) {
+    final Context ctx = channelContexts.get( channel );
+    if ( ctx == null ) {
       throw new NoSuchContextException( "Found channel context " + channel + " but no corresponding context." );
     } else {
-      Context ctx = channelContexts.get( channel );
       ctx.setMuleEvent( RequestContext.getEvent( ) );
       return Context.maybeImpersonating( ctx );
     }
@@ -146,10 +210,10 @@ public class Contexts {
   
   public static Context lookup( String correlationId ) throws NoSuchContextException {
     checkParam( "BUG: correlationId is null.", correlationId, notNullValue() );
-    if ( !uuidContexts.containsKey( correlationId ) ) {
+    final Context ctx = uuidContexts.get( correlationId );
+    if ( ctx == null ) {
       throw new NoSuchContextException( "Found correlation id " + correlationId + " but no corresponding context." );
     } else {
-      Context ctx = uuidContexts.get( correlationId );
       ctx.setMuleEvent( RequestContext.getEvent( ) );
       return Context.maybeImpersonating( ctx );
     }
@@ -192,9 +256,13 @@ public class Contexts {
   public static void clear( String corrId ) {
     checkParam( "BUG: correlationId is null.", corrId, notNullValue() );
     Context ctx = uuidContexts.remove( corrId );
+    wrappedContexts.remove( corrId );
+    detachedContexts.remove( corrId );
     Channel channel = null;
     if ( ctx != null && ( channel = ctx.getChannel( ) ) != null ) {
-      channelContexts.remove( channel );
+      if ( channelContexts.get( channel ) == ctx ) {
+        channelContexts.remove( channel );
+      }
     } else {
       LOG.trace( "Context.clear() failed for correlationId=" + corrId );
       Logs.extreme( ).trace( "Context.clear() failed for correlationId=" + corrId, new RuntimeException( "Missing reference to channel for the request." ) );
@@ -215,6 +283,7 @@ public class Contexts {
       return null;
     } else {
       Context ctx = new Context( dest, msg );
+      wrappedContexts.put( ctx.getCorrelationId( ), ctx );
       uuidContexts.put( ctx.getCorrelationId( ), ctx );
       return Context.maybeImpersonating( ctx );
     }
@@ -247,6 +316,7 @@ public class Contexts {
       Context ctx = lookup( corrId );
       EventRecord.here( ServiceContext.class, EventType.MSG_REPLY, responseMessage.getCorrelationId( ), responseMessage.getClass( ).getSimpleName( ),
                         String.format( "%.3f ms", ( System.nanoTime( ) - ctx.getCreationTime( ) ) / 1000000.0 ) ).trace( );
+      Statistics.recordOperation( responseMessage.getClass( ).getSimpleName( ), ctx.getCreationTime( ) );
       Channel channel = ctx.getChannel( );
       Channels.write( channel, message );
       clear( ctx );
@@ -62,12 +62,17 @@
 
 package com.eucalyptus.entities;
 
+import java.lang.annotation.Annotation;
 import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
@@ -78,13 +83,17 @@ import javax.persistence.EntityTransaction;
 import javax.persistence.LockModeType;
 import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Query;
 import javax.transaction.Synchronization;
 import org.apache.log4j.Logger;
 import org.hibernate.Criteria;
+import org.hibernate.FlushMode;
 import org.hibernate.Hibernate;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
 import org.hibernate.collection.internal.AbstractPersistentCollection;
 import org.hibernate.criterion.Criterion;
@@ -106,12 +115,17 @@ import com.eucalyptus.util.Classes;
 import com.eucalyptus.util.Exceptions;
 import com.eucalyptus.util.HasNaturalId;
 import com.eucalyptus.util.LogUtil;
+import com.eucalyptus.util.Pair;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -125,6 +139,9 @@ public class Entities {
   @ConfigurableField( description = "Maximum number of times a transaction may be retried before giving up.",
                       initial = "5" )
   public static Integer                                          CONCURRENT_UPDATE_RETRIES = 10;
+  @ConfigurableField( description = "Maximum replication lag in seconds for read only transactions to use the read replicas.",
+                      initial = "5" )
+  public static Integer                                          READ_REPLICA_MAX_STALENESS = 5;
   private static final boolean                                   CLEANUP_TX_SESSION        = Boolean.valueOf( System.getProperty( "com.eucalyptus.entities.cleanupTxSession", "true" ) );
   private static Cache<String, String>                           txLog                     = CacheBuilder.newBuilder().weakKeys().softValues().build(); // No softKeys available for CacheBuilder
   private static Logger                                          LOG                       = Logger.getLogger( Entities.class );
@@ -199,8 +216,13 @@ public class Entities {
   }
   
   private static CascadingTx createTransaction( final Object obj ) throws RecoverablePersistenceException, RuntimeException {
+    return createTransaction( obj, false );
+  }
+
+  private static CascadingTx createTransaction( final Object obj,
+                                                final boolean readOnly ) throws RecoverablePersistenceException, RuntimeException {
     final String ctx = lookatPersistenceContext( obj );
-    final CascadingTx ret = new CascadingTx( ctx );
+    final CascadingTx ret = new CascadingTx( ctx, readOnly );
     try {
       ret.begin( );
       if ( txRootThreadLocal.get( ) == null ) {
@@ -242,6 +264,32 @@ public class Entities {
     return new TransactionResource( get( obj ) );
   }
 
+  /**
+   * Create an AutoCloseable read only transaction for the given object.
+   *
+   * <pre>
+   * try ( TransactionResource transaction = readOnlyTransactionFor( ... ) ) {
+   *   ...
+   * }
+   * </pre>
+   *
+   * <p>A new read only transaction uses the read pool for the context when
+   * replicas are configured and within the staleness bound. Entities are
+   * loaded read only and are never flushed, commit fails if the transaction
+   * has pending changes.</p>
+   *
+   * <p>If there is an active transaction for the context it is joined.</p>
+   *
+   * @param obj The object used to determine the transaction context
+   * @return the TransactionResource
+   * @see Databases#isReadPoolCurrent(String)
+   */
+  public static TransactionResource readOnlyTransactionFor( final Object obj ) {
+    return new TransactionResource( hasTransaction( obj ) ?
+        getTransaction( obj ).join( ) :
+        createTransaction( obj, true ) );
+  }
+
   /**
    * Create an AutoCloseable transaction for the given object.
    *
@@ -717,6 +765,115 @@ public class Entities {
     }
   }
 
+  /**
+   * Insert all the given new objects using JDBC batching.
+   *
+   * <p>Objects are written through a stateless session that shares the
+   * connection (and so the transaction) of the current transaction for the
+   * objects type. Inserted objects are not associated with the current
+   * persistence context and there is no cascading, so this is only suitable
+   * for simple, high volume, write-only entities.</p>
+   *
+   * @param newObjects The objects to insert, all of the same persistence context
+   * @return The number of objects inserted
+   * @throws ConstraintViolationException
+   */
+  public static <T> int persistAll( final Collection<T> newObjects ) throws ConstraintViolationException {
+    return writeAll( newObjects, false );
+  }
+
+  /**
+   * Insert or update all the given objects using JDBC batching.
+   *
+   * <p>Objects without an identifier are inserted, objects with an identifier
+   * are updated (with optimistic version checking.) Objects to be updated must
+   * not be modifiable entities in the current persistence context, load them
+   * read-only or evict them first.</p>
+   *
+   * @param objects The objects to insert or update, all of the same persistence context
+   * @return The number of objects written
+   * @throws ConstraintViolationException
+   * @see #persistAll(Collection)
+   */
+  public static <T> int upsertAll( final Collection<T> objects ) throws ConstraintViolationException {
+    return writeAll( objects, true );
+  }
+
+  private static <T> int writeAll( final Collection<T> objects,
+                                   final boolean update ) throws ConstraintViolationException {
+    if ( objects.isEmpty( ) ) {
+      return 0;
+    }
+    final CascadingTx tx = getTransaction( Iterables.get( objects, 0 ) );
+    if ( tx.isReadOnly( ) ) {
+      throw new IllegalStateException( "Write attempted in read only transaction " + tx.getRecord( ).getPersistenceContext( ) );
+    }
+    final Session session = tx.getTxState( ).getSession( );
+    session.flush( ); // pending changes must be written before batched ones
+    final StatelessSession statelessSession =
+        session.getSessionFactory( ).openStatelessSession( ( ( SessionImplementor ) session ).connection( ) );
+    try {
+      int count = 0;
+      for ( final T object : objects ) {
+        if ( update && resolvePrimaryKey( object ) != null ) {
+          invokeCallbacks( PreUpdate.class, object );
+          statelessSession.update( object );
+        } else {
+          invokeCallbacks( PrePersist.class, object );
+          statelessSession.insert( object );
+        }
+        count++;
+      }
+      ( ( SessionImplementor ) statelessSession ).getTransactionCoordinator( ).getJdbcCoordinator( ).executeBatch( );
+      return count;
+    } catch ( final RuntimeException ex ) {
+      PersistenceExceptions.throwFiltered( ex );
+      throw ex;
+    } finally {
+      statelessSession.close( );
+    }
+  }
+
+  private static final LoadingCache<Pair<Class<?>, Class<? extends Annotation>>, List<Method>> lifecycleCallbacks =
+      CacheBuilder.newBuilder( ).build( new CacheLoader<Pair<Class<?>, Class<? extends Annotation>>, List<Method>>( ) {
+        @Override
+        public List<Method> load( final Pair<Class<?>, Class<? extends Annotation>> key ) {
+          final List<Method> methods = Lists.newArrayList( );
+          final Set<String> names = Sets.newHashSet( );
+          for ( final Class<?> type : Classes.classAncestors( key.getLeft( ) ) ) {
+            for ( final Method method : type.getDeclaredMethods( ) ) {
+              if ( method.isAnnotationPresent( key.getRight( ) ) &&
+                  method.getParameterTypes( ).length == 0 &&
+                  names.add( method.getName( ) ) ) { // overridden callbacks are invoked once
+                method.setAccessible( true );
+                methods.add( method );
+              }
+            }
+          }
+          return ImmutableList.copyOf( Lists.reverse( methods ) );
+        }
+      } );
+
+  /**
+   * Invoke the entity lifecycle callback methods for the given annotation.
+   *
+   * <p>Stateless sessions do not run lifecycle callbacks. Callbacks declared
+   * on the entity class hierarchy are invoked, superclass first, entity
+   * listener classes are not supported.</p>
+   */
+  private static void invokeCallbacks( final Class<? extends Annotation> callback,
+                                       final Object object ) {
+    for ( final Method method : lifecycleCallbacks.getUnchecked( Pair.<Class<?>, Class<? extends Annotation>>pair( object.getClass( ), callback ) ) ) {
+      try {
+        method.invoke( object );
+      } catch ( final InvocationTargetException e ) {
+        throw Exceptions.toUndeclared( e.getCause( ) );
+      } catch ( final IllegalAccessException e ) {
+        throw Exceptions.toUndeclared( e );
+      }
+    }
+  }
+
   public <T> T lookupAndClose( final T example ) throws NoSuchElementException {
     EntityTransaction db;
     T ret = null;
@@ -924,6 +1081,7 @@ public class Entities {
    */
   private static class CascadingTx implements EntityTransaction {
     private final TxRecord record;
+    private final boolean  readOnly;
     private TxState        txState;
     
     /**
@@ -934,10 +1092,11 @@ public class Entities {
      * @throws RecoverablePersistenceException
      */
     @SuppressWarnings( "unchecked" )
-    CascadingTx( final String ctx ) throws RecoverablePersistenceException {
+    CascadingTx( final String ctx, final boolean readOnly ) throws RecoverablePersistenceException {
       final StackTraceElement ste = Threads.currentStackFrame( 4 );
       final String uuid = UUID.randomUUID( ).toString( );
       this.record = new TxRecord( ctx, uuid, ste );
+      this.readOnly = readOnly;
       try {
         this.txState = new TxState( ctx );
       } catch ( final RuntimeException ex ) {
@@ -946,6 +1105,10 @@ public class Entities {
         throw PersistenceExceptions.throwFiltered( ex );
       }
     }
+
+    boolean isReadOnly( ) {
+      return this.readOnly;
+    }
     
     /**
      * @delegate Do not change semantics here.
@@ -1070,13 +1233,23 @@ public class Entities {
       
       public TxState( final String ctx ) {
         try {
-          final EntityManagerFactory anemf = PersistenceContexts.getEntityManagerFactory( ctx );
+          final EntityManagerFactory readOnlyEmf = readOnly && Databases.isReadPoolCurrent( ctx ) ?
+              PersistenceContexts.getReadOnlyEntityManagerFactory( ctx ) :
+              null;
+          final EntityManagerFactory anemf = readOnlyEmf != null ?
+              readOnlyEmf :
+              PersistenceContexts.getEntityManagerFactory( ctx );
           checkParam( anemf, notNullValue() );
           this.em = anemf.createEntityManager( );
           checkParam( this.em, notNullValue() );
           this.transaction = this.em.getTransaction( );
           checkParam( this.transaction, notNullValue() );
           this.sessionRef = new WeakReference<Session>( ( Session ) this.em.getDelegate( ) );
+          if ( readOnly ) {
+            final Session session = this.sessionRef.get( );
+            session.setDefaultReadOnly( true );
+            session.setFlushMode( FlushMode.MANUAL );
+          }
         } catch ( final RuntimeException ex ) {
           this.doCleanup( );
           throw ex;
@@ -1141,6 +1314,9 @@ public class Entities {
       @Override
       public void commit( ) {
         try {
+          if ( readOnly && getSession( ) != null && getSession( ).isDirty( ) ) {
+            throw new IllegalStateException( "Changes not permitted in read only transaction for " + record.getPersistenceContext( ) );
+          }
           this.transaction.commit( );
         } catch ( final RuntimeException ex ) {
           LOG.trace( ex, ex );
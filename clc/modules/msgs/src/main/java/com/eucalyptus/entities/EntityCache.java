@@ -19,9 +19,17 @@
  ************************************************************************/
 package com.eucalyptus.entities;
 
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.hibernate.criterion.Example;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
@@ -31,16 +39,29 @@ import com.google.common.base.Supplier;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
+ * Cache of transformed entities matching an example.
  *
+ * <p>The cache is kept current using committed change notifications, so
+ * refreshing is proportional to the number of changed entities. A full
+ * id/version scan is performed initially and periodically thereafter to pick
+ * up changes that are not notified.</p>
+ *
+ * @see EntityChangeListeners
  */
 public class EntityCache<E extends AbstractPersistent, TE> implements Supplier<Iterable<TE>> {
 
   private static final int batchSize = 500;
+  private static final long defaultFullRefreshInterval = TimeUnit.MINUTES.toMillis( 5 );
   private final E example;
   private final Function<? super E,TE> transformFunction;
-  private final ConcurrentMap<Pair<String,Integer>,TE> cache = Maps.newConcurrentMap( );
+  private final long fullRefreshInterval;
+  private final ConcurrentMap<String,Pair<Integer,TE>> cache = Maps.newConcurrentMap( );
+  private final Set<String> changedIds = Collections.newSetFromMap( new ConcurrentHashMap<String,Boolean>( ) );
+  private final AtomicLong contentVersion = new AtomicLong( );
+  private volatile long lastFullRefresh = 0;
 
   /**
    * Create an entity cache for the given example.
@@ -50,12 +71,32 @@ public class EntityCache<E extends AbstractPersistent, TE> implements Supplier<I
    */
   public EntityCache( final E example,
                       final Function<? super E,TE> transformFunction ) {
+    this( example, transformFunction, defaultFullRefreshInterval );
+  }
+
+  /**
+   * Create an entity cache for the given example.
+   *
+   * @param example The example object
+   * @param transformFunction Function to transform to immutable cache format
+   * @param fullRefreshInterval Interval in milliseconds between full refreshes
+   */
+  public EntityCache( final E example,
+                      final Function<? super E,TE> transformFunction,
+                      final long fullRefreshInterval ) {
     this.example = example;
     this.transformFunction = transformFunction;
+    this.fullRefreshInterval = fullRefreshInterval;
+    EntityChangeListeners.register( example.getClass( ), new EntityChangeListeners.EntityChangeListener( ) {
+      @Override
+      public void changed( final Object entity, final Serializable id ) {
+        changedIds.add( Objects.toString( id ) );
+      }
+    } );
   }
 
   @SuppressWarnings( "unchecked" )
-  private List<Pair<String,Integer>> loadVersionMap( ) {
+  private Map<String,Integer> loadVersionMap( ) {
     try ( final TransactionResource db = Entities.transactionFor( example ) ){
       List<Object[]> idVersionList = (List<Object[]>) Entities.createCriteria( example.getClass( ) )
           .add( Example.create( example ) )
@@ -64,47 +105,89 @@ public class EntityCache<E extends AbstractPersistent, TE> implements Supplier<I
           .setFetchSize( 1000 )
           .setProjection( Projections.projectionList().add( Projections.id( ) ).add( Projections.property( "version" ) ) )
           .list( );
-      return Lists.newArrayList( Iterables.transform( idVersionList, ObjectArrayToStringIntPair.INSTANCE ) );
+      final Map<String,Integer> versionMap = Maps.newHashMapWithExpectedSize( idVersionList.size( ) );
+      for ( final Object[] idVersion : idVersionList ) {
+        versionMap.put( String.valueOf( idVersion[ 0 ] ), ( (Number) idVersion[ 1 ] ).intValue( ) );
+      }
+      return versionMap;
     }
   }
 
-  @SuppressWarnings( { "unchecked", "ConstantConditions" } )
-  private void refresh( ) {
-    final List<Pair<String,Integer>> currentKeys = loadVersionMap( );
-    cache.keySet( ).retainAll( currentKeys );
-    currentKeys.removeAll( cache.keySet( ) );
-    for ( List<Pair<String,Integer>> keyBatch : Iterables.partition( currentKeys, batchSize ) ) {
+  @SuppressWarnings( "unchecked" )
+  private void load( final Collection<String> ids ) {
+    for ( List<String> idBatch : Iterables.partition( ids, batchSize ) ) {
+      final Set<String> missingIds = Sets.newHashSet( idBatch );
+      boolean changed = false;
       try ( final TransactionResource db = Entities.transactionFor( example ) ) {
         List<E> entities = (List<E>) Entities.createCriteria( example.getClass( ) )
             .add( Example.create( example ) )
             .setReadOnly( true )
             .setCacheable( false )
             .setFetchSize( batchSize )
-            .add( Restrictions.in( "id", Lists.newArrayList( Iterables.transform( keyBatch, Pair.<String,Integer>left( ) ) ) ) )
+            .add( Restrictions.in( "id", idBatch ) )
             .list( );
         for ( final E entity : entities ) {
-          cache.put( Pair.pair( getId( entity ), entity.getVersion( ) ), transformFunction.apply( entity ) );
+          final String id = getId( entity );
+          cache.put( id, Pair.pair( entity.getVersion( ), transformFunction.apply( entity ) ) );
+          missingIds.remove( id );
+          changed = true;
         }
       }
+      changed |= cache.keySet( ).removeAll( missingIds ); // deleted or no longer matching
+      if ( changed ) {
+        contentVersion.incrementAndGet( );
+      }
     }
   }
 
+  private void fullRefresh( ) {
+    final Map<String,Integer> currentVersions = loadVersionMap( );
+    if ( cache.keySet( ).retainAll( currentVersions.keySet( ) ) ) {
+      contentVersion.incrementAndGet( );
+    }
+    final List<String> staleIds = Lists.newArrayList( );
+    for ( final Map.Entry<String,Integer> entry : currentVersions.entrySet( ) ) {
+      final Pair<Integer,TE> cached = cache.get( entry.getKey( ) );
+      if ( cached == null || !cached.getLeft( ).equals( entry.getValue( ) ) ) {
+        staleIds.add( entry.getKey( ) );
+      }
+    }
+    load( staleIds );
+  }
+
+  private void refresh( ) {
+    // drain before loading so changes committed during the load are not lost
+    final List<String> ids = Lists.newArrayList( changedIds );
+    changedIds.removeAll( ids );
+    final long now = System.currentTimeMillis( );
+    if ( ( now - lastFullRefresh ) > fullRefreshInterval ) {
+      fullRefresh( );
+      lastFullRefresh = now;
+    } else if ( !ids.isEmpty( ) ) {
+      load( ids );
+    }
+  }
+
+  /**
+   * Refresh the cache and get the version of the cached content.
+   *
+   * <p>The version changes whenever the cached content changes, so values
+   * derived from the cache content can be reused while it is unchanged.</p>
+   *
+   * @return The content version
+   */
+  public long refreshVersion( ) {
+    refresh( );
+    return contentVersion.get( );
+  }
+
   @Override
   public Iterable<TE> get( ) {
     refresh( );
-    return Lists.newArrayList( cache.values( ) );
+    return Lists.newArrayList( Iterables.transform( cache.values( ), Pair.<Integer,TE>right( ) ) );
   }
 
   private String getId( final E entity ) {
     return Objects.toString( Entities.resolvePrimaryKey( entity ) );
   }
-
-  private enum ObjectArrayToStringIntPair implements Function<Object[],Pair<String,Integer>> {
-    INSTANCE;
-
-    @Override
-    public Pair<String, Integer> apply( final Object[] objects ) {
-      return Pair.pair( String.valueOf( objects[ 0 ] ), ( (Number) objects[ 1 ] ).intValue() );
-    }
-  }
 }
@@ -0,0 +1,106 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.entities;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.log4j.Logger;
+import org.hibernate.ejb.EntityManagerFactoryImpl;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import com.eucalyptus.util.Pair;
+
+/**
+ * Notification of committed entity changes.
+ *
+ * <p>Listeners are notified after a transaction that inserted, updated or
+ * deleted an entity of the registered type has committed. Changes made
+ * outside of a stateful session (bulk queries, stateless sessions, other
+ * hosts) are not notified.</p>
+ */
+public class EntityChangeListeners {
+
+  private static final Logger LOG = Logger.getLogger( EntityChangeListeners.class );
+  private static final List<Pair<Class<?>,EntityChangeListener>> listeners = new CopyOnWriteArrayList<>( );
+
+  public interface EntityChangeListener {
+    /**
+     * Called after commit of a change to an entity.
+     *
+     * @param entity The changed entity (not usable for lazy loading)
+     * @param id The identifier for the entity
+     */
+    void changed( Object entity, Serializable id );
+  }
+
+  /**
+   * Register a listener for changes to entities of the given type or its subtypes.
+   */
+  public static void register( final Class<?> entityClass,
+                               final EntityChangeListener listener ) {
+    listeners.add( Pair.<Class<?>,EntityChangeListener>pair( entityClass, listener ) );
+  }
+
+  static void registerHibernateListeners( final EntityManagerFactoryImpl entityManagerFactory ) {
+    final EventListenerRegistry registry = ( ( SessionFactoryImplementor ) entityManagerFactory.getSessionFactory( ) )
+        .getServiceRegistry( )
+        .getService( EventListenerRegistry.class );
+    registry.appendListeners( EventType.POST_COMMIT_INSERT, HibernateChangeListener.INSTANCE );
+    registry.appendListeners( EventType.POST_COMMIT_UPDATE, HibernateChangeListener.INSTANCE );
+    registry.appendListeners( EventType.POST_COMMIT_DELETE, HibernateChangeListener.INSTANCE );
+  }
+
+  private static void fireChanged( final Object entity, final Serializable id ) {
+    for ( final Pair<Class<?>,EntityChangeListener> listener : listeners ) {
+      if ( listener.getLeft( ).isInstance( entity ) ) try {
+        listener.getRight( ).changed( entity, id );
+      } catch ( final Exception e ) {
+        LOG.error( "Error notifying entity change listener for " + listener.getLeft( ).getSimpleName( ), e );
+      }
+    }
+  }
+
+  private enum HibernateChangeListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+    INSTANCE;
+
+    @Override
+    public void onPostInsert( final PostInsertEvent event ) {
+      fireChanged( event.getEntity( ), event.getId( ) );
+    }
+
+    @Override
+    public void onPostUpdate( final PostUpdateEvent event ) {
+      fireChanged( event.getEntity( ), event.getId( ) );
+    }
+
+    @Override
+    public void onPostDelete( final PostDeleteEvent event ) {
+      fireChanged( event.getEntity( ), event.getId( ) );
+    }
+  }
+}
@@ -70,6 +70,7 @@ import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicStampedReference;
+import javax.annotation.Nullable;
 import javax.persistence.Embeddable;
 import javax.persistence.Entity;
 import javax.persistence.MappedSuperclass;
@@ -105,6 +106,7 @@ public class PersistenceContexts {
   private static final ArrayListMultimap<String, Class> entities         = ArrayListMultimap.create( );
   private static final List<Class>                      sharedEntities   = Lists.newArrayList( );
   private static Map<String, EntityManagerFactoryImpl>  emf              = new ConcurrentSkipListMap<String, EntityManagerFactoryImpl>( );
+  private static Map<String, EntityManagerFactoryImpl>  readOnlyEmf      = new ConcurrentSkipListMap<String, EntityManagerFactoryImpl>( );
   private static Multimap<String, Exception>            illegalAccesses  = ArrayListMultimap.create( );
   
   @Provides( Empyrean.class )
@@ -238,6 +240,7 @@ public class PersistenceContexts {
       try {
         LOG.trace( "-> Setting up persistence context for: " + persistenceContext );
         EntityManagerFactoryImpl entityManagerFactory = ( EntityManagerFactoryImpl ) config.buildEntityManagerFactory( );
+        EntityChangeListeners.registerHibernateListeners( entityManagerFactory );
         LOG.trace( LogUtil.subheader( LogUtil.dumpObject( config ) ) );
         emf.put( persistenceContext, entityManagerFactory );
         LOG.info( "-> Setup done for persistence context: " + persistenceContext );
@@ -248,6 +251,25 @@ public class PersistenceContexts {
     return emf.get( persistenceContext );
   }
   
+  /**
+   * Register the read only persistence context for the given context.
+   *
+   * <p>The configuration should use the read pool for the context and must
+   * not use the shared second level cache.</p>
+   */
+  public static EntityManagerFactoryImpl registerReadOnlyPersistenceContext( final String persistenceContext, final Ejb3Configuration config ) {
+    if ( !readOnlyEmf.containsKey( persistenceContext ) ) {
+      try {
+        LOG.trace( "-> Setting up read only persistence context for: " + persistenceContext );
+        readOnlyEmf.put( persistenceContext, ( EntityManagerFactoryImpl ) config.buildEntityManagerFactory( ) );
+        LOG.info( "-> Setup done for read only persistence context: " + persistenceContext );
+      } catch ( Exception ex ) {
+        LOG.error( "-> Error in read only persistence context setup: " + persistenceContext, ex );
+      }
+    }
+    return readOnlyEmf.get( persistenceContext );
+  }
+
   public static void flush( String ctx ) {
     emf.get( ctx ).getCache( ).evictAll( );
   }
@@ -300,7 +322,24 @@ public class PersistenceContexts {
     throw Exceptions.error( "Failed to lookup persistence context after " + MAX_EMF_RETRIES + " tries.\n" );
   }
 
+  /**
+   * Get the read only entity manager factory for the context, if any.
+   *
+   * @return The factory or null if there is no read pool for the context
+   */
+  @Nullable
+  public static EntityManagerFactoryImpl getReadOnlyEntityManagerFactory( final String persistenceContext ) {
+    return readOnlyEmf.get( persistenceContext );
+  }
+
   public static void shutdown( ) {
+    for ( String ctx : readOnlyEmf.keySet( ) ) {
+      EntityManagerFactoryImpl em = readOnlyEmf.remove( ctx );
+      if ( em.isOpen( ) ) {
+        LOG.info( "Closing read only persistence context: " + ctx );
+        em.close( );
+      }
+    }
     for ( String ctx : emf.keySet( ) ) {
       EntityManagerFactoryImpl em = emf.remove( ctx );
       if ( em.isOpen( ) ) {
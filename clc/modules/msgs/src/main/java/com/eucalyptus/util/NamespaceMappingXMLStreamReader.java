@@ -0,0 +1,87 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.util;
+
+import java.util.Map;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import com.google.common.base.Objects;
+
+/**
+ * Delegating XMLStreamReader that maps namespaces.
+ *
+ * <p>Mapping applies to element, attribute and declared namespaces. Note that
+ * this class does not currently perform mapping for the NamespaceContext.</p>
+ *
+ * @see NamespaceMappingXMLStreamWriter
+ */
+public class NamespaceMappingXMLStreamReader extends StreamReaderDelegate {
+
+  private final Map<String,String> namespaceMappings;
+
+  public NamespaceMappingXMLStreamReader( final XMLStreamReader delegate,
+                                          final Map<String,String> namespaceMappings ) {
+    super( delegate );
+    this.namespaceMappings = namespaceMappings;
+  }
+
+  private String mapNs( final String namespaceUri ) {
+    return namespaceUri == null ?
+        null :
+        Objects.firstNonNull( namespaceMappings.get( namespaceUri ), namespaceUri );
+  }
+
+  private QName mapName( final QName name ) {
+    return name == null ?
+        null :
+        new QName( mapNs( name.getNamespaceURI( ) ), name.getLocalPart( ), name.getPrefix( ) );
+  }
+
+  @Override
+  public String getNamespaceURI( final String prefix ) {
+    return mapNs( super.getNamespaceURI( prefix ) );
+  }
+
+  @Override
+  public String getNamespaceURI( ) {
+    return mapNs( super.getNamespaceURI( ) );
+  }
+
+  @Override
+  public String getNamespaceURI( final int index ) {
+    return mapNs( super.getNamespaceURI( index ) );
+  }
+
+  @Override
+  public String getAttributeNamespace( final int index ) {
+    return mapNs( super.getAttributeNamespace( index ) );
+  }
+
+  @Override
+  public QName getAttributeName( final int index ) {
+    return mapName( super.getAttributeName( index ) );
+  }
+
+  @Override
+  public QName getName( ) {
+    return mapName( super.getName( ) );
+  }
+}
@@ -63,14 +63,13 @@
 package com.eucalyptus.util.async;
 
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import org.apache.log4j.Logger;
-import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpMethod;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpVersion;
@@ -84,7 +83,6 @@ import com.eucalyptus.records.EventType;
 import com.eucalyptus.records.Logs;
 import com.eucalyptus.util.Exceptions;
 import com.eucalyptus.ws.EucalyptusRemoteFault;
-import com.eucalyptus.ws.WebServices;
 import edu.ucsb.eucalyptus.msgs.BaseMessage;
 
 /**
@@ -96,10 +94,14 @@ public class AsyncRequestHandler<Q extends BaseMessage, R extends BaseMessage> i
   private static Logger                LOG           = Logger.getLogger( AsyncRequestHandler.class );
   private final AsyncRequest<Q, R> parent;
 
-  private ClientBootstrap              clientBootstrap;
-  private ChannelFuture                connectFuture;
+  private ChannelPool                  channelPool;
+  private volatile ServiceConfiguration config;
+  private volatile ChannelFuture       connectFuture;
+  private volatile Channel             retiredChannel;
   
   private final AtomicBoolean          writeComplete = new AtomicBoolean( false );
+  private final AtomicBoolean          retried       = new AtomicBoolean( false );
+  private final AtomicInteger          attempts      = new AtomicInteger( );
   private final CheckedListenableFuture<R>   response;
   private transient AtomicReference<Q> request       = new AtomicReference<Q>( null );
   
@@ -123,77 +125,121 @@ public class AsyncRequestHandler<Q extends BaseMessage, R extends BaseMessage> i
       final SocketAddress serviceSocketAddress = config.getSocketAddress( );
       final ChannelPipelineFactory factory = config.getComponentId( ).getClientPipeline( );
       try {
-        this.clientBootstrap = WebServices.clientBootstrap( new ChannelPipelineFactory( ) {
-          @Override
-          public ChannelPipeline getPipeline( ) throws Exception {
-            final ChannelPipeline pipeline = factory.getPipeline( );
-            pipeline.addLast( "request-handler", AsyncRequestHandler.this );
-            return pipeline;
-          }
-        } );
+        this.config = config;
+        this.channelPool = ChannelPool.forEndpoint( serviceSocketAddress, factory );
 //TODO:GRZE: better logging here        LOG.debug( request.getClass( ).getSimpleName( ) + ":" + request.getCorrelationId( ) + " connecting to " + serviceSocketAddress );
         Logs.extreme( ).debug( EventRecord.here( request.getClass( ), EventClass.SYSTEM_REQUEST, EventType.CHANNEL_OPENING, request.getClass( ).getSimpleName( ),
                           request.getCorrelationId( ), serviceSocketAddress.toString( ) ) );
-        this.connectFuture = this.clientBootstrap.connect( serviceSocketAddress );
-        final HttpRequest httpRequest = new MappingHttpRequest( HttpVersion.HTTP_1_1, HttpMethod.POST, config, this.request.get( ) );
-        
-        this.connectFuture.addListener( new ChannelFutureListener( ) {
-          @Override
-          public void operationComplete( final ChannelFuture future ) throws Exception {
-            try {
-              if ( future.isSuccess( ) ) {
-                Logs.extreme( ).debug( "Connected as: " + future.getChannel( ).getLocalAddress( ) );
-                
-                final InetAddress localAddr = ( ( InetSocketAddress ) future.getChannel( ).getLocalAddress( ) ).getAddress( );
-                if ( !factory.getClass( ).getSimpleName( ).startsWith( "GatherLog" ) ) {
-                  Topology.populateServices( config, AsyncRequestHandler.this.request.get( ) );
-                }
+        this.acquireChannel( true );
+        return true;
+      } catch ( final Exception t ) {
+        LOG.error( t, t );
+        this.teardown( t );
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Acquire a channel from the pool and write the request.
+   *
+   * @param reuseIdle False to write the request on a new channel
+   */
+  private void acquireChannel( final boolean reuseIdle ) {
+    final int attempt = this.attempts.incrementAndGet( );
+    final ServiceConfiguration config = this.config;
+    final SocketAddress serviceSocketAddress = config.getSocketAddress( );
+    final ChannelPipelineFactory factory = config.getComponentId( ).getClientPipeline( );
+    final Q request = this.request.get( );
+    this.channelPool.acquire( new ChannelFutureListener( ) {
+      @Override
+      public void operationComplete( final ChannelFuture future ) throws Exception {
+        AsyncRequestHandler.this.connectFuture = future;
+        try {
+          if ( future.isSuccess( ) && AsyncRequestHandler.this.response.isDone( ) ) {
+            AsyncRequestHandler.this.channelPool.release( future.getChannel( ), true );
+          } else if ( future.isSuccess( ) ) {
+            Logs.extreme( ).debug( "Connected as: " + future.getChannel( ).getLocalAddress( ) );
+            
+            future.getChannel( ).getPipeline( ).addLast( "request-handler", AsyncRequestHandler.this );
+            if ( !factory.getClass( ).getSimpleName( ).startsWith( "GatherLog" ) ) {
+              Topology.populateServices( config, request );
+            }
 
+            Logs.extreme( ).debug(
+              EventRecord.here(
+                request.getClass( ),
+                EventClass.SYSTEM_REQUEST,
+                EventType.CHANNEL_OPEN,
+                request.getClass( ).getSimpleName( ),
+                request.getCorrelationId( ),
+                serviceSocketAddress.toString( ),
+                "" + future.getChannel( ).getLocalAddress( ),
+                "" + future.getChannel( ).getRemoteAddress( ) ) );
+            final HttpRequest httpRequest = new MappingHttpRequest( HttpVersion.HTTP_1_1, HttpMethod.POST, config, request );
+            Logs.extreme( ).debug( httpRequest );
+            
+            future.getChannel( ).write( httpRequest ).addListener( new ChannelFutureListener( ) {
+              @Override
+              public void operationComplete( final ChannelFuture future ) throws Exception {
+                if ( attempt != AsyncRequestHandler.this.attempts.get( ) ) {
+                  return; // request retried on another channel
+                }
+                if ( !future.isSuccess( ) ) {
+                  if ( !AsyncRequestHandler.this.retryOnNewChannel( ) ) {
+                    AsyncRequestHandler.this.teardown( new RetryableConnectionException( "Write failed: " + future.getCause( ), 
+                                                                                         future.getCause( ), 
+                                                                                         request ) );
+                  }
+                  return;
+                }
+                AsyncRequestHandler.this.writeComplete.set( true );
+                
                 Logs.extreme( ).debug(
                   EventRecord.here(
                     request.getClass( ),
                     EventClass.SYSTEM_REQUEST,
-                    EventType.CHANNEL_OPEN,
+                    EventType.CHANNEL_WRITE,
                     request.getClass( ).getSimpleName( ),
                     request.getCorrelationId( ),
                     serviceSocketAddress.toString( ),
                     "" + future.getChannel( ).getLocalAddress( ),
                     "" + future.getChannel( ).getRemoteAddress( ) ) );
-                Logs.extreme( ).debug( httpRequest );
-                
-                future.getChannel( ).write( httpRequest ).addListener( new ChannelFutureListener( ) {
-                  @Override
-                  public void operationComplete( final ChannelFuture future ) throws Exception {
-                    AsyncRequestHandler.this.writeComplete.set( true );
-                    
-                    Logs.extreme( ).debug(
-                      EventRecord.here(
-                        request.getClass( ),
-                        EventClass.SYSTEM_REQUEST,
-                        EventType.CHANNEL_WRITE,
-                        request.getClass( ).getSimpleName( ),
-                        request.getCorrelationId( ),
-                        serviceSocketAddress.toString( ),
-                        "" + future.getChannel( ).getLocalAddress( ),
-                        "" + future.getChannel( ).getRemoteAddress( ) ) );
-                  }
-                } );
-              } else {
-                AsyncRequestHandler.this.teardown( future.getCause( ) );
               }
-            } catch ( final Exception ex ) {
-              LOG.error( ex, ex );
-              AsyncRequestHandler.this.teardown( ex );
-            }
+            } );
+          } else {
+            AsyncRequestHandler.this.teardown( future.getCause( ) );
           }
-        } );
-        return true;
-      } catch ( final Exception t ) {
-        LOG.error( t, t );
-        this.teardown( t );
-        return false;
+        } catch ( final Exception ex ) {
+          LOG.error( ex, ex );
+          AsyncRequestHandler.this.teardown( ex );
+        }
       }
+    }, reuseIdle );
+  }
+
+  /**
+   * Retry once on a new channel if the request could not be written to a
+   * channel reused from the pool, the connection may have been closed by the
+   * remote end while idle.
+   *
+   * @return True if the request is retried
+   */
+  private boolean retryOnNewChannel( ) {
+    final ChannelFuture future = this.connectFuture;
+    if ( future != null && ChannelPool.isReused( future ) && !this.writeComplete.get( ) &&
+        !this.response.isDone( ) && this.retried.compareAndSet( false, true ) ) {
+      final Channel channel = future.getChannel( );
+      Logs.extreme( ).debug( "Retrying request on new channel, write failed for reused channel " + channel );
+      this.retiredChannel = channel;
+      if ( channel.getPipeline( ).get( "request-handler" ) == this ) {
+        channel.getPipeline( ).remove( this );
+      }
+      channel.close( );
+      this.acquireChannel( false );
+      return true;
     }
+    return false;
   }
   
   private void teardown( Throwable t ) {
@@ -286,7 +332,7 @@ public class AsyncRequestHandler<Q extends BaseMessage, R extends BaseMessage> i
           } else {
             this.response.set( msg );
           }
-          e.getFuture( ).addListener( ChannelFutureListener.CLOSE );
+          this.releaseChannel( ctx, HttpHeaders.isKeepAlive( response ) );
         } catch ( final Exception e1 ) {
           LOG.error( e1, e1 );
           this.teardown( e1 );
@@ -308,7 +354,26 @@ public class AsyncRequestHandler<Q extends BaseMessage, R extends BaseMessage> i
     }
   }
   
+  /**
+   * Detach from the channel and return it to the pool, the channel is closed
+   * if it cannot be kept alive.
+   */
+  private void releaseChannel( final ChannelHandlerContext ctx, final boolean keepAlive ) {
+    final Channel channel = ctx.getChannel( );
+    if ( this.channelPool == null ) {
+      channel.close( );
+    } else {
+      if ( ctx.getPipeline( ).get( "request-handler" ) == this ) {
+        ctx.getPipeline( ).remove( this );
+      }
+      this.channelPool.release( channel, keepAlive );
+    }
+  }
+  
   private void checkFinished( final ChannelHandlerContext ctx, final ChannelStateEvent evt ) {
+    if ( ctx.getChannel( ) == this.retiredChannel ) {
+      return; // request retried on another channel
+    }
     if ( ( this.connectFuture != null ) && !this.connectFuture.isSuccess( )
          && ( this.connectFuture.getCause( ) instanceof IOException ) ) {
       final Throwable ioError = this.connectFuture.getCause( );
@@ -320,6 +385,9 @@ public class AsyncRequestHandler<Q extends BaseMessage, R extends BaseMessage> i
       }
     } else {
       if ( !this.writeComplete.get( ) ) {
+        if ( this.retryOnNewChannel( ) ) {
+          return;
+        }
         this.teardown( new RetryableConnectionException( "Channel was closed before the write operation could be completed", this.request.get( ) ) );
       } else if ( !this.response.isDone( ) ) {
         this.teardown( new ConnectionException( "Channel was closed before the response was received.", this.request.get( ) ) );
@@ -357,8 +425,4 @@ public class AsyncRequestHandler<Q extends BaseMessage, R extends BaseMessage> i
     return connectFuture;
   }
 
-  public ClientBootstrap getClientBootstrap() {
-    return clientBootstrap;
-  }
-
 }
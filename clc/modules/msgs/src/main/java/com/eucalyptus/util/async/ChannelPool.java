@@ -0,0 +1,328 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.util.async;
+
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.DefaultChannelFuture;
+import org.jboss.netty.channel.SucceededChannelFuture;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import com.eucalyptus.records.Logs;
+import com.eucalyptus.ws.StackConfiguration;
+import com.eucalyptus.ws.WebServices;
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+
+/**
+ * Pool of keep-alive client channels for a single service endpoint.
+ *
+ * <p>Channels are handed out one request at a time and returned to the pool
+ * when a response is received on a connection that can be kept alive. The
+ * number of open channels per endpoint is bounded, requests in excess of the
+ * bound wait for a channel to be released. The number of waiting requests
+ * and the time a request waits are also bounded (see
+ * {@link StackConfiguration#CLIENT_POOL_MAX_WAITING_PER_ENDPOINT} and
+ * {@link StackConfiguration#CLIENT_POOL_WAIT_TIMEOUT_MILLIS}).</p>
+ *
+ * <p>Idle channels are evicted by the idle handler of the client pipeline
+ * (see {@link StackConfiguration#CLIENT_INTERNAL_TIMEOUT_SECS}) and are
+ * checked when acquired. A channel can still be closed by the remote end
+ * while idle, so callers should retry a failed write on a reused channel
+ * (see {@link #isReused(ChannelFuture)}).</p>
+ */
+public class ChannelPool {
+  private static Logger                                 LOG   = Logger.getLogger( ChannelPool.class );
+  private static final ConcurrentMap<PoolKey, ChannelPool> pools = Maps.newConcurrentMap( );
+  private static final Timer                            timer = new HashedWheelTimer( 100, TimeUnit.MILLISECONDS );
+
+  private final SocketAddress                 address;
+  private final ClientBootstrap               clientBootstrap;
+  private final Deque<IdleChannel>            idleChannels = new ArrayDeque<IdleChannel>( );
+  private final Queue<Waiter>                 waiters      = new ArrayDeque<Waiter>( );
+  private int                                 openChannels = 0;
+  private final ChannelFutureListener         closeListener = new ChannelFutureListener( ) {
+    @Override
+    public void operationComplete( final ChannelFuture future ) throws Exception {
+      ChannelPool.this.closed( future.getChannel( ) );
+    }
+  };
+
+  private ChannelPool( final SocketAddress address,
+                       final ChannelPipelineFactory pipelineFactory ) {
+    this( address, WebServices.clientBootstrap( pipelineFactory ) );
+  }
+
+  ChannelPool( final SocketAddress address,
+               final ClientBootstrap clientBootstrap ) {
+    this.address = address;
+    this.clientBootstrap = clientBootstrap;
+  }
+
+  /**
+   * Get the pool for the given endpoint and client pipeline.
+   */
+  public static ChannelPool forEndpoint( final SocketAddress address,
+                                         final ChannelPipelineFactory pipelineFactory ) {
+    final PoolKey key = new PoolKey( address, pipelineFactory.getClass( ) );
+    ChannelPool pool = pools.get( key );
+    if ( pool == null ) {
+      final ChannelPool newPool = new ChannelPool( address, pipelineFactory );
+      pool = Objects.firstNonNull( pools.putIfAbsent( key, newPool ), newPool );
+    }
+    return pool;
+  }
+
+  /**
+   * Was the channel for the future reused from the pool.
+   *
+   * <p>A write failure on a reused channel can be caused by the connection
+   * being closed while idle, so the request can be retried on a new
+   * channel.</p>
+   */
+  public static boolean isReused( final ChannelFuture future ) {
+    return future instanceof ReusedChannelFuture;
+  }
+
+  /**
+   * Acquire a channel, the listener is notified with the (connect) future for
+   * the channel once one is available.
+   */
+  public void acquire( final ChannelFutureListener listener ) {
+    this.acquire( listener, true );
+  }
+
+  /**
+   * Acquire a channel, the listener is notified with the (connect) future for
+   * the channel once one is available.
+   *
+   * <p>The future is failed if too many requests are waiting for a channel or
+   * if a channel is not available within the wait timeout.</p>
+   *
+   * @param listener The listener to notify
+   * @param reuseIdle False to close idle channels rather than reuse them
+   */
+  public void acquire( final ChannelFutureListener listener, final boolean reuseIdle ) {
+    ChannelFuture future = null;
+    Waiter waiter = null;
+    boolean connect = false;
+    boolean rejected = false;
+    synchronized ( this ) {
+      IdleChannel idleChannel;
+      while ( future == null && ( idleChannel = this.idleChannels.pollFirst( ) ) != null ) {
+        if ( reuseIdle && idleChannel.isUsable( ) ) {
+          future = new ReusedChannelFuture( idleChannel.channel );
+        } else {
+          idleChannel.channel.close( );
+        }
+      }
+      if ( future == null ) {
+        if ( this.openChannels < StackConfiguration.CLIENT_POOL_MAX_CONNECTIONS_PER_ENDPOINT ) {
+          this.openChannels++;
+          connect = true;
+        } else if ( this.waiters.size( ) < StackConfiguration.CLIENT_POOL_MAX_WAITING_PER_ENDPOINT ) {
+          waiter = new Waiter( listener );
+          this.waiters.add( waiter );
+        } else {
+          rejected = true;
+        }
+      }
+    }
+    if ( waiter != null ) {
+      waiter.timeout = timer.newTimeout( waiter, StackConfiguration.CLIENT_POOL_WAIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS );
+    }
+    if ( connect ) {
+      future = this.connect( );
+    }
+    if ( rejected ) {
+      future = failedFuture( new ChannelException( "Too many requests waiting for a connection to " + this.address ) );
+    }
+    if ( future != null ) {
+      future.addListener( listener );
+    }
+  }
+
+  /**
+   * Release a channel after use.
+   *
+   * @param channel The channel to release
+   * @param reusable True if the connection can be kept alive for reuse
+   */
+  public void release( final Channel channel, final boolean reusable ) {
+    if ( !reusable || !StackConfiguration.CLIENT_KEEP_ALIVE || !channel.isConnected( ) ) {
+      channel.close( );
+    } else {
+      final Waiter waiter;
+      synchronized ( this ) {
+        waiter = this.waiters.poll( );
+        if ( waiter == null ) {
+          this.idleChannels.addFirst( new IdleChannel( channel ) );
+        }
+      }
+      if ( waiter != null ) {
+        waiter.acquired( new ReusedChannelFuture( channel ) );
+      }
+    }
+  }
+
+  private ChannelFuture connect( ) {
+    Logs.extreme( ).debug( "Opening pooled channel to " + this.address );
+    final ChannelFuture future = this.clientBootstrap.connect( this.address );
+    future.getChannel( ).getCloseFuture( ).addListener( this.closeListener );
+    return future;
+  }
+
+  private void closed( final Channel channel ) {
+    final Waiter waiter;
+    synchronized ( this ) {
+      for ( final Iterator<IdleChannel> idleIterator = this.idleChannels.iterator( ); idleIterator.hasNext( ); ) {
+        if ( idleIterator.next( ).channel == channel ) {
+          idleIterator.remove( );
+          break;
+        }
+      }
+      waiter = this.waiters.poll( );
+      if ( waiter == null ) {
+        this.openChannels--;
+      }
+    }
+    if ( waiter != null ) {
+      waiter.acquired( this.connect( ) );
+    }
+  }
+
+  private void timedOut( final Waiter waiter ) {
+    final boolean removed;
+    synchronized ( this ) {
+      removed = this.waiters.remove( waiter );
+    }
+    if ( removed ) {
+      notify( waiter.listener, failedFuture( new ChannelException(
+          "Timed out after " + StackConfiguration.CLIENT_POOL_WAIT_TIMEOUT_MILLIS + "ms waiting for a connection to " + this.address ) ) );
+    }
+  }
+
+  /**
+   * Failed future for a request that did not get a channel.
+   */
+  private static ChannelFuture failedFuture( final Throwable cause ) {
+    final ChannelFuture future = new DefaultChannelFuture( null, false );
+    future.setFailure( cause );
+    return future;
+  }
+
+  private static void notify( final ChannelFutureListener listener, final ChannelFuture future ) {
+    try {
+      listener.operationComplete( future );
+    } catch ( final Exception e ) {
+      LOG.error( e, e );
+    }
+  }
+
+  private final class Waiter implements TimerTask {
+    private final ChannelFutureListener listener;
+    private volatile Timeout timeout;
+
+    Waiter( final ChannelFutureListener listener ) {
+      this.listener = listener;
+    }
+
+    void acquired( final ChannelFuture future ) {
+      final Timeout timeout = this.timeout;
+      if ( timeout != null ) {
+        timeout.cancel( );
+      }
+      if ( future.isDone( ) ) {
+        ChannelPool.notify( this.listener, future );
+      } else {
+        future.addListener( this.listener );
+      }
+    }
+
+    @Override
+    public void run( final Timeout timeout ) {
+      ChannelPool.this.timedOut( this );
+    }
+  }
+
+  private static final class IdleChannel {
+    private final Channel channel;
+    private final long idleSince = System.currentTimeMillis( );
+
+    IdleChannel( final Channel channel ) {
+      this.channel = channel;
+    }
+
+    /**
+     * Channels near the idle timeout are not used as the idle handler may
+     * close them while in use.
+     */
+    boolean isUsable( ) {
+      final long maxIdleMillis = TimeUnit.SECONDS.toMillis( StackConfiguration.CLIENT_INTERNAL_TIMEOUT_SECS ) / 2;
+      return this.channel.isOpen( ) &&
+          this.channel.isConnected( ) &&
+          this.channel.isWritable( ) &&
+          ( System.currentTimeMillis( ) - this.idleSince ) < maxIdleMillis;
+    }
+  }
+
+  private static final class ReusedChannelFuture extends SucceededChannelFuture {
+    ReusedChannelFuture( final Channel channel ) {
+      super( channel );
+    }
+  }
+
+  private static final class PoolKey {
+    private final SocketAddress address;
+    private final Class<?> pipelineFactoryClass;
+
+    PoolKey( final SocketAddress address, final Class<?> pipelineFactoryClass ) {
+      this.address = address;
+      this.pipelineFactoryClass = pipelineFactoryClass;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final PoolKey poolKey = ( PoolKey ) o;
+      return address.equals( poolKey.address ) && pipelineFactoryClass.equals( poolKey.pipelineFactoryClass );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return 31 * address.hashCode( ) + pipelineFactoryClass.hashCode( );
+    }
+  }
+}
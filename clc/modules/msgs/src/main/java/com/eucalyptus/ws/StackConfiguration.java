@@ -147,9 +147,6 @@ public class StackConfiguration extends AbstractPersistent {
   public static Integer       PORT                              = 8773;
   public static final Integer INTERNAL_PORT                     = 8773;
   
-  @ConfigurableField( description = "Record and report service times." )
-  public static Boolean       STATISTICS                        = Boolean.FALSE;
-  
   @ConfigurableField( description = "Execute service specific pipeline handlers from a separate thread pool (with respect to I/O)." )
   public static Boolean       ASYNC_PIPELINE                    = Boolean.FALSE;
   
@@ -189,6 +186,18 @@ public class StackConfiguration extends AbstractPersistent {
   @ConfigurableField( description = "Client socket select timeout (ms)." )
   public static Long          CLIENT_POOL_TIMEOUT_MILLIS        = 500L;
   
+  @ConfigurableField( description = "Maximum number of client connections per internal service endpoint." )
+  public static Integer       CLIENT_POOL_MAX_CONNECTIONS_PER_ENDPOINT = 32;
+  
+  @ConfigurableField( description = "Maximum number of requests waiting for a client connection per internal service endpoint." )
+  public static Integer       CLIENT_POOL_MAX_WAITING_PER_ENDPOINT = 1024;
+  
+  @ConfigurableField( description = "Maximum time a request waits for a client connection to an internal service endpoint (ms)." )
+  public static Long          CLIENT_POOL_WAIT_TIMEOUT_MILLIS   = 30000L;
+  
+  @ConfigurableField( description = "Keep client connections to internal services alive for reuse." )
+  public static Boolean       CLIENT_KEEP_ALIVE                 = Boolean.TRUE;
+  
   @ConfigurableField( description = "Maximum HTTP chunk size (bytes)." )
   public static Integer       HTTP_MAX_CHUNK_BYTES              = 10 * 10 * 1024;
   
@@ -95,6 +95,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
 import edu.ucsb.eucalyptus.msgs.BaseData;
 import edu.ucsb.eucalyptus.msgs.BaseMessage;
 import edu.ucsb.eucalyptus.msgs.EucalyptusData;
@@ -249,12 +250,12 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
                                   final Map<String, String> params, 
                                   final BaseMessage eucaMsg ) throws BindingException {
     try {
-      currentBinding.toOM( eucaMsg, this.getNamespace( ) );
+      currentBinding.toStream( ByteStreams.nullOutputStream( ), eucaMsg, this.getNamespace( ) );
     } catch ( final RuntimeException e ) {
       LOG.error( "Falling back to default (unvalidated) binding for: " + operationName + " with params=" + params );
       LOG.error( "Failed to build a valid message: " + e.getMessage( ), e );
       try {
-        BindingManager.getDefaultBinding().toOM( eucaMsg, BindingManager.defaultBindingNamespace( ) );
+        BindingManager.getDefaultBinding().toStream( ByteStreams.nullOutputStream( ), eucaMsg, BindingManager.defaultBindingNamespace( ) );
       } catch ( final RuntimeException ex ) {
         throw new BindingException( "Default binding failed to build a valid message: " + ex.getMessage( ), ex );
       }
@@ -0,0 +1,124 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.ws.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with bounded memory.
+ *
+ * <p>Values are recorded in microseconds into log-linear buckets, each power
+ * of two is split into 16 linear sub-buckets so reported percentiles are
+ * within ~6% of the recorded value.</p>
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS  = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKET_COUNT     = ( 64 - SUB_BUCKET_BITS + 1 ) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray buckets = new AtomicLongArray( BUCKET_COUNT );
+  private final AtomicLong count = new AtomicLong( );
+  private final AtomicLong total = new AtomicLong( );
+  private final AtomicLong max = new AtomicLong( );
+
+  /**
+   * Record a latency.
+   *
+   * @param nanos The latency in nanoseconds
+   */
+  public void record( final long nanos ) {
+    final long micros = Math.max( 0, TimeUnit.NANOSECONDS.toMicros( nanos ) );
+    buckets.incrementAndGet( index( micros ) );
+    count.incrementAndGet( );
+    total.addAndGet( micros );
+    long currentMax;
+    while ( micros > ( currentMax = max.get( ) ) && !max.compareAndSet( currentMax, micros ) );
+  }
+
+  public long getCount( ) {
+    return count.get( );
+  }
+
+  /**
+   * Mean latency in microseconds.
+   */
+  public long getMean( ) {
+    final long currentCount = count.get( );
+    return currentCount == 0 ? 0 : total.get( ) / currentCount;
+  }
+
+  /**
+   * Maximum latency in microseconds.
+   */
+  public long getMax( ) {
+    return max.get( );
+  }
+
+  /**
+   * Latency in microseconds at the given percentile.
+   *
+   * @param percentile The percentile in the range 0-100
+   * @return The (upper bound) latency for the percentile
+   */
+  public long getPercentile( final double percentile ) {
+    long recorded = 0;
+    final long[] counts = new long[ BUCKET_COUNT ];
+    for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+      recorded += counts[ i ] = buckets.get( i );
+    }
+    final long target = Math.max( 1, (long) Math.ceil( recorded * Math.min( 100d, percentile ) / 100d ) );
+    long cumulative = 0;
+    for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+      cumulative += counts[ i ];
+      if ( cumulative >= target ) {
+        return Math.min( max.get( ), value( i + 1 ) - 1 );
+      }
+    }
+    return 0;
+  }
+
+  @Override
+  public String toString( ) {
+    return String.format( "count=%d mean=%dus p50=%dus p90=%dus p99=%dus max=%dus",
+        getCount( ), getMean( ), getPercentile( 50 ), getPercentile( 90 ), getPercentile( 99 ), getMax( ) );
+  }
+
+  static int index( final long value ) {
+    if ( value < SUB_BUCKET_COUNT ) {
+      return (int) value;
+    } else {
+      final int exponent = 63 - Long.numberOfLeadingZeros( value );
+      final int subBucket = (int) ( value >>> ( exponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKET_COUNT - 1 );
+      return ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKET_COUNT + subBucket;
+    }
+  }
+
+  static long value( final int index ) {
+    if ( index < SUB_BUCKET_COUNT ) {
+      return index;
+    } else {
+      final int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+      final int subBucket = index % SUB_BUCKET_COUNT;
+      return exponent >= 63 ? Long.MAX_VALUE : (long) ( SUB_BUCKET_COUNT + subBucket ) << ( exponent - SUB_BUCKET_BITS );
+    }
+  }
+}
@@ -63,7 +63,6 @@
 package com.eucalyptus.ws.server;
 
 import java.io.ByteArrayOutputStream;
-import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.security.auth.login.LoginException;
 import org.apache.axiom.soap.SOAPEnvelope;
@@ -109,7 +108,7 @@ public class NioServerHandler extends SimpleChannelUpstreamHandler {//TODO:GRZE:
   
   @Override
   public void messageReceived( final ChannelHandlerContext ctx, final MessageEvent e ) throws Exception {
-    Callable<Long> stat = Statistics.startUpstream( ctx.getChannel( ), this );
+    final long start = Statistics.start( );
     try {
       if ( this.pipeline.get( ) == null ) {
         lookupPipeline( ctx, e );
@@ -128,12 +127,12 @@ public class NioServerHandler extends SimpleChannelUpstreamHandler {//TODO:GRZE:
           return;
         }
       }
-      stat.call( );
+      Statistics.recordUpstream( this, start );
       ctx.sendUpstream( e );
     } catch ( Exception ex ) {
       LOG.trace( ex );
       Logs.extreme( ).error( ex, ex );
-      stat.call( );
+      Statistics.recordUpstream( this, start );
       this.sendError( ctx, HttpResponseStatus.NOT_FOUND, ex );
     }
   }
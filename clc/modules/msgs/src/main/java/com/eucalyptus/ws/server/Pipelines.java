@@ -66,8 +66,12 @@ import static com.eucalyptus.auth.principal.TemporaryAccessKey.TemporaryKeyType;
 import java.lang.reflect.Modifier;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.net.URLCodec;
 import org.apache.log4j.Logger;
@@ -97,12 +101,19 @@ import com.eucalyptus.records.EventType;
 import com.eucalyptus.records.Logs;
 import com.eucalyptus.system.Ats;
 import com.eucalyptus.util.Classes;
+import com.eucalyptus.util.Pair;
 import com.eucalyptus.ws.Handlers;
 import com.eucalyptus.ws.handlers.HmacHandler;
 import com.eucalyptus.ws.protocol.BaseQueryBinding;
 import com.eucalyptus.ws.protocol.OperationParameter;
 import com.eucalyptus.ws.protocol.SoapHandler;
+import com.google.common.base.Objects;
 import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import edu.ucsb.eucalyptus.cloud.entities.SystemConfiguration;
@@ -112,6 +123,8 @@ public class Pipelines {
   private static final Set<FilteredPipeline>                                     internalPipelines = Sets.newHashSet( );
   private static final Set<FilteredPipeline>                                     pipelines         = Sets.newHashSet( );
   private static final Map<Class<? extends ComponentId>, ChannelPipelineFactory> clientPipelines   = Maps.newHashMap( );
+  private static final AtomicInteger                                             pipelinesVersion  = new AtomicInteger( );
+  private static volatile RouteTable                                             routeTable        = null;
   private static final Supplier<String> subDomain = new Supplier<String>() {
 
     @Override
@@ -147,48 +160,222 @@ public class Pipelines {
     return candidate;
   }
   
+  /**
+   * Find the accepting pipeline for a request.
+   *
+   * <p>Public pipelines are checked first, then virtual host routes and then
+   * internal pipelines. Within the public pipelines the candidates previously
+   * accepting requests for the same route key are checked first, so the
+   * common case is a single lookup and check rather than a scan.</p>
+   */
   private static FilteredPipeline findAccepting( final HttpRequest request ) {
-    final FilteredPipeline candidate = null;
-    for ( final FilteredPipeline f : pipelines ) {
+    final RouteTable table = routeTable( );
+    final FilteredPipeline candidate = table.findPublic( request );
+    return candidate != null ?
+        candidate :
+        findAcceptingFallback( table, request );
+  }
+
+  /**
+   * Route key for a request, comprised of SOAPAction presence, the method and
+   * the first two segments of the request path (lower case, without any
+   * trailing slash or query)
+   */
+  static String routeKey( final HttpRequest request ) {
+    final String uri = Objects.firstNonNull( request.getUri( ), "" );
+    int pathStart = 0;
+    if ( !uri.startsWith( "/" ) ) { // absolute URI
+      final int schemeEnd = uri.indexOf( "://" );
+      if ( schemeEnd >= 0 ) {
+        final int hostEnd = uri.indexOf( '/', schemeEnd + 3 );
+        pathStart = hostEnd < 0 ? uri.length( ) : hostEnd;
+      }
+    }
+    int pathEnd = uri.length( );
+    for ( int i = pathStart, slashes = 0; i < uri.length( ); i++ ) {
+      final char c = uri.charAt( i );
+      if ( c == '?' || c == '#' || ( c == '/' && ++slashes > 2 ) ) {
+        pathEnd = i;
+        break;
+      }
+    }
+    if ( pathEnd > pathStart + 1 && uri.charAt( pathEnd - 1 ) == '/' ) {
+      pathEnd--;
+    }
+    return ( request.getHeaderNames( ).contains( "SOAPAction" ) ? "soap|" : "|" )
+        + request.getMethod( ).getName( )
+        + "|" + uri.substring( pathStart, pathEnd ).toLowerCase( );
+  }
+
+  private static FilteredPipeline findAcceptingFallback( final RouteTable table, final HttpRequest request ) {
+    final String hostHeader = request.getHeader( HttpHeaders.Names.HOST );
+    if ( hostHeader != null ) {
+      final String dnsDomain = subDomain.get( );
+      if ( hostHeader.contains( "amazonaws.com" ) || hostHeader.contains( dnsDomain ) ) {
+        LOG.debug( "Trying to intercept request for " + hostHeader );
+        final boolean soapRequest = request.getHeaderNames( ).contains( "SOAPAction" );
+        for ( final VirtualHostRoute route : table.virtualHostRoutes.get( ) ) {
+          if ( route.soap == soapRequest && route.accepts( hostHeader, dnsDomain ) ) {
+            LOG.debug( "Intercepting: " + hostHeader + " using " + route.pipeline.getClass( ) );
+            return route.pipeline;
+          }
+        }
+      }
+    }
+    for ( final FilteredPipeline f : table.internalPipelines ) {
       if ( f.checkAccepts( request ) ) {
         return f;
       }
     }
-    if ( request.getHeader(HttpHeaders.Names.HOST).contains( "amazonaws.com" ) 
-        || request.getHeader(HttpHeaders.Names.HOST).contains( subDomain.get( ) ) ) {
-      String hostHeader = request.getHeader(HttpHeaders.Names.HOST);
-      LOG.debug( "Trying to intercept request for " + hostHeader );
+    return null;
+  }
+
+  private static RouteTable routeTable( ) {
+    RouteTable table = routeTable;
+    final int version = pipelinesVersion.get( );
+    if ( table == null || table.version != version ) {
+      routeTable = table = new RouteTable( version );
+    }
+    return table;
+  }
+
+  /**
+   * Must be called after registered pipelines change.
+   */
+  private static void pipelinesChanged( ) {
+    pipelinesVersion.incrementAndGet( );
+  }
+
+  /**
+   * Pipelines in routing order for a version of the registered pipelines.
+   */
+  private static final class RouteTable {
+    private final int version;
+    private final List<FilteredPipeline> publicPipelines;
+    private final List<FilteredPipeline> internalPipelines;
+    private final Supplier<List<VirtualHostRoute>> virtualHostRoutes;
+    private final Cache<String, List<FilteredPipeline>> publicRoutes =
+        CacheBuilder.newBuilder( ).maximumSize( 1024 ).build( );
+
+    private RouteTable( final int version ) {
+      this.version = version;
+      this.publicPipelines = ImmutableList.copyOf( pipelines );
+      this.internalPipelines = ImmutableList.copyOf( Pipelines.internalPipelines );
+      this.virtualHostRoutes = Suppliers.memoize( new Supplier<List<VirtualHostRoute>>( ) {
+        @Override
+        public List<VirtualHostRoute> get( ) {
+          return buildVirtualHostRoutes( publicPipelines );
+        }
+      } );
+    }
+
+    /**
+     * Find the accepting public pipeline, checking previous candidates for the
+     * route key first. Candidates are kept in routing order.
+     */
+    @Nullable
+    private FilteredPipeline findPublic( final HttpRequest request ) {
+      final String routeKey = routeKey( request );
+      final List<FilteredPipeline> candidates = publicRoutes.getIfPresent( routeKey );
+      if ( candidates != null ) {
+        for ( final FilteredPipeline candidate : candidates ) {
+          if ( candidate.checkAccepts( request ) ) {
+            return candidate;
+          }
+        }
+      }
+      for ( final FilteredPipeline f : publicPipelines ) {
+        if ( !isCandidate( candidates, f ) && f.checkAccepts( request ) ) {
+          addCandidate( routeKey, candidates, f );
+          return f;
+        }
+      }
+      return null;
+    }
+
+    private void addCandidate( final String routeKey,
+                               @Nullable final List<FilteredPipeline> candidates,
+                               final FilteredPipeline pipeline ) {
+      final List<FilteredPipeline> updated = Lists.newArrayList( );
+      for ( final FilteredPipeline f : publicPipelines ) {
+        if ( f == pipeline || isCandidate( candidates, f ) ) {
+          updated.add( f );
+        }
+      }
+      publicRoutes.put( routeKey, ImmutableList.copyOf( updated ) );
+    }
+
+    /**
+     * Pipeline equality is by type so candidates are compared by identity.
+     */
+    private static boolean isCandidate( @Nullable final List<FilteredPipeline> candidates,
+                                        final FilteredPipeline pipeline ) {
+      if ( candidates != null ) {
+        for ( final FilteredPipeline candidate : candidates ) {
+          if ( candidate == pipeline ) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    private static List<VirtualHostRoute> buildVirtualHostRoutes( final List<FilteredPipeline> pipelines ) {
+      final List<VirtualHostRoute> routes = Lists.newArrayList( );
       for ( final FilteredPipeline f : pipelines ) {
         if ( Ats.from( f ).has( ComponentPart.class ) ) {
-          Class<? extends ComponentId> compIdClass = Ats.from( f ).get( ComponentPart.class ).value( );
-          ComponentId compId = ComponentIds.lookup( compIdClass );
+          final Class<? extends ComponentId> compIdClass = Ats.from( f ).get( ComponentPart.class ).value( );
           if ( Ats.from( compIdClass ).has( PublicService.class ) ) {
-            if ( request.getHeaderNames().contains( "SOAPAction" ) && f.addHandlers( Channels.pipeline( ) ).get( SoapHandler.class ) == null ) {
-              continue;//Skip pipeline which doesn't handle SOAP for this SOAP request
-            } else if ( !request.getHeaderNames().contains( "SOAPAction" ) && f.addHandlers( Channels.pipeline( ) ).get( SoapHandler.class ) != null ) {
-              continue;//Skip pipeline which handles SOAP for this non-SOAP request
-            }
-            LOG.debug( "Maybe intercepting: " + hostHeader + " using " + f.getClass( ) );
-            if ( Ats.from( compIdClass ).has( AwsServiceName.class ) 
-                && request.getHeader(HttpHeaders.Names.HOST).matches( "[\\w\\.-_]*" + compId.getAwsServiceName( ) + "\\.\\w+\\.amazonaws.com" ) ) {
-              return f;//Return pipeline which can handle the request for ${service}.${region}.amazonaws.com
-            } else if ( request.getHeader(HttpHeaders.Names.HOST).matches( "[\\w\\.-_]*" + compId.name( ) + "\\." + subDomain.get( ) ) ) {
-              return f;//Return pipeline which can handle the request for ${service}.${system.dns.dnsdomain}
-            }
+            final ChannelPipeline pipeline = f.addHandlers( Channels.pipeline( ) );
+            final boolean soap = pipeline != null && pipeline.get( SoapHandler.class ) != null;
+            routes.add( new VirtualHostRoute( f, soap, ComponentIds.lookup( compIdClass ) ) );
           }
         }
       }
+      return ImmutableList.copyOf( routes );
     }
-    if ( candidate == null ) {
-      for ( final FilteredPipeline f : internalPipelines ) {
-        if ( f.checkAccepts( request ) ) {
-          return f;
-        }
+  }
+
+  /**
+   * Virtual host routing information for a public service pipeline.
+   */
+  private static final class VirtualHostRoute {
+    private final FilteredPipeline pipeline;
+    private final boolean soap;
+    private final Pattern awsHostPattern;
+    private final String componentName;
+    private volatile Pair<String,Pattern> domainHostPattern;
+
+    private VirtualHostRoute( final FilteredPipeline pipeline,
+                              final boolean soap,
+                              final ComponentId componentId ) {
+      this.pipeline = pipeline;
+      this.soap = soap;
+      this.awsHostPattern = Ats.from( componentId.getClass( ) ).has( AwsServiceName.class ) ?
+          Pattern.compile( "[\\w\\.-_]*" + componentId.getAwsServiceName( ) + "\\.\\w+\\.amazonaws.com" ) :
+          null;
+      this.componentName = componentId.name( );
+    }
+
+    /**
+     * Accepts ${service}.${region}.amazonaws.com or ${service}.${system.dns.dnsdomain}
+     */
+    private boolean accepts( final String host, final String dnsDomain ) {
+      return
+          ( awsHostPattern != null && awsHostPattern.matcher( host ).matches( ) ) ||
+          domainHostPattern( dnsDomain ).matcher( host ).matches( );
+    }
+
+    private Pattern domainHostPattern( final String dnsDomain ) {
+      Pair<String,Pattern> domainPattern = this.domainHostPattern;
+      if ( domainPattern == null || !domainPattern.getLeft( ).equals( dnsDomain ) ) {
+        this.domainHostPattern = domainPattern =
+            Pair.pair( dnsDomain, Pattern.compile( "[\\w\\.-_]*" + componentName + "\\." + dnsDomain ) );
       }
+      return domainPattern.getRight( );
     }
-    return candidate;
   }
-  
+
   @Provides( Empyrean.class )
   @RunDuring( Bootstrap.Stage.UnprivilegedConfiguration )
   public static class PipelineBootstrapper extends Bootstrapper.Simple {
@@ -199,6 +386,7 @@ public class Pipelines {
         Pipelines.internalPipelines.add( new InternalQueryPipeline( comp ) );
         Pipelines.internalPipelines.add( new InternalSoapPipeline( comp ) );
       }
+      Pipelines.pipelinesChanged( );
       return true;
     }
     
@@ -216,6 +404,7 @@ public class Pipelines {
           final Class<? extends FilteredPipeline> pipelineClass = candidate;
           final FilteredPipeline pipeline = Classes.newInstance( pipelineClass );
           Pipelines.pipelines.add( pipeline );
+          Pipelines.pipelinesChanged( );
           return true;
         } catch ( final Exception ex ) {
           LOG.trace( ex, ex );
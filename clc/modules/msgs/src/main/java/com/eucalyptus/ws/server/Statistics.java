@@ -62,118 +62,102 @@
 
 package com.eucalyptus.ws.server;
 
-import java.util.Collection;
 import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
-import org.apache.log4j.Logger;
-import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.ChannelFuture;
-import org.jboss.netty.channel.ChannelFutureListener;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
 import org.jboss.netty.channel.ChannelHandler;
-import com.eucalyptus.context.Contexts;
-import com.eucalyptus.records.Logs;
-import com.eucalyptus.ws.StackConfiguration;
-import com.google.common.base.Joiner;
+import com.eucalyptus.util.Mbeans;
+import com.google.common.base.Objects;
 import com.google.common.collect.Maps;
-import com.google.common.util.concurrent.Callables;
 
+/**
+ * Always-on latency statistics for pipeline handlers and service operations.
+ *
+ * <p>Handler latencies are recorded per handler class and direction, operation
+ * latencies are recorded per request message type from context creation to
+ * response. Statistics are available via JMX.</p>
+ */
 public class Statistics {
-  private static Logger                            LOG               = Logger.getLogger( Statistics.class );
-  private static final Map<Integer, RequestRecord> requestStatistics = Maps.newConcurrentMap( );
-  
-  private static class HandlerRecord implements Callable<Long> {
-    private final String handlerClassName;
-    private final Long   startTime = System.currentTimeMillis( );
-    private Long         endTime;
-    
-    private HandlerRecord( Class<? extends ChannelHandler> class1 ) {
-      this.handlerClassName = class1.toString( );
-    }
-    
-    @Override
-    public String toString( ) {
-      StringBuilder builder = new StringBuilder( );
-      Long time = ( ( this.endTime == null ? System.currentTimeMillis( ) : this.endTime ) - this.startTime );
-      builder.append( " " );
-      builder.append( this.handlerClassName ).append( ": " ).append( time ).append( " msec" );
-      return builder.toString( );
-    }
-    
-    @Override
-    public Long call( ) throws Exception {
-      Logs.extreme( ).debug( "HandlerRecord:" + this.handlerClassName
-        + " "
-        + ( ( this.endTime == null ? this.endTime = System.currentTimeMillis( ) : this.endTime ) - this.startTime )
-        + "msec" );
-      return this.endTime;
-    }
-    
+  private static final ClassValue<LatencyHistogram>           upstreamStatistics   = new HistogramClassValue( );
+  private static final ClassValue<LatencyHistogram>           downstreamStatistics = new HistogramClassValue( );
+  private static final ConcurrentMap<String, LatencyHistogram> handlerStatistics    = Maps.newConcurrentMap( );
+  private static final ConcurrentMap<String, LatencyHistogram> operationStatistics  = Maps.newConcurrentMap( );
+
+  static {
+    Mbeans.register( new ServiceLatencies( ) );
   }
-  
-  private static class RequestRecord {
-    private final Map<Class, HandlerRecord> handlerUpstreamStats   = Maps.newHashMap( );
-    private final Map<Class, HandlerRecord> handlerDownstreamStats = Maps.newHashMap( );
-    String                                  type;
-    private final long                      creationTime           = System.currentTimeMillis( );
-    
-    public Collection<HandlerRecord> values( ) {
-      return this.handlerUpstreamStats.values( );
+
+  /**
+   * Start timing, the returned value is passed to one of the record methods.
+   */
+  public static long start( ) {
+    return System.nanoTime( );
+  }
+
+  public static <T extends ChannelHandler> void recordUpstream( final T handler, final long start ) {
+    upstreamStatistics.get( handler.getClass( ) ).record( System.nanoTime( ) - start );
+  }
+
+  public static <T extends ChannelHandler> void recordDownstream( final T handler, final long start ) {
+    downstreamStatistics.get( handler.getClass( ) ).record( System.nanoTime( ) - start );
+  }
+
+  /**
+   * Record the latency for an operation.
+   *
+   * @param operation The operation (request type) name
+   * @param start The start time in nanoseconds
+   */
+  public static void recordOperation( final String operation, final long start ) {
+    LatencyHistogram histogram = operationStatistics.get( operation );
+    if ( histogram == null ) {
+      final LatencyHistogram newHistogram = new LatencyHistogram( );
+      histogram = Objects.firstNonNull( operationStatistics.putIfAbsent( operation, newHistogram ), newHistogram );
     }
-    
+    histogram.record( System.nanoTime( ) - start );
+  }
+
+  public static SortedMap<String, LatencyHistogram> getHandlerStatistics( ) {
+    return Maps.newTreeMap( handlerStatistics );
+  }
+
+  public static SortedMap<String, LatencyHistogram> getOperationStatistics( ) {
+    return Maps.newTreeMap( operationStatistics );
+  }
+
+  private static final class HistogramClassValue extends ClassValue<LatencyHistogram> {
     @Override
-    public String toString( ) {
-      StringBuilder builder = new StringBuilder( );
-      String typeName = ( this.type == null ? "unknown" : this.type );
-      builder.append( typeName ).append( " " ).append( Joiner.on( "\n" + typeName ).join( this.handlerUpstreamStats.values( ) ) );
-      builder.append( typeName ).append( " " ).append( Joiner.on( "\n" + typeName ).join( this.handlerDownstreamStats.values( ) ) );
-      builder.append( typeName ).append( " " ).append( System.currentTimeMillis( ) - this.creationTime ).append( " msec" );
-      return builder.toString( );
+    protected LatencyHistogram computeValue( final Class<?> type ) {
+      final String name = type.getSimpleName( ).isEmpty( ) ? type.getName( ) : type.getSimpleName( );
+      final String key = name + ( this == upstreamStatistics ? ":upstream" : ":downstream" );
+      final LatencyHistogram newHistogram = new LatencyHistogram( );
+      return Objects.firstNonNull( handlerStatistics.putIfAbsent( key, newHistogram ), newHistogram );
     }
-    
   }
-  
-  public static final void startRequest( final Channel channel ) {
-    if ( StackConfiguration.STATISTICS ) {
-      final RequestRecord record = new RequestRecord( );
-      requestStatistics.put( channel.getId( ), record );
-      channel.getCloseFuture( ).addListener( new ChannelFutureListener( ) {
-        
-        @Override
-        public void operationComplete( ChannelFuture future ) throws Exception {
-          LOG.info( requestStatistics.remove( channel.getId( ) ) );
-        }
-      } );
+
+  /**
+   * JMX view of latency statistics.
+   */
+  public static class ServiceLatencies {
+    public Map<String, String> getHandlerLatencies( ) {
+      return describe( getHandlerStatistics( ) );
     }
-  }
-  
-  public static final <T extends ChannelHandler> Callable<Long> startUpstream( Channel channel, T handler ) {
-    Integer correlationId = channel.getId( );
-    if ( StackConfiguration.STATISTICS && requestStatistics.containsKey( correlationId ) ) {
-      RequestRecord record = requestStatistics.get( correlationId );
-      if ( record.type == null ) {
-        try {
-          record.type = Contexts.lookup( channel ).getRequest( ).getClass( ).getSimpleName( );
-        } catch ( Exception ex ) {}
+
+    public Map<String, String> getOperationLatencies( ) {
+      return describe( getOperationStatistics( ) );
+    }
+
+    private static Map<String, String> describe( final SortedMap<String, LatencyHistogram> statistics ) {
+      final Map<String, String> description = Maps.newLinkedHashMap( );
+      for ( final Map.Entry<String, LatencyHistogram> entry : statistics.entrySet( ) ) {
+        description.put( entry.getKey( ), entry.getValue( ).toString( ) );
       }
-      HandlerRecord handlerRecord = new HandlerRecord( handler.getClass( ) );
-      record.handlerUpstreamStats.put( handler.getClass( ), handlerRecord );
-      return handlerRecord;
-    } else {
-      return Callables.returning( 0L );
+      return description;
     }
-  }
-  
-  public static final <T extends ChannelHandler> Callable<Long> startDownstream( Channel channel, T handler ) {
-    Integer correlationId = channel.getId( );
-    if ( StackConfiguration.STATISTICS && requestStatistics.containsKey( correlationId ) ) {
-      RequestRecord record = requestStatistics.get( correlationId );
-      HandlerRecord handlerRecord = new HandlerRecord( handler.getClass( ) );
-      record.handlerDownstreamStats.put( handler.getClass( ), handlerRecord );
-      return handlerRecord;
-    } else {
-      return Callables.returning( 0L );
+
+    @Override
+    public String toString( ) {
+      return "Service handler and operation latencies";
     }
   }
-  
 }
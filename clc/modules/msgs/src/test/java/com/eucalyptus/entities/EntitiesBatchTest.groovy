@@ -0,0 +1,238 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.entities
+
+import static org.junit.Assert.*
+
+import javax.persistence.Column
+import javax.persistence.Entity
+import javax.persistence.EntityTransaction
+import javax.persistence.PersistenceContext
+import javax.persistence.Table
+
+import org.hibernate.ejb.Ejb3Configuration
+import org.hibernate.exception.ConstraintViolationException
+import org.junit.After
+import org.junit.AfterClass
+import org.junit.BeforeClass
+import org.junit.Test
+
+/**
+ * Unit tests for batched entity writes
+ */
+class EntitiesBatchTest {
+
+  private static final int BATCH_SIZE = 5
+
+  @BeforeClass
+  static void setUp( ) {
+    Properties props = new Properties( )
+    props.put( "hibernate.archive.autodetection", "jar, class, hbm" )
+    props.put( "hibernate.ejb.interceptor.session_scoped", "com.eucalyptus.entities.DelegatingInterceptor" )
+    props.put( "hibernate.show_sql", "false" )
+    props.put( "hibernate.format_sql", "false" )
+    props.put( "hibernate.generate_statistics", "false" )
+    props.put( "hibernate.bytecode.use_reflection_optimizer", "true" )
+    props.put( "hibernate.jdbc.batch_size", String.valueOf( BATCH_SIZE ) )
+    props.put( "hibernate.jdbc.batch_versioned_data", "true" )
+    props.put( "hibernate.order_inserts", "true" )
+    props.put( "javax.persistence.jdbc.driver", "org.apache.derby.jdbc.EmbeddedDriver" )
+    props.put( "javax.persistence.jdbc.user", "root" )
+    props.put( "javax.persistence.jdbc.password", "root" )
+    props.put( "hibernate.hbm2ddl.auto", "create" )
+    props.put( "hibernate.cache.use_second_level_cache", "false" )
+    props.put( "hibernate.dialect", "org.hibernate.dialect.DerbyDialect" )
+    props.put( "hibernate.connection.url", "jdbc:derby:memory:entities_batch_test;create=true" )
+
+    Ejb3Configuration config = new Ejb3Configuration( ).configure( props )
+        .addAnnotatedClass( BatchTestEntity )
+    PersistenceContexts.registerPersistenceContext( "eucalyptus_batch_test", config )
+  }
+
+  @AfterClass
+  static void tearDown( ) {
+    PersistenceContexts.shutdown( )
+  }
+
+  @After
+  void deleteAll( ) {
+    EntityTransaction db = Entities.get( BatchTestEntity )
+    try {
+      Entities.deleteAll( BatchTestEntity )
+      db.commit( )
+    } finally {
+      if ( db.isActive( ) ) db.rollback( )
+    }
+  }
+
+  @Test
+  void testPersistAll( ) {
+    List<BatchTestEntity> entities = entities( 'persist', ( 2 * BATCH_SIZE ) + 2 )
+    EntityTransaction db = Entities.get( BatchTestEntity )
+    try {
+      assertEquals( 'Persisted count', entities.size( ), Entities.persistAll( entities ) )
+      db.commit( )
+    } finally {
+      if ( db.isActive( ) ) db.rollback( )
+    }
+
+    Map<String,BatchTestEntity> persisted = load( )
+    assertEquals( 'Persisted names', entities.collect{ it.name } as Set, persisted.keySet( ) )
+    entities.each { BatchTestEntity entity ->
+      BatchTestEntity found = persisted.get( entity.name )
+      assertEquals( 'Value', entity.value, found.value )
+      assertNotNull( 'Id', found.id )
+      assertNotNull( 'Natural id', found.naturalId )
+      assertNotNull( 'Creation timestamp', found.creationTimestamp )
+      assertNotNull( 'Last update timestamp', found.lastUpdateTimestamp )
+    }
+  }
+
+  @Test
+  void testPersistAllEmpty( ) {
+    EntityTransaction db = Entities.get( BatchTestEntity )
+    try {
+      assertEquals( 'Persisted count', 0, Entities.persistAll( [ ] ) )
+      db.commit( )
+    } finally {
+      if ( db.isActive( ) ) db.rollback( )
+    }
+    assertTrue( 'No entities', load( ).isEmpty( ) )
+  }
+
+  @Test
+  void testPersistAllFailurePartWay( ) {
+    persist( entities( 'existing', 1 ) )
+    List<BatchTestEntity> entities = entities( 'failure', ( 2 * BATCH_SIZE ) + 2 )
+    // duplicate name in the second batch
+    entities.get( BATCH_SIZE + 2 ).name = 'existing-0'
+
+    EntityTransaction db = Entities.get( BatchTestEntity )
+    try {
+      Entities.persistAll( entities )
+      fail( 'Expected constraint violation' )
+    } catch ( ConstraintViolationException e ) {
+      // expected
+    } finally {
+      if ( db.isActive( ) ) db.rollback( )
+    }
+
+    assertEquals( 'Names after failed batch', [ 'existing-0' ] as Set, load( ).keySet( ) )
+  }
+
+  @Test
+  void testUpsertAll( ) {
+    persist( entities( 'upsert', BATCH_SIZE + 1 ) )
+    List<BatchTestEntity> existing = load( ).values( ) as List<BatchTestEntity>
+    Map<String,Integer> versions = existing.collectEntries{ [ it.name, it.version ] }
+    existing.each { BatchTestEntity entity -> entity.value = entity.value + 100 }
+    List<BatchTestEntity> added = entities( 'upsert-new', BATCH_SIZE + 1 )
+
+    EntityTransaction db = Entities.get( BatchTestEntity )
+    try {
+      assertEquals( 'Written count', existing.size( ) + added.size( ), Entities.upsertAll( existing + added ) )
+      db.commit( )
+    } finally {
+      if ( db.isActive( ) ) db.rollback( )
+    }
+
+    Map<String,BatchTestEntity> written = load( )
+    assertEquals( 'Entity count', existing.size( ) + added.size( ), written.size( ) )
+    existing.each { BatchTestEntity entity ->
+      BatchTestEntity found = written.get( entity.name )
+      assertEquals( 'Updated value', entity.value, found.value )
+      assertEquals( 'Updated version', versions.get( entity.name ) + 1, found.version )
+    }
+    added.each { BatchTestEntity entity ->
+      assertEquals( 'Inserted value', entity.value, written.get( entity.name ).value )
+    }
+  }
+
+  @Test
+  void testUpsertAllStaleUpdateFails( ) {
+    persist( entities( 'stale', BATCH_SIZE + 1 ) )
+    List<BatchTestEntity> existing = load( ).values( ) as List<BatchTestEntity>
+    existing.each { BatchTestEntity entity -> entity.value = entity.value + 100 }
+    // concurrent update of one entity after it was loaded
+    BatchTestEntity stale = existing.get( BATCH_SIZE )
+    EntityTransaction db = Entities.get( BatchTestEntity )
+    try {
+      Entities.uniqueResult( BatchTestEntity.named( stale.name ) ).value = -1
+      db.commit( )
+    } finally {
+      if ( db.isActive( ) ) db.rollback( )
+    }
+
+    db = Entities.get( BatchTestEntity )
+    try {
+      Entities.upsertAll( existing )
+      fail( 'Expected stale update failure' )
+    } catch ( RuntimeException e ) {
+      // expected
+    } finally {
+      if ( db.isActive( ) ) db.rollback( )
+    }
+
+    load( ).values( ).each { BatchTestEntity entity ->
+      assertTrue( 'Value not updated', entity.value < 100 )
+    }
+  }
+
+  private static List<BatchTestEntity> entities( String prefix, int count ) {
+    ( 0..<count ).collect { int index -> new BatchTestEntity( name: "${prefix}-${index}".toString( ), value: index ) }
+  }
+
+  private static void persist( List<BatchTestEntity> entities ) {
+    EntityTransaction db = Entities.get( BatchTestEntity )
+    try {
+      entities.each { BatchTestEntity entity -> Entities.persist( entity ) }
+      db.commit( )
+    } finally {
+      if ( db.isActive( ) ) db.rollback( )
+    }
+  }
+
+  private static Map<String,BatchTestEntity> load( ) {
+    EntityTransaction db = Entities.get( BatchTestEntity )
+    try {
+      Map<String,BatchTestEntity> entities = Entities.query( new BatchTestEntity( ) ).collectEntries {
+        BatchTestEntity entity -> [ entity.name, entity ]
+      }
+      db.commit( )
+      entities
+    } finally {
+      if ( db.isActive( ) ) db.rollback( )
+    }
+  }
+}
+
+@Entity
+@PersistenceContext( name = "eucalyptus_batch_test" )
+@Table( name = "batch_test_entity" )
+class BatchTestEntity extends AbstractPersistent {
+  @Column( name = "batch_name", unique = true )
+  String name
+  @Column( name = "batch_value" )
+  Integer value
+
+  static BatchTestEntity named( String name ) {
+    new BatchTestEntity( name: name )
+  }
+}
@@ -0,0 +1,60 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.util
+
+import static org.junit.Assert.*
+import org.junit.Test
+import javax.xml.stream.XMLInputFactory
+import javax.xml.stream.XMLStreamConstants
+import javax.xml.stream.XMLStreamReader
+
+/**
+ * 
+ */
+class NamespaceMappingXMLStreamReaderTest {
+
+  @Test
+  void testElementAndAttributeNamespacesMapped() {
+    XMLStreamReader reader = new NamespaceMappingXMLStreamReader(
+        XMLInputFactory.newInstance( ).createXMLStreamReader( new StringReader(
+            '<a:Foo xmlns:a="urn:old" a:attr="urn:old"><a:Bar>urn:old</a:Bar></a:Foo>' ) ),
+        [ 'urn:old': 'urn:new' ] )
+    assertEquals( "start", XMLStreamConstants.START_ELEMENT, reader.nextTag( ) )
+    assertEquals( "element namespace", "urn:new", reader.getNamespaceURI( ) )
+    assertEquals( "element name namespace", "urn:new", reader.getName( ).getNamespaceURI( ) )
+    assertEquals( "declared namespace", "urn:new", reader.getNamespaceURI( 0 ) )
+    assertEquals( "attribute namespace", "urn:new", reader.getAttributeNamespace( 0 ) )
+    assertEquals( "attribute value", "urn:old", reader.getAttributeValue( 0 ) )
+    assertEquals( "child", XMLStreamConstants.START_ELEMENT, reader.nextTag( ) )
+    assertEquals( "child namespace", "urn:new", reader.getNamespaceURI( ) )
+    assertEquals( "text", "urn:old", reader.getElementText( ) )
+  }
+
+  @Test
+  void testUnmappedNamespace() {
+    XMLStreamReader reader = new NamespaceMappingXMLStreamReader(
+        XMLInputFactory.newInstance( ).createXMLStreamReader( new StringReader(
+            '<Foo xmlns="urn:other"/>' ) ),
+        [ 'urn:old': 'urn:new' ] )
+    reader.nextTag( )
+    assertEquals( "element namespace", "urn:other", reader.getNamespaceURI( ) )
+  }
+
+}
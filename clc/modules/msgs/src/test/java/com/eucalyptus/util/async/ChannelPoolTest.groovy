@@ -0,0 +1,171 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.util.async
+
+import static org.junit.Assert.*
+
+import java.util.concurrent.BlockingQueue
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+import org.jboss.netty.bootstrap.ClientBootstrap
+import org.jboss.netty.bootstrap.ServerBootstrap
+import org.jboss.netty.channel.Channel
+import org.jboss.netty.channel.ChannelException
+import org.jboss.netty.channel.ChannelFuture
+import org.jboss.netty.channel.ChannelFutureListener
+import org.jboss.netty.channel.ChannelPipelineFactory
+import org.jboss.netty.channel.Channels
+import org.jboss.netty.channel.local.DefaultLocalClientChannelFactory
+import org.jboss.netty.channel.local.DefaultLocalServerChannelFactory
+import org.jboss.netty.channel.local.LocalAddress
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+import com.eucalyptus.ws.StackConfiguration
+
+/**
+ * Unit tests for the client channel pool
+ */
+class ChannelPoolTest {
+
+  private static final ChannelPipelineFactory emptyPipelineFactory = { Channels.pipeline( ) } as ChannelPipelineFactory
+
+  private final Integer maxConnections = StackConfiguration.CLIENT_POOL_MAX_CONNECTIONS_PER_ENDPOINT
+  private final Integer maxWaiting = StackConfiguration.CLIENT_POOL_MAX_WAITING_PER_ENDPOINT
+  private final Long waitTimeout = StackConfiguration.CLIENT_POOL_WAIT_TIMEOUT_MILLIS
+  private Channel serverChannel
+  private ChannelPool pool
+
+  @Before
+  void setUp( ) {
+    LocalAddress address = new LocalAddress( LocalAddress.EPHEMERAL )
+    ServerBootstrap serverBootstrap = new ServerBootstrap( new DefaultLocalServerChannelFactory( ) )
+    serverBootstrap.setPipelineFactory( emptyPipelineFactory )
+    serverChannel = serverBootstrap.bind( address )
+    ClientBootstrap clientBootstrap = new ClientBootstrap( new DefaultLocalClientChannelFactory( ) )
+    clientBootstrap.setPipelineFactory( emptyPipelineFactory )
+    pool = new ChannelPool( address, clientBootstrap )
+  }
+
+  @After
+  void tearDown( ) {
+    StackConfiguration.CLIENT_POOL_MAX_CONNECTIONS_PER_ENDPOINT = maxConnections
+    StackConfiguration.CLIENT_POOL_MAX_WAITING_PER_ENDPOINT = maxWaiting
+    StackConfiguration.CLIENT_POOL_WAIT_TIMEOUT_MILLIS = waitTimeout
+    serverChannel?.close( )?.awaitUninterruptibly( )
+  }
+
+  @Test
+  void testReleasedChannelReused( ) {
+    BlockingQueue<ChannelFuture> futures = new LinkedBlockingQueue<>( )
+    pool.acquire( listener( futures ) )
+    ChannelFuture first = acquired( futures )
+    assertTrue( 'Connected', first.isSuccess( ) )
+    assertFalse( 'New channel reused', ChannelPool.isReused( first ) )
+
+    pool.release( first.getChannel( ), true )
+    pool.acquire( listener( futures ) )
+    ChannelFuture second = acquired( futures )
+    assertTrue( 'Reused channel reused', ChannelPool.isReused( second ) )
+    assertSame( 'Channel', first.getChannel( ), second.getChannel( ) )
+  }
+
+  @Test
+  void testClosedChannelNotReused( ) {
+    BlockingQueue<ChannelFuture> futures = new LinkedBlockingQueue<>( )
+    pool.acquire( listener( futures ) )
+    Channel channel = acquired( futures ).getChannel( )
+    pool.release( channel, true )
+    channel.close( ).awaitUninterruptibly( )
+
+    pool.acquire( listener( futures ) )
+    ChannelFuture future = acquired( futures )
+    assertTrue( 'Connected', future.isSuccess( ) )
+    assertFalse( 'Channel reused', ChannelPool.isReused( future ) )
+    assertNotSame( 'Channel', channel, future.getChannel( ) )
+  }
+
+  @Test
+  void testNewChannelWhenNotReusingIdle( ) {
+    BlockingQueue<ChannelFuture> futures = new LinkedBlockingQueue<>( )
+    pool.acquire( listener( futures ) )
+    Channel channel = acquired( futures ).getChannel( )
+    pool.release( channel, true )
+
+    pool.acquire( listener( futures ), false )
+    ChannelFuture future = acquired( futures )
+    assertTrue( 'Connected', future.isSuccess( ) )
+    assertFalse( 'Channel reused', ChannelPool.isReused( future ) )
+    assertNotSame( 'Channel', channel, future.getChannel( ) )
+    assertFalse( 'Idle channel closed', channel.isOpen( ) )
+  }
+
+  @Test
+  void testWaitingBounded( ) {
+    StackConfiguration.CLIENT_POOL_MAX_CONNECTIONS_PER_ENDPOINT = 1
+    StackConfiguration.CLIENT_POOL_MAX_WAITING_PER_ENDPOINT = 1
+    BlockingQueue<ChannelFuture> futures = new LinkedBlockingQueue<>( )
+    BlockingQueue<ChannelFuture> waitingFutures = new LinkedBlockingQueue<>( )
+    pool.acquire( listener( futures ) )
+    Channel channel = acquired( futures ).getChannel( )
+
+    pool.acquire( listener( waitingFutures ) )
+    pool.acquire( listener( futures ) )
+    ChannelFuture rejected = acquired( futures )
+    assertFalse( 'Rejected', rejected.isSuccess( ) )
+    assertTrue( 'Rejected cause', rejected.getCause( ) instanceof ChannelException )
+    assertNull( 'Waiting', waitingFutures.poll( ) )
+
+    pool.release( channel, true )
+    ChannelFuture waited = acquired( waitingFutures )
+    assertTrue( 'Waiter served', waited.isSuccess( ) )
+    assertSame( 'Channel', channel, waited.getChannel( ) )
+  }
+
+  @Test
+  void testWaitTimeout( ) {
+    StackConfiguration.CLIENT_POOL_MAX_CONNECTIONS_PER_ENDPOINT = 1
+    StackConfiguration.CLIENT_POOL_WAIT_TIMEOUT_MILLIS = 100L
+    BlockingQueue<ChannelFuture> futures = new LinkedBlockingQueue<>( )
+    pool.acquire( listener( futures ) )
+    Channel channel = acquired( futures ).getChannel( )
+
+    pool.acquire( listener( futures ) )
+    ChannelFuture timedOut = acquired( futures )
+    assertFalse( 'Timed out', timedOut.isSuccess( ) )
+    assertTrue( 'Timed out cause', timedOut.getCause( ) instanceof ChannelException )
+
+    pool.release( channel, true )
+    pool.acquire( listener( futures ) )
+    assertSame( 'Channel', channel, acquired( futures ).getChannel( ) )
+  }
+
+  private static ChannelFutureListener listener( final BlockingQueue<ChannelFuture> futures ) {
+    return { ChannelFuture future -> futures.add( future ) } as ChannelFutureListener
+  }
+
+  private static ChannelFuture acquired( final BlockingQueue<ChannelFuture> futures ) {
+    ChannelFuture future = futures.poll( 5, TimeUnit.SECONDS )
+    assertNotNull( 'Channel future', future )
+    future
+  }
+}
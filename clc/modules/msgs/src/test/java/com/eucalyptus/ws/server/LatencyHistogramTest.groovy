@@ -0,0 +1,60 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.ws.server
+
+import static org.junit.Assert.*
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+/**
+ * 
+ */
+class LatencyHistogramTest {
+
+  @Test
+  void testBucketBoundaries() {
+    for ( long value = 0; value < 1000000; value += 7 ) {
+      int index = LatencyHistogram.index( value )
+      assertTrue( "lower bound for " + value, LatencyHistogram.value( index ) <= value )
+      assertTrue( "upper bound for " + value, LatencyHistogram.value( index + 1 ) > value )
+    }
+  }
+
+  @Test
+  void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram( )
+    ( 1..1000 ).each { Integer millis -> histogram.record( TimeUnit.MILLISECONDS.toNanos( millis ) ) }
+    assertEquals( "count", 1000L, histogram.getCount( ) )
+    assertEquals( "max", 1000000L, histogram.getMax( ) )
+    assertEquals( "mean", 500500L, histogram.getMean( ) )
+    assertEquals( "p50", 500000d, histogram.getPercentile( 50 ), 500000 * 0.07d )
+    assertEquals( "p99", 990000d, histogram.getPercentile( 99 ), 990000 * 0.07d )
+    assertEquals( "p100", 1000000L, histogram.getPercentile( 100 ) )
+  }
+
+  @Test
+  void testEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram( )
+    assertEquals( "count", 0L, histogram.getCount( ) )
+    assertEquals( "mean", 0L, histogram.getMean( ) )
+    assertEquals( "p99", 0L, histogram.getPercentile( 99 ) )
+  }
+
+}
@@ -0,0 +1,213 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.ws.server
+
+import org.jboss.netty.channel.ChannelPipeline
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest
+import org.jboss.netty.handler.codec.http.HttpMethod
+import org.jboss.netty.handler.codec.http.HttpRequest
+import org.jboss.netty.handler.codec.http.HttpVersion
+import org.junit.After
+import org.junit.Ignore
+import org.junit.Test
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.*
+
+/**
+ * Unit tests for pipeline routing
+ */
+class PipelinesTest {
+
+  private final List<FilteredPipeline> registered = [ ]
+  private final List<FilteredPipeline> registeredInternal = [ ]
+
+  @After
+  void tearDown( ) {
+    Pipelines.pipelines.removeAll( registered )
+    Pipelines.internalPipelines.removeAll( registeredInternal )
+    Pipelines.pipelinesChanged( )
+  }
+
+  @Test
+  void testRouteKey( ) {
+    assertEquals( 'query key', '|GET|/services/eucalyptus',
+        Pipelines.routeKey( request( HttpMethod.GET, '/services/Eucalyptus/?Action=DescribeImages' ) ) )
+    assertEquals( 'no slash key', '|GET|/services/eucalyptus',
+        Pipelines.routeKey( request( HttpMethod.GET, '/services/Eucalyptus' ) ) )
+    assertEquals( 'segments key', '|GET|/services/eucalyptus',
+        Pipelines.routeKey( request( HttpMethod.GET, '/services/Eucalyptus/images/emi-00000001' ) ) )
+    assertEquals( 'absolute key', '|GET|/services/eucalyptus',
+        Pipelines.routeKey( request( HttpMethod.GET, 'http://10.1.1.1:8773/services/Eucalyptus/' ) ) )
+    assertEquals( 'soap key', 'soap|POST|/services/eucalyptus',
+        Pipelines.routeKey( request( HttpMethod.POST, '/services/Eucalyptus', [ SOAPAction: 'RunInstances' ] ) ) )
+    assertEquals( 'root key', '|GET|/',
+        Pipelines.routeKey( request( HttpMethod.GET, '/?Action=DescribeImages' ) ) )
+    assertEquals( 'host independent key',
+        Pipelines.routeKey( request( HttpMethod.GET, '/', [ Host: 'ec2.example.com' ] ) ),
+        Pipelines.routeKey( request( HttpMethod.GET, '/', [ Host: 'autoscaling.example.com' ] ) ) )
+  }
+
+  @Test
+  void testPublicBeforeInternal( ) {
+    FilteredPipeline publicPipeline = register( pipeline( 'test-public' ){ HttpRequest request ->
+      request.getMethod( ) == HttpMethod.POST && request.getUri( ).startsWith( '/services/RouteTest' )
+    } )
+    FilteredPipeline internalPipeline = registerInternal( pipeline( 'test-internal' ){ HttpRequest request ->
+      request.getUri( ).startsWith( '/services/RouteTest' )
+    } )
+
+    assertSame( 'public route', publicPipeline, Pipelines.find( request( HttpMethod.POST, '/services/RouteTest' ) ) )
+    assertSame( 'internal route', internalPipeline, Pipelines.find( request( HttpMethod.GET, '/services/RouteTest' ) ) )
+    assertSame( 'public route again', publicPipeline, Pipelines.find( request( HttpMethod.POST, '/services/RouteTest' ) ) )
+  }
+
+  @Test
+  void testCandidatesInRoutingOrder( ) {
+    FilteredPipeline pipelineA = register( pipeline( 'test-a' ){ HttpRequest request ->
+      request.getHeader( 'X-Route' ) in [ 'a', 'any' ]
+    } )
+    FilteredPipeline pipelineB = register( pipeline( 'test-b' ){ HttpRequest request ->
+      request.getHeader( 'X-Route' ) in [ 'b', 'any' ]
+    } )
+    FilteredPipeline first = Pipelines.pipelines.find{ it.is( pipelineA ) || it.is( pipelineB ) }
+
+    assertSame( 'route b', pipelineB, Pipelines.find( request( HttpMethod.GET, '/services/Shared', [ 'X-Route': 'b' ] ) ) )
+    assertSame( 'route a', pipelineA, Pipelines.find( request( HttpMethod.GET, '/services/Shared', [ 'X-Route': 'a' ] ) ) )
+    assertSame( 'route any', first, Pipelines.find( request( HttpMethod.GET, '/services/Shared', [ 'X-Route': 'any' ] ) ) )
+  }
+
+  @Test
+  void testPipelinesChanged( ) {
+    assertSame( 'route', register( pipeline( 'test-before' ){ HttpRequest request ->
+      request.getUri( ).startsWith( '/services/Changed' )
+    } ), Pipelines.find( request( HttpMethod.GET, '/services/Changed' ) ) )
+
+    Pipelines.pipelines.removeAll( registered )
+    Pipelines.pipelinesChanged( )
+    FilteredPipeline after = register( pipeline( 'test-after' ){ HttpRequest request ->
+      request.getUri( ).startsWith( '/services/Changed' )
+    } )
+
+    assertSame( 'route after change', after, Pipelines.find( request( HttpMethod.GET, '/services/Changed' ) ) )
+  }
+
+  @Test( expected = NoAcceptingPipelineException )
+  void testNoAcceptingPipeline( ) {
+    Pipelines.find( request( HttpMethod.GET, '/services/NoSuchService' ) )
+  }
+
+  /**
+   * Routing throughput with a pipeline per service, as for a cloud
+   * controller with all services registered.
+   */
+  @Ignore("Manual development test")
+  @Test
+  void testRoutingLoad( ) {
+    int services = 40
+    int threads = 16
+    int requestsPerThread = 200000
+    ( 1..services ).each { int service ->
+      register( pipeline( "test-service-${service}" ){ HttpRequest request ->
+        request.getUri( ).startsWith( "/services/Service${service}/" )
+      } )
+    }
+    ExecutorService executor = Executors.newFixedThreadPool( threads )
+    try {
+      CountDownLatch start = new CountDownLatch( 1 )
+      List<Future<Void>> results = ( 1..threads ).collect{ int thread ->
+        executor.submit( {
+          List<HttpRequest> requests = ( 1..services ).collect { int service ->
+            request( HttpMethod.GET, "/services/Service${service}/?Action=Describe&Id=${thread}", [ Host: "host-${thread}.example.com:8773" ] )
+          }
+          start.await( )
+          for ( int i = 0; i < requestsPerThread; i++ ) {
+            Pipelines.find( requests.get( i % services ) )
+          }
+          null
+        } as Callable<Void> )
+      }
+      long startNanos = System.nanoTime( )
+      start.countDown( )
+      results*.get( )
+      long elapsedNanos = System.nanoTime( ) - startNanos
+      long requests = (long) threads * requestsPerThread
+      println "Routed: ${requests} in ${TimeUnit.NANOSECONDS.toMillis( elapsedNanos )}ms " +
+          "(${(long)( requests / ( elapsedNanos / 1e9d ) )}/s)"
+    } finally {
+      executor.shutdownNow( )
+    }
+  }
+
+  private FilteredPipeline register( FilteredPipeline pipeline ) {
+    registered << pipeline
+    Pipelines.pipelines.add( pipeline )
+    Pipelines.pipelinesChanged( )
+    pipeline
+  }
+
+  private FilteredPipeline registerInternal( FilteredPipeline pipeline ) {
+    registeredInternal << pipeline
+    Pipelines.internalPipelines.add( pipeline )
+    Pipelines.pipelinesChanged( )
+    pipeline
+  }
+
+  private static FilteredPipeline pipeline( String name, Closure<Boolean> accepts ) {
+    new TestPipeline( name, accepts )
+  }
+
+  private static HttpRequest request( HttpMethod method, String uri, Map<String,String> headers = [:] ) {
+    HttpRequest request = new DefaultHttpRequest( HttpVersion.HTTP_1_1, method, uri )
+    headers.each { String name, String value -> request.setHeader( name, value ) }
+    request
+  }
+
+  private static class TestPipeline extends FilteredPipeline {
+    private final String name
+    private final Closure<Boolean> accepts
+
+    TestPipeline( String name, Closure<Boolean> accepts ) {
+      this.name = name
+      this.accepts = accepts
+    }
+
+    @Override
+    String getName( ) {
+      name
+    }
+
+    @Override
+    ChannelPipeline addHandlers( ChannelPipeline pipeline ) {
+      pipeline
+    }
+
+    @Override
+    boolean checkAccepts( HttpRequest message ) {
+      accepts.call( message )
+    }
+  }
+}
@@ -65,7 +65,6 @@ package com.eucalyptus.objectstorage.pipeline.handlers;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
 import java.util.Date;
-import java.util.concurrent.Callable;
 
 import com.eucalyptus.storage.msgs.s3.MetaDataEntry;
 import org.apache.log4j.Logger;
@@ -107,9 +106,9 @@ public class ObjectStorageGETOutboundHandler extends ObjectStorageBasicOutboundH
 			if ( channelEvent instanceof MessageEvent ) {
 				final MessageEvent msgEvent = ( MessageEvent ) channelEvent;
 				if ( msgEvent.getMessage( ) != null ) {
-					Callable<Long> stat = Statistics.startDownstream( ctx.getChannel( ), this );
+					final long start = Statistics.start( );
 					boolean isDone = this.handleMessage( ctx, msgEvent );
-					stat.call( );
+					Statistics.recordDownstream( this, start );
 
 					if(isDone) {
 						return;
@@ -19,6 +19,7 @@
  ************************************************************************/
 package com.eucalyptus.reporting.event_store;
 
+import java.util.Collection;
 import javax.persistence.EntityTransaction;
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.util.Exceptions;
@@ -39,4 +40,16 @@ class EventStoreSupport {
     }
   }
 
+  protected void persistAll( final Collection<?> events ) {
+    if ( events.isEmpty() ) return;
+    final EntityTransaction db = Entities.get( events.iterator().next() );
+    try {
+      Entities.persistAll( events );
+      db.commit();
+    } catch ( final Exception e ) {
+      db.rollback();
+      throw Exceptions.toUndeclared(e);
+    }
+  }
+
 }
@@ -23,7 +23,9 @@ import java.util.*;
 
 import javax.annotation.Nonnull;
 
+import com.eucalyptus.reporting.event.InstanceUsageEvent;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 
 import java.util.concurrent.TimeUnit;
 
@@ -79,6 +81,25 @@ public class ReportingInstanceEventStore extends EventStoreSupport {
     		dimension, value, timestamp ) );
   }
 
+  /**
+   * Insert all the given usage events in a single batch.
+   *
+   * <p>If any event cannot be inserted then no events are inserted.</p>
+   */
+  public void insertUsageEvents( @Nonnull final Collection<InstanceUsageEvent> events ) {
+    final List<ReportingInstanceUsageEvent> usageEvents = Lists.newArrayList();
+    for ( final InstanceUsageEvent event : events ) {
+      usageEvents.add( new ReportingInstanceUsageEvent(
+          event.getUuid(),
+          event.getMetric(),
+          event.getSequenceNum(),
+          event.getDimension(),
+          event.getValue(),
+          event.getValueTimestamp() ) );
+    }
+    persistAll( usageEvents );
+  }
+
   
 
 }
@@ -91,9 +91,7 @@ public class InstanceUsageEventListener implements
 		Set<InstanceUsageEvent> eventBatch = new HashSet<InstanceUsageEvent>();
 		eventQueue.drainTo(eventBatch);
 		
-		for (final InstanceUsageEvent event : eventBatch) {
-		    insertEvent(event);
-		}
+		insertEvents(eventBatch);
 		
 		eventBatch.clear();
 		busy.set(false);
@@ -105,6 +103,18 @@ public class InstanceUsageEventListener implements
 
     }
 
+    private void insertEvents(Set<InstanceUsageEvent> eventBatch) {
+	try {
+	    getReportingInstanceEventStore().insertUsageEvents(eventBatch);
+	} catch (Exception ex) {
+	    // batch rolled back, insert individually so only duplicates are lost
+	    log.debug("Batch insert of usage events failed, retrying individually", ex);
+	    for (final InstanceUsageEvent event : eventBatch) {
+		insertEvent(event);
+	    }
+	}
+    }
+
     private void insertEvent(InstanceUsageEvent event) {
 	try {
 	    final ReportingInstanceEventStore eventStore = getReportingInstanceEventStore();
@@ -0,0 +1,99 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.reporting.event_store
+
+import static org.junit.Assert.*
+
+import javax.persistence.EntityTransaction
+
+import org.hibernate.ejb.Ejb3Configuration
+import org.junit.AfterClass
+import org.junit.BeforeClass
+import org.junit.Test
+
+import com.eucalyptus.entities.Entities
+import com.eucalyptus.entities.PersistenceContexts
+import com.eucalyptus.reporting.event.InstanceUsageEvent
+
+/**
+ * Unit tests for batched instance usage event writes
+ */
+class ReportingInstanceEventStoreTest {
+
+  @BeforeClass
+  static void setUp( ) {
+    Properties props = new Properties( )
+    props.put( "hibernate.archive.autodetection", "jar, class, hbm" )
+    props.put( "hibernate.ejb.interceptor.session_scoped", "com.eucalyptus.entities.DelegatingInterceptor" )
+    props.put( "hibernate.show_sql", "false" )
+    props.put( "hibernate.format_sql", "false" )
+    props.put( "hibernate.generate_statistics", "false" )
+    props.put( "hibernate.bytecode.use_reflection_optimizer", "true" )
+    props.put( "hibernate.jdbc.batch_size", "5" )
+    props.put( "hibernate.order_inserts", "true" )
+    props.put( "javax.persistence.jdbc.driver", "org.apache.derby.jdbc.EmbeddedDriver" )
+    props.put( "javax.persistence.jdbc.user", "root" )
+    props.put( "javax.persistence.jdbc.password", "root" )
+    props.put( "hibernate.hbm2ddl.auto", "create" )
+    props.put( "hibernate.cache.use_second_level_cache", "false" )
+    props.put( "hibernate.dialect", "org.hibernate.dialect.DerbyDialect" )
+    props.put( "hibernate.connection.url", "jdbc:derby:memory:reporting_event_store_test;create=true" )
+
+    Ejb3Configuration config = new Ejb3Configuration( ).configure( props )
+        .addAnnotatedClass( ReportingInstanceUsageEvent )
+    PersistenceContexts.registerPersistenceContext( "eucalyptus_reporting", config )
+  }
+
+  @AfterClass
+  static void tearDown( ) {
+    PersistenceContexts.shutdown( )
+  }
+
+  @Test
+  void testInsertUsageEvents( ) {
+    long timestamp = System.currentTimeMillis( )
+    List<InstanceUsageEvent> events = ( 0..<12 ).collect { int index ->
+      new InstanceUsageEvent( 'uuid-' + index, 'i-0000000' + ( index % 10 ), 'CPUUtilization', index as Long, 'default', index as Double, timestamp )
+    }
+
+    Date before = new Date( )
+    ReportingInstanceEventStore.getInstance( ).insertUsageEvents( events )
+
+    List<ReportingInstanceUsageEvent> inserted = load( )
+    assertEquals( 'Inserted uuids', events.collect{ it.uuid } as Set, inserted.collect{ it.uuid } as Set )
+    inserted.each { ReportingInstanceUsageEvent event ->
+      assertNotNull( 'Id', event.id )
+      assertNotNull( 'Creation timestamp', event.creationTimestamp )
+      assertFalse( 'Creation timestamp before insert', event.creationTimestamp.before( new Date( before.time - 1000 ) ) )
+      assertEquals( 'Timestamp', timestamp, event.timestampMs )
+    }
+  }
+
+  private static List<ReportingInstanceUsageEvent> load( ) {
+    EntityTransaction db = Entities.get( ReportingInstanceUsageEvent )
+    try {
+      List<ReportingInstanceUsageEvent> events = Entities.query( new ReportingInstanceUsageEvent( ) )
+      db.commit( )
+      events
+    } finally {
+      if ( db.isActive( ) ) db.rollback( )
+    }
+  }
+}
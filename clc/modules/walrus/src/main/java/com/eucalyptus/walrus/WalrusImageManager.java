@@ -75,6 +75,7 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -103,8 +104,6 @@ import org.w3c.dom.Node;
 import com.eucalyptus.auth.Accounts;
 import com.eucalyptus.auth.policy.PolicySpec;
 import com.eucalyptus.auth.principal.Account;
-import com.eucalyptus.auth.principal.Certificate;
-import com.eucalyptus.auth.principal.User;
 import com.eucalyptus.auth.util.Hashes;
 import com.eucalyptus.component.Partition;
 import com.eucalyptus.component.Partitions;
@@ -145,6 +144,8 @@ import com.eucalyptus.walrus.msgs.WalrusDataMessenger;
 import com.eucalyptus.walrus.msgs.WalrusMonitor;
 import com.eucalyptus.walrus.util.WalrusImageUtils;
 import com.eucalyptus.walrus.util.WalrusProperties;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import edu.ucsb.eucalyptus.util.EucaSemaphore;
 import edu.ucsb.eucalyptus.util.EucaSemaphoreDirectory;
@@ -152,6 +153,7 @@ import edu.ucsb.eucalyptus.util.EucaSemaphoreDirectory;
 public class WalrusImageManager {
 	private static Logger LOG = Logger.getLogger( WalrusImageManager.class );
 	private static ConcurrentHashMap<String, ImageCacher> imageCachers = new ConcurrentHashMap<String, ImageCacher>();
+	private static final Cache<String, String> signerKeyFingerprints = CacheBuilder.newBuilder().maximumSize(1000).build();
 
 	private StorageManager storageManager;
 	private  WalrusDataMessenger imageMessenger;
@@ -239,17 +241,7 @@ public class WalrusImageManager {
 
 					if(isAdministrator) {
 						try {
-							boolean verified = false;
-							for(User u:Accounts.listAllUsers( )) {
-								for (Certificate c : u.getCertificates()) {
-									X509Certificate cert = c.getX509Certificate( );
-									if(cert != null)
-										verified = canVerifySignature(sigVerifier, cert, signature, verificationString);
-									if(verified)
-										break;
-								}
-								if(verified) break;
-							}
+							boolean verified = canVerifyWithSigningCertificates(sigVerifier, bucketName, null, signature, verificationString);
 							if(!verified) {
 								X509Certificate cert = SystemCredentials.lookup(Eucalyptus.class).getCertificate();
 								if(cert != null)
@@ -277,17 +269,7 @@ public class WalrusImageManager {
 					} else {
 						boolean signatureVerified = false;
 						try {
-							for(User user: account.getUsers()) {
-								for(Certificate c : user.getCertificates()) {
-									X509Certificate cert = c.getX509Certificate( );
-									if(cert != null) {
-										signatureVerified = canVerifySignature(sigVerifier, cert, signature, verificationString);
-									}
-									if(signatureVerified)
-										break;
-								}
-								if(signatureVerified) break;
-							}
+							signatureVerified = canVerifyWithSigningCertificates(sigVerifier, bucketName, account.getAccountNumber(), signature, verificationString);
 						} catch(Exception ex) {
 							db.rollback();
 							LOG.error(ex, ex);
@@ -421,6 +403,29 @@ public class WalrusImageManager {
 		return sigVerifier.verify(Hashes.hexToBytes(signature));
 	}
 
+	/**
+	 * Verify the signature with the active signing certificates for the account, or for all
+	 * accounts if the account number is null. The manifest does not identify the signing key
+	 * so the last signer for the bucket is tried first.
+	 */
+	private boolean canVerifyWithSigningCertificates(Signature sigVerifier, String bucketName, String accountNumber, String signature, String verificationString) throws Exception {
+		Map<String, X509Certificate> certificates = Accounts.listActiveSigningCertificatesByKeyFingerprint(accountNumber);
+		String signerFingerprint = signerKeyFingerprints.getIfPresent(bucketName);
+		if(signerFingerprint != null) {
+			X509Certificate cert = certificates.get(signerFingerprint);
+			if(cert != null && canVerifySignature(sigVerifier, cert, signature, verificationString))
+				return true;
+		}
+		for(Map.Entry<String, X509Certificate> certificate : certificates.entrySet()) {
+			if(!certificate.getKey().equals(signerFingerprint) &&
+					canVerifySignature(sigVerifier, certificate.getValue(), signature, verificationString)) {
+				signerKeyFingerprints.put(bucketName, certificate.getKey());
+				return true;
+			}
+		}
+		return false;
+	}
+
 
 	private void checkManifest(String bucketName, String objectKey, Account account) throws EucalyptusCloudException {
 		EntityWrapper<BucketInfo> db = EntityWrapper.get(BucketInfo.class);
@@ -462,14 +467,7 @@ public class WalrusImageManager {
 					}
 
 					try {
-						for(User u:Accounts.listAllUsers( )) {
-							for (Certificate cert : u.getCertificates()) {
-								if(cert != null&&cert instanceof X509Certificate)
-									signatureVerified = canVerifySignature(sigVerifier, ( X509Certificate ) cert, signature, (machineConfiguration + image));
-								if(signatureVerified)
-									break;
-							}
-						}
+						signatureVerified = canVerifyWithSigningCertificates(sigVerifier, bucketName, null, signature, (machineConfiguration + image));
 						if(!signatureVerified) {
 							X509Certificate cert = SystemCredentials.lookup(Eucalyptus.class).getCertificate();
 							if(cert != null)